@@ -0,0 +1,199 @@
+package org.apache.lucene.analysis;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.util.Attribute;
+import org.apache.lucene.util.AttributeSource;
+
+/**
+ * A bounded, thread-safe cache of analysis results, used by
+ * {@link CachingAnalyzerWrapper} to avoid re-analyzing the same
+ * text for the same field, such as a query string parsed against
+ * several fields, or short values (category names, copies of
+ * other fields) that repeat across documents.
+ * <p>
+ * Entries are keyed by analyzer, field name and text, and hold
+ * the captured {@link AttributeSource.State} of every token, like
+ * {@link CachingTokenFilter}.  Once {@link #getMaxEntries()}
+ * entries are cached the least recently used one is evicted; text
+ * longer than {@link #getMaxTextLength()} chars is never cached.
+ * One cache may be shared by several wrapped analyzers.
+ *
+ * @lucene.experimental
+ */
+public final class AnalysisCache {
+
+  private final int maxEntries;
+  private final int maxTextLength;
+  private final LRUMap entries;
+
+  private long lookupCount;
+  private long hitCount;
+
+  /**
+   * @param maxEntries maximum number of field values to cache
+   * @param maxTextLength longest text, in chars, that is cached
+   */
+  public AnalysisCache(int maxEntries, int maxTextLength) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be > 0 (got " + maxEntries + ")");
+    }
+    if (maxTextLength < 0) {
+      throw new IllegalArgumentException("maxTextLength must be >= 0 (got " + maxTextLength + ")");
+    }
+    this.maxEntries = maxEntries;
+    this.maxTextLength = maxTextLength;
+    entries = new LRUMap(maxEntries);
+  }
+
+  /** Returns the maximum number of cached entries. */
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  /** Returns the longest text, in chars, that is cached. */
+  public int getMaxTextLength() {
+    return maxTextLength;
+  }
+
+  synchronized Entry get(Key key) {
+    lookupCount++;
+    final Entry entry = entries.get(key);
+    if (entry != null) {
+      hitCount++;
+    }
+    return entry;
+  }
+
+  synchronized void put(Key key, Entry entry) {
+    entries.put(key, entry);
+  }
+
+  /** Returns the number of currently cached entries. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Removes all cached entries; statistics are kept. */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /** Returns the number of lookups, ie field values that
+   *  were short enough to be cached. */
+  public synchronized long getLookupCount() {
+    return lookupCount;
+  }
+
+  /** Returns the number of lookups that were served from
+   *  the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of entries evicted to stay within
+   *  {@link #getMaxEntries()}. */
+  public synchronized long getEvictionCount() {
+    return entries.evictionCount;
+  }
+
+  /** Returns the fraction of lookups that were hits, or 0
+   *  if there were no lookups yet. */
+  public synchronized double getHitRate() {
+    return lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AnalysisCache(size=" + entries.size() + ",maxEntries=" + maxEntries
+      + ",lookups=" + lookupCount + ",hits=" + hitCount + ",evictions=" + entries.evictionCount + ")";
+  }
+
+  /** Access ordered map that drops the least recently
+   *  used entry once it holds more than maxEntries. */
+  private static final class LRUMap extends LinkedHashMap<Key,Entry> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+    long evictionCount;
+
+    LRUMap(int maxEntries) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key,Entry> eldest) {
+      if (size() > maxEntries) {
+        evictionCount++;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /** Identifies one analyzed value. */
+  static final class Key {
+    private final Analyzer analyzer;
+    private final String fieldName;
+    private final String text;
+    private final int hashCode;
+
+    Key(Analyzer analyzer, String fieldName, String text) {
+      this.analyzer = analyzer;
+      this.fieldName = fieldName;
+      this.text = text;
+      this.hashCode = (System.identityHashCode(analyzer) * 31 + fieldName.hashCode()) * 31 + text.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key o = (Key) other;
+      return analyzer == o.analyzer && fieldName.equals(o.fieldName) && text.equals(o.text);
+    }
+  }
+
+  /** The captured tokens of one analyzed value; never
+   *  modified once cached, so it can be replayed by many
+   *  threads at once. */
+  static final class Entry {
+    final AttributeSource.State[] states;
+    final AttributeSource.State finalState;
+    // the attributes of the recording chain:
+    final Set<Class<? extends Attribute>> attributeClasses;
+
+    Entry(AttributeSource.State[] states, AttributeSource.State finalState,
+          Set<Class<? extends Attribute>> attributeClasses) {
+      this.states = states;
+      this.finalState = finalState;
+      this.attributeClasses = attributeClasses;
+    }
+  }
+}
@@ -0,0 +1,324 @@
+package org.apache.lucene.analysis;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.Attribute;
+import org.apache.lucene.util.AttributeSource;
+
+/**
+ * Wraps an {@link Analyzer} so that the analysis of each field
+ * value is looked up in an {@link AnalysisCache} first: on a hit
+ * the cached tokens are replayed, as {@link CachingTokenFilter}
+ * would, without running the wrapped analyzer's components; on a
+ * miss the value is analyzed as usual and, once the consumer has
+ * pulled all tokens and called {@link TokenStream#end()}, the
+ * tokens are added to the cache.
+ * <p>
+ * This pays off when the same text is analyzed repeatedly for the
+ * same field, eg a user query that is parsed against many fields
+ * on every request.  The wrapped analyzer must be deterministic,
+ * ie always produce the same tokens for the same field and text.
+ * Values passed as a {@link CharStream}, eg wrapped in a
+ * CharFilter, are not cached, since their offsets must be
+ * corrected by the caller's stream.
+ *
+ * @lucene.experimental
+ */
+public final class CachingAnalyzerWrapper extends Analyzer {
+
+  private final Analyzer delegate;
+  private final AnalysisCache cache;
+
+  /**
+   * @param delegate the analyzer to cache the results of
+   * @param cache where to cache results; may be shared with
+   *        other wrappers
+   */
+  public CachingAnalyzerWrapper(Analyzer delegate, AnalysisCache cache) {
+    super(new PerFieldReuseStrategy());
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  /** Returns the wrapped analyzer. */
+  public Analyzer getWrappedAnalyzer() {
+    return delegate;
+  }
+
+  /** Returns the cache used by this wrapper. */
+  public AnalysisCache getCache() {
+    return cache;
+  }
+
+  @Override
+  protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+    // The wrapped components only see a value on a cache
+    // miss, see CachingFilter.reset():
+    final DelegatingReader firstReader = new DelegatingReader();
+    final TokenStreamComponents components = delegate.createComponents(fieldName, delegate.initReader(firstReader));
+    final CachingFilter filter = new CachingFilter(fieldName == null ? "" : fieldName, components, firstReader);
+    filter.setReader(reader);
+    return new TokenStreamComponents(components.getTokenizer(), filter) {
+      @Override
+      protected void reset(Reader reader) {
+        filter.setReader(reader);
+      }
+    };
+  }
+
+  @Override
+  public int getPositionIncrementGap(String fieldName) {
+    return delegate.getPositionIncrementGap(fieldName);
+  }
+
+  @Override
+  public int getOffsetGap(IndexableField field) {
+    return delegate.getOffsetGap(field);
+  }
+
+  @Override
+  public String toString() {
+    return "CachingAnalyzerWrapper(" + delegate + ", " + cache + ")";
+  }
+
+  /** The reader the wrapped components are created with;
+   *  it is pointed at the first value they analyze.  This is
+   *  a CharStream so that the value's own offset corrections,
+   *  if any, still apply. */
+  private static final class DelegatingReader extends CharStream {
+    Reader in;
+
+    @Override
+    public int correctOffset(int currentOff) {
+      return in instanceof CharStream ? ((CharStream) in).correctOffset(currentOff) : currentOff;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return in.read(cbuf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private final class CachingFilter extends TokenFilter {
+    private final String fieldName;
+    private final TokenStreamComponents components;
+
+    // Non-null until the wrapped components analyze their
+    // first value:
+    private DelegatingReader firstReader;
+
+    // The value to analyze next, set by Analyzer.tokenStream:
+    private Reader pendingReader;
+
+    // Non-null while replaying a cache hit:
+    private AnalysisCache.Entry replay;
+    private int replayUpto;
+
+    // Non-null while recording a cache miss:
+    private AnalysisCache.Key recordKey;
+    private List<AttributeSource.State> recording;
+    private boolean exhausted;
+
+    private char[] buffer;
+
+    CachingFilter(String fieldName, TokenStreamComponents components, DelegatingReader firstReader) {
+      super(components.getTokenStream());
+      this.fieldName = fieldName;
+      this.components = components;
+      this.firstReader = firstReader;
+    }
+
+    void setReader(Reader reader) {
+      pendingReader = reader;
+      replay = null;
+      recordKey = null;
+      recording = null;
+      exhausted = false;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (replay != null) {
+        if (replayUpto == replay.states.length) {
+          return false;
+        }
+        clearAttributes();
+        restoreState(replay.states[replayUpto++]);
+        return true;
+      }
+      if (input.incrementToken()) {
+        if (recording != null) {
+          recording.add(captureState());
+        }
+        return true;
+      }
+      exhausted = true;
+      return false;
+    }
+
+    @Override
+    public void end() throws IOException {
+      if (replay != null) {
+        clearAttributes();
+        restoreState(replay.finalState);
+        return;
+      }
+      input.end();
+      if (recording != null && exhausted) {
+        final Set<Class<? extends Attribute>> attributeClasses = new HashSet<Class<? extends Attribute>>();
+        final Iterator<Class<? extends Attribute>> it = getAttributeClassesIterator();
+        while (it.hasNext()) {
+          attributeClasses.add(it.next());
+        }
+        cache.put(recordKey, new AnalysisCache.Entry(
+            recording.toArray(new AttributeSource.State[recording.size()]), captureState(), attributeClasses));
+        recording = null;
+        recordKey = null;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      // on a hit the wrapped components were not used:
+      if (replay == null) {
+        input.close();
+      }
+    }
+
+    @Override
+    public void reset() throws IOException {
+      final Reader reader = pendingReader;
+      if (reader == null) {
+        // re-reset of the current value
+        if (replay != null) {
+          replayUpto = 0;
+        } else {
+          input.reset();
+        }
+        return;
+      }
+      pendingReader = null;
+
+      if (reader instanceof CharStream) {
+        // the caller's CharFilter corrects offsets, which
+        // would be lost if we analyzed a copy of its text:
+        analyze(reader);
+        return;
+      }
+
+      // Read up to maxTextLength+1 chars to see whether the
+      // value is short enough to cache:
+      final int maxTextLength = cache.getMaxTextLength();
+      if (buffer == null) {
+        buffer = new char[maxTextLength + 1];
+      }
+      int length = 0;
+      boolean success = false;
+      try {
+        while (length < buffer.length) {
+          final int count = reader.read(buffer, length, buffer.length - length);
+          if (count == -1) {
+            break;
+          }
+          length += count;
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          // leave the wrapped components ready for end() and
+          // close(), as if they had hit the exception:
+          analyze(pushback(reader, length));
+        }
+      }
+
+      final Reader valueReader;
+      if (length > maxTextLength) {
+        // too long: analyze, but don't cache
+        valueReader = pushback(reader, length);
+      } else {
+        reader.close();
+        final String text = new String(buffer, 0, length);
+        final AnalysisCache.Key key = new AnalysisCache.Key(delegate, fieldName, text);
+        replay = cache.get(key);
+        if (replay != null) {
+          if (canReplay(replay)) {
+            replayUpto = 0;
+            return;
+          }
+          // recorded by a chain to which its consumer added
+          // other attributes than ours; analyze and re-record:
+          replay = null;
+        }
+        recordKey = key;
+        recording = new ArrayList<AttributeSource.State>();
+        valueReader = new StringReader(text);
+      }
+      analyze(valueReader);
+    }
+
+    private Reader pushback(Reader reader, int length) throws IOException {
+      if (length == 0) {
+        return reader;
+      }
+      final PushbackReader pushback = new PushbackReader(reader, length);
+      pushback.unread(buffer, 0, length);
+      return pushback;
+    }
+
+    private boolean canReplay(AnalysisCache.Entry entry) {
+      // only replay into exactly the recording chain's
+      // attributes: a missing one could not be restored, and
+      // an extra one would not be set by the replay:
+      int count = 0;
+      final Iterator<Class<? extends Attribute>> it = getAttributeClassesIterator();
+      while (it.hasNext()) {
+        if (!entry.attributeClasses.contains(it.next())) {
+          return false;
+        }
+        count++;
+      }
+      return count == entry.attributeClasses.size();
+    }
+
+    private void analyze(Reader reader) throws IOException {
+      if (firstReader != null) {
+        firstReader.in = reader;
+        firstReader = null;
+      } else {
+        components.reset(delegate.initReader(reader));
+      }
+      input.reset();
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package org.apache.lucene.analysis;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.Payload;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Attribute;
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A {@link TokenStream} that replays the tokens of another
+ * stream from a compact buffer.  The source stream is fully
+ * consumed (and closed) up front, recording for each token
+ * only what indexing needs: the term's final byte encoding
+ * (as produced by {@link TermToBytesRefAttribute}), the
+ * position increment, the offsets and the payload.  All
+ * other attributes are dropped.
+ *
+ * <p>This allows analysis to run on a different thread than
+ * indexing: capture the stream on an analysis thread and
+ * pass the result to {@link
+ * org.apache.lucene.document.Field#setTokenStream}.  The
+ * stream can be {@link #reset} and replayed any number of
+ * times, but is not thread-safe.
+ *
+ * <p>Like {@link NumericTokenStream}, this stream has no
+ * {@link CharTermAttribute}; terms are only available as
+ * bytes.
+ *
+ * @see org.apache.lucene.document.PreAnalyzer
+ * @lucene.experimental
+ */
+public final class PreAnalyzedTokenStream extends TokenStream {
+
+  /** <b>Expert:</b> term attribute holding the recorded
+   *  term bytes of the current token.
+   *  @lucene.internal */
+  public interface BytesTermAttribute extends Attribute {
+    /** <em>Don't call this method!</em> */
+    void setBytes(byte[] bytes, int offset, int length, int hashCode);
+  }
+
+  /** Implementation of {@link BytesTermAttribute}.
+   *  @lucene.internal */
+  public static final class BytesTermAttributeImpl extends AttributeImpl implements BytesTermAttribute, TermToBytesRefAttribute {
+    private final BytesRef bytes = new BytesRef();
+    private int hashCode;
+
+    public void setBytes(byte[] bytes, int offset, int length, int hashCode) {
+      this.bytes.bytes = bytes;
+      this.bytes.offset = offset;
+      this.bytes.length = length;
+      this.hashCode = hashCode;
+    }
+
+    public int fillBytesRef() {
+      return hashCode;
+    }
+
+    public BytesRef getBytesRef() {
+      return bytes;
+    }
+
+    @Override
+    public void clear() {
+      // fully controlled by the outer class
+    }
+
+    @Override
+    public void reflectWith(AttributeReflector reflector) {
+      reflector.reflect(TermToBytesRefAttribute.class, "bytes", BytesRef.deepCopyOf(bytes));
+    }
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+      ((BytesTermAttribute) target).setBytes(bytes.bytes, bytes.offset, bytes.length, hashCode);
+    }
+  }
+
+  // just a wrapper to prevent adding CTA
+  private static final class PreAnalyzedAttributeFactory extends AttributeFactory {
+    private final AttributeFactory delegate;
+
+    PreAnalyzedAttributeFactory(AttributeFactory delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public AttributeImpl createAttributeInstance(Class<? extends Attribute> attClass) {
+      if (CharTermAttribute.class.isAssignableFrom(attClass))
+        throw new IllegalArgumentException("PreAnalyzedTokenStream does not support CharTermAttribute.");
+      return delegate.createAttributeInstance(attClass);
+    }
+  }
+
+  // per token: term end, term hash, position increment,
+  // start offset, end offset, payload end
+  private static final int INTS_PER_TOKEN = 6;
+
+  private int[] tokens = new int[8 * INTS_PER_TOKEN];
+  private byte[] termBytes = new byte[64];
+  private byte[] payloadBytes;
+  private int numTokens;
+  private int finalOffset;
+
+  private int upto;
+
+  private final BytesTermAttribute termAtt;
+  private final PositionIncrementAttribute posIncAtt;
+  private final OffsetAttribute offsetAtt;
+  private final PayloadAttribute payloadAtt;
+  private final Payload payload;
+
+  /** Consumes (and closes) the provided stream, recording
+   *  its tokens. */
+  public PreAnalyzedTokenStream(TokenStream source) throws IOException {
+    super(new PreAnalyzedAttributeFactory(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY));
+    fill(source);
+    termAtt = addAttribute(BytesTermAttribute.class);
+    posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    offsetAtt = addAttribute(OffsetAttribute.class);
+    if (payloadBytes != null) {
+      payloadAtt = addAttribute(PayloadAttribute.class);
+      payload = new Payload();
+    } else {
+      payloadAtt = null;
+      payload = null;
+    }
+  }
+
+  private void fill(TokenStream source) throws IOException {
+    boolean success = false;
+    try {
+      final TermToBytesRefAttribute srcTermAtt = source.getAttribute(TermToBytesRefAttribute.class);
+      final BytesRef srcBytes = srcTermAtt.getBytesRef();
+      final PositionIncrementAttribute srcPosIncAtt = source.addAttribute(PositionIncrementAttribute.class);
+      final OffsetAttribute srcOffsetAtt = source.addAttribute(OffsetAttribute.class);
+      final PayloadAttribute srcPayloadAtt = source.hasAttribute(PayloadAttribute.class) ?
+        source.getAttribute(PayloadAttribute.class) : null;
+
+      int termUpto = 0;
+      int payloadUpto = 0;
+      source.reset();
+      while (source.incrementToken()) {
+        final int hashCode = srcTermAtt.fillBytesRef();
+        if (termUpto + srcBytes.length > termBytes.length) {
+          termBytes = ArrayUtil.grow(termBytes, termUpto + srcBytes.length);
+        }
+        System.arraycopy(srcBytes.bytes, srcBytes.offset, termBytes, termUpto, srcBytes.length);
+        termUpto += srcBytes.length;
+
+        final Payload srcPayload = srcPayloadAtt == null ? null : srcPayloadAtt.getPayload();
+        if (srcPayload != null && srcPayload.length() > 0) {
+          if (payloadBytes == null) {
+            payloadBytes = new byte[Math.max(16, srcPayload.length())];
+          } else if (payloadUpto + srcPayload.length() > payloadBytes.length) {
+            payloadBytes = ArrayUtil.grow(payloadBytes, payloadUpto + srcPayload.length());
+          }
+          srcPayload.copyTo(payloadBytes, payloadUpto);
+          payloadUpto += srcPayload.length();
+        }
+
+        final int base = numTokens * INTS_PER_TOKEN;
+        if (base + INTS_PER_TOKEN > tokens.length) {
+          tokens = ArrayUtil.grow(tokens, base + INTS_PER_TOKEN);
+        }
+        tokens[base] = termUpto;
+        tokens[base+1] = hashCode;
+        tokens[base+2] = srcPosIncAtt.getPositionIncrement();
+        tokens[base+3] = srcOffsetAtt.startOffset();
+        tokens[base+4] = srcOffsetAtt.endOffset();
+        tokens[base+5] = payloadUpto;
+        numTokens++;
+      }
+      source.end();
+      finalOffset = srcOffsetAtt.endOffset();
+      success = true;
+    } finally {
+      if (success) {
+        source.close();
+      } else {
+        try {
+          source.close();
+        } catch (Throwable t) {
+          // suppress so we keep throwing the original exception
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean incrementToken() {
+    if (upto == numTokens) {
+      return false;
+    }
+    clearAttributes();
+    final int base = upto * INTS_PER_TOKEN;
+    final int termStart = upto == 0 ? 0 : tokens[base - INTS_PER_TOKEN];
+    termAtt.setBytes(termBytes, termStart, tokens[base] - termStart, tokens[base+1]);
+    posIncAtt.setPositionIncrement(tokens[base+2]);
+    offsetAtt.setOffset(tokens[base+3], tokens[base+4]);
+    if (payloadAtt != null) {
+      final int payloadStart = upto == 0 ? 0 : tokens[base - 1];
+      final int payloadLength = tokens[base+5] - payloadStart;
+      if (payloadLength > 0) {
+        payload.setData(payloadBytes, payloadStart, payloadLength);
+        payloadAtt.setPayload(payload);
+      } else {
+        payloadAtt.setPayload(null);
+      }
+    }
+    upto++;
+    return true;
+  }
+
+  @Override
+  public void end() {
+    offsetAtt.setOffset(finalOffset, finalOffset);
+  }
+
+  /** Rewinds the stream to the first recorded token. */
+  @Override
+  public void reset() {
+    upto = 0;
+  }
+
+  /** Returns the number of recorded tokens. */
+  public int getTokenCount() {
+    return numTokens;
+  }
+
+  /** Returns the approximate number of bytes of heap used
+   *  by the recorded tokens. */
+  public long ramBytesUsed() {
+    return RamUsageEstimator.sizeOf(tokens) + RamUsageEstimator.sizeOf(termBytes) +
+      (payloadBytes == null ? 0 : RamUsageEstimator.sizeOf(payloadBytes));
+  }
+}
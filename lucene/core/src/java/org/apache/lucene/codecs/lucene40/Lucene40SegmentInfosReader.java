@@ -84,9 +84,17 @@ public class Lucene40SegmentInfosReader extends SegmentInfosReader {
     final Codec codec = Codec.forName(input.readString());
     final Map<String,String> diagnostics = input.readStringStringMap();
     final int hasVectors = input.readByte();
+    final long docValuesUpdatesGen;
+    if (format <= SegmentInfos.FORMAT_DOCVALUES_UPDATES) {
+      docValuesUpdatesGen = input.readLong();
+    } else {
+      docValuesUpdatesGen = SegmentInfo.NO;
+    }
     
-    return new SegmentInfo(dir, version, name, docCount, delGen, docStoreOffset,
+    final SegmentInfo si = new SegmentInfo(dir, version, name, docCount, delGen, docStoreOffset,
       docStoreSegment, docStoreIsCompoundFile, normGen, isCompoundFile,
       delCount, hasProx, codec, diagnostics, hasVectors);
+    si.setDocValuesUpdatesGen(docValuesUpdatesGen);
+    return si;
   }
 }
@@ -97,6 +97,7 @@ public class Lucene40SegmentInfosWriter extends SegmentInfosWriter {
     output.writeString(si.getCodec().getName());
     output.writeStringStringMap(si.getDiagnostics());
     output.writeByte((byte) (si.getHasVectorsInternal()));
+    output.writeLong(si.getDocValuesUpdatesGen());
   }
   
   protected IndexOutput createOutput(Directory dir, String segmentFileName, IOContext context)
@@ -129,6 +129,10 @@ public class SimpleTextSegmentInfosReader extends SegmentInfosReader {
     SimpleTextUtil.readLine(input, scratch);
     assert StringHelper.startsWith(scratch, SI_DELGEN);
     final long delGen = Long.parseLong(readString(SI_DELGEN.length, scratch));
+
+    SimpleTextUtil.readLine(input, scratch);
+    assert StringHelper.startsWith(scratch, SI_DVUPDATESGEN);
+    final long docValuesUpdatesGen = Long.parseLong(readString(SI_DVUPDATESGEN.length, scratch));
     
     SimpleTextUtil.readLine(input, scratch);
     assert StringHelper.startsWith(scratch, SI_NUM_NORMGEN);
@@ -166,9 +170,11 @@ public class SimpleTextSegmentInfosReader extends SegmentInfosReader {
       diagnostics.put(key, value);
     }
     
-    return new SegmentInfo(directory, version, name, docCount, delGen, dsOffset,
+    final SegmentInfo si = new SegmentInfo(directory, version, name, docCount, delGen, dsOffset,
         dsSegment, dsCompoundFile, normGen, isCompoundFile,
         delCount, hasProx, codec, diagnostics, hasVectors);
+    si.setDocValuesUpdatesGen(docValuesUpdatesGen);
+    return si;
   }
   
   private String readString(int offset, BytesRef scratch) {
@@ -58,6 +58,7 @@ public class SimpleTextSegmentInfosWriter extends SegmentInfosWriter {
   final static BytesRef SI_DSSEGMENT        = new BytesRef("    docstore segment ");
   final static BytesRef SI_DSCOMPOUND       = new BytesRef("    docstore is compound file ");
   final static BytesRef SI_DELGEN           = new BytesRef("    deletion generation ");
+  final static BytesRef SI_DVUPDATESGEN     = new BytesRef("    docvalues updates generation ");
   final static BytesRef SI_NUM_NORMGEN      = new BytesRef("    norms generations ");
   final static BytesRef SI_NORMGEN_KEY      = new BytesRef("      key ");
   final static BytesRef SI_NORMGEN_VALUE    = new BytesRef("      value ");
@@ -183,6 +184,10 @@ public class SimpleTextSegmentInfosWriter extends SegmentInfosWriter {
     SimpleTextUtil.write(output, SI_DELGEN);
     SimpleTextUtil.write(output, Long.toString(si.getDelGen()), scratch);
     SimpleTextUtil.writeNewline(output);
+
+    SimpleTextUtil.write(output, SI_DVUPDATESGEN);
+    SimpleTextUtil.write(output, Long.toString(si.getDocValuesUpdatesGen()), scratch);
+    SimpleTextUtil.writeNewline(output);
     
     Map<Integer,Long> normGen = si.getNormGen();
     int numNormGen = normGen == null ? 0 : normGen.size();
@@ -51,6 +51,14 @@ import org.apache.lucene.util.BytesRef;
  * to the state of the IndexableFieldType will impact any
  * Field it is used in.  It is strongly recommended that no
  * changes be made after Field instantiation.
+ *
+ * <p/>
+ * NOTE: a Field instance may be re-used across documents by
+ * changing its value, but it must not be indexed by several
+ * threads at once: {@link #tokenStream} re-uses a per-instance
+ * TokenStream and Reader for String values.  Threads that
+ * index concurrently should each use their own Field
+ * instances.
  */
 public class Field implements IndexableField {
 
@@ -68,6 +76,12 @@ public class Field implements IndexableField {
 
   protected transient NumericTokenStream numericTokenStream;
 
+  // Reused across calls to tokenStream() so that indexing
+  // the same Field instance over and over (eg with
+  // setStringValue) does not allocate per document:
+  private transient StringTokenStream stringTokenStream;
+  private transient ReusableStringReader stringReader;
+
   protected float boost = 1.0f;
 
   protected Field(String name, FieldType type) {
@@ -436,27 +450,11 @@ public class Field implements IndexableField {
         throw new IllegalArgumentException("Non-Tokenized Fields must have a String value");
       }
 
-      return new TokenStream() {
-        CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
-        OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
-        boolean used;
-
-        @Override
-        public boolean incrementToken() throws IOException {
-          if (used) {
-            return false;
-          }
-          termAttribute.setEmpty().append(stringValue());
-          offsetAttribute.setOffset(0, stringValue().length());
-          used = true;
-          return true;
-        }
-
-        @Override
-        public void reset() throws IOException {
-          used = false;
-        }
-      };
+      if (stringTokenStream == null) {
+        stringTokenStream = new StringTokenStream();
+      }
+      stringTokenStream.setValue(stringValue());
+      return stringTokenStream;
     }
 
     if (tokenStream != null) {
@@ -464,13 +462,103 @@ public class Field implements IndexableField {
     } else if (readerValue() != null) {
       return analyzer.tokenStream(name(), readerValue());
     } else if (stringValue() != null) {
-      return analyzer.tokenStream(name(), new StringReader(stringValue()));
+      if (stringReader == null) {
+        stringReader = new ReusableStringReader();
+      }
+      stringReader.setValue(stringValue());
+      return analyzer.tokenStream(name(), stringReader);
     }
 
     throw new IllegalArgumentException("Field must have either TokenStream, String, Reader or Number value");
   }
 
-  
+
+  /** Single-token stream for non-tokenized String values;
+   *  reused by {@link #tokenStream} across documents. */
+  static final class StringTokenStream extends TokenStream {
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private boolean used = false;
+    private String value = null;
+
+    /** Sets the string value; the stream must be reset
+     *  before it is consumed again. */
+    void setValue(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean incrementToken() {
+      if (used) {
+        return false;
+      }
+      clearAttributes();
+      termAttribute.append(value);
+      offsetAttribute.setOffset(0, value.length());
+      used = true;
+      return true;
+    }
+
+    @Override
+    public void end() {
+      final int finalOffset = value.length();
+      offsetAttribute.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset() {
+      used = false;
+    }
+
+    @Override
+    public void close() {
+      value = null;
+    }
+  }
+
+  /** Reader over a String that can be re-initialized
+   *  instead of allocating a new {@link StringReader} for
+   *  every document. */
+  static final class ReusableStringReader extends Reader {
+    private int pos = 0, size = 0;
+    private String s = null;
+
+    void setValue(String s) {
+      this.s = s;
+      this.size = s.length();
+      this.pos = 0;
+    }
+
+    @Override
+    public int read() {
+      if (pos < size) {
+        return s.charAt(pos++);
+      } else {
+        s = null;
+        return -1;
+      }
+    }
+
+    @Override
+    public int read(char[] c, int off, int len) {
+      if (pos < size) {
+        len = Math.min(len, size-pos);
+        s.getChars(pos, pos+len, c, off);
+        pos += len;
+        return len;
+      } else {
+        s = null;
+        return -1;
+      }
+    }
+
+    @Override
+    public void close() {
+      pos = size; // this prevents NPE when reading after close!
+      s = null;
+    }
+  }
+
   //
   // Deprecated transition API below:
   //
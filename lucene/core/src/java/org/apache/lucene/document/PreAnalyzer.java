@@ -0,0 +1,188 @@
+package org.apache.lucene.document;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.PreAnalyzedTokenStream;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Runs analysis of documents ahead of {@link IndexWriter},
+ * on the threads of an {@link ExecutorService}, so that the
+ * indexing threads only invert already analyzed tokens.
+ * This lets analysis CPU (eg for heavy tokenizers) scale
+ * independently of the number of indexing threads.
+ *
+ * <p>Each indexed, tokenized {@link Field} with a String or
+ * Reader value is replaced in the returned document by an
+ * equivalent field whose token stream is a {@link
+ * PreAnalyzedTokenStream}; stored values are kept.  All
+ * other fields are passed through unchanged.  The analyzer
+ * should be the same as the one used by the {@link
+ * IndexWriter}, which still provides position increment and
+ * offset gaps between multi-valued fields.
+ *
+ * <p>Example, keeping up to 100 documents in flight:
+ * <pre class="prettyprint">
+ *   PreAnalyzer preAnalyzer = new PreAnalyzer(analyzer, executor);
+ *   preAnalyzer.addDocuments(writer, docs.iterator(), 100);
+ * </pre>
+ *
+ * <p>Note that a Reader-valued field is consumed by the
+ * analysis thread, and that source documents must not be
+ * modified until their pre-analysis completes.
+ *
+ * @lucene.experimental
+ */
+public class PreAnalyzer {
+
+  private final Analyzer analyzer;
+  private final ExecutorService executor;
+
+  /** Creates a PreAnalyzer running analysis on the
+   *  provided executor; if executor is null, analysis runs
+   *  in the calling thread. */
+  public PreAnalyzer(Analyzer analyzer, ExecutorService executor) {
+    if (analyzer == null) {
+      throw new IllegalArgumentException("analyzer cannot be null");
+    }
+    this.analyzer = analyzer;
+    this.executor = executor;
+  }
+
+  /** Analyzes the document in the calling thread and
+   *  returns a new document with pre-analyzed fields. */
+  public Document preAnalyze(Iterable<? extends IndexableField> doc) throws IOException {
+    final Document result = new Document();
+    for (IndexableField field : doc) {
+      result.add(preAnalyze(field));
+    }
+    return result;
+  }
+
+  private IndexableField preAnalyze(IndexableField indexableField) throws IOException {
+    if (!(indexableField instanceof Field)) {
+      return indexableField;
+    }
+    final Field field = (Field) indexableField;
+    final FieldType type = field.fieldType();
+    if (!type.indexed() || !type.tokenized() || type.numericType() != null ||
+        field.tokenStream != null) {
+      return field;
+    }
+
+    final Field result;
+    if (field.stringValue() != null) {
+      final TokenStream tokens = new PreAnalyzedTokenStream(field.tokenStream(analyzer));
+      if (type.stored()) {
+        result = new Field(field.name(), field.stringValue(), type);
+        result.setTokenStream(tokens);
+      } else {
+        result = new Field(field.name(), tokens, type);
+      }
+    } else if (field.readerValue() != null) {
+      result = new Field(field.name(), new PreAnalyzedTokenStream(field.tokenStream(analyzer)), type);
+    } else {
+      // eg binary stored value
+      return field;
+    }
+    result.setBoost(field.boost());
+    return result;
+  }
+
+  /** Submits the document for analysis and returns a
+   *  future for the pre-analyzed document.  Once the future
+   *  completes the document can be passed to {@link
+   *  IndexWriter#addDocument}. */
+  public Future<Document> submit(final Iterable<? extends IndexableField> doc) {
+    final Callable<Document> task = new Callable<Document>() {
+      public Document call() throws IOException {
+        return preAnalyze(doc);
+      }
+    };
+    if (executor == null) {
+      final FutureTask<Document> future = new FutureTask<Document>(task);
+      future.run();
+      return future;
+    } else {
+      return executor.submit(task);
+    }
+  }
+
+  /** Adds all documents to the writer, in order, analyzing
+   *  up to {@code maxPending} documents ahead of the
+   *  document being added.  If analysis of a document
+   *  fails, its exception is rethrown and the remaining
+   *  documents are not added. */
+  public void addDocuments(IndexWriter writer, Iterator<? extends Iterable<? extends IndexableField>> docs, int maxPending) throws IOException {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be >= 1 (got " + maxPending + ")");
+    }
+    final LinkedList<Future<Document>> pending = new LinkedList<Future<Document>>();
+    boolean success = false;
+    try {
+      while (true) {
+        while (pending.size() < maxPending && docs.hasNext()) {
+          pending.add(submit(docs.next()));
+        }
+        if (pending.isEmpty()) {
+          break;
+        }
+        writer.addDocument(get(pending.removeFirst()));
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        for (Future<Document> future : pending) {
+          future.cancel(false);
+        }
+      }
+    }
+  }
+
+  private static Document get(Future<Document> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+}
@@ -213,6 +213,7 @@ class BufferedDeletesStream {
         final ReadersAndLiveDocs rld = readerPool.get(info, true);
         final SegmentReader reader = rld.getReader(IOContext.READ);
         int delCount = 0;
+        int updateCount = 0;
         final boolean segAllDeletes;
         try {
           if (coalescedDeletes != null) {
@@ -224,6 +225,12 @@ class BufferedDeletesStream {
           // Don't delete by Term here; DocumentsWriterPerThread
           // already did that on flush:
           delCount += applyQueryDeletes(packet.queriesIterable(), rld, reader);
+          // The segment's own updates are older than the
+          // coalesced ones, so they must be applied first:
+          updateCount += applyNumericUpdates(packet.numericUpdatesIterable(), rld, reader);
+          if (coalescedDeletes != null) {
+            updateCount += applyNumericUpdates(coalescedDeletes.numericUpdatesIterable(), rld, reader);
+          }
           final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
           assert fullDelCount <= rld.info.docCount;
           segAllDeletes = fullDelCount == rld.info.docCount;
@@ -231,7 +238,7 @@ class BufferedDeletesStream {
           rld.release(reader);
           readerPool.release(rld);
         }
-        anyNewDeletes |= delCount > 0;
+        anyNewDeletes |= delCount > 0 || updateCount > 0;
 
         if (segAllDeletes) {
           if (allDeleted == null) {
@@ -241,7 +248,7 @@ class BufferedDeletesStream {
         }
 
         if (infoStream.isEnabled("BD")) {
-          infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " segDeletes=[" + packet + "]; coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
+          infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " segDeletes=[" + packet + "]; coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + " newUpdateCount=" + updateCount + (segAllDeletes ? " 100% deleted" : ""));
         }
 
         if (coalescedDeletes == null) {
@@ -266,10 +273,12 @@ class BufferedDeletesStream {
           final ReadersAndLiveDocs rld = readerPool.get(info, true);
           final SegmentReader reader = rld.getReader(IOContext.READ);
           int delCount = 0;
+          int updateCount = 0;
           final boolean segAllDeletes;
           try {
             delCount += applyTermDeletes(coalescedDeletes.termsIterable(), rld, reader);
             delCount += applyQueryDeletes(coalescedDeletes.queriesIterable(), rld, reader);
+            updateCount += applyNumericUpdates(coalescedDeletes.numericUpdatesIterable(), rld, reader);
             final int fullDelCount = rld.info.getDelCount() + rld.getPendingDeleteCount();
             assert fullDelCount <= rld.info.docCount;
             segAllDeletes = fullDelCount == rld.info.docCount;
@@ -277,7 +286,7 @@ class BufferedDeletesStream {
             rld.release(reader);
             readerPool.release(rld);
           }
-          anyNewDeletes |= delCount > 0;
+          anyNewDeletes |= delCount > 0 || updateCount > 0;
 
           if (segAllDeletes) {
             if (allDeleted == null) {
@@ -287,7 +296,7 @@ class BufferedDeletesStream {
           }
 
           if (infoStream.isEnabled("BD")) {
-            infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + (segAllDeletes ? " 100% deleted" : ""));
+            infoStream.message("BD", "seg=" + info + " segGen=" + segGen + " coalesced deletes=[" + (coalescedDeletes == null ? "null" : coalescedDeletes) + "] newDelCount=" + delCount + " newUpdateCount=" + updateCount + (segAllDeletes ? " 100% deleted" : ""));
           }
         }
         info.setBufferedDeletesGen(nextGen);
@@ -469,6 +478,45 @@ class BufferedDeletesStream {
     return delCount;
   }
 
+  // Numeric DocValues updates by Term
+  private static long applyNumericUpdates(Iterable<NumericUpdate> updates, ReadersAndLiveDocs rld, SegmentReader reader) throws IOException {
+    long updateCount = 0;
+    final Fields fields = reader.fields();
+    if (fields == null) {
+      // This reader has no postings
+      return 0;
+    }
+    final FieldInfos fieldInfos = reader.getFieldInfos();
+    for (NumericUpdate update : updates) {
+      // Only fields this segment indexed as integer
+      // DocValues can be updated; others are skipped
+      final FieldInfo fieldInfo = fieldInfos.fieldInfo(update.field);
+      if (fieldInfo == null || !NumericUpdate.isUpdatable(fieldInfo.getDocValuesType())) {
+        continue;
+      }
+      final Terms terms = fields.terms(update.term.field());
+      if (terms == null) {
+        continue;
+      }
+      final TermsEnum termsEnum = terms.iterator(null);
+      if (termsEnum.seekExact(update.term.bytes(), false)) {
+        final DocsEnum docsEnum = termsEnum.docs(rld.getLiveDocs(), null, false);
+        if (docsEnum != null) {
+          while (true) {
+            final int docID = docsEnum.nextDoc();
+            if (docID == DocIdSetIterator.NO_MORE_DOCS || docID >= update.docIDUpto) {
+              break;
+            }
+            rld.updateNumericDocValue(update.field, docID, update.value);
+            updateCount++;
+          }
+        }
+      }
+    }
+
+    return updateCount;
+  }
+
   // used only by assert
   private boolean checkDeleteTerm(Term term) {
     if (term != null) {
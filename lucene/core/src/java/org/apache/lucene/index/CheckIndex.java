@@ -17,15 +17,22 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.codecs.BlockTreeTermsReader;
 import org.apache.lucene.codecs.Codec;
@@ -36,15 +43,21 @@ import org.apache.lucene.index.DocValues.Source;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
 import org.apache.lucene.util.CommandLineUtil;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * Basic tool and API to check the health of an index and
@@ -131,6 +144,11 @@ public class CheckIndex {
     /** Holds the userData of the last commit in the index */
     public Map<String, String> userData;
 
+    /** How many segments were skipped because their
+     *  checksums matched a previous full verification.
+     *  @see CheckIndex#setVerifiedSegments */
+    public int numPreviouslyVerified;
+
     /** Holds the status of each segment in the index.
      *  See {@link #segmentInfos}.
      *
@@ -210,6 +228,12 @@ public class CheckIndex {
       
       /** Status for testing of DocValues (null if DocValues could not be tested). */
       public DocValuesStatus docValuesStatus;
+
+      /** True if the checksums of all files of this segment
+       *  matched those recorded by a previous full
+       *  verification, in which case it was not verified
+       *  again. */
+      public boolean previouslyVerified;
     }
 
     /**
@@ -302,6 +326,139 @@ public class CheckIndex {
     return crossCheckTermVectors;
   }
 
+  private ExecutorService executor;
+
+  /** If non-null, segments are checked concurrently using
+   *  this executor.  Messages for each segment are buffered
+   *  and printed in segment order once all segments are
+   *  checked.  Note that each concurrently checked segment
+   *  holds an open reader. */
+  public void setExecutorService(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  private boolean checksumsOnly;
+
+  /** If true, segments are only verified by reading every
+   *  byte of their files and comparing the CRC32 checksums
+   *  against those recorded in the {@link
+   *  #setVerifiedSegments verified segments}, if any.  This
+   *  detects unreadable files and silent corruption of
+   *  previously verified segments, but does not decode the
+   *  index, so it is much faster than a full check. */
+  public void setChecksumsOnly(boolean v) {
+    checksumsOnly = v;
+  }
+
+  /** See {@link #setChecksumsOnly}. */
+  public boolean getChecksumsOnly() {
+    return checksumsOnly;
+  }
+
+  private VerifiedSegments verifiedSegments;
+
+  /** If non-null, the checksums of every file of each
+   *  segment are computed and compared with those recorded
+   *  here by a previous run: segments whose files all match
+   *  are not fully verified again, a mismatch marks the
+   *  segment as broken, and segments that pass the full
+   *  check are recorded.  Save the record with {@link
+   *  VerifiedSegments#write} after the check so repeated
+   *  runs only fully check new segments. */
+  public void setVerifiedSegments(VerifiedSegments verifiedSegments) {
+    this.verifiedSegments = verifiedSegments;
+  }
+
+  /**
+   * Record of segments that passed a full check, with the
+   * CRC32 checksum of each of their files.
+   *
+   * @see CheckIndex#setVerifiedSegments
+   * @lucene.experimental
+   */
+  public static final class VerifiedSegments {
+    final static String CODEC_NAME = "CheckIndexVerified";
+    final static int VERSION_START = 0;
+    final static int VERSION_CURRENT = VERSION_START;
+
+    private final Map<String,Map<String,Long>> segments = new HashMap<String,Map<String,Long>>();
+
+    /** Returns the recorded checksums by file name for the
+     *  segment, or null if it was not verified. */
+    public synchronized Map<String,Long> get(String segmentName) {
+      return segments.get(segmentName);
+    }
+
+    synchronized void put(String segmentName, Map<String,Long> checksums) {
+      segments.put(segmentName, checksums);
+    }
+
+    synchronized void retainAll(Collection<String> segmentNames) {
+      segments.keySet().retainAll(segmentNames);
+    }
+
+    /** Number of recorded segments. */
+    public synchronized int size() {
+      return segments.size();
+    }
+
+    /** Reads a record previously written with {@link
+     *  #write}; returns an empty record if the file does not
+     *  exist. */
+    public static VerifiedSegments read(Directory dir, String fileName) throws IOException {
+      final VerifiedSegments verified = new VerifiedSegments();
+      if (!dir.fileExists(fileName)) {
+        return verified;
+      }
+      final IndexInput in = dir.openInput(fileName, IOContext.READONCE);
+      try {
+        CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+        final int numSegments = in.readVInt();
+        for (int i = 0; i < numSegments; i++) {
+          final String segmentName = in.readString();
+          final int numFiles = in.readVInt();
+          final Map<String,Long> checksums = new HashMap<String,Long>();
+          for (int j = 0; j < numFiles; j++) {
+            checksums.put(in.readString(), in.readLong());
+          }
+          verified.segments.put(segmentName, checksums);
+        }
+      } finally {
+        in.close();
+      }
+      return verified;
+    }
+
+    /** Writes this record, overwriting the file if it
+     *  exists. */
+    public synchronized void write(Directory dir, String fileName) throws IOException {
+      if (dir.fileExists(fileName)) {
+        dir.deleteFile(fileName);
+      }
+      final IndexOutput out = dir.createOutput(fileName, IOContext.DEFAULT);
+      boolean success = false;
+      try {
+        CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+        out.writeVInt(segments.size());
+        for (Map.Entry<String,Map<String,Long>> segment : segments.entrySet()) {
+          out.writeString(segment.getKey());
+          out.writeVInt(segment.getValue().size());
+          for (Map.Entry<String,Long> file : segment.getValue().entrySet()) {
+            out.writeString(file.getKey());
+            out.writeLong(file.getValue());
+          }
+        }
+        success = true;
+      } finally {
+        if (success) {
+          IOUtils.close(out);
+        } else {
+          IOUtils.closeWhileHandlingException(out);
+        }
+      }
+    }
+  }
+
   private boolean verbose;
 
   /** Set infoStream where messages should go.  If null, no
@@ -421,6 +578,8 @@ public class CheckIndex {
       sFormat = "FORMAT_3_1 [Lucene 3.1+]";
     } else if (format == SegmentInfos.FORMAT_4_0) {
       sFormat = "FORMAT_4_0 [Lucene 4.0]";
+    } else if (format == SegmentInfos.FORMAT_DOCVALUES_UPDATES) {
+      sFormat = "FORMAT_DOCVALUES_UPDATES [Lucene 4.0]";
     } else if (format == SegmentInfos.FORMAT_CURRENT) {
       throw new RuntimeException("BUG: You should update this tool!");
     } else if (format < SegmentInfos.FORMAT_CURRENT) {
@@ -479,6 +638,8 @@ public class CheckIndex {
     result.newSegments.clear();
     result.maxSegmentName = -1;
 
+    final List<SegmentInfo> toCheck = new ArrayList<SegmentInfo>();
+    final List<Integer> toCheckOrds = new ArrayList<Integer>();
     for(int i=0;i<numSegments;i++) {
       final SegmentInfo info = sis.info(i);
       int segmentName = Integer.parseInt(info.name.substring(1), Character.MAX_RADIX);
@@ -487,53 +648,197 @@ public class CheckIndex {
       }
       if (onlySegments != null && !onlySegments.contains(info.name))
         continue;
-      Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
-      result.segmentInfos.add(segInfoStat);
-      msg("  " + (1+i) + " of " + numSegments + ": name=" + info.name + " docCount=" + info.docCount);
-      segInfoStat.name = info.name;
-      segInfoStat.docCount = info.docCount;
-
-      int toLoseDocCount = info.docCount;
-
-      SegmentReader reader = null;
+      toCheck.add(info);
+      toCheckOrds.add(i);
+    }
 
-      try {
-        final Codec codec = info.getCodec();
-        msg("    codec=" + codec);
-        segInfoStat.codec = codec;
-        msg("    compound=" + info.getUseCompoundFile());
-        segInfoStat.compound = info.getUseCompoundFile();
-        msg("    hasProx=" + info.getHasProx());
-        segInfoStat.hasProx = info.getHasProx();
-        msg("    numFiles=" + info.files().size());
-        segInfoStat.numFiles = info.files().size();
-        segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
-        msg("    size (MB)=" + nf.format(segInfoStat.sizeMB));
-        Map<String,String> diagnostics = info.getDiagnostics();
-        segInfoStat.diagnostics = diagnostics;
-        if (diagnostics.size() > 0) {
-          msg("    diagnostics = " + diagnostics);
+    final List<SegmentResult> segResults = new ArrayList<SegmentResult>();
+    if (executor == null) {
+      for(int j=0;j<toCheck.size();j++) {
+        segResults.add(checkSegment(toCheck.get(j), toCheckOrds.get(j), numSegments, nf));
+      }
+    } else {
+      // Each segment is checked by its own CheckIndex
+      // instance that buffers its messages, so the output
+      // is printed in segment order:
+      final List<Future<SegmentResult>> futures = new ArrayList<Future<SegmentResult>>();
+      for(int j=0;j<toCheck.size();j++) {
+        final SegmentInfo info = toCheck.get(j);
+        final int ord = toCheckOrds.get(j);
+        futures.add(executor.submit(new Callable<SegmentResult>() {
+          public SegmentResult call() throws IOException {
+            final CheckIndex segChecker = new CheckIndex(dir);
+            segChecker.crossCheckTermVectors = crossCheckTermVectors;
+            segChecker.checksumsOnly = checksumsOnly;
+            segChecker.verifiedSegments = verifiedSegments;
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (infoStream != null) {
+              segChecker.setInfoStream(new PrintStream(bytes), verbose);
+            }
+            final SegmentResult segResult = segChecker.checkSegment(info, ord, numSegments, NumberFormat.getInstance());
+            if (infoStream != null) {
+              segChecker.infoStream.flush();
+              segResult.output = bytes.toString();
+            }
+            return segResult;
+          }
+        }));
+      }
+      for (Future<SegmentResult> future : futures) {
+        try {
+          segResults.add(future.get());
+        } catch (InterruptedException ie) {
+          throw new ThreadInterruptedException(ie);
+        } catch (ExecutionException ee) {
+          final Throwable cause = ee.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          } else {
+            throw new RuntimeException(cause);
+          }
         }
+      }
+    }
 
-        final int docStoreOffset = info.getDocStoreOffset();
-        if (docStoreOffset != -1) {
-          msg("    docStoreOffset=" + docStoreOffset);
-          segInfoStat.docStoreOffset = docStoreOffset;
-          msg("    docStoreSegment=" + info.getDocStoreSegment());
-          segInfoStat.docStoreSegment = info.getDocStoreSegment();
-          msg("    docStoreIsCompoundFile=" + info.getDocStoreIsCompoundFile());
-          segInfoStat.docStoreCompoundFile = info.getDocStoreIsCompoundFile();
+    for(int j=0;j<toCheck.size();j++) {
+      final SegmentResult segResult = segResults.get(j);
+      if (segResult.output != null) {
+        infoStream.print(segResult.output);
+      }
+      result.segmentInfos.add(segResult.status);
+      if (segResult.ok) {
+        // Keeper
+        result.newSegments.add((SegmentInfo) toCheck.get(j).clone());
+        if (segResult.status.previouslyVerified) {
+          result.numPreviouslyVerified++;
         }
+      } else {
+        result.totLoseDocCount += segResult.toLoseDocCount;
+        result.numBadSegments++;
+      }
+    }
 
-        if (info.hasDeletions()) {
-          msg("    no deletions");
-          segInfoStat.hasDeletions = false;
-        }
-        else{
-          msg("    has deletions [delGen=" + info.getDelGen() + "]");
-          segInfoStat.hasDeletions = true;
-          segInfoStat.deletionsGen = info.getDelGen();
+    if (verifiedSegments != null && onlySegments == null) {
+      // Forget segments that are no longer in the index:
+      final List<String> names = new ArrayList<String>();
+      for (SegmentInfo info : sis) {
+        names.add(info.name);
+      }
+      verifiedSegments.retainAll(names);
+    }
+
+    if (0 == result.numBadSegments) {
+      result.clean = true;
+    } else
+      msg("WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+
+    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
+      result.clean = false;
+      result.newSegments.counter = result.maxSegmentName + 1; 
+      msg("ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
+    }
+    
+    if (result.clean) {
+      msg("No problems were detected with this index.\n");
+    }
+
+    return result;
+  }
+
+  /** Result of checking a single segment. */
+  private static final class SegmentResult {
+    final Status.SegmentInfoStatus status;
+    final boolean ok;
+    final int toLoseDocCount;
+    String output;
+
+    SegmentResult(Status.SegmentInfoStatus status, boolean ok, int toLoseDocCount) {
+      this.status = status;
+      this.ok = ok;
+      this.toLoseDocCount = toLoseDocCount;
+    }
+  }
+
+  /** Checks a single segment; messages go to this
+   *  instance's infoStream. */
+  private SegmentResult checkSegment(SegmentInfo info, int i, int numSegments, NumberFormat nf) throws IOException {
+    Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+    msg("  " + (1+i) + " of " + numSegments + ": name=" + info.name + " docCount=" + info.docCount);
+    segInfoStat.name = info.name;
+    segInfoStat.docCount = info.docCount;
+
+    int toLoseDocCount = info.docCount;
+
+    SegmentReader reader = null;
+
+    try {
+      final Codec codec = info.getCodec();
+      msg("    codec=" + codec);
+      segInfoStat.codec = codec;
+      msg("    compound=" + info.getUseCompoundFile());
+      segInfoStat.compound = info.getUseCompoundFile();
+      msg("    hasProx=" + info.getHasProx());
+      segInfoStat.hasProx = info.getHasProx();
+      msg("    numFiles=" + info.files().size());
+      segInfoStat.numFiles = info.files().size();
+      segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
+      msg("    size (MB)=" + nf.format(segInfoStat.sizeMB));
+      Map<String,String> diagnostics = info.getDiagnostics();
+      segInfoStat.diagnostics = diagnostics;
+      if (diagnostics.size() > 0) {
+        msg("    diagnostics = " + diagnostics);
+      }
+
+      final int docStoreOffset = info.getDocStoreOffset();
+      if (docStoreOffset != -1) {
+        msg("    docStoreOffset=" + docStoreOffset);
+        segInfoStat.docStoreOffset = docStoreOffset;
+        msg("    docStoreSegment=" + info.getDocStoreSegment());
+        segInfoStat.docStoreSegment = info.getDocStoreSegment();
+        msg("    docStoreIsCompoundFile=" + info.getDocStoreIsCompoundFile());
+        segInfoStat.docStoreCompoundFile = info.getDocStoreIsCompoundFile();
+      }
+
+      if (info.hasDeletions()) {
+        msg("    no deletions");
+        segInfoStat.hasDeletions = false;
+      }
+      else{
+        msg("    has deletions [delGen=" + info.getDelGen() + "]");
+        segInfoStat.hasDeletions = true;
+        segInfoStat.deletionsGen = info.getDelGen();
+      }
+      if (info.hasDocValuesUpdates()) {
+        msg("    has docvalues updates [gen=" + info.getDocValuesUpdatesGen() + "]");
+      }
+
+      Map<String,Long> checksums = null;
+      boolean previouslyVerified = false;
+      if (checksumsOnly || verifiedSegments != null) {
+        if (infoStream != null)
+          infoStream.print("    test: checksums...........");
+        checksums = checksumFiles(info);
+        final Map<String,Long> expected = verifiedSegments == null ? null : verifiedSegments.get(info.name);
+        if (expected != null) {
+          for (Map.Entry<String,Long> ent : checksums.entrySet()) {
+            final Long expectedChecksum = expected.get(ent.getKey());
+            if (expectedChecksum != null && expectedChecksum.longValue() != ent.getValue().longValue()) {
+              throw new RuntimeException("checksum mismatch for file \"" + ent.getKey() + "\": expected=" + expectedChecksum + " actual=" + ent.getValue());
+            }
+          }
+          previouslyVerified = expected.keySet().equals(checksums.keySet());
         }
+        segInfoStat.previouslyVerified = previouslyVerified;
+        msg("OK [" + checksums.size() + " files" + (previouslyVerified ? "; previously verified" : "") + "]");
+      }
+
+      if (previouslyVerified || checksumsOnly) {
+        msg("    skipping full verification");
+      } else {
         if (infoStream != null)
           infoStream.print("    test: open reader.........");
         reader = new SegmentReader(info, DirectoryReader.DEFAULT_TERMS_INDEX_DIVISOR, IOContext.DEFAULT);
@@ -566,7 +871,7 @@ public class CheckIndex {
               throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
             }
           }
-          
+        
           segInfoStat.numDeleted = info.docCount - numDocs;
           msg("OK [" + (segInfoStat.numDeleted) + " deleted docs]");
         } else {
@@ -594,7 +899,7 @@ public class CheckIndex {
         FieldInfos fieldInfos = reader.getFieldInfos();
         msg("OK [" + fieldInfos.size() + " fields]");
         segInfoStat.numFields = fieldInfos.size();
-        
+      
         // Test Field Norms
         segInfoStat.fieldNormStatus = testFieldNorms(fieldInfos, reader);
 
@@ -606,7 +911,7 @@ public class CheckIndex {
 
         // Test Term Vectors
         segInfoStat.termVectorStatus = testTermVectors(fieldInfos, info, reader, nf);
-        
+      
         segInfoStat.docValuesStatus = testDocValues(info, reader);
 
         // Rethrow the first exception we encountered
@@ -623,44 +928,50 @@ public class CheckIndex {
           throw new RuntimeException("DocValues test failed");
         }
 
-        msg("");
-
-      } catch (Throwable t) {
-        msg("FAILED");
-        String comment;
-        comment = "fixIndex() would remove reference to this segment";
-        msg("    WARNING: " + comment + "; full exception:");
-        if (infoStream != null)
-          t.printStackTrace(infoStream);
-        msg("");
-        result.totLoseDocCount += toLoseDocCount;
-        result.numBadSegments++;
-        continue;
-      } finally {
-        if (reader != null)
-          reader.close();
+        if (checksums != null) {
+          verifiedSegments.put(info.name, checksums);
+        }
       }
 
-      // Keeper
-      result.newSegments.add((SegmentInfo) info.clone());
+      msg("");
+
+    } catch (Throwable t) {
+      msg("FAILED");
+      String comment;
+      comment = "fixIndex() would remove reference to this segment";
+      msg("    WARNING: " + comment + "; full exception:");
+      if (infoStream != null)
+        t.printStackTrace(infoStream);
+      msg("");
+      return new SegmentResult(segInfoStat, false, toLoseDocCount);
+    } finally {
+      if (reader != null)
+        reader.close();
     }
 
-    if (0 == result.numBadSegments) {
-      result.clean = true;
-    } else
-      msg("WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
+    return new SegmentResult(segInfoStat, true, 0);
+  }
 
-    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
-      result.clean = false;
-      result.newSegments.counter = result.maxSegmentName + 1; 
-      msg("ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
-    }
-    
-    if (result.clean) {
-      msg("No problems were detected with this index.\n");
+  /** Reads every byte of every file of the segment,
+   *  returning the CRC32 checksum of each file. */
+  private Map<String,Long> checksumFiles(SegmentInfo info) throws IOException {
+    final Map<String,Long> checksums = new HashMap<String,Long>();
+    final byte[] buffer = new byte[16384];
+    for (String fileName : info.files()) {
+      final ChecksumIndexInput in = new ChecksumIndexInput(dir.openInput(fileName, IOContext.READONCE));
+      try {
+        long left = in.length();
+        while (left > 0) {
+          final int chunk = (int) Math.min(left, buffer.length);
+          in.readBytes(buffer, 0, chunk);
+          left -= chunk;
+        }
+        checksums.put(fileName, in.getChecksum());
+      } finally {
+        in.close();
+      }
     }
-
-    return result;
+    return checksums;
   }
 
   /**
@@ -1320,7 +1631,13 @@ public class CheckIndex {
         if (fieldInfo.hasDocValues()) {
           status.totalValueFields++;
           final DocValues docValues = reader.docValues(fieldInfo.name);
-          checkDocValues(docValues, fieldInfo.name, fieldInfo.getDocValuesType(), reader.maxDoc());
+          DocValues.Type expectedType = fieldInfo.getDocValuesType();
+          if (info.hasDocValuesUpdates() && docValues != null && docValues.getType() == DocValues.Type.VAR_INTS
+              && NumericUpdate.isUpdatable(expectedType)) {
+            // updated values that no longer fit are promoted:
+            expectedType = DocValues.Type.VAR_INTS;
+          }
+          checkDocValues(docValues, fieldInfo.name, expectedType, reader.maxDoc());
         } else {
           if (reader.docValues(fieldInfo.name) != null) {
             throw new RuntimeException("field: " + fieldInfo.name + " has docvalues but should omit them!");
@@ -1612,11 +1929,20 @@ public class CheckIndex {
     <p>
     Run it like this:
     <pre>
-    java -ea:org.apache.lucene... org.apache.lucene.index.CheckIndex pathToIndex [-fix] [-verbose] [-segment X] [-segment Y]
+    java -ea:org.apache.lucene... org.apache.lucene.index.CheckIndex pathToIndex [-fix] [-verbose] [-segment X] [-segment Y] [-threads N] [-verified file] [-checksumsOnly]
     </pre>
     <ul>
     <li><code>-fix</code>: actually write a new segments_N file, removing any problematic segments
 
+    <li><code>-threads N</code>: check up to N segments concurrently
+
+    <li><code>-verified file</code>: record the checksums of
+    fully verified segments in this file, and skip the full
+    check of segments whose checksums match a previous run
+
+    <li><code>-checksumsOnly</code>: only read every file and
+    verify the checksums recorded with <code>-verified</code>
+
     <li><code>-segment X</code>: only check the specified
     segment(s).  This can be specified multiple times,
     to check more than one segment, eg <code>-segment _2
@@ -1648,6 +1974,9 @@ public class CheckIndex {
     List<String> onlySegments = new ArrayList<String>();
     String indexPath = null;
     String dirImpl = null;
+    int numThreads = 1;
+    String verifiedPath = null;
+    boolean checksumsOnly = false;
     int i = 0;
     while(i < args.length) {
       String arg = args[i];
@@ -1664,6 +1993,22 @@ public class CheckIndex {
         codec = Codec.forName(args[i]);
       } else if (arg.equals("-verbose")) {
         verbose = true;
+      } else if ("-checksumsOnly".equals(arg)) {
+        checksumsOnly = true;
+      } else if ("-threads".equals(arg)) {
+        if (i == args.length-1) {
+          System.out.println("ERROR: missing value for -threads option");
+          System.exit(1);
+        }
+        i++;
+        numThreads = Integer.parseInt(args[i]);
+      } else if ("-verified".equals(arg)) {
+        if (i == args.length-1) {
+          System.out.println("ERROR: missing file for -verified option");
+          System.exit(1);
+        }
+        i++;
+        verifiedPath = args[i];
       } else if (arg.equals("-segment")) {
         if (i == args.length-1) {
           System.out.println("ERROR: missing name for -segment option");
@@ -1690,7 +2035,7 @@ public class CheckIndex {
 
     if (indexPath == null) {
       System.out.println("\nERROR: index path not specified");
-      System.out.println("\nUsage: java org.apache.lucene.index.CheckIndex pathToIndex [-fix] [-crossCheckTermVectors] [-segment X] [-segment Y] [-dir-impl X]\n" +
+      System.out.println("\nUsage: java org.apache.lucene.index.CheckIndex pathToIndex [-fix] [-crossCheckTermVectors] [-segment X] [-segment Y] [-dir-impl X] [-threads N] [-verified file] [-checksumsOnly]\n" +
                          "\n" +
                          "  -fix: actually write a new segments_N file, removing any problematic segments\n" +
                          "  -crossCheckTermVectors: verifies that term vectors match postings; THIS IS VERY SLOW!\n" +
@@ -1701,6 +2046,10 @@ public class CheckIndex {
                          "              You can't use this with the -fix option\n" +
                          "  -dir-impl X: use a specific " + FSDirectory.class.getSimpleName() + " implementation. " +
                          		"If no package is specified the " + FSDirectory.class.getPackage().getName() + " package will be used.\n" +
+                         "  -threads N: check up to N segments concurrently\n" +
+                         "  -verified file: record checksums of fully verified segments in this file, and only\n" +
+                         "                  verify the checksums of segments a previous run fully verified\n" +
+                         "  -checksumsOnly: only read every file and compare the checksums recorded with -verified\n" +
                          "**WARNING**: -fix should only be used on an emergency basis as it will cause\n" +
                          "documents (perhaps many) to be permanently removed from the index.  Always make\n" +
                          "a backup copy of your index before running this!  Do not run this tool on an index\n" +
@@ -1744,8 +2093,37 @@ public class CheckIndex {
     CheckIndex checker = new CheckIndex(dir);
     checker.setCrossCheckTermVectors(doCrossCheckTermVectors);
     checker.setInfoStream(System.out, verbose);
+    checker.setChecksumsOnly(checksumsOnly);
+
+    Directory verifiedDir = null;
+    String verifiedName = null;
+    VerifiedSegments verified = null;
+    if (verifiedPath != null) {
+      final File verifiedFile = new File(verifiedPath).getAbsoluteFile();
+      verifiedDir = FSDirectory.open(verifiedFile.getParentFile());
+      verifiedName = verifiedFile.getName();
+      verified = VerifiedSegments.read(verifiedDir, verifiedName);
+      checker.setVerifiedSegments(verified);
+    }
+
+    ExecutorService executor = null;
+    if (numThreads > 1) {
+      executor = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("CheckIndex"));
+      checker.setExecutorService(executor);
+    }
 
-    Status result = checker.checkIndex(onlySegments);
+    Status result;
+    try {
+      result = checker.checkIndex(onlySegments);
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+    if (verified != null && !checksumsOnly) {
+      verified.write(verifiedDir, verifiedName);
+      verifiedDir.close();
+    }
     if (result.missingSegments) {
       System.exit(1);
     }
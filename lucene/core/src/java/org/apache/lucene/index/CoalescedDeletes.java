@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.HashMap;
 import java.util.List;
@@ -30,11 +31,13 @@ import org.apache.lucene.index.BufferedDeletesStream.QueryAndLimit;
 class CoalescedDeletes {
   final Map<Query,Integer> queries = new HashMap<Query,Integer>();
   final List<Iterable<Term>> iterables = new ArrayList<Iterable<Term>>();
+  // oldest packet first, so updates are applied in order:
+  final List<NumericUpdate[]> numericUpdates = new ArrayList<NumericUpdate[]>();
 
   @Override
   public String toString() {
     // note: we could add/collect more debugging information
-    return "CoalescedDeletes(termSets=" + iterables.size() + ",queries=" + queries.size() + ")";
+    return "CoalescedDeletes(termSets=" + iterables.size() + ",queries=" + queries.size() + ",numericUpdateSets=" + numericUpdates.size() + ")";
   }
 
   void update(FrozenBufferedDeletes in) {
@@ -44,6 +47,19 @@ class CoalescedDeletes {
       final Query query = in.queries[queryIdx];
       queries.put(query, BufferedDeletes.MAX_INT);
     }
+
+    // packets are coalesced newest first
+    if (in.numericUpdates.length > 0) {
+      numericUpdates.add(0, in.numericUpdates);
+    }
+  }
+
+  public Iterable<NumericUpdate> numericUpdatesIterable() {
+    final List<NumericUpdate> updates = new ArrayList<NumericUpdate>();
+    for (NumericUpdate[] packetUpdates : numericUpdates) {
+      updates.addAll(Arrays.asList(packetUpdates));
+    }
+    return updates;
   }
 
  public Iterable<Term> termsIterable() {
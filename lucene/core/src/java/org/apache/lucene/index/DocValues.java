@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Comparator;
 
 import org.apache.lucene.codecs.DocValuesFormat;
@@ -355,6 +356,13 @@ public abstract class DocValues implements Closeable {
         return 0;
       }
 
+      @Override
+      public int get(int index, long[] arr, int off, int len) {
+        len = Math.min(len, size - index);
+        Arrays.fill(arr, off, off+len, 0);
+        return len;
+      }
+
       @Override
       public int getBitsPerValue() {
         return 0;
@@ -484,7 +484,7 @@ public class DocumentsWriterPerThread {
       flushedDocCount += flushState.numDocs;
 
       final BufferedDeletes segmentDeletes;
-      if (pendingDeletes.queries.isEmpty()) {
+      if (pendingDeletes.queries.isEmpty() && pendingDeletes.numericUpdates.isEmpty()) {
         pendingDeletes.clear();
         segmentDeletes = null;
       } else {
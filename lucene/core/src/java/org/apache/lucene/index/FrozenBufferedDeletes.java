@@ -17,6 +17,7 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -25,7 +26,8 @@ import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.index.BufferedDeletesStream.QueryAndLimit;
 
-/** Holds buffered deletes by term or query, once pushed.
+/** Holds buffered deletes by term or query, and numeric
+ *  DocValues updates, once pushed.
  *  Pushed deletes are write-once, so we shift to more
  *  memory efficient data structure to hold them.  We don't
  *  hold docIDs because these are applied on flush. */
@@ -43,6 +45,10 @@ class FrozenBufferedDeletes {
   // each
   final Query[] queries;
   final int[] queryLimits;
+
+  // Numeric DocValues updates, in the order they must be
+  // applied
+  final NumericUpdate[] numericUpdates;
   final int bytesUsed;
   final int numTermDeletes;
   private long gen = -1; // assigned by BufferedDeletesStream once pushed
@@ -53,7 +59,7 @@ class FrozenBufferedDeletes {
 
   public FrozenBufferedDeletes(BufferedDeletes deletes, boolean isSegmentPrivate) {
     this.isSegmentPrivate = isSegmentPrivate;
-    assert !isSegmentPrivate || deletes.terms.size() == 0 : "segment private package should only have del queries"; 
+    assert !isSegmentPrivate || deletes.terms.size() == 0 : "segment private package should only have del queries and numeric updates"; 
     Term termsArray[] = deletes.terms.keySet().toArray(new Term[deletes.terms.size()]);
     termCount = termsArray.length;
     ArrayUtil.mergeSort(termsArray);
@@ -72,7 +78,21 @@ class FrozenBufferedDeletes {
       upto++;
     }
 
-    bytesUsed = (int) terms.getSizeInBytes() + queries.length * BYTES_PER_DEL_QUERY;
+    int numericUpdateCount = 0;
+    int numericUpdateBytes = 0;
+    for (Map<Term,NumericUpdate> fieldUpdates : deletes.numericUpdates.values()) {
+      numericUpdateCount += fieldUpdates.size();
+    }
+    numericUpdates = new NumericUpdate[numericUpdateCount];
+    upto = 0;
+    for (Map<Term,NumericUpdate> fieldUpdates : deletes.numericUpdates.values()) {
+      for (NumericUpdate update : fieldUpdates.values()) {
+        numericUpdates[upto++] = update;
+        numericUpdateBytes += update.bytesUsed();
+      }
+    }
+
+    bytesUsed = (int) terms.getSizeInBytes() + queries.length * BYTES_PER_DEL_QUERY + numericUpdateBytes;
     numTermDeletes = deletes.numTermDeletes.get();
   }
   
@@ -123,6 +143,10 @@ class FrozenBufferedDeletes {
     };
   }
 
+  public Iterable<NumericUpdate> numericUpdatesIterable() {
+    return Arrays.asList(numericUpdates);
+  }
+
   @Override
   public String toString() {
     String s = "";
@@ -132,6 +156,9 @@ class FrozenBufferedDeletes {
     if (queries.length != 0) {
       s += " " + queries.length + " deleted queries";
     }
+    if (numericUpdates.length != 0) {
+      s += " " + numericUpdates.length + " numeric updates";
+    }
     if (bytesUsed != 0) {
       s += " bytesUsed=" + bytesUsed;
     }
@@ -140,6 +167,6 @@ class FrozenBufferedDeletes {
   }
   
   boolean any() {
-    return termCount > 0 || queries.length > 0;
+    return termCount > 0 || queries.length > 0 || numericUpdates.length > 0;
   }
 }
@@ -54,6 +54,10 @@ public final class IndexFileNames {
   /** Extension of compound file entries */
   public static final String COMPOUND_FILE_ENTRIES_EXTENSION = "cfe";
 
+  /** Extension of the per-generation file holding numeric DocValues
+   *  updated in place */
+  public static final String DOCVALUES_UPDATES_EXTENSION = "dvu";
+
   /**
    * This array contains all filename extensions used by
    * Lucene's index files, with one exception, namely the
@@ -65,6 +69,7 @@ public final class IndexFileNames {
     COMPOUND_FILE_EXTENSION,
     COMPOUND_FILE_ENTRIES_EXTENSION,
     GEN_EXTENSION,
+    DOCVALUES_UPDATES_EXTENSION,
   };
 
   /**
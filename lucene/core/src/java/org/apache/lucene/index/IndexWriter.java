@@ -430,11 +430,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       if (!poolReaders && rld.refCount() == 1) {
         // This is the last ref to this RLD, and we're not
         // pooling, so remove it:
-        if (rld.writeLiveDocs(directory)) {
-          // Make sure we only write del docs for a live segment:
+        if (rld.writeChanges(directory)) {
+          // Make sure we only write del docs and updates for a live segment:
           assert infoIsLive(rld.info);
           // Must checkpoint w/ deleter, because we just
-          // created created new _X_N.del file.
+          // created created new _X_N.del and/or _X_N.dvu file.
           deleter.checkpoint(segmentInfos, false);
         }
 
@@ -449,11 +449,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       final Iterator<Map.Entry<SegmentInfo,ReadersAndLiveDocs>> it = readerMap.entrySet().iterator();
       while(it.hasNext()) {
         final ReadersAndLiveDocs rld = it.next().getValue();
-        if (doSave && rld.writeLiveDocs(directory)) {
-          // Make sure we only write del docs for a live segment:
+        if (doSave && rld.writeChanges(directory)) {
+          // Make sure we only write del docs and updates for a live segment:
           assert infoIsLive(rld.info);
           // Must checkpoint w/ deleter, because we just
-          // created created new _X_N.del file.
+          // created created new _X_N.del and/or _X_N.dvu file.
           deleter.checkpoint(segmentInfos, false);
         }
 
@@ -473,8 +473,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     }
 
     /**
-     * Commit live docs changes for the segment readers for
-     * the provided infos.
+     * Commit live docs changes and docvalues updates for the
+     * segment readers for the provided infos.
      *
      * @throws IOException
      */
@@ -483,11 +483,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         final ReadersAndLiveDocs rld = readerMap.get(info);
         if (rld != null) {
           assert rld.info == info;
-          if (rld.writeLiveDocs(directory)) {
-            // Make sure we only write del docs for a live segment:
+          if (rld.writeChanges(directory)) {
+            // Make sure we only write del docs and updates for a live segment:
             assert infoIsLive(info);
             // Must checkpoint w/ deleter, because we just
-            // created created new _X_N.del file.
+            // created created new _X_N.del and/or _X_N.dvu file.
             deleter.checkpoint(segmentInfos, false);
           }
         }
@@ -1226,6 +1226,45 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     }
   }
 
+  /**
+   * Updates the value of the numeric {@link DocValues} field
+   * <code>field</code> to <code>value</code>, in place, for
+   * all document(s) containing <code>term</code>, without
+   * re-indexing them.  Like deletes, updates are buffered
+   * and become visible once they are applied, ie on
+   * commit or when a near real-time reader is opened.
+   * Updates are applied in the order they were made, so
+   * for a document matching several updated terms the last
+   * update wins.
+   *
+   * <p>Only fields indexed as integer DocValues ({@link
+   * DocValues.Type#VAR_INTS} or the <code>FIXED_INTS_*</code>
+   * types) can be updated; segments which do not have the
+   * field, or have it with a different type, are not
+   * changed.  If the new value does not fit into a fixed
+   * size type anymore, the field is promoted to {@link
+   * DocValues.Type#VAR_INTS} in that segment.</p>
+   *
+   * <p><b>NOTE</b>: if this method hits an OutOfMemoryError
+   * you should immediately close the writer.  See <a
+   * href="#OOME">above</a> for details.</p>
+   *
+   * @param term the term to identify the documents to be updated
+   * @param field the numeric DocValues field to update
+   * @param value the new value
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   * @lucene.experimental
+   */
+  public void updateNumericDocValue(Term term, String field, long value) throws CorruptIndexException, IOException {
+    ensureOpen();
+    try {
+      docWriter.updateNumericDocValue(term, field, value);
+    } catch (OutOfMemoryError oom) {
+      handleOOM(oom, "updateNumericDocValue");
+    }
+  }
+
   /**
    * Updates a document by first deleting the document(s)
    * containing <code>term</code> and then adding the new
@@ -2771,6 +2810,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       assert rld != null: "seg=" + info.name;
       currentLiveDocs = rld.getLiveDocs();
 
+      // Numeric DocValues updates are carried over first,
+      // based on the docIDs as of the merge start:
+      mergedDeletes = commitMergedUpdates(merge, i, rld, docUpto, mergedDeletes);
+
       if (prevLiveDocs != null) {
 
         // If we had deletions on starting the merge we must
@@ -2803,8 +2846,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
               if (!currentLiveDocs.get(j)) {
                 if (mergedDeletes == null) {
                   mergedDeletes = readerPool.get(merge.info, true);
-                  mergedDeletes.initWritableLiveDocs();
                 }
+                // may have been created for carried over updates:
+                mergedDeletes.initWritableLiveDocs();
                 mergedDeletes.delete(docUpto);
               }
               docUpto++;
@@ -2821,8 +2865,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
           if (!currentLiveDocs.get(j)) {
             if (mergedDeletes == null) {
               mergedDeletes = readerPool.get(merge.info, true);
-              mergedDeletes.initWritableLiveDocs();
             }
+            // may have been created for carried over updates:
+            mergedDeletes.initWritableLiveDocs();
             mergedDeletes.delete(docUpto);
           }
           docUpto++;
@@ -2839,7 +2884,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       if (mergedDeletes == null) {
         infoStream.message("IW", "no new deletes since merge started");
       } else {
-        infoStream.message("IW", mergedDeletes.getPendingDeleteCount() + " new deletes since merge started");
+        infoStream.message("IW", mergedDeletes.getPendingDeleteCount() + " new deletes and " + mergedDeletes.getPendingUpdateCount() + " new numeric updates since merge started");
       }
     }
 
@@ -2855,6 +2900,59 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     return mergedDeletes;
   }
 
+  /** Carries over the numeric DocValues updates applied to
+   *  a merged segment while the merge was running, mapping
+   *  them to the docIDs of the new segment. */
+  synchronized private ReadersAndLiveDocs commitMergedUpdates(MergePolicy.OneMerge merge, int segIndex, ReadersAndLiveDocs rld, int docBase, ReadersAndLiveDocs mergedDeletes) throws IOException {
+    final Map<String,UpdatedNumericDocValues> prevUpdates = merge.readerDocValuesUpdates.get(segIndex);
+    final Map<String,UpdatedNumericDocValues> currentUpdates = rld.getReadOnlyDocValuesUpdates();
+    // Updated values are never changed in place, so if the
+    // map is the same no updates were applied meanwhile:
+    if (currentUpdates == prevUpdates) {
+      return mergedDeletes;
+    }
+    final Bits prevLiveDocs = merge.readerLiveDocs.get(segIndex);
+    final SegmentReader prevReader = merge.readers.get(segIndex);
+    final int docCount = rld.info.docCount;
+    boolean readerLoaded = false;
+    for (Map.Entry<String,UpdatedNumericDocValues> ent : currentUpdates.entrySet()) {
+      final String field = ent.getKey();
+      if (prevUpdates.get(field) == ent.getValue()) {
+        continue;
+      }
+      // The values that were merged, either updated or as
+      // written by the codec:
+      final DocValues prevValues = prevReader.docValues(field);
+      final DocValues.Source prevSource = prevValues == null ? null : prevValues.getDirectSource();
+      final DocValues.Source currentSource = ent.getValue().getDirectSource();
+      // The merge may have promoted the field to a
+      // non-integer type, in which case the updates are lost:
+      final FieldInfo mergedFieldInfo = merge.info.getFieldInfos().fieldInfo(field);
+      if (mergedFieldInfo == null || !NumericUpdate.isUpdatable(mergedFieldInfo.getDocValuesType())) {
+        continue;
+      }
+      int docUpto = docBase;
+      for (int j = 0; j < docCount; j++) {
+        if (prevLiveDocs == null || prevLiveDocs.get(j)) {
+          final long value = currentSource.getInt(j);
+          if (prevSource == null || prevSource.getInt(j) != value) {
+            if (mergedDeletes == null) {
+              mergedDeletes = readerPool.get(merge.info, true);
+            }
+            if (!readerLoaded) {
+              // updates are applied on top of the merged values:
+              mergedDeletes.release(mergedDeletes.getReader(IOContext.READ));
+              readerLoaded = true;
+            }
+            mergedDeletes.updateNumericDocValue(field, docUpto, value);
+          }
+          docUpto++;
+        }
+      }
+    }
+    return mergedDeletes;
+  }
+
   synchronized private boolean commitMerge(MergePolicy.OneMerge merge) throws IOException {
 
     assert testPoint("startCommitMerge");
@@ -2884,7 +2982,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
     final ReadersAndLiveDocs mergedDeletes =  merge.info.docCount == 0 ? null : commitMergedDeletes(merge);
 
-    assert mergedDeletes == null || mergedDeletes.getPendingDeleteCount() != 0;
+    assert mergedDeletes == null || mergedDeletes.getPendingDeleteCount() != 0 || mergedDeletes.getPendingUpdateCount() != 0;
 
     // If the doc store we are using has been closed and
     // is in now compound format (but wasn't when we
@@ -3328,6 +3426,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
     merge.readers = new ArrayList<SegmentReader>();
     merge.readerLiveDocs = new ArrayList<Bits>();
+    merge.readerDocValuesUpdates = new ArrayList<Map<String,UpdatedNumericDocValues>>();
 
     // This is try/finally to make sure merger's readers are
     // closed:
@@ -3341,12 +3440,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         // Hold onto the "live" reader; we will use this to
         // commit merged deletes
         final ReadersAndLiveDocs rld = readerPool.get(info, true);
-        final SegmentReader reader = rld.getMergeReader(context);
+        SegmentReader reader = rld.getMergeReader(context);
         assert reader != null;
 
-        // Carefully pull the most recent live docs:
+        // Carefully pull the most recent live docs and
+        // docvalues updates:
         final Bits liveDocs;
         final int delCount;
+        final Map<String,UpdatedNumericDocValues> docValuesUpdates;
 
         synchronized(this) {
           // Must sync to ensure BufferedDeletesStream
@@ -3354,6 +3455,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
           // we pull a copy:
           liveDocs = rld.getReadOnlyLiveDocs();
           delCount = rld.getPendingDeleteCount() + info.getDelCount();
+          docValuesUpdates = rld.getReadOnlyDocValuesUpdates();
 
           assert rld.verifyDocCounts();
 
@@ -3367,7 +3469,16 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
             }
           }
         }
+        if (docValuesUpdates != reader.getDocValuesUpdates()) {
+          // The pooled reader has older (or no) updated
+          // values; merge from a reader sharing its core but
+          // with the current ones:
+          final SegmentReader updatedReader = new SegmentReader(info, reader.core, reader.getLiveDocs(), reader.numDocs(), docValuesUpdates);
+          rld.release(reader);
+          reader = updatedReader;
+        }
         merge.readerLiveDocs.add(liveDocs);
+        merge.readerDocValuesUpdates.add(docValuesUpdates);
         merge.readers.add(reader);
         assert delCount <= info.docCount: "delCount=" + delCount + " info.docCount=" + info.docCount + " rld.pendingDeleteCount=" + rld.getPendingDeleteCount() + " info.getDelCount()=" + info.getDelCount();
         if (delCount < info.docCount) {
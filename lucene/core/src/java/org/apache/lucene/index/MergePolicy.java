@@ -75,6 +75,7 @@ public abstract class MergePolicy implements java.io.Closeable {
     public long estimatedMergeBytes;       // used by IndexWriter
     List<SegmentReader> readers;        // used by IndexWriter
     List<Bits> readerLiveDocs;      // used by IndexWriter
+    List<Map<String,UpdatedNumericDocValues>> readerDocValuesUpdates; // used by IndexWriter
     public final List<SegmentInfo> segments;
     public final int totalDocCount;
     boolean aborted;
@@ -0,0 +1,74 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+/* An in-place update of a numeric DocValues field, for all
+ * documents containing a term.  Like deletes by term,
+ * updates are buffered in BufferedDeletes, frozen on flush
+ * and resolved to docIDs per segment by
+ * BufferedDeletesStream; the docIDUpto limit is only
+ * relevant for segment private packets. */
+
+final class NumericUpdate {
+
+  /* Rough logic: the update itself is OBJ_HEADER + 3*POINTER
+     + LONG + INT, held by a LinkedHashMap entry (OBJ_HEADER +
+     5*POINTER + INT) keyed by its Term (see BufferedDeletes). */
+  final static int BYTES_PER_NUMERIC_UPDATE = 10*RamUsageEstimator.NUM_BYTES_OBJECT_REF + 5*RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 5*RamUsageEstimator.NUM_BYTES_INT + RamUsageEstimator.NUM_BYTES_LONG;
+
+  final Term term;
+  final String field;
+  final long value;
+  final int docIDUpto;
+
+  NumericUpdate(Term term, String field, long value, int docIDUpto) {
+    this.term = term;
+    this.field = field;
+    this.value = value;
+    this.docIDUpto = docIDUpto;
+  }
+
+  int bytesUsed() {
+    return BYTES_PER_NUMERIC_UPDATE + term.bytes.length
+      + RamUsageEstimator.NUM_BYTES_CHAR * (term.field().length() + field.length());
+  }
+
+  /** Returns true if values of the given type can be updated in place. */
+  static boolean isUpdatable(DocValues.Type type) {
+    if (type == null) {
+      return false;
+    }
+    switch (type) {
+      case VAR_INTS:
+      case FIXED_INTS_8:
+      case FIXED_INTS_16:
+      case FIXED_INTS_32:
+      case FIXED_INTS_64:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "update " + term + ": " + field + "=" + value + " docIDUpto=" + docIDUpto;
+  }
+}
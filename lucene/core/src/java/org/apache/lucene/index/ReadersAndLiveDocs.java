@@ -18,6 +18,8 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.codecs.LiveDocsFormat;
@@ -27,8 +29,8 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.MutableBits;
 
 // Used by IndexWriter to hold open SegmentReaders (for
-// searching or merging), plus pending deletes,
-// for a given segment
+// searching or merging), plus pending deletes and numeric
+// DocValues updates, for a given segment
 class ReadersAndLiveDocs {
   // Not final because we replace (clone) when we need to
   // change it and it's been shared:
@@ -67,6 +69,21 @@ class ReadersAndLiveDocs {
   // external NRT reader:
   private boolean shared;
 
+  // Current values of all updated numeric DocValues fields,
+  // as of the last call to applyNumericUpdates; null until
+  // a reader was opened.  Never changed in place (a new map
+  // is created instead), so it can always be shared with
+  // NRT readers:
+  private Map<String,UpdatedNumericDocValues> docValuesUpdates;
+
+  // Updates by field and docID not yet applied to
+  // docValuesUpdates:
+  private final Map<String,Map<Integer,Long>> pendingNumericUpdates = new HashMap<String,Map<Integer,Long>>();
+
+  // How many updates we've done vs when we loaded or last
+  // wrote the updated values:
+  private int pendingUpdateCount;
+
   public ReadersAndLiveDocs(IndexWriter writer, SegmentInfo info) {
     this.info = info;
     this.writer = writer;
@@ -93,6 +110,10 @@ class ReadersAndLiveDocs {
     return pendingDeleteCount;
   }
 
+  public synchronized int getPendingUpdateCount() {
+    return pendingUpdateCount;
+  }
+
   // Call only from assert!
   public synchronized boolean verifyDocCounts() {
     int count;
@@ -121,6 +142,9 @@ class ReadersAndLiveDocs {
       if (liveDocs == null) {
         liveDocs = reader.getLiveDocs();
       }
+      if (docValuesUpdates == null) {
+        docValuesUpdates = reader.getDocValuesUpdates();
+      }
       //System.out.println("ADD seg=" + rld.info + " isMerge=" + isMerge + " " + readerMap.size() + " in pool");
       //System.out.println(Thread.currentThread().getName() + ": getReader seg=" + info.name);
     }
@@ -153,6 +177,9 @@ class ReadersAndLiveDocs {
         if (liveDocs == null) {
           liveDocs = mergeReader.getLiveDocs();
         }
+        if (docValuesUpdates == null) {
+          docValuesUpdates = mergeReader.getDocValuesUpdates();
+        }
       }
     }
 
@@ -180,6 +207,60 @@ class ReadersAndLiveDocs {
     return didDelete;
   }
 
+  public synchronized void updateNumericDocValue(String field, int docID, long value) {
+    assert Thread.holdsLock(writer);
+    assert docValuesUpdates != null;
+    assert docID >= 0 && docID < info.docCount : "out of bounds: docid=" + docID + " seg=" + info.name + " docCount=" + info.docCount;
+    Map<Integer,Long> fieldUpdates = pendingNumericUpdates.get(field);
+    if (fieldUpdates == null) {
+      fieldUpdates = new HashMap<Integer,Long>();
+      pendingNumericUpdates.put(field, fieldUpdates);
+    }
+    fieldUpdates.put(docID, value);
+    pendingUpdateCount++;
+  }
+
+  // Materializes the pending updates into new per-field
+  // values, on top of the previously updated values or
+  // else the codec's values:
+  private void applyNumericUpdates() throws IOException {
+    if (pendingNumericUpdates.isEmpty()) {
+      return;
+    }
+    final SegmentReader baseReader = reader != null ? reader : mergeReader;
+    assert baseReader != null;
+    final Map<String,UpdatedNumericDocValues> newUpdates = new HashMap<String,UpdatedNumericDocValues>(docValuesUpdates);
+    for (Map.Entry<String,Map<Integer,Long>> ent : pendingNumericUpdates.entrySet()) {
+      final String field = ent.getKey();
+      final long[] values = new long[info.docCount];
+      DocValues current = newUpdates.get(field);
+      if (current == null) {
+        current = baseReader.docValues(field);
+      }
+      if (current != null) {
+        final DocValues.Source source = current.getDirectSource();
+        for (int docID = 0; docID < values.length; docID++) {
+          values[docID] = source.getInt(docID);
+        }
+      }
+      for (Map.Entry<Integer,Long> update : ent.getValue().entrySet()) {
+        values[update.getKey()] = update.getValue();
+      }
+      final DocValues.Type type = baseReader.getFieldInfos().fieldInfo(field).getDocValuesType();
+      newUpdates.put(field, UpdatedNumericDocValues.create(type, values));
+    }
+    pendingNumericUpdates.clear();
+    docValuesUpdates = newUpdates;
+  }
+
+  // Returns the current updated values, with all pending
+  // updates applied; the returned map must not be changed
+  public synchronized Map<String,UpdatedNumericDocValues> getReadOnlyDocValuesUpdates() throws IOException {
+    assert Thread.holdsLock(writer);
+    applyNumericUpdates();
+    return docValuesUpdates;
+  }
+
   // NOTE: removes callers ref
   public synchronized void dropReaders() throws IOException {
     if (reader != null) {
@@ -206,8 +287,9 @@ class ReadersAndLiveDocs {
       assert reader != null;
     }
     shared = true;
-    if (liveDocs != null) {
-      return new SegmentReader(reader.getSegmentInfo(), reader.core, liveDocs, info.docCount - info.getDelCount() - pendingDeleteCount);
+    applyNumericUpdates();
+    if (liveDocs != null || docValuesUpdates != reader.getDocValuesUpdates()) {
+      return new SegmentReader(reader.getSegmentInfo(), reader.core, liveDocs, info.docCount - info.getDelCount() - pendingDeleteCount, docValuesUpdates);
     } else {
       assert reader.getLiveDocs() == liveDocs;
       reader.incRef();
@@ -259,8 +341,11 @@ class ReadersAndLiveDocs {
     // accumulated on those sub-readers while the merge
     // is running, by now we have carried forward those
     // deletes onto the newly merged segment, so we can
-    // discard them on the sub-readers:
+    // discard them on the sub-readers (the same holds
+    // for numeric DocValues updates):
     pendingDeleteCount = 0;
+    pendingNumericUpdates.clear();
+    pendingUpdateCount = 0;
   }
 
   // Commit live docs to the directory (writes new
@@ -296,8 +381,45 @@ class ReadersAndLiveDocs {
     }
   }
 
+  // Commit updated docvalues to the directory (writes new
+  // _X_N.dvu files); returns true if it wrote the file and
+  // false if there were no new updates to write:
+  public synchronized boolean writeDocValuesUpdates(Directory dir) throws IOException {
+    if (pendingUpdateCount != 0) {
+      applyNumericUpdates();
+
+      // Save in case we need to rollback on failure:
+      final SegmentInfo sav = (SegmentInfo) info.clone();
+      info.advanceDocValuesUpdatesGen();
+
+      // Not live until segments file is written, see
+      // writeLiveDocs:
+      boolean success = false;
+      try {
+        UpdatedNumericDocValues.write(dir, info, docValuesUpdates, IOContext.DEFAULT);
+        success = true;
+      } finally {
+        if (!success) {
+          info.reset(sav);
+        }
+      }
+      pendingUpdateCount = 0;
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  // Writes both the live docs and the docvalues updates;
+  // returns true if any file was written
+  public synchronized boolean writeChanges(Directory dir) throws IOException {
+    final boolean wroteLiveDocs = writeLiveDocs(dir);
+    final boolean wroteUpdates = writeDocValuesUpdates(dir);
+    return wroteLiveDocs || wroteUpdates;
+  }
+
   @Override
   public String toString() {
-    return "ReadersAndLiveDocs(seg=" + info + " pendingDeleteCount=" + pendingDeleteCount + " shared=" + shared + ")";
+    return "ReadersAndLiveDocs(seg=" + info + " pendingDeleteCount=" + pendingDeleteCount + " pendingUpdateCount=" + pendingUpdateCount + " shared=" + shared + ")";
   }
 }
@@ -60,6 +60,13 @@ public final class SegmentInfo implements Cloneable {
    */
   private long delGen;
 
+  /*
+   * Current generation of the numeric DocValues updates file:
+   * - NO if no DocValues were updated in place
+   * - YES or higher if the updated values are at generation N
+   */
+  private long docValuesUpdatesGen = NO;
+
   /*
    * Current generation of each field's norm file. If this array is null,
    * means no separate norms. If this array is not null, its values mean:
@@ -137,6 +144,7 @@ public final class SegmentInfo implements Cloneable {
     docCount = src.docCount;
     dir = src.dir;
     delGen = src.delGen;
+    docValuesUpdatesGen = src.docValuesUpdatesGen;
     docStoreOffset = src.docStoreOffset;
     docStoreSegment = src.docStoreSegment;
     docStoreIsCompoundFile = src.docStoreIsCompoundFile;
@@ -251,6 +259,37 @@ public final class SegmentInfo implements Cloneable {
     clearFilesCache();
   }
 
+  /** Returns true if numeric DocValues of this segment were
+   *  updated in place (see {@link IndexWriter#updateNumericDocValue}). */
+  public boolean hasDocValuesUpdates() {
+    return docValuesUpdatesGen != NO;
+  }
+
+  void advanceDocValuesUpdatesGen() {
+    if (docValuesUpdatesGen == NO) {
+      docValuesUpdatesGen = YES;
+    } else {
+      docValuesUpdatesGen++;
+    }
+    clearFilesCache();
+  }
+
+  /** @lucene.internal */
+  public long getDocValuesUpdatesGen() {
+    return docValuesUpdatesGen;
+  }
+
+  /**
+   * Sets the generation of the numeric DocValues updates file.
+   * <p>Note: this is public only to allow access from
+   * the codecs package.</p>
+   * @lucene.internal
+   */
+  public void setDocValuesUpdatesGen(long docValuesUpdatesGen) {
+    this.docValuesUpdatesGen = docValuesUpdatesGen;
+    clearFilesCache();
+  }
+
   @Override
   public Object clone() {
     final SegmentInfo si = new SegmentInfo(name, docCount, dir, isCompoundFile, codec,
@@ -259,6 +298,7 @@ public final class SegmentInfo implements Cloneable {
     si.docStoreSegment = docStoreSegment;
     si.docStoreIsCompoundFile = docStoreIsCompoundFile;
     si.delGen = delGen;
+    si.docValuesUpdatesGen = docValuesUpdatesGen;
     si.delCount = delCount;
     si.diagnostics = new HashMap<String, String>(diagnostics);
     if (normGen != null) {
@@ -422,6 +462,12 @@ public final class SegmentInfo implements Cloneable {
 
     codec.files(this, fileSet);
 
+    if (hasDocValuesUpdates()) {
+      // like the deletes, the updated values are never stored in the
+      // compound file:
+      fileSet.add(IndexFileNames.fileNameFromGeneration(name, IndexFileNames.DOCVALUES_UPDATES_EXTENSION, docValuesUpdatesGen));
+    }
+
     files = new ArrayList<String>(fileSet);
 
     return files;
@@ -82,10 +82,14 @@ public final class SegmentInfos implements Cloneable, Iterable<SegmentInfo> {
    *  in the new flex format */
   public static final int FORMAT_4_0 = -12;
 
+  /** Each segment records the generation of its in-place
+   *  numeric DocValues updates */
+  public static final int FORMAT_DOCVALUES_UPDATES = -13;
+
   /** This must always point to the most recent file format.
    * whenever you add a new format, make it 1 smaller (negative version logic)! */
   // TODO: move this, as its currently part of required preamble
-  public static final int FORMAT_CURRENT = FORMAT_4_0;
+  public static final int FORMAT_CURRENT = FORMAT_DOCVALUES_UPDATES;
   
   /** This must always point to the first supported file format. */
   public static final int FORMAT_MINIMUM = FORMAT_DIAGNOSTICS;
@@ -18,6 +18,8 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.codecs.PerDocProducer;
@@ -46,6 +48,10 @@ public final class SegmentReader extends AtomicReader {
 
   final SegmentCoreReaders core;
 
+  // Numeric DocValues fields whose values were updated in
+  // place; these take precedence over the codec's values:
+  private final Map<String,UpdatedNumericDocValues> docValuesUpdates;
+
   /**
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
@@ -63,6 +69,7 @@ public final class SegmentReader extends AtomicReader {
         liveDocs = null;
       }
       numDocs = si.docCount - si.getDelCount();
+      docValuesUpdates = readDocValuesUpdates(si, new IOContext(IOContext.READ, true));
       success = true;
     } finally {
       // With lock-less commits, it's entirely possible (and
@@ -78,24 +85,44 @@ public final class SegmentReader extends AtomicReader {
 
   // Create new SegmentReader sharing core from a previous
   // SegmentReader and loading new live docs from a new
-  // deletes file.  Used by openIfChanged.
+  // deletes file and/or new docvalues updates.  Used by
+  // openIfChanged.
   SegmentReader(SegmentInfo si, SegmentCoreReaders core, IOContext context) throws IOException {
-    this(si, core, si.getCodec().liveDocsFormat().readLiveDocs(si.dir, si, context), si.docCount - si.getDelCount());
+    this(si, core,
+         si.hasDeletions() ? si.getCodec().liveDocsFormat().readLiveDocs(si.dir, si, context) : null,
+         si.docCount - si.getDelCount(),
+         readDocValuesUpdates(si, context));
   }
 
   // Create new SegmentReader sharing core from a previous
   // SegmentReader and using the provided in-memory
-  // liveDocs.  Used by IndexWriter to provide a new NRT
-  // reader:
-  SegmentReader(SegmentInfo si, SegmentCoreReaders core, Bits liveDocs, int numDocs) throws IOException {
+  // liveDocs and docvalues updates.  Used by IndexWriter
+  // to provide a new NRT reader:
+  SegmentReader(SegmentInfo si, SegmentCoreReaders core, Bits liveDocs, int numDocs, Map<String,UpdatedNumericDocValues> docValuesUpdates) throws IOException {
     this.si = si;
     this.core = core;
     core.incRef();
 
-    assert liveDocs != null;
+    assert liveDocs != null || !docValuesUpdates.isEmpty();
     this.liveDocs = liveDocs;
 
     this.numDocs = numDocs;
+    this.docValuesUpdates = docValuesUpdates;
+  }
+
+  private static Map<String,UpdatedNumericDocValues> readDocValuesUpdates(SegmentInfo si, IOContext context) throws IOException {
+    if (si.hasDocValuesUpdates()) {
+      // NOTE: like the deletes, updates are stored using
+      // the regular directory, not cfs
+      return UpdatedNumericDocValues.read(si.dir, si, context);
+    } else {
+      return Collections.emptyMap();
+    }
+  }
+
+  // Updated docvalues of this reader, used by IndexWriter
+  Map<String,UpdatedNumericDocValues> getDocValuesUpdates() {
+    return docValuesUpdates;
   }
 
   @Override
@@ -191,8 +218,9 @@ public final class SegmentReader extends AtomicReader {
   
   /**
    * Return the SegmentInfo of the segment this reader is reading.
+   * @lucene.internal
    */
-  SegmentInfo getSegmentInfo() {
+  public SegmentInfo getSegmentInfo() {
     return si;
   }
 
@@ -224,6 +252,10 @@ public final class SegmentReader extends AtomicReader {
   @Override
   public DocValues docValues(String field) throws IOException {
     ensureOpen();
+    final DocValues updated = docValuesUpdates.get(field);
+    if (updated != null) {
+      return updated;
+    }
     final PerDocProducer perDoc = core.perDocProducer;
     if (perDoc == null) {
       return null;
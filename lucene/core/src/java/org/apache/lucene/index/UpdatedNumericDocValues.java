@@ -0,0 +1,247 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.codecs.DocValuesArraySource;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.packed.PackedInts;
+
+/* Holds all values of a numeric DocValues field of a
+ * segment after some of them were updated in place (see
+ * IndexWriter#updateNumericDocValue).  SegmentReader
+ * overlays these on the values read by the codec.  The
+ * updated fields of a segment are written together to a
+ * per-generation _X_N.dvu file, which is independent of
+ * the segment's codec. */
+
+final class UpdatedNumericDocValues extends DocValues {
+
+  final static String CODEC_NAME = "NumericDocValuesUpdates";
+  final static int VERSION_START = 0;
+  final static int VERSION_CURRENT = VERSION_START;
+
+  private final static byte PACKED = 0;
+  private final static byte RAW = 1;
+
+  private final Type type;
+  private final long minValue;
+  private final PackedInts.Reader values;
+
+  private UpdatedNumericDocValues(Type type, long minValue, PackedInts.Reader values) {
+    this.type = type;
+    this.minValue = minValue;
+    this.values = values;
+  }
+
+  /** Packs the given per-document values.  The type of the
+   *  field is kept if all values still fit into it, else it
+   *  is promoted to {@link Type#VAR_INTS}. */
+  static UpdatedNumericDocValues create(Type originalType, long[] docValues) {
+    assert NumericUpdate.isUpdatable(originalType);
+    long min = docValues.length == 0 ? 0 : Long.MAX_VALUE;
+    long max = docValues.length == 0 ? 0 : Long.MIN_VALUE;
+    for (long v : docValues) {
+      min = Math.min(min, v);
+      max = Math.max(max, v);
+    }
+    final Type type = fits(originalType, min, max) ? originalType : Type.VAR_INTS;
+    final int bitsPerValue;
+    if (max - min < 0) {
+      // range overflows a long: store the raw values
+      min = 0;
+      bitsPerValue = 64;
+    } else {
+      bitsPerValue = PackedInts.bitsRequired(max - min);
+    }
+    final PackedInts.Mutable packed = PackedInts.getMutable(docValues.length, bitsPerValue, PackedInts.FAST);
+    for (int docID = 0; docID < docValues.length; docID++) {
+      packed.set(docID, docValues[docID] - min);
+    }
+    return new UpdatedNumericDocValues(type, min, packed);
+  }
+
+  private static boolean fits(Type type, long min, long max) {
+    switch (type) {
+      case FIXED_INTS_8:
+        return min >= Byte.MIN_VALUE && max <= Byte.MAX_VALUE;
+      case FIXED_INTS_16:
+        return min >= Short.MIN_VALUE && max <= Short.MAX_VALUE;
+      case FIXED_INTS_32:
+        return min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE;
+      default:
+        return true;
+    }
+  }
+
+  /** Number of documents. */
+  int size() {
+    return values.size();
+  }
+
+  @Override
+  public Source load() throws IOException {
+    return new UpdatedSource(type);
+  }
+
+  @Override
+  public Source getDirectSource() throws IOException {
+    return new UpdatedSource(type);
+  }
+
+  @Override
+  public Type getType() {
+    return type;
+  }
+
+  @Override
+  public int getValueSize() {
+    switch (type) {
+      case FIXED_INTS_8:
+        return 1;
+      case FIXED_INTS_16:
+        return 2;
+      case FIXED_INTS_32:
+        return 4;
+      case FIXED_INTS_64:
+        return 8;
+      default:
+        return -1;
+    }
+  }
+
+  private final class UpdatedSource extends Source {
+
+    UpdatedSource(Type type) {
+      super(type);
+    }
+
+    @Override
+    public long getInt(int docID) {
+      return minValue + values.get(docID);
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      DocValuesArraySource.copyLong(ref, getInt(docID));
+      return ref;
+    }
+  }
+
+  /** Reads the updated fields of the given segment, as of
+   *  its current docvalues updates generation. */
+  static Map<String,UpdatedNumericDocValues> read(Directory dir, SegmentInfo info, IOContext context) throws IOException {
+    assert info.hasDocValuesUpdates();
+    final String fileName = IndexFileNames.fileNameFromGeneration(info.name, IndexFileNames.DOCVALUES_UPDATES_EXTENSION, info.getDocValuesUpdatesGen());
+    final IndexInput in = dir.openInput(fileName, context);
+    boolean success = false;
+    try {
+      CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+      final int numFields = in.readVInt();
+      final Map<String,UpdatedNumericDocValues> updates = new HashMap<String,UpdatedNumericDocValues>();
+      for (int i = 0; i < numFields; i++) {
+        final String field = in.readString();
+        final Type type = Type.valueOf(in.readString());
+        final long minValue = in.readLong();
+        final PackedInts.Reader values;
+        if (in.readByte() == RAW) {
+          final PackedInts.Mutable raw = PackedInts.getMutable(info.docCount, 64, PackedInts.COMPACT);
+          for (int docID = 0; docID < info.docCount; docID++) {
+            raw.set(docID, in.readLong());
+          }
+          values = raw;
+        } else {
+          values = PackedInts.getReader(in);
+        }
+        if (!NumericUpdate.isUpdatable(type) || values.size() != info.docCount) {
+          throw new CorruptIndexException("invalid docvalues updates for field \"" + field + "\": type=" + type + " valueCount=" + values.size() + " docCount=" + info.docCount + " (resource: " + in + ")");
+        }
+        updates.put(field, new UpdatedNumericDocValues(type, minValue, values));
+      }
+      success = true;
+      return updates;
+    } finally {
+      if (success) {
+        IOUtils.close(in);
+      } else {
+        IOUtils.closeWhileHandlingException(in);
+      }
+    }
+  }
+
+  /** Writes the updated fields to the file of the given
+   *  segment's current docvalues updates generation. */
+  static void write(Directory dir, SegmentInfo info, Map<String,UpdatedNumericDocValues> updates, IOContext context) throws IOException {
+    assert info.hasDocValuesUpdates();
+    final String fileName = IndexFileNames.fileNameFromGeneration(info.name, IndexFileNames.DOCVALUES_UPDATES_EXTENSION, info.getDocValuesUpdatesGen());
+    final IndexOutput out = dir.createOutput(fileName, context);
+    boolean success = false;
+    try {
+      CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+      out.writeVInt(updates.size());
+      final long[] buffer = new long[PackedInts.DEFAULT_BUFFER_SIZE];
+      for (Map.Entry<String,UpdatedNumericDocValues> entry : updates.entrySet()) {
+        final UpdatedNumericDocValues dv = entry.getValue();
+        assert dv.size() == info.docCount;
+        out.writeString(entry.getKey());
+        out.writeString(dv.type.name());
+        out.writeLong(dv.minValue);
+        final int bitsPerValue = dv.values.getBitsPerValue();
+        // PackedInts only stores non-negative values
+        out.writeByte(bitsPerValue == 64 ? RAW : PACKED);
+        final PackedInts.Writer writer = bitsPerValue == 64 ? null : PackedInts.getWriter(out, dv.size(), bitsPerValue);
+        for (int docID = 0; docID < dv.size(); ) {
+          final int read = dv.values.get(docID, buffer, 0, buffer.length);
+          for (int i = 0; i < read; i++) {
+            if (writer == null) {
+              out.writeLong(buffer[i]);
+            } else {
+              writer.add(buffer[i]);
+            }
+          }
+          docID += read;
+        }
+        if (writer != null) {
+          writer.finish();
+        }
+      }
+      success = true;
+    } finally {
+      if (success) {
+        IOUtils.close(out);
+      } else {
+        IOUtils.closeWhileHandlingException(out);
+        try {
+          dir.deleteFile(fileName);
+        } catch (Throwable t) {
+          // suppress this so we keep throwing the
+          // original exception
+        }
+      }
+    }
+  }
+}
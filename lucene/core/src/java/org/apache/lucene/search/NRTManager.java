@@ -18,19 +18,35 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader; // javadocs
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
+import org.apache.lucene.index.IndexWriterConfig; // javadocs
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher; // javadocs
 import org.apache.lucene.search.SearcherFactory; // javadocs
@@ -64,6 +80,19 @@ import org.apache.lucene.util.ThreadInterruptedException;
  * caller is waiting for a specific generation
  * searcher. </p>
  *
+ * <p>Optionally you can pass an {@link IndexReaderWarmer}
+ * that is invoked on every new segment (newly flushed
+ * segments, and merged segments that the IndexWriter did
+ * not already warm) before the reopened searcher is
+ * published.  New segments are warmed concurrently on the
+ * provided {@link ExecutorService}, and while they are
+ * warming the reopening thread will fold in further
+ * changes if a caller is waiting for a newer generation,
+ * so that a slow warm does not add a full reopen cycle to
+ * the visibility latency of those changes.  Segments
+ * already warmed for a previous searcher are not warmed
+ * again.</p>
+ *
  * @see SearcherFactory
  * 
  * @lucene.experimental
@@ -71,13 +100,32 @@ import org.apache.lucene.util.ThreadInterruptedException;
 
 public class NRTManager extends ReferenceManager<IndexSearcher> {
   private static final long MAX_SEARCHER_GEN = Long.MAX_VALUE;
+  // How often the reopening thread checks for waiters
+  // while new segments are warming:
+  private static final long COALESCE_CHECK_MSEC = 10;
+  // Max number of times a single refresh re-opens while
+  // warming, so continuous indexing can't starve publishing:
+  private static final int MAX_COALESCED_REOPENS = 5;
   private final TrackingIndexWriter writer;
   private final List<WaitingListener> waitingListeners = new CopyOnWriteArrayList<WaitingListener>();
   private final ReentrantLock genLock = new ReentrantLock();;
   private final Condition newGeneration = genLock.newCondition();
   private final SearcherFactory searcherFactory;
+  private final IndexReaderWarmer segmentWarmer;
+  private final ExecutorService warmExecutor;
+
+  // Warming tasks keyed by segment core cache key; only
+  // accessed by the thread holding the refresh lock.  A null
+  // value means the segment was warmed by IndexWriter on merge:
+  private final Map<Object,Future<?>> warmedSegments = new HashMap<Object,Future<?>>();
 
   private volatile long searchingGen;
+  private volatile long waitingGen;
+
+  private volatile long lastVisibilityLatencyNS;
+  private volatile long maxVisibilityLatencyNS;
+  private volatile long lastWarmNS;
+  private volatile long coalescedReopenCount;
 
   /**
    * Create new NRTManager.
@@ -100,12 +148,48 @@ public class NRTManager extends ReferenceManager<IndexSearcher> {
    * uses can tolerate seeing some deleted docs, since
    * reopen time is faster if deletes need not be applied. */
   public NRTManager(TrackingIndexWriter writer, SearcherFactory searcherFactory, boolean applyAllDeletes) throws IOException {
+    this(writer, searcherFactory, applyAllDeletes, null, null);
+  }
+
+  /**
+   * Expert: just like {@link
+   * #NRTManager(TrackingIndexWriter,SearcherFactory,boolean)},
+   * but also warms every new segment with the provided
+   * {@link IndexReaderWarmer} before a reopened searcher is
+   * published.  This is typically the same warmer you set
+   * with {@link IndexWriterConfig#setMergedSegmentWarmer},
+   * so that newly flushed segments are warmed just like
+   * merged ones; merged segments the IndexWriter already
+   * warmed are not warmed again.
+   *
+   * @param segmentWarmer An optional per-segment warmer, or
+   *        <code>null</code> to not warm segments.
+   * @param warmExecutor An optional {@link ExecutorService}
+   *        used to warm new segments concurrently.  Pass
+   *        <code>null</code> to warm on the reopening thread.
+   *        The executor is not shut down when this
+   *        NRTManager is closed.
+   */
+  public NRTManager(TrackingIndexWriter writer, SearcherFactory searcherFactory, boolean applyAllDeletes,
+                    IndexReaderWarmer segmentWarmer, ExecutorService warmExecutor) throws IOException {
     this.writer = writer;
     if (searcherFactory == null) {
       searcherFactory = new SearcherFactory();
     }
     this.searcherFactory = searcherFactory;
-    current = SearcherManager.getSearcher(searcherFactory, DirectoryReader.open(writer.getIndexWriter(), applyAllDeletes));
+    this.segmentWarmer = segmentWarmer;
+    this.warmExecutor = warmExecutor;
+    DirectoryReader reader = DirectoryReader.open(writer.getIndexWriter(), applyAllDeletes);
+    boolean success = false;
+    try {
+      awaitWarming(startWarming(reader), false);
+      success = true;
+    } finally {
+      if (!success) {
+        reader.decRef();
+      }
+    }
+    current = SearcherManager.getSearcher(searcherFactory, reader);
   }
 
   @Override
@@ -149,96 +233,114 @@ public class NRTManager extends ReferenceManager<IndexSearcher> {
   public static class TrackingIndexWriter {
     private final IndexWriter writer;
     private final AtomicLong indexingGen = new AtomicLong(1);
+    // System.nanoTime() of the oldest change not yet picked
+    // up by a reopen, or 0 if there is none:
+    private final AtomicLong pendingSinceNS = new AtomicLong();
 
     public TrackingIndexWriter(IndexWriter writer) {
       this.writer = writer;
     }
 
     public long updateDocument(Term t, Iterable<? extends IndexableField> d, Analyzer a) throws IOException {
+      markChanged();
       writer.updateDocument(t, d, a);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long updateDocument(Term t, Iterable<? extends IndexableField> d) throws IOException {
+      markChanged();
       writer.updateDocument(t, d);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long updateDocuments(Term t, Iterable<? extends Iterable<? extends IndexableField>> docs, Analyzer a) throws IOException {
+      markChanged();
       writer.updateDocuments(t, docs, a);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long updateDocuments(Term t, Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+      markChanged();
       writer.updateDocuments(t, docs);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long deleteDocuments(Term t) throws IOException {
+      markChanged();
       writer.deleteDocuments(t);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long deleteDocuments(Term... terms) throws IOException {
+      markChanged();
       writer.deleteDocuments(terms);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long deleteDocuments(Query q) throws IOException {
+      markChanged();
       writer.deleteDocuments(q);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long deleteDocuments(Query... queries) throws IOException {
+      markChanged();
       writer.deleteDocuments(queries);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long deleteAll() throws IOException {
+      markChanged();
       writer.deleteAll();
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long addDocument(Iterable<? extends IndexableField> d, Analyzer a) throws IOException {
+      markChanged();
       writer.addDocument(d, a);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long addDocuments(Iterable<? extends Iterable<? extends IndexableField>> docs, Analyzer a) throws IOException {
+      markChanged();
       writer.addDocuments(docs, a);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long addDocument(Iterable<? extends IndexableField> d) throws IOException {
+      markChanged();
       writer.addDocument(d);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long addDocuments(Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+      markChanged();
       writer.addDocuments(docs);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long addIndexes(Directory... dirs) throws CorruptIndexException, IOException {
+      markChanged();
       writer.addIndexes(dirs);
       // Return gen as of when indexing finished:
       return indexingGen.get();
     }
 
     public long addIndexes(IndexReader... readers) throws CorruptIndexException, IOException {
+      markChanged();
       writer.addIndexes(readers);
       // Return gen as of when indexing finished:
       return indexingGen.get();
@@ -255,6 +357,24 @@ public class NRTManager extends ReferenceManager<IndexSearcher> {
     long getAndIncrementGeneration() {
       return indexingGen.getAndIncrement();
     }
+
+    private void markChanged() {
+      if (pendingSinceNS.get() == 0) {
+        pendingSinceNS.compareAndSet(0, System.nanoTime());
+      }
+    }
+
+    long getAndClearPendingSinceNS() {
+      return pendingSinceNS.getAndSet(0);
+    }
+
+    /** Puts back a timestamp taken by a refresh that failed,
+     *  unless a newer change was recorded meanwhile. */
+    void restorePendingSinceNS(long ns) {
+      if (ns != 0) {
+        pendingSinceNS.compareAndSet(0, ns);
+      }
+    }
   }
 
   /**
@@ -298,6 +418,9 @@ public class NRTManager extends ReferenceManager<IndexSearcher> {
       genLock.lockInterruptibly();
       try {
         if (targetGen > searchingGen) {
+          if (targetGen > waitingGen) {
+            waitingGen = targetGen;
+          }
           for (WaitingListener listener : waitingListeners) {
             listener.waiting(targetGen);
           }
@@ -331,28 +454,221 @@ public class NRTManager extends ReferenceManager<IndexSearcher> {
     return searchingGen;
   }
 
+  /** Returns the time (in nanoseconds) it took for the
+   *  changes published by the most recent refresh to become
+   *  visible, measured from the oldest of those changes. */
+  public long getLastVisibilityLatencyNS() {
+    return lastVisibilityLatencyNS;
+  }
+
+  /** Returns the maximum visibility latency (in
+   *  nanoseconds) seen so far.
+   *  @see #getLastVisibilityLatencyNS */
+  public long getMaxVisibilityLatencyNS() {
+    return maxVisibilityLatencyNS;
+  }
+
+  /** Returns the time (in nanoseconds) the most recent
+   *  refresh spent waiting for new segments to warm. */
+  public long getLastWarmNS() {
+    return lastWarmNS;
+  }
+
+  /** Returns how many times a refresh re-opened while
+   *  segments were warming, to fold in changes a caller was
+   *  waiting for. */
+  public long getCoalescedReopenCount() {
+    return coalescedReopenCount;
+  }
+
   private long lastRefreshGen;
+  private long lastRefreshPendingSinceNS;
+  private boolean lastRefreshChanged;
 
   @Override
   protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+    // Take pending timestamp before the gen, so a change
+    // racing with us is accounted to the next refresh:
+    lastRefreshPendingSinceNS = writer.getAndClearPendingSinceNS();
     // Record gen as of when reopen started:
     lastRefreshGen = writer.getAndIncrementGeneration();
+    lastRefreshChanged = false;
     final IndexReader r = referenceToRefresh.getIndexReader();
     assert r instanceof DirectoryReader: "searcher's IndexReader should be a DirectoryReader, but got " + r;
     final DirectoryReader dirReader = (DirectoryReader) r;
     IndexSearcher newSearcher = null;
-    if (!dirReader.isCurrent()) {
-      final IndexReader newReader = DirectoryReader.openIfChanged(dirReader);
-      if (newReader != null) {
-        newSearcher = SearcherManager.getSearcher(searcherFactory, newReader);
+    boolean success = false;
+    try {
+      if (!dirReader.isCurrent()) {
+        final DirectoryReader newReader = DirectoryReader.openIfChanged(dirReader);
+        if (newReader != null) {
+          newSearcher = SearcherManager.getSearcher(searcherFactory, warm(newReader));
+          pruneWarmedSegments(newSearcher.getIndexReader());
+          lastRefreshChanged = true;
+        }
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        // the changes are still pending for the next refresh
+        writer.restorePendingSinceNS(lastRefreshPendingSinceNS);
       }
     }
 
     return newSearcher;
   }
 
+  // NOTE: decRefs incoming reader on throwing an exception
+  private DirectoryReader warm(DirectoryReader reader) throws IOException {
+    if (segmentWarmer == null) {
+      return reader;
+    }
+    final long t0 = System.nanoTime();
+    boolean success = false;
+    try {
+      int coalesced = 0;
+      while (!awaitWarming(startWarming(reader), coalesced < MAX_COALESCED_REOPENS)) {
+        // Somebody waits for a generation this reader does
+        // not cover: open a newer reader now, whose warming
+        // reuses the tasks already running for shared segments:
+        final long gen = writer.getAndIncrementGeneration();
+        final DirectoryReader newReader = DirectoryReader.openIfChanged(reader);
+        if (newReader != null) {
+          reader.decRef();
+          reader = newReader;
+        }
+        lastRefreshGen = gen;
+        coalesced++;
+        coalescedReopenCount++;
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        reader.decRef();
+      }
+    }
+    lastWarmNS = System.nanoTime() - t0;
+    return reader;
+  }
+
+  private List<Future<?>> startWarming(IndexReader reader) throws IOException {
+    final List<Future<?>> pending = new ArrayList<Future<?>>();
+    if (segmentWarmer == null) {
+      return pending;
+    }
+    final boolean writerWarmsMerges = writer.getIndexWriter().getConfig().getMergedSegmentWarmer() != null;
+    for (AtomicReaderContext ctx : reader.getTopReaderContext().leaves()) {
+      final AtomicReader segReader = ctx.reader();
+      final Object key = segReader.getCoreCacheKey();
+      Future<?> task = warmedSegments.get(key);
+      if (task == null && !warmedSegments.containsKey(key)) {
+        if (writerWarmsMerges && segReader instanceof SegmentReader &&
+            "merge".equals(((SegmentReader) segReader).getSegmentInfo().getDiagnostics().get("source"))) {
+          // IndexWriter already warmed this one
+          warmedSegments.put(key, null);
+          continue;
+        }
+        // The task holds its own reference, since the reader
+        // may be closed while the task is still running:
+        segReader.incRef();
+        final FutureTask<Object> warmTask = new FutureTask<Object>(new Callable<Object>() {
+          public Object call() throws IOException {
+            try {
+              segmentWarmer.warm(segReader);
+            } finally {
+              segReader.decRef();
+            }
+            return null;
+          }
+        });
+        if (warmExecutor != null) {
+          boolean success = false;
+          try {
+            warmExecutor.execute(warmTask);
+            success = true;
+          } finally {
+            if (!success) {
+              // the task will never run to release its reference
+              segReader.decRef();
+            }
+          }
+        } else {
+          warmTask.run();
+        }
+        warmedSegments.put(key, warmTask);
+        task = warmTask;
+      }
+      if (task != null) {
+        pending.add(task);
+      }
+    }
+    return pending;
+  }
+
+  /** Waits for all pending warming tasks; if coalesce is
+   *  true, returns false early as soon as a caller is
+   *  waiting for a generation newer than the one being
+   *  refreshed. */
+  private boolean awaitWarming(List<Future<?>> pending, boolean coalesce) throws IOException {
+    Future<?> current = null;
+    try {
+      for (Future<?> task : pending) {
+        current = task;
+        if (coalesce) {
+          while (true) {
+            try {
+              task.get(COALESCE_CHECK_MSEC, TimeUnit.MILLISECONDS);
+              break;
+            } catch (TimeoutException te) {
+              if (waitingGen > lastRefreshGen) {
+                return false;
+              }
+            }
+          }
+        } else {
+          task.get();
+        }
+      }
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } catch (ExecutionException ee) {
+      // Forget the failed task, so the next refresh warms the
+      // segment again instead of rethrowing the same failure:
+      warmedSegments.values().remove(current);
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new RuntimeException(cause);
+      }
+    }
+    return true;
+  }
+
+  private void pruneWarmedSegments(IndexReader reader) {
+    if (segmentWarmer == null) {
+      return;
+    }
+    final Set<Object> live = new HashSet<Object>();
+    for (AtomicReaderContext ctx : reader.getTopReaderContext().leaves()) {
+      live.add(ctx.reader().getCoreCacheKey());
+    }
+    warmedSegments.keySet().retainAll(live);
+  }
+
   @Override
   protected void afterRefresh() {
+    if (lastRefreshChanged && lastRefreshPendingSinceNS != 0) {
+      final long latencyNS = System.nanoTime() - lastRefreshPendingSinceNS;
+      lastVisibilityLatencyNS = latencyNS;
+      if (latencyNS > maxVisibilityLatencyNS) {
+        maxVisibilityLatencyNS = latencyNS;
+      }
+    }
     genLock.lock();
     try {
       if (searchingGen != MAX_SEARCHER_GEN) {
@@ -21,13 +21,22 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.search.NRTManager;        // javadocs
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 
 /**
  * Keeps track of current plus old IndexSearchers, closing
@@ -94,6 +103,11 @@ import org.apache.lucene.util.IOUtils;
  * it's unlikely you'll hit two of them in your expiration
  * window.  Still you should budget plenty of heap in the
  * JVM to have a good safety margin.
+ *
+ * <p>Use {@link #getStats} to see how many segments and
+ * how much RAM the old searchers are holding on to, and
+ * {@link PruneByRAM} to bound that RAM instead of (or in
+ * addition to) the age of the searchers.
  * 
  * @lucene.experimental
  */
@@ -245,6 +259,167 @@ public class SearcherLifetimeManager implements Closeable {
     }
   }
 
+  /** Pruner that keeps the newest searchers as long as
+   *  the RAM they pin, beyond what the newest searcher
+   *  itself uses, stays under the specified budget; once
+   *  the budget is exceeded all older searchers are
+   *  dropped.  The RAM per segment is estimated from its
+   *  {@link FieldCache} entries and its deleted docs, see
+   *  {@link SearcherLifetimeManager#getStats}.
+   *
+   *  <p><b>NOTE</b>: this pruner estimates the size of
+   *  FieldCache entries on every {@link #prune}, which
+   *  walks the cached values; don't prune too often.
+   *  A single instance must not be used by multiple
+   *  managers at once. */
+  public final static class PruneByRAM implements Pruner {
+    private final long maxBytes;
+    private RAMTally tally;
+    private long lastVersion;
+    private long oldBytes;
+
+    public PruneByRAM(double maxRAMMB) {
+      if (maxRAMMB < 0) {
+        throw new IllegalArgumentException("maxRAMMB must be >= 0 (got " + maxRAMMB + ")");
+      }
+      this.maxBytes = (long) (maxRAMMB * RamUsageEstimator.ONE_MB);
+    }
+
+    @Override
+    public boolean doPrune(double ageSec, IndexSearcher searcher) {
+      final long version = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+      // Searchers are visited newest to oldest, so a
+      // version that is not older than the last one means
+      // a new prune pass started:
+      if (tally == null || version >= lastVersion) {
+        tally = new RAMTally();
+        oldBytes = 0;
+        tally.add(searcher);
+        lastVersion = version;
+        return false;
+      }
+      lastVersion = version;
+      oldBytes += tally.add(searcher);
+      return oldBytes > maxBytes;
+    }
+  }
+
+  /** Point-in-time statistics about the searchers tracked
+   *  by a {@link SearcherLifetimeManager}.
+   *  @see SearcherLifetimeManager#getStats */
+  public static final class Stats {
+    /** Number of tracked searchers. */
+    public final int searcherCount;
+    /** Number of distinct segments held by all tracked searchers. */
+    public final int segmentCount;
+    /** Number of segments that only old searchers hold,
+     *  ie that are not part of the newest searcher. */
+    public final int oldSegmentCount;
+    /** Estimated RAM held by all tracked searchers. */
+    public final long ramBytes;
+    /** Estimated RAM held only by old searchers, ie what
+     *  would be freed by pruning all but the newest one. */
+    public final long oldRAMBytes;
+
+    Stats(int searcherCount, int segmentCount, int oldSegmentCount, long ramBytes, long oldRAMBytes) {
+      this.searcherCount = searcherCount;
+      this.segmentCount = segmentCount;
+      this.oldSegmentCount = oldSegmentCount;
+      this.ramBytes = ramBytes;
+      this.oldRAMBytes = oldRAMBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "searchers=" + searcherCount + " segments=" + segmentCount + " oldSegments=" + oldSegmentCount +
+        " ram=" + RamUsageEstimator.humanReadableUnits(ramBytes) + " oldRam=" + RamUsageEstimator.humanReadableUnits(oldRAMBytes);
+    }
+  }
+
+  /** Accumulates the estimated RAM of the segments of
+   *  several searchers, counting each segment core and
+   *  each set of deleted docs only once. */
+  static final class RAMTally {
+    private final Map<Object,Long> fieldCacheBytes = new HashMap<Object,Long>();
+    private final Set<Object> seenCores = new HashSet<Object>();
+    private final Set<Object> seenDeletes = new HashSet<Object>();
+
+    RAMTally() {
+      // Sum up the FieldCache entries per segment core:
+      final Map<Object,Long> valueBytes = new IdentityHashMap<Object,Long>();
+      for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+        final Object value = entry.getValue();
+        if (value == null || valueBytes.containsKey(value)) {
+          continue;
+        }
+        final long bytes = RamUsageEstimator.sizeOf(value);
+        valueBytes.put(value, bytes);
+        final Long prev = fieldCacheBytes.get(entry.getReaderKey());
+        fieldCacheBytes.put(entry.getReaderKey(), prev == null ? bytes : prev + bytes);
+      }
+    }
+
+    /** Returns the estimated RAM of the segments of this
+     *  searcher that were not already counted. */
+    long add(IndexSearcher searcher) {
+      long bytes = 0;
+      for (AtomicReaderContext ctx : searcher.getIndexReader().getTopReaderContext().leaves()) {
+        final AtomicReader reader = ctx.reader();
+        final Object coreKey = reader.getCoreCacheKey();
+        if (seenCores.add(coreKey)) {
+          final Long cached = fieldCacheBytes.get(coreKey);
+          if (cached != null) {
+            bytes += cached;
+          }
+        }
+        final Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs != null && seenDeletes.add(reader.getCombinedCoreAndDeletesKey())) {
+          bytes += RamUsageEstimator.sizeOf(liveDocs);
+        }
+      }
+      return bytes;
+    }
+
+    int segmentCount() {
+      return seenCores.size();
+    }
+  }
+
+  /** Returns point-in-time {@link Stats} about the tracked
+   *  searchers, the segments they hold and an estimate of
+   *  the RAM held by those segments ({@link FieldCache}
+   *  entries and deleted docs; the per-segment terms index
+   *  and norms are not included).
+   *
+   *  <p><b>NOTE</b>: this walks all FieldCache entries to
+   *  estimate their size, so it is not cheap. */
+  public synchronized Stats getStats() {
+    ensureOpen();
+    final List<SearcherTracker> trackers = new ArrayList<SearcherTracker>();
+    for(SearcherTracker tracker : searchers.values()) {
+      trackers.add(tracker);
+    }
+    Collections.sort(trackers);
+    final RAMTally tally = new RAMTally();
+    long ramBytes = 0;
+    long oldRAMBytes = 0;
+    int newestSegmentCount = 0;
+    boolean first = true;
+    for (SearcherTracker tracker : trackers) {
+      final long bytes = tally.add(tracker.searcher);
+      if (first) {
+        // Newest searcher; everything counted after it is
+        // held only by old searchers:
+        newestSegmentCount = tally.segmentCount();
+        first = false;
+      } else {
+        oldRAMBytes += bytes;
+      }
+      ramBytes += bytes;
+    }
+    return new Stats(trackers.size(), tally.segmentCount(), tally.segmentCount() - newestSegmentCount, ramBytes, oldRAMBytes);
+  }
+
   /** Calls provided {@link Pruner} to prune entries.  The
    *  entries are passed to the Pruner in sorted (newest to
    *  oldest IndexSearcher) order.
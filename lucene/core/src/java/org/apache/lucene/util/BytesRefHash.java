@@ -17,8 +17,6 @@ package org.apache.lucene.util;
  * limitations under the License.
  */
 
-import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_MASK;
-import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_SHIFT;
 import static org.apache.lucene.util.ByteBlockPool.BYTE_BLOCK_SIZE;
 
 import java.util.Arrays;
@@ -34,6 +32,13 @@ import org.apache.lucene.util.ByteBlockPool.DirectAllocator;
  * efficiently in continuous storage. The mapping to the ordinal is
  * encapsulated inside {@link BytesRefHash} and is guaranteed to be increased
  * for each added {@link BytesRef}.
+ *
+ * <p>
+ * The hash table uses open addressing with linear probing and stores the
+ * hash code of each entry next to its ordinal, so probing only compares the
+ * bytes of entries with an equal hash code, and rehashing never needs to
+ * read the bytes back from the pool.
+ * </p>
  * 
  * <p>
  * Note: The maximum capacity {@link BytesRef} instance passed to
@@ -58,7 +63,9 @@ public final class BytesRefHash {
   private int hashMask;
   private int count;
   private int lastCount = -1;
-  private int[] ords;
+  // Pairs of (ord, hash code) per slot; ord is -1 for
+  // empty slots:
+  private int[] ids;
   private final BytesStartArray bytesStartArray;
   private Counter bytesUsed;
 
@@ -86,12 +93,12 @@ public final class BytesRefHash {
     hashHalfSize = hashSize >> 1;
     hashMask = hashSize - 1;
     this.pool = pool;
-    ords = new int[hashSize];
-    Arrays.fill(ords, -1);
+    ids = new int[2 * hashSize];
+    Arrays.fill(ids, -1);
     this.bytesStartArray = bytesStartArray;
     bytesStart = bytesStartArray.init();
     bytesUsed = bytesStartArray.bytesUsed() == null? Counter.newCounter() : bytesStartArray.bytesUsed();
-    bytesUsed.addAndGet(hashSize * RamUsageEstimator.NUM_BYTES_INT);
+    bytesUsed.addAndGet(2 * hashSize * RamUsageEstimator.NUM_BYTES_INT);
   }
 
   /**
@@ -131,20 +138,20 @@ public final class BytesRefHash {
    */
   public int[] compact() {
     assert bytesStart != null : "Bytesstart is null - not initialized";
+    // Slot i's ord is at 2*i, so moving ords to the front
+    // never overwrites an ord we did not read yet:
     int upto = 0;
     for (int i = 0; i < hashSize; i++) {
-      if (ords[i] != -1) {
-        if (upto < i) {
-          ords[upto] = ords[i];
-          ords[i] = -1;
-        }
-        upto++;
+      final int e = ids[i << 1];
+      if (e != -1) {
+        ids[upto++] = e;
       }
     }
+    Arrays.fill(ids, upto, ids.length, -1);
 
     assert upto == count;
     lastCount = count;
-    return ords;
+    return ids;
   }
 
   /**
@@ -208,11 +215,11 @@ public final class BytesRefHash {
       newSize /= 2;
     }
     if (newSize != hashSize) {
-      bytesUsed.addAndGet(RamUsageEstimator.NUM_BYTES_INT
+      bytesUsed.addAndGet(2 * RamUsageEstimator.NUM_BYTES_INT
           * -(hashSize - newSize));
       hashSize = newSize;
-      ords = new int[hashSize];
-      Arrays.fill(ords, -1);
+      ids = new int[2 * hashSize];
+      Arrays.fill(ids, -1);
       hashHalfSize = newSize / 2;
       hashMask = newSize - 1;
       return true;
@@ -235,7 +242,7 @@ public final class BytesRefHash {
       // shrink clears the hash entries
       return;
     }
-    Arrays.fill(ords, -1);
+    Arrays.fill(ids, -1);
   }
 
   public void clear() {
@@ -247,8 +254,8 @@ public final class BytesRefHash {
    */
   public void close() {
     clear(true);
-    ords = null;
-    bytesUsed.addAndGet(RamUsageEstimator.NUM_BYTES_INT
+    ids = null;
+    bytesUsed.addAndGet(2 * RamUsageEstimator.NUM_BYTES_INT
         * -hashSize);
   }
 
@@ -301,17 +308,13 @@ public final class BytesRefHash {
     assert bytesStart != null : "Bytesstart is null - not initialized";
     final int length = bytes.length;
     // final position
-    int hashPos = code & hashMask;
-    int e = ords[hashPos];
-    if (e != -1 && !equals(e, bytes)) {
-      // Conflict: keep searching different locations in
-      // the hash table.
-      final int inc = ((code >> 8) + code) | 1;
-      do {
-        code += inc;
-        hashPos = code & hashMask;
-        e = ords[hashPos];
-      } while (e != -1 && !equals(e, bytes));
+    int hashPos = mix(code) & hashMask;
+    int e = ids[hashPos << 1];
+    // Only compare the bytes if the hash codes are equal:
+    while (e != -1 && (ids[(hashPos << 1) + 1] != code || !equals(e, bytes))) {
+      // Conflict: probe the next slot
+      hashPos = (hashPos + 1) & hashMask;
+      e = ids[hashPos << 1];
     }
 
     if (e == -1) {
@@ -354,11 +357,12 @@ public final class BytesRefHash {
         System.arraycopy(bytes.bytes, bytes.offset, buffer, bufferUpto + 2,
             length);
       }
-      assert ords[hashPos] == -1;
-      ords[hashPos] = e;
+      assert ids[hashPos << 1] == -1;
+      ids[hashPos << 1] = e;
+      ids[(hashPos << 1) + 1] = code;
 
       if (count == hashHalfSize) {
-        rehash(2 * hashSize, true);
+        rehash(2 * hashSize);
       }
       return e;
     }
@@ -367,19 +371,13 @@ public final class BytesRefHash {
 
   public int addByPoolOffset(int offset) {
     assert bytesStart != null : "Bytesstart is null - not initialized";
-    // final position
-    int code = offset;
-    int hashPos = offset & hashMask;
-    int e = ords[hashPos];
-    if (e != -1 && bytesStart[e] != offset) {
-      // Conflict: keep searching different locations in
-      // the hash table.
-      final int inc = ((code >> 8) + code) | 1;
-      do {
-        code += inc;
-        hashPos = code & hashMask;
-        e = ords[hashPos];
-      } while (e != -1 && bytesStart[e] != offset);
+    // final position; the offset is the hash code
+    int hashPos = mix(offset) & hashMask;
+    int e = ids[hashPos << 1];
+    while (e != -1 && ids[(hashPos << 1) + 1] != offset) {
+      // Conflict: probe the next slot
+      hashPos = (hashPos + 1) & hashMask;
+      e = ids[hashPos << 1];
     }
     if (e == -1) {
       // new entry
@@ -390,70 +388,58 @@ public final class BytesRefHash {
       }
       e = count++;
       bytesStart[e] = offset;
-      assert ords[hashPos] == -1;
-      ords[hashPos] = e;
+      assert ids[hashPos << 1] == -1;
+      ids[hashPos << 1] = e;
+      ids[(hashPos << 1) + 1] = offset;
 
       if (count == hashHalfSize) {
-        rehash(2 * hashSize, false);
+        rehash(2 * hashSize);
       }
       return e;
     }
     return -(e + 1);
   }
 
+  /**
+   * Spreads the bits of the hash code, since we probe
+   * linearly and {@link BytesRef#hashCode} (or a pool offset)
+   * has poorly distributed low bits.
+   */
+  private static int mix(int code) {
+    code ^= code >>> 16;
+    code *= 0x85ebca6b;
+    code ^= code >>> 13;
+    code *= 0xc2b2ae35;
+    code ^= code >>> 16;
+    return code;
+  }
+
   /**
    * Called when hash is too small (> 50% occupied) or too large (< 20%
-   * occupied).
+   * occupied).  Uses the stored hash codes, so the bytes are not read
+   * from the pool.
    */
-  private void rehash(final int newSize, boolean hashOnData) {
+  private void rehash(final int newSize) {
     final int newMask = newSize - 1;
-    bytesUsed.addAndGet(RamUsageEstimator.NUM_BYTES_INT * (newSize));
-    final int[] newHash = new int[newSize];
-    Arrays.fill(newHash, -1);
+    bytesUsed.addAndGet(2 * RamUsageEstimator.NUM_BYTES_INT * (newSize));
+    final int[] newIds = new int[2 * newSize];
+    Arrays.fill(newIds, -1);
     for (int i = 0; i < hashSize; i++) {
-      final int e0 = ords[i];
+      final int e0 = ids[i << 1];
       if (e0 != -1) {
-        int code;
-        if (hashOnData) {
-          final int off = bytesStart[e0];
-          final int start = off & BYTE_BLOCK_MASK;
-          final byte[] bytes = pool.buffers[off >> BYTE_BLOCK_SHIFT];
-          code = 0;
-          final int len;
-          int pos;
-          if ((bytes[start] & 0x80) == 0) {
-            // length is 1 byte
-            len = bytes[start];
-            pos = start + 1;
-          } else {
-            len = (bytes[start] & 0x7f) + ((bytes[start + 1] & 0xff) << 7);
-            pos = start + 2;
-          }
-
-          final int endPos = pos + len;
-          while (pos < endPos) {
-            code = 31 * code + bytes[pos++];
-          }
-        } else {
-          code = bytesStart[e0];
-        }
-
-        int hashPos = code & newMask;
-        assert hashPos >= 0;
-        if (newHash[hashPos] != -1) {
-          final int inc = ((code >> 8) + code) | 1;
-          do {
-            code += inc;
-            hashPos = code & newMask;
-          } while (newHash[hashPos] != -1);
+        final int code = ids[(i << 1) + 1];
+        int hashPos = mix(code) & newMask;
+        while (newIds[hashPos << 1] != -1) {
+          hashPos = (hashPos + 1) & newMask;
         }
-        newHash[hashPos] = e0;
+        newIds[hashPos << 1] = e0;
+        newIds[(hashPos << 1) + 1] = code;
       }
     }
 
     hashMask = newMask;
-    bytesUsed.addAndGet(RamUsageEstimator.NUM_BYTES_INT * (-ords.length));
-    ords = newHash;
+    bytesUsed.addAndGet(RamUsageEstimator.NUM_BYTES_INT * (-ids.length));
+    ids = newIds;
     hashSize = newSize;
     hashHalfSize = newSize / 2;
   }
@@ -468,9 +454,10 @@ public final class BytesRefHash {
       bytesStart = bytesStartArray.init();
     }
     
-    if (ords == null) {
-      ords = new int[hashSize];
-      bytesUsed.addAndGet(RamUsageEstimator.NUM_BYTES_INT * hashSize);
+    if (ids == null) {
+      ids = new int[2 * hashSize];
+      Arrays.fill(ids, -1);
+      bytesUsed.addAndGet(2 * RamUsageEstimator.NUM_BYTES_INT * hashSize);
     }
   }
 
@@ -19,6 +19,9 @@ package org.apache.lucene.util.fst;
 
 import java.io.IOException;
 
+import org.apache.lucene.store.DataInput; // javadoc
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput; // javadoc
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.RamUsageEstimator;
@@ -131,14 +134,45 @@ public class Builder<T> {
   public Builder(FST.INPUT_TYPE inputType, int minSuffixCount1, int minSuffixCount2, boolean doShareSuffix,
                  boolean doShareNonSingletonNodes, int shareMaxTailLength, Outputs<T> outputs,
                  FreezeTail<T> freezeTail, boolean willPackFST) {
+    this(inputType, minSuffixCount1, minSuffixCount2, doShareSuffix, doShareNonSingletonNodes,
+         shareMaxTailLength, outputs, freezeTail, willPackFST, 0, null);
+  }
+
+  /**
+   * Instantiates an FST/FSA builder that can build FSTs larger than
+   * the available RAM.  All parameters but the last two are as for
+   * {@link #Builder(FST.INPUT_TYPE, int, int, boolean, boolean, int,
+   * Outputs, FreezeTail, boolean)}.
+   *
+   * @param maxNodeHashSize
+   *    Only used if doShareSuffix is true.  If greater than 0, at most
+   *    this many frozen nodes are remembered for suffix sharing; nodes
+   *    that were not shared recently are forgotten first.  This bounds
+   *    the RAM used while building, but the resulting FST may not be
+   *    minimal.  Pass 0 to remember all nodes.
+   *
+   * @param bytesOut
+   *    If non-null, the FST's bytes are written incrementally to this
+   *    output as nodes are frozen, instead of being held in RAM.  The FST
+   *    returned by {@link #finish} can then not be traversed: write its
+   *    metadata with {@link FST#saveMetadata(DataOutput)} and open it
+   *    with {@link FST#FST(DataInput, IndexInput, Outputs)}, passing
+   *    an input positioned at the start of the bytes written here.
+   *    This cannot be combined with willPackFST.
+   *
+   * @lucene.experimental
+   */
+  public Builder(FST.INPUT_TYPE inputType, int minSuffixCount1, int minSuffixCount2, boolean doShareSuffix,
+                 boolean doShareNonSingletonNodes, int shareMaxTailLength, Outputs<T> outputs,
+                 FreezeTail<T> freezeTail, boolean willPackFST, int maxNodeHashSize, DataOutput bytesOut) {
     this.minSuffixCount1 = minSuffixCount1;
     this.minSuffixCount2 = minSuffixCount2;
     this.freezeTail = freezeTail;
     this.doShareNonSingletonNodes = doShareNonSingletonNodes;
     this.shareMaxTailLength = shareMaxTailLength;
-    fst = new FST<T>(inputType, outputs, willPackFST);
+    fst = new FST<T>(inputType, outputs, willPackFST, bytesOut);
     if (doShareSuffix) {
-      dedupHash = new NodeHash<T>(fst);
+      dedupHash = new NodeHash<T>(fst, maxNodeHashSize, bytesOut != null);
     } else {
       dedupHash = null;
     }
@@ -171,6 +205,13 @@ public class Builder<T> {
     fst.setAllowArrayArcs(b);
   }
 
+  /** Pass false to disable direct addressing of array'd
+   *  nodes whose labels are dense; this makes the FST
+   *  slightly smaller but slower to look up arcs in. */
+  public void setAllowDirectArrays(boolean b) {
+    fst.setAllowDirectArrays(b);
+  }
+
   private CompiledNode compileNode(UnCompiledNode<T> nodeIn, int tailLength) throws IOException {
     final int node;
     if (dedupHash != null && (doShareNonSingletonNodes || nodeIn.numArcs <= 1) && tailLength <= shareMaxTailLength) {
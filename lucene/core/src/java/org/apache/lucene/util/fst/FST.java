@@ -25,11 +25,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.InputStreamDataInput;
 import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.util.ArrayUtil;
@@ -91,6 +93,21 @@ public final class FST<T> {
 
   private final static byte ARCS_AS_FIXED_ARRAY = BIT_ARC_HAS_FINAL_OUTPUT;
 
+  // Arcs are stored as fixed-size array, preceded by the
+  // first label and one bit per label in the node's label
+  // range, set if that label has an arc; findTargetArc then
+  // locates an arc directly instead of by binary search.  We
+  // do this for array'd nodes whose labels are dense enough,
+  // see #shouldDirectAddress(UnCompiledNode).  Like
+  // ARCS_AS_FIXED_ARRAY, this can never be the flags of a
+  // real arc since BIT_FINAL_ARC is not set:
+  private final static byte ARCS_AS_DIRECT_ARRAY = BIT_ARC_HAS_FINAL_OUTPUT | BIT_TARGET_NEXT;
+
+  /**
+   * @see #shouldDirectAddress(UnCompiledNode)
+   */
+  final static int DIRECT_ARRAY_MAX_LABEL_RANGE_PER_ARC = 4;
+
   /**
    * @see #shouldExpand(UnCompiledNode)
    */
@@ -108,6 +125,8 @@ public final class FST<T> {
 
   private int[] bytesPerArc = new int[0];
 
+  private byte[] presenceBits = new byte[0];
+
   // Increment version to change it
   private final static String FILE_FORMAT_NAME = "FST";
   private final static int VERSION_START = 0;
@@ -121,7 +140,10 @@ public final class FST<T> {
   /** Added optional packed format. */
   private final static int VERSION_PACKED = 3;
 
-  private final static int VERSION_CURRENT = VERSION_PACKED;
+  /** Added direct addressed array nodes. */
+  private final static int VERSION_DIRECT_ARRAYS = 4;
+
+  private final static int VERSION_CURRENT = VERSION_DIRECT_ARRAYS;
 
   // Never serialized; just used to represent the virtual
   // final node w/ no arcs:
@@ -140,6 +162,21 @@ public final class FST<T> {
   byte[] bytes;
   int byteUpto = 0;
 
+  // When building with a bytes output, frozen nodes are
+  // flushed to this output and bytes[] only holds the not
+  // yet flushed tail; node addresses are always absolute:
+  private DataOutput bytesOut;
+  private int bytesFlushed;
+
+  // When loaded "off heap", the FST's bytes are read from
+  // this input (starting at bytesInStart) instead of bytes[]:
+  private IndexInput bytesIn;
+  private long bytesInStart;
+
+  // Total number of bytes of the FST; only used when
+  // bytes[] does not hold all of them
+  private int numBytes;
+
   private int startNode = -1;
 
   public final Outputs<T> outputs;
@@ -160,6 +197,8 @@ public final class FST<T> {
 
   private boolean allowArrayArcs = true;
 
+  private boolean allowDirectArrays = true;
+
   private Arc<T> cachedRootArcs[];
 
   /** Represents a single arc. */
@@ -262,7 +301,18 @@ public final class FST<T> {
   // make a new empty FST, for building; Builder invokes
   // this ctor
   FST(INPUT_TYPE inputType, Outputs<T> outputs, boolean willPackFST) {
+    this(inputType, outputs, willPackFST, null);
+  }
+
+  // make a new empty FST, for building, that writes frozen
+  // nodes to bytesOut (if non-null) instead of holding them
+  // in RAM
+  FST(INPUT_TYPE inputType, Outputs<T> outputs, boolean willPackFST, DataOutput bytesOut) {
+    if (willPackFST && bytesOut != null) {
+      throw new IllegalArgumentException("cannot pack an FST whose bytes are written to a DataOutput");
+    }
     this.inputType = inputType;
+    this.bytesOut = bytesOut;
     this.outputs = outputs;
     bytes = new byte[128];
     NO_OUTPUT = outputs.getNoOutput();
@@ -283,22 +333,49 @@ public final class FST<T> {
 
   /** Load a previously saved FST. */
   public FST(DataInput in, Outputs<T> outputs) throws IOException {
+    this(outputs, in, null);
+  }
+
+  /** Load a previously saved FST, without loading its bytes
+   *  into RAM: the metadata written by {@link
+   *  #saveMetadata(DataOutput)} is read from
+   *  <code>metaIn</code>, and the FST's bytes are then read on
+   *  demand from <code>bytesIn</code>, starting at its
+   *  current file pointer.  On return <code>bytesIn</code> is
+   *  positioned just after the FST's bytes.
+   *
+   *  <p>To open an FST written with {@link #save(DataOutput)},
+   *  pass the same <code>IndexInput</code> for both
+   *  arguments.  The FST keeps a clone of
+   *  <code>bytesIn</code>, so the input must not be closed
+   *  while the FST is in use; with {@link
+   *  org.apache.lucene.store.MMapDirectory} the bytes are
+   *  read straight from the mapped file.
+   *
+   * @lucene.experimental */
+  public FST(DataInput metaIn, IndexInput bytesIn, Outputs<T> outputs) throws IOException {
+    this(outputs, metaIn, bytesIn);
+  }
+
+  // if bytesIn is null, the bytes follow the metadata in
+  // metaIn and are loaded into RAM
+  private FST(Outputs<T> outputs, DataInput in, IndexInput bytesIn) throws IOException {
     this.outputs = outputs;
     writer = null;
-    // NOTE: only reads most recent format; we don't have
-    // back-compat promise for FSTs (they are experimental):
-    CodecUtil.checkHeader(in, FILE_FORMAT_NAME, VERSION_PACKED, VERSION_PACKED);
+    // NOTE: only reads formats since VERSION_PACKED; we don't
+    // have back-compat promise for FSTs (they are experimental):
+    CodecUtil.checkHeader(in, FILE_FORMAT_NAME, VERSION_PACKED, VERSION_CURRENT);
     packed = in.readByte() == 1;
     if (in.readByte() == 1) {
       // accepts empty string
       int numBytes = in.readVInt();
       // messy
-      bytes = new byte[numBytes];
-      in.readBytes(bytes, 0, numBytes);
+      emptyOutputBytes = new byte[numBytes];
+      in.readBytes(emptyOutputBytes, 0, numBytes);
       if (packed) {
-        emptyOutput = outputs.read(getBytesReader(0));
+        emptyOutput = outputs.read(new ForwardBytesReader(emptyOutputBytes, 0));
       } else {
-        emptyOutput = outputs.read(getBytesReader(numBytes-1));
+        emptyOutput = outputs.read(new ReverseBytesReader(emptyOutputBytes, numBytes-1));
       }
     } else {
       emptyOutput = null;
@@ -331,8 +408,15 @@ public final class FST<T> {
     arcCount = in.readVInt();
     arcWithOutputCount = in.readVInt();
 
-    bytes = new byte[in.readVInt()];
-    in.readBytes(bytes, 0, bytes.length);
+    numBytes = in.readVInt();
+    if (bytesIn == null) {
+      bytes = new byte[numBytes];
+      in.readBytes(bytes, 0, bytes.length);
+    } else {
+      bytesInStart = bytesIn.getFilePointer();
+      this.bytesIn = (IndexInput) bytesIn.clone();
+      bytesIn.seek(bytesInStart + numBytes);
+    }
     NO_OUTPUT = outputs.getNoOutput();
 
     cacheRootArcs();
@@ -342,9 +426,11 @@ public final class FST<T> {
     return inputType;
   }
 
-  /** Returns bytes used to represent the FST */
+  /** Returns bytes used to represent the FST; this includes
+   *  bytes that are written to a DataOutput or read from an
+   *  IndexInput instead of being held in RAM. */
   public int sizeInBytes() {
-    int size = bytes.length;
+    int size = bytes != null && bytesOut == null ? bytes.length : numBytes;
     if (packed) {
       size += nodeRefToAddress.length * RamUsageEstimator.NUM_BYTES_INT;
     } else if (nodeAddress != null) {
@@ -361,14 +447,31 @@ public final class FST<T> {
     if (this.startNode != -1) {
       throw new IllegalStateException("already finished");
     }
+    this.startNode = startNode;
+    if (bytesOut != null) {
+      flushBytes();
+      numBytes = bytesFlushed;
+      // the bytes now live only in the DataOutput; this FST
+      // can be saved (metadata only) but not traversed:
+      bytes = null;
+      bytesOut = null;
+      return;
+    }
     byte[] finalBytes = new byte[writer.posWrite];
     System.arraycopy(bytes, 0, finalBytes, 0, writer.posWrite);
     bytes = finalBytes;
-    this.startNode = startNode;
+    numBytes = finalBytes.length;
 
     cacheRootArcs();
   }
 
+  // writes all pending bytes to bytesOut
+  private void flushBytes() throws IOException {
+    bytesOut.writeBytes(bytes, 0, writer.posWrite);
+    bytesFlushed += writer.posWrite;
+    writer.posWrite = 0;
+  }
+
   private int getNodeAddress(int node) {
     if (nodeAddress != null) {
       // Deref
@@ -436,6 +539,26 @@ public final class FST<T> {
   }
 
   public void save(DataOutput out) throws IOException {
+    if (bytes == null && bytesIn == null) {
+      throw new IllegalStateException("this FST's bytes were written to a DataOutput while building; use saveMetadata instead");
+    }
+    saveMetadata(out);
+    if (bytes != null) {
+      out.writeBytes(bytes, 0, bytes.length);
+    } else {
+      final IndexInput in = (IndexInput) bytesIn.clone();
+      in.seek(bytesInStart);
+      out.copyBytes(in, numBytes);
+    }
+  }
+
+  /** Writes everything but the FST's bytes; this is what
+   *  {@link #FST(DataInput, IndexInput, Outputs)} reads from
+   *  its <code>metaIn</code>.  Use this for an FST whose bytes
+   *  were written to a DataOutput while building.
+   *
+   * @lucene.experimental */
+  public void saveMetadata(DataOutput out) throws IOException {
     if (startNode == -1) {
       throw new IllegalStateException("call finish first");
     }
@@ -477,8 +600,7 @@ public final class FST<T> {
     out.writeVInt(nodeCount);
     out.writeVInt(arcCount);
     out.writeVInt(arcWithOutputCount);
-    out.writeVInt(bytes.length);
-    out.writeBytes(bytes, 0, bytes.length);
+    out.writeVInt(numBytes);
   }
   
   /**
@@ -552,6 +674,27 @@ public final class FST<T> {
     return arc.target > 0;
   }
 
+  // Number of pending bytes after which they are flushed to
+  // bytesOut
+  private final static int FLUSH_BYTES = 1 << 15;
+
+  // Start, in bytes[], of the most recently added node
+  private int lastNodeStart;
+
+  // Copies the (reversed) bytes of the most recently added
+  // node into dest, starting at destOffset, and returns how
+  // many bytes were copied
+  int copyLastNode(byte[] dest, int destOffset) {
+    final int length = writer.posWrite - lastNodeStart;
+    System.arraycopy(bytes, lastNodeStart, dest, destOffset, length);
+    return length;
+  }
+
+  // Number of bytes of the most recently added node
+  int lastNodeLength() {
+    return writer.posWrite - lastNodeStart;
+  }
+
   // serializes new node by appending its bytes to the end
   // of the current byte[]
   int addNode(Builder.UnCompiledNode<T> nodeIn) throws IOException {
@@ -564,26 +707,40 @@ public final class FST<T> {
       }
     }
 
+    if (bytesOut != null && writer.posWrite >= FLUSH_BYTES) {
+      // NOTE: we only flush before adding a node, so that
+      // the last added node is still in bytes[] (NodeHash
+      // copies it from there):
+      flushBytes();
+    }
+
     int startAddress = writer.posWrite;
     //System.out.println("  startAddr=" + startAddress);
 
     final boolean doFixedArray = shouldExpand(nodeIn);
     final int fixedArrayStart;
+    final int bytesPerArcEnd;
     if (doFixedArray) {
       if (bytesPerArc.length < nodeIn.numArcs) {
         bytesPerArc = new int[ArrayUtil.oversize(nodeIn.numArcs, 1)];
       }
+      final boolean doDirect = shouldDirectAddress(nodeIn);
       // write a "false" first arc:
-      writer.writeByte(ARCS_AS_FIXED_ARRAY);
+      writer.writeByte(doDirect ? ARCS_AS_DIRECT_ARRAY : ARCS_AS_FIXED_ARRAY);
       writer.writeVInt(nodeIn.numArcs);
       // placeholder -- we'll come back and write the number
       // of bytes per arc (int) here:
       // TODO: we could make this a vInt instead
       writer.writeInt(0);
+      bytesPerArcEnd = writer.posWrite;
+      if (doDirect) {
+        writePresenceBits(nodeIn);
+      }
       fixedArrayStart = writer.posWrite;
       //System.out.println("  do fixed arcs array arcsStart=" + fixedArrayStart);
     } else {
       fixedArrayStart = 0;
+      bytesPerArcEnd = 0;
     }
 
     arcCount += nodeIn.numArcs;
@@ -675,10 +832,10 @@ public final class FST<T> {
       final int sizeNeeded = fixedArrayStart + nodeIn.numArcs * maxBytesPerArc;
       bytes = ArrayUtil.grow(bytes, sizeNeeded);
       // TODO: we could make this a vInt instead
-      bytes[fixedArrayStart-4] = (byte) (maxBytesPerArc >> 24);
-      bytes[fixedArrayStart-3] = (byte) (maxBytesPerArc >> 16);
-      bytes[fixedArrayStart-2] = (byte) (maxBytesPerArc >> 8);
-      bytes[fixedArrayStart-1] = (byte) maxBytesPerArc;
+      bytes[bytesPerArcEnd-4] = (byte) (maxBytesPerArc >> 24);
+      bytes[bytesPerArcEnd-3] = (byte) (maxBytesPerArc >> 16);
+      bytes[bytesPerArcEnd-2] = (byte) (maxBytesPerArc >> 8);
+      bytes[bytesPerArcEnd-1] = (byte) maxBytesPerArc;
 
       // expand the arcs in place, backwards
       int srcPos = writer.posWrite;
@@ -709,6 +866,8 @@ public final class FST<T> {
     }
     //System.out.println("  endAddress=" + endAddress);
 
+    lastNodeStart = startAddress;
+
     nodeCount++;
     final int node;
     if (nodeAddress != null) {
@@ -721,7 +880,7 @@ public final class FST<T> {
       // System.out.println("  write nodeAddress[" + nodeCount + "] = " + endAddress);
       node = nodeCount;
     } else {
-      node = endAddress;
+      node = bytesFlushed + endAddress;
     }
     lastFrozenNode = node;
 
@@ -767,14 +926,9 @@ public final class FST<T> {
       final BytesReader in = getBytesReader(getNodeAddress(follow.target));
       arc.node = follow.target;
       final byte b = in.readByte();
-      if (b == ARCS_AS_FIXED_ARRAY) {
+      if (isArrayHeader(b)) {
         // array: jump straight to end
-        arc.numArcs = in.readVInt();
-        if (packed) {
-          arc.bytesPerArc = in.readVInt();
-        } else {
-          arc.bytesPerArc = in.readInt();
-        }
+        readArrayHeader(b, arc, in);
         //System.out.println("  array numArcs=" + arc.numArcs + " bpa=" + arc.bytesPerArc);
         arc.posArcsStart = in.pos;
         arc.arcIdx = arc.numArcs - 2;
@@ -844,7 +998,6 @@ public final class FST<T> {
   }
 
   public Arc<T> readFirstRealTargetArc(int node, Arc<T> arc, final BytesReader in) throws IOException {
-    assert in.bytes == bytes;
     final int address = getNodeAddress(node);
     in.pos = address;
     //System.out.println("  readFirstRealTargtArc address="
@@ -852,15 +1005,11 @@ public final class FST<T> {
     //System.out.println("   flags=" + arc.flags);
     arc.node = node;
 
-    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+    final byte b = in.readByte();
+    if (isArrayHeader(b)) {
       //System.out.println("  fixedArray");
       // this is first arc in a fixed-array
-      arc.numArcs = in.readVInt();
-      if (packed) {
-        arc.bytesPerArc = in.readVInt();
-      } else {
-        arc.bytesPerArc = in.readInt();
-      }
+      readArrayHeader(b, arc, in);
       arc.arcIdx = -1;
       arc.nextArc = arc.posArcsStart = in.pos;
       //System.out.println("  bytesPer=" + arc.bytesPerArc + " numArcs=" + arc.numArcs + " arcsStart=" + pos);
@@ -884,7 +1033,7 @@ public final class FST<T> {
       return false;
     } else {
       final BytesReader in = getBytesReader(getNodeAddress(follow.target));
-      return in.readByte() == ARCS_AS_FIXED_ARRAY;
+      return isArrayHeader(in.readByte());
     }
   }
 
@@ -910,16 +1059,23 @@ public final class FST<T> {
     if (arc.label == END_LABEL) {
       //System.out.println("    nextArc fake " + arc.nextArc);
       in = getBytesReader(getNodeAddress(arc.nextArc));
-      final byte b = bytes[in.pos];
-      if (b == ARCS_AS_FIXED_ARRAY) {
+      final int pos = in.pos;
+      final byte b = in.readByte();
+      if (isArrayHeader(b)) {
         //System.out.println("    nextArc fake array");
-        in.skip(1);
         in.readVInt();
         if (packed) {
           in.readVInt();
         } else {
           in.readInt();
         }
+        if (b == ARCS_AS_DIRECT_ARRAY) {
+          // first label, then presence bits
+          in.readVInt();
+          in.skip(numPresenceBytes(in.readVInt()));
+        }
+      } else {
+        in.pos = pos;
       }
     } else {
       if (arc.bytesPerArc != 0) {
@@ -941,7 +1097,6 @@ public final class FST<T> {
   /** Never returns null, but you should never call this if
    *  arc.isLast() is true. */
   public Arc<T> readNextRealArc(Arc<T> arc, final BytesReader in) throws IOException {
-    assert in.bytes == bytes;
 
     // TODO: can't assert this because we call from readFirstArc
     // assert !flag(arc.flags, BIT_LAST_ARC);
@@ -1066,7 +1221,38 @@ public final class FST<T> {
 
     // System.out.println("fta label=" + (char) labelToMatch);
 
-    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+    final byte b = in.readByte();
+    if (b == ARCS_AS_DIRECT_ARRAY) {
+      // Arcs are full array, with a bit set for each label
+      // present: the arc's index is the number of bits set
+      // before the label's bit
+      arc.numArcs = in.readVInt();
+      if (packed) {
+        arc.bytesPerArc = in.readVInt();
+      } else {
+        arc.bytesPerArc = in.readInt();
+      }
+      final int labelIndex = labelToMatch - in.readVInt();
+      final int labelRange = in.readVInt();
+      if (labelIndex < 0 || labelIndex >= labelRange) {
+        return null;
+      }
+      final int presenceStart = in.pos;
+      int arcIdx = 0;
+      for(int byteIdx=labelIndex>>>3;byteIdx>0;byteIdx--) {
+        arcIdx += Integer.bitCount(in.readByte() & 0xFF);
+      }
+      final int bit = 1 << (labelIndex & 7);
+      final int presence = in.readByte() & 0xFF;
+      if ((presence & bit) == 0) {
+        return null;
+      }
+      arcIdx += Integer.bitCount(presence & (bit-1));
+      in.skip(presenceStart, numPresenceBytes(labelRange));
+      arc.posArcsStart = in.pos;
+      arc.arcIdx = arcIdx-1;
+      return readNextRealArc(arc, in);
+    } else if (b == ARCS_AS_FIXED_ARRAY) {
       // Arcs are full array; do binary search:
       arc.numArcs = in.readVInt();
       if (packed) {
@@ -1118,6 +1304,33 @@ public final class FST<T> {
     }
   }
 
+  private static boolean isArrayHeader(byte b) {
+    return b == ARCS_AS_FIXED_ARRAY || b == ARCS_AS_DIRECT_ARRAY;
+  }
+
+  // Number of bytes holding the presence bits of a direct
+  // array node covering labelRange labels
+  private static int numPresenceBytes(int labelRange) {
+    return (labelRange + 7) >>> 3;
+  }
+
+  // Reads the rest of the header of a node whose arcs are in
+  // an array, whose first byte b was already read; in is
+  // left at the first arc
+  private void readArrayHeader(byte b, Arc<T> arc, BytesReader in) throws IOException {
+    arc.numArcs = in.readVInt();
+    if (packed) {
+      arc.bytesPerArc = in.readVInt();
+    } else {
+      arc.bytesPerArc = in.readInt();
+    }
+    if (b == ARCS_AS_DIRECT_ARRAY) {
+      // first label, then presence bits
+      in.readVInt();
+      in.skip(numPresenceBytes(in.readVInt()));
+    }
+  }
+
   private void seekToNextNode(BytesReader in) throws IOException {
 
     while(true) {
@@ -1163,6 +1376,10 @@ public final class FST<T> {
   public void setAllowArrayArcs(boolean v) {
     allowArrayArcs = v;
   }
+
+  public void setAllowDirectArrays(boolean v) {
+    allowDirectArrays = v;
+  }
   
   /**
    * Nodes will be expanded if their depth (distance from the root node) is
@@ -1185,6 +1402,41 @@ public final class FST<T> {
        node.numArcs >= FIXED_ARRAY_NUM_ARCS_DEEP);
   }
 
+  /**
+   * Expanded nodes additionally get a presence bit per label if their
+   * label range (last label - first label + 1) is at most {@link
+   * #DIRECT_ARRAY_MAX_LABEL_RANGE_PER_ARC} times their number of arcs.
+   * This costs at most half a byte per arc, and replaces binary search
+   * by a direct lookup in {@link #findTargetArc}.
+   *
+   * @return <code>true</code> if the expanded <code>node</code> should
+   *         also be direct addressed.
+   */
+  private boolean shouldDirectAddress(UnCompiledNode<T> node) {
+    return allowDirectArrays &&
+      node.arcs[node.numArcs-1].label - node.arcs[0].label < node.numArcs * DIRECT_ARRAY_MAX_LABEL_RANGE_PER_ARC;
+  }
+
+  // Writes the first label, label range and presence bits of
+  // a direct addressed node
+  private void writePresenceBits(UnCompiledNode<T> node) throws IOException {
+    final int firstLabel = node.arcs[0].label;
+    final int labelRange = node.arcs[node.numArcs-1].label - firstLabel + 1;
+    writer.writeVInt(firstLabel);
+    writer.writeVInt(labelRange);
+    final int numBytes = numPresenceBytes(labelRange);
+    if (presenceBits.length < numBytes) {
+      presenceBits = new byte[ArrayUtil.oversize(numBytes, 1)];
+    } else {
+      Arrays.fill(presenceBits, 0, numBytes, (byte) 0);
+    }
+    for(int arcIdx=0;arcIdx<node.numArcs;arcIdx++) {
+      final int labelIndex = node.arcs[arcIdx].label - firstLabel;
+      presenceBits[labelIndex >>> 3] |= 1 << (labelIndex & 7);
+    }
+    writer.writeBytes(presenceBits, 0, numBytes);
+  }
+
   // Non-static: writes to FST's byte[]
   class BytesWriter extends DataOutput {
     int posWrite;
@@ -1223,7 +1475,12 @@ public final class FST<T> {
 
   public final BytesReader getBytesReader(int pos) {
     // TODO: maybe re-use via ThreadLocal?
-    if (packed) {
+    if (bytes == null) {
+      if (bytesIn == null) {
+        throw new IllegalStateException("this FST's bytes were written to a DataOutput while building; load it with FST(DataInput, IndexInput, Outputs) to read it");
+      }
+      return new IndexInputBytesReader((IndexInput) bytesIn.clone(), bytesInStart, numBytes, pos, !packed);
+    } else if (packed) {
       return new ForwardBytesReader(bytes, pos);
     } else {
       return new ReverseBytesReader(bytes, pos);
@@ -1272,6 +1529,76 @@ public final class FST<T> {
     }
   }
 
+  // Reads the bytes of an FST that was loaded "off heap",
+  // one block at a time, in either direction
+  final static class IndexInputBytesReader extends BytesReader {
+    private final static int BLOCK_SIZE = 1024;
+
+    private final IndexInput in;
+    private final long start;
+    private final int length;
+    private final boolean reversed;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockStart;
+    private int blockLength;
+
+    public IndexInputBytesReader(IndexInput in, long start, int length, int pos, boolean reversed) {
+      super(null, pos);
+      this.in = in;
+      this.start = start;
+      this.length = length;
+      this.reversed = reversed;
+    }
+
+    private byte byteAt(int address) throws IOException {
+      final int offset = address - blockStart;
+      if (offset >= 0 && offset < blockLength) {
+        return block[offset];
+      }
+      // when reading backwards, load the block that ends at
+      // the requested address:
+      blockStart = reversed ? Math.max(0, address - BLOCK_SIZE + 1) : address;
+      blockLength = Math.min(BLOCK_SIZE, length - blockStart);
+      in.seek(start + blockStart);
+      in.readBytes(block, 0, blockLength);
+      return block[address - blockStart];
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      final byte b = byteAt(pos);
+      if (reversed) {
+        pos--;
+      } else {
+        pos++;
+      }
+      return b;
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = readByte();
+      }
+    }
+
+    public void skip(int count) {
+      if (reversed) {
+        pos -= count;
+      } else {
+        pos += count;
+      }
+    }
+
+    public void skip(int base, int count) {
+      if (reversed) {
+        pos = base - count;
+      } else {
+        pos = base + count;
+      }
+    }
+  }
+
   // TODO: can we use just ByteArrayDataInput...?  need to
   // add a .skipBytes to DataInput.. hmm and .setPosition
   final static class ForwardBytesReader extends BytesReader {
@@ -1565,9 +1892,23 @@ public final class FST<T> {
             if (bytesPerArc == 0) {
               bytesPerArc = arc.bytesPerArc;
             }
-            writer.writeByte(ARCS_AS_FIXED_ARRAY);
+            final BytesReader headerIn = getBytesReader(getNodeAddress(node));
+            final byte header = headerIn.readByte();
+            writer.writeByte(header);
             writer.writeVInt(arc.numArcs);
             writer.writeVInt(bytesPerArc);
+            if (header == ARCS_AS_DIRECT_ARRAY) {
+              // copy first label, label range and presence bits:
+              headerIn.readVInt();
+              headerIn.readInt();
+              writer.writeVInt(headerIn.readVInt());
+              final int labelRange = headerIn.readVInt();
+              writer.writeVInt(labelRange);
+              final int numBytes = numPresenceBytes(labelRange);
+              presenceBits = ArrayUtil.grow(presenceBits, numBytes);
+              headerIn.readBytes(presenceBits, 0, numBytes);
+              writer.writeBytes(presenceBits, 0, numBytes);
+            }
             //System.out.println("node " + node + ": " + arc.numArcs + " arcs");
           }
 
@@ -1763,6 +2104,7 @@ public final class FST<T> {
     //System.out.println("resize " + fst.bytes.length + " down to " + writer.posWrite);
     System.arraycopy(fst.bytes, 0, finalBytes, 0, writer.posWrite);
     fst.bytes = finalBytes;
+    fst.numBytes = finalBytes.length;
     fst.cacheRootArcs();
 
     //final int size = fst.sizeInBytes();
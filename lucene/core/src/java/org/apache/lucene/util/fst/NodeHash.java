@@ -19,19 +19,44 @@ package org.apache.lucene.util.fst;
 
 import java.io.IOException;
 
+import org.apache.lucene.util.ArrayUtil;
+
 // Used to dedup states (lookup already-frozen states)
 final class NodeHash<T> {
 
-  private int[] table;
-  private int count;
-  private int mask;
   private final FST<T> fst;
   private final FST.Arc<T> scratchArc = new FST.Arc<T>();
 
+  // If > 0, we remember at most this many frozen nodes: once
+  // the primary table holds half of them it becomes the
+  // fallback table, and the previous fallback table is
+  // dropped.  Nodes found in the fallback table are moved
+  // back to the primary one, so this approximates LRU:
+  private final int maxSize;
+
+  // True if the FST's bytes are flushed while building; we
+  // then keep our own copy of the bytes of every node we
+  // remember, since the FST no longer has them:
+  private final boolean copyNodes;
+  private final CopyReader copyReader;
+
+  private Table primary;
+  private Table fallback;
+
+  // only used if !copyNodes; re-pulled on every add since
+  // the FST's byte[] may have been re-allocated:
+  private FST.BytesReader fstReader;
+
   public NodeHash(FST<T> fst) {
-    table = new int[16];
-    mask = 15;
+    this(fst, 0, false);
+  }
+
+  public NodeHash(FST<T> fst, int maxSize, boolean copyNodes) {
     this.fst = fst;
+    this.maxSize = maxSize;
+    this.copyNodes = copyNodes;
+    copyReader = copyNodes ? new CopyReader() : null;
+    primary = new Table();
   }
 
   private boolean nodesEqual(Builder.UnCompiledNode<T> node, int address, FST.BytesReader in) throws IOException {
@@ -85,9 +110,8 @@ final class NodeHash<T> {
   }
 
   // hash code for a frozen node
-  private int hash(int node) throws IOException {
+  private int hash(int node, FST.BytesReader in) throws IOException {
     final int PRIME = 31;
-    final FST.BytesReader in = fst.getBytesReader(0);
     //System.out.println("hash frozen node=" + node);
     int h = 0;
     fst.readFirstRealTargetArc(node, scratchArc, in);
@@ -110,62 +134,188 @@ final class NodeHash<T> {
   }
 
   public int add(Builder.UnCompiledNode<T> nodeIn) throws IOException {
-    // System.out.println("hash: add count=" + count + " vs " + table.length);
-    final FST.BytesReader in = fst.getBytesReader(0);
+    if (!copyNodes) {
+      fstReader = fst.getBytesReader(0);
+    }
     final int h = hash(nodeIn);
-    int pos = h & mask;
-    int c = 0;
-    while(true) {
-      final int v = table[pos];
-      if (v == 0) {
-        // freeze & add
-        final int node = fst.addNode(nodeIn);
-        //System.out.println("  now freeze node=" + node);
-        assert hash(node) == h : "frozenHash=" + hash(node) + " vs h=" + h;
-        count++;
-        table[pos] = node;
-        if (table.length < 2*count) {
-          rehash();
-        }
-        return node;
-      } else if (nodesEqual(nodeIn, v, in)) {
-        // same node is already here
-        return v;
-      }
+    final int slot = primary.find(nodeIn, h);
+    if (slot >= 0) {
+      // same node is already here
+      return primary.table[slot];
+    }
+
+    final int node;
+    final int fallbackSlot = fallback == null ? -1 : fallback.find(nodeIn, h);
+    if (fallbackSlot >= 0) {
+      // recently forgotten: remember it again
+      node = fallback.table[fallbackSlot];
+      primary.add(-slot-1, h, node, fallback, fallbackSlot);
+    } else {
+      // freeze & add
+      node = fst.addNode(nodeIn);
+      //System.out.println("  now freeze node=" + node);
+      primary.add(-slot-1, h, node, null, -1);
+    }
 
-      // quadratic probe
-      pos = (pos + (++c)) & mask;
+    if (maxSize > 0 && primary.count >= Math.max(1, maxSize/2)) {
+      fallback = primary;
+      primary = new Table();
     }
+    return node;
   }
 
-  // called only by rehash
-  private void addNew(int address) throws IOException {
-    int pos = hash(address) & mask;
-    int c = 0;
-    while(true) {
-      if (table[pos] == 0) {
-        table[pos] = address;
-        break;
+  public int count() {
+    return primary.count + (fallback == null ? 0 : fallback.count);
+  }
+
+  // Open addressed hash table of frozen node addresses
+  private final class Table {
+    int[] table;
+    int count;
+    int mask;
+
+    // only used if copyNodes: the copied bytes of the node
+    // in each slot are at copies[copyStarts[slot]] and take
+    // copyLengths[slot] bytes
+    byte[] copies;
+    int copiesUpto;
+    int[] copyStarts;
+    int[] copyLengths;
+
+    Table() {
+      table = new int[16];
+      mask = 15;
+      if (copyNodes) {
+        copies = new byte[128];
+        copyStarts = new int[16];
+        copyLengths = new int[16];
       }
+    }
 
-      // quadratic probe
-      pos = (pos + (++c)) & mask;
+    private FST.BytesReader reader(int address, int copyStart, int copyLength) {
+      if (copyNodes) {
+        copyReader.reset(copies, address - (copyStart + copyLength - 1));
+        return copyReader;
+      } else {
+        return fstReader;
+      }
     }
-  }
 
-  private void rehash() throws IOException {
-    final int[] oldTable = table;
-    table = new int[2*table.length];
-    mask = table.length-1;
-    for(int idx=0;idx<oldTable.length;idx++) {
-      final int address = oldTable[idx];
-      if (address != 0) {
-        addNew(address);
+    // returns the slot holding a node equal to nodeIn, or
+    // -slot-1 for the empty slot where it should go
+    int find(Builder.UnCompiledNode<T> nodeIn, int h) throws IOException {
+      int pos = h & mask;
+      int c = 0;
+      while(true) {
+        final int v = table[pos];
+        if (v == 0) {
+          return -pos-1;
+        } else if (nodesEqual(nodeIn, v, copyNodes ? reader(v, copyStarts[pos], copyLengths[pos]) : fstReader)) {
+          return pos;
+        }
+
+        // quadratic probe
+        pos = (pos + (++c)) & mask;
+      }
+    }
+
+    // Adds the node to the empty slot; its bytes are copied
+    // from the other table if from is non-null, else from
+    // the FST's most recently added node
+    void add(int slot, int h, int address, Table from, int fromSlot) throws IOException {
+      table[slot] = address;
+      if (!copyNodes) {
+        // adding the node may have grown the FST's byte[]
+        fstReader = fst.getBytesReader(0);
+      } else {
+        final int length;
+        if (from != null) {
+          length = from.copyLengths[fromSlot];
+          copies = ArrayUtil.grow(copies, copiesUpto + length);
+          System.arraycopy(from.copies, from.copyStarts[fromSlot], copies, copiesUpto, length);
+        } else {
+          length = fst.lastNodeLength();
+          copies = ArrayUtil.grow(copies, copiesUpto + length);
+          fst.copyLastNode(copies, copiesUpto);
+        }
+        copyStarts[slot] = copiesUpto;
+        copyLengths[slot] = length;
+        copiesUpto += length;
+      }
+
+      assert hash(address, copyNodes ? reader(address, copyStarts[slot], copyLengths[slot]) : fstReader) == h : "frozenHash=" + hash(address, copyNodes ? reader(address, copyStarts[slot], copyLengths[slot]) : fstReader) + " vs h=" + h;
+      count++;
+      if (table.length < 2*count) {
+        rehash();
+      }
+    }
+
+    private void rehash() throws IOException {
+      final int[] oldTable = table;
+      final int[] oldCopyStarts = copyStarts;
+      final int[] oldCopyLengths = copyLengths;
+      table = new int[2*table.length];
+      mask = table.length-1;
+      if (copyNodes) {
+        copyStarts = new int[table.length];
+        copyLengths = new int[table.length];
+      }
+      for(int idx=0;idx<oldTable.length;idx++) {
+        final int address = oldTable[idx];
+        if (address != 0) {
+          final FST.BytesReader in = copyNodes ? reader(address, oldCopyStarts[idx], oldCopyLengths[idx]) : fstReader;
+          int pos = hash(address, in) & mask;
+          int c = 0;
+          while(table[pos] != 0) {
+            // quadratic probe
+            pos = (pos + (++c)) & mask;
+          }
+          table[pos] = address;
+          if (copyNodes) {
+            copyStarts[pos] = oldCopyStarts[idx];
+            copyLengths[pos] = oldCopyLengths[idx];
+          }
+        }
       }
     }
   }
 
-  public int count() {
-    return count;
+  // Reads the copy of a node's bytes, addressing them by
+  // their absolute position in the FST, in reverse like
+  // FST.ReverseBytesReader
+  private static final class CopyReader extends FST.BytesReader {
+    private byte[] copy;
+    private int delta;
+
+    CopyReader() {
+      super(null, 0);
+    }
+
+    void reset(byte[] copy, int delta) {
+      this.copy = copy;
+      this.delta = delta;
+    }
+
+    @Override
+    public byte readByte() {
+      return copy[(pos--) - delta];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = copy[(pos--) - delta];
+      }
+    }
+
+    @Override
+    void skip(int count) {
+      pos -= count;
+    }
+
+    @Override
+    void skip(int base, int count) {
+      pos = base - count;
+    }
   }
 }
@@ -28,8 +28,7 @@ import java.util.Arrays;
  * @lucene.internal
  */
 
-class Direct16 extends PackedInts.ReaderImpl
-        implements PackedInts.Mutable {
+class Direct16 extends PackedInts.MutableImpl {
   private short[] values;
   private static final int BITS_PER_VALUE = 16;
 
@@ -77,6 +76,38 @@ class Direct16 extends PackedInts.ReaderImpl
     values[index] = (short)(value & 0xFFFF);
   }
 
+  @Override
+  public int get(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int gets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + gets; i < end; ++i, ++o) {
+      arr[o] = 0xFFFFL & values[i];
+    }
+    return gets;
+  }
+
+  @Override
+  public int set(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int sets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + sets; i < end; ++i, ++o) {
+      values[i] = (short)(arr[o] & 0xFFFF);
+    }
+    return sets;
+  }
+
+  @Override
+  public void fill(int fromIndex, int toIndex, long val) {
+    assert val == (val & 0xFFFFL);
+    Arrays.fill(values, fromIndex, toIndex, (short)(val & 0xFFFF));
+  }
+
   public long ramBytesUsed() {
     return RamUsageEstimator.sizeOf(values);
   }
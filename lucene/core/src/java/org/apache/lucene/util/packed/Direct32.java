@@ -28,8 +28,7 @@ import java.util.Arrays;
  * @lucene.internal
  */
 
-class Direct32 extends PackedInts.ReaderImpl
-        implements PackedInts.Mutable {
+class Direct32 extends PackedInts.MutableImpl {
   private int[] values;
   private static final int BITS_PER_VALUE = 32;
 
@@ -73,6 +72,38 @@ class Direct32 extends PackedInts.ReaderImpl
     values[index] = (int)(value & 0xFFFFFFFF);
   }
 
+  @Override
+  public int get(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int gets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + gets; i < end; ++i, ++o) {
+      arr[o] = 0xFFFFFFFFL & values[i];
+    }
+    return gets;
+  }
+
+  @Override
+  public int set(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int sets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + sets; i < end; ++i, ++o) {
+      values[i] = (int)(arr[o] & 0xFFFFFFFF);
+    }
+    return sets;
+  }
+
+  @Override
+  public void fill(int fromIndex, int toIndex, long val) {
+    assert val == (val & 0xFFFFFFFFL);
+    Arrays.fill(values, fromIndex, toIndex, (int)(val & 0xFFFFFFFF));
+  }
+
   public long ramBytesUsed() {
     return RamUsageEstimator.sizeOf(values);
   }
@@ -28,8 +28,7 @@ import java.util.Arrays;
  * @lucene.internal
  */
 
-class Direct8 extends PackedInts.ReaderImpl
-        implements PackedInts.Mutable {
+class Direct8 extends PackedInts.MutableImpl {
   private byte[] values;
   private static final int BITS_PER_VALUE = 8;
 
@@ -78,6 +77,38 @@ class Direct8 extends PackedInts.ReaderImpl
     values[index] = (byte)(value & 0xFF);
   }
 
+  @Override
+  public int get(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int gets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + gets; i < end; ++i, ++o) {
+      arr[o] = 0xFFL & values[i];
+    }
+    return gets;
+  }
+
+  @Override
+  public int set(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int sets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + sets; i < end; ++i, ++o) {
+      values[i] = (byte)(arr[o] & 0xFF);
+    }
+    return sets;
+  }
+
+  @Override
+  public void fill(int fromIndex, int toIndex, long val) {
+    assert val == (val & 0xFFL);
+    Arrays.fill(values, fromIndex, toIndex, (byte)(val & 0xFF));
+  }
+
   public long ramBytesUsed() {
     return RamUsageEstimator.sizeOf(values);
   }
@@ -70,6 +70,19 @@ final class DirectReader implements PackedInts.Reader {
     return null;
   }
 
+  @Override
+  public int get(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int gets = Math.min(valueCount - index, len);
+    for (int i = index, o = off, end = index + gets; i < end; ++i, ++o) {
+      arr[o] = get(i);
+    }
+    return gets;
+  }
+
   @Override
   public long get(int index) {
     final long majorBitPos = (long)index * bitsPerValue;
@@ -28,26 +28,38 @@ public class GrowableWriter implements PackedInts.Mutable {
 
   private long currentMaxValue;
   private PackedInts.Mutable current;
-  private final boolean roundFixedSize;
+  private final float acceptableOverheadRatio;
 
-  public GrowableWriter(int startBitsPerValue, int valueCount, boolean roundFixedSize) {
-    this.roundFixedSize = roundFixedSize;
-    current = PackedInts.getMutable(valueCount, getSize(startBitsPerValue));
+  /**
+   * @param startBitsPerValue       the initial number of bits per value, may grow depending on the data
+   * @param valueCount              the number of values
+   * @param acceptableOverheadRatio an acceptable overhead ratio, see
+   *        {@link PackedInts#getMutable(int, int, float)}
+   */
+  public GrowableWriter(int startBitsPerValue, int valueCount, float acceptableOverheadRatio) {
+    this.acceptableOverheadRatio = acceptableOverheadRatio;
+    current = PackedInts.getMutable(valueCount, startBitsPerValue, this.acceptableOverheadRatio);
     currentMaxValue = PackedInts.maxValue(current.getBitsPerValue());
   }
 
-  private final int getSize(int bpv) {
-    if (roundFixedSize) {
-      return PackedInts.getNextFixedSize(bpv);
-    } else {
-      return bpv;
-    }
+  /**
+   * Same as {@link #GrowableWriter(int, int, float)} with
+   * {@link PackedInts#FASTEST} if <code>roundFixedSize</code> is true
+   * (values are always stored in a byte[], short[], int[] or long[]) and
+   * {@link PackedInts#COMPACT} otherwise.
+   */
+  public GrowableWriter(int startBitsPerValue, int valueCount, boolean roundFixedSize) {
+    this(startBitsPerValue, valueCount, roundFixedSize ? PackedInts.FASTEST : PackedInts.COMPACT);
   }
 
   public long get(int index) {
     return current.get(index);
   }
 
+  public int get(int index, long[] arr, int off, int len) {
+    return current.get(index, arr, off, len);
+  }
+
   public int size() {
     return current.size();
   }
@@ -70,34 +82,46 @@ public class GrowableWriter implements PackedInts.Mutable {
     return current.hasArray();
   }
 
-  public void set(int index, long value) {
-    if (value >= currentMaxValue) {
-      int bpv = getBitsPerValue();
-      while(currentMaxValue <= value && currentMaxValue != Long.MAX_VALUE) {
-        bpv++;
-        currentMaxValue *= 2;
-      }
-      final int valueCount = size();
-      PackedInts.Mutable next = PackedInts.getMutable(valueCount, getSize(bpv));
-      for(int i=0;i<valueCount;i++) {
-        next.set(i, current.get(i));
-      }
-      current = next;
-      currentMaxValue = PackedInts.maxValue(current.getBitsPerValue());
+  private void ensureCapacity(long value) {
+    assert value >= 0;
+    if (value <= currentMaxValue) {
+      return;
     }
+    final int bitsRequired = PackedInts.bitsRequired(value);
+    final int valueCount = size();
+    PackedInts.Mutable next = PackedInts.getMutable(valueCount, bitsRequired, acceptableOverheadRatio);
+    PackedInts.copy(current, 0, next, 0, valueCount, PackedInts.DEFAULT_BUFFER_SIZE);
+    current = next;
+    currentMaxValue = PackedInts.maxValue(current.getBitsPerValue());
+  }
+
+  public void set(int index, long value) {
+    ensureCapacity(value);
     current.set(index, value);
   }
 
+  public int set(int index, long[] arr, int off, int len) {
+    long max = 0;
+    for (int i = off, end = off + len; i < end; ++i) {
+      max |= arr[i];
+    }
+    ensureCapacity(max);
+    return current.set(index, arr, off, len);
+  }
+
+  public void fill(int fromIndex, int toIndex, long val) {
+    ensureCapacity(val);
+    current.fill(fromIndex, toIndex, val);
+  }
+
   public void clear() {
     current.clear();
   }
 
   public GrowableWriter resize(int newSize) {
-    GrowableWriter next = new GrowableWriter(getBitsPerValue(), newSize, roundFixedSize);
+    GrowableWriter next = new GrowableWriter(getBitsPerValue(), newSize, acceptableOverheadRatio);
     final int limit = Math.min(size(), newSize);
-    for(int i=0;i<limit;i++) {
-      next.set(i, get(i));
-    }
+    PackedInts.copy(current, 0, next, 0, limit, PackedInts.DEFAULT_BUFFER_SIZE);
     return next;
   }
 }
@@ -32,7 +32,7 @@ import java.util.Arrays;
  * sacrificing code clarity to achieve better performance.
  */
 
-class Packed32 extends PackedInts.ReaderImpl implements PackedInts.Mutable {
+class Packed32 extends PackedInts.MutableImpl {
   static final int BLOCK_SIZE = 32; // 32 = int, 64 = long
   static final int BLOCK_BITS = 5; // The #bits representing BLOCK_SIZE
   static final int MOD_MASK = BLOCK_SIZE - 1; // x % BLOCK_SIZE
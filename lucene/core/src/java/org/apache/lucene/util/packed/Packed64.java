@@ -32,7 +32,7 @@ import java.util.Arrays;
  * sacrificing code clarity to achieve better performance.
  */
 
-class Packed64 extends PackedInts.ReaderImpl implements PackedInts.Mutable {
+class Packed64 extends PackedInts.MutableImpl {
   static final int BLOCK_SIZE = 64; // 32 = int, 64 = long
   static final int BLOCK_BITS = 6; // The #bits representing BLOCK_SIZE
   static final int MOD_MASK = BLOCK_SIZE - 1; // x % BLOCK_SIZE
@@ -199,6 +199,135 @@ class Packed64 extends PackedInts.ReaderImpl implements PackedInts.Mutable {
                            | ((value << shifts[base + 2]) & writeMasks[base+2]);
   }
 
+  /*
+   * The bulk methods walk the blocks sequentially instead of going through
+   * the shift and mask tables for every value: the bit position of the next
+   * value is simply the bit position of the current one plus bitsPerValue.
+   */
+
+  @Override
+  public int get(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int gets = Math.min(valueCount - index, len);
+    final long mask = bitsPerValue == 64 ? ~0L : ~(~0L << bitsPerValue);
+    final long majorBitPos = (long)index * bitsPerValue;
+    int elementPos = (int)(majorBitPos >>> BLOCK_BITS);
+    int bitPos = (int)(majorBitPos & MOD_MASK);
+    for (int o = off, end = off + gets; o < end; ++o) {
+      final int endBits = bitPos + bitsPerValue;
+      if (endBits <= BLOCK_SIZE) { // single block
+        arr[o] = (blocks[elementPos] >>> (BLOCK_SIZE - endBits)) & mask;
+      } else { // two blocks
+        final int rBits = endBits - BLOCK_SIZE;
+        arr[o] = ((blocks[elementPos] << rBits)
+            | (blocks[elementPos+1] >>> (BLOCK_SIZE - rBits))) & mask;
+      }
+      bitPos = endBits;
+      if (bitPos >= BLOCK_SIZE) {
+        bitPos -= BLOCK_SIZE;
+        ++elementPos;
+      }
+    }
+    return gets;
+  }
+
+  @Override
+  public int set(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    final int sets = Math.min(valueCount - index, len);
+    final long mask = bitsPerValue == 64 ? ~0L : ~(~0L << bitsPerValue);
+    final long majorBitPos = (long)index * bitsPerValue;
+    int elementPos = (int)(majorBitPos >>> BLOCK_BITS);
+    int bitPos = (int)(majorBitPos & MOD_MASK);
+    for (int o = off, end = off + sets; o < end; ++o) {
+      final long value = arr[o];
+      final int endBits = bitPos + bitsPerValue;
+      if (endBits <= BLOCK_SIZE) { // single block
+        final int shift = BLOCK_SIZE - endBits;
+        blocks[elementPos] = (blocks[elementPos] & ~(mask << shift))
+                             | (value << shift);
+      } else { // two blocks
+        final int rBits = endBits - BLOCK_SIZE;
+        blocks[elementPos  ] = (blocks[elementPos  ] & ~(mask >>> rBits))
+                               | (value >>> rBits);
+        blocks[elementPos+1] = (blocks[elementPos+1] & (~0L >>> rBits))
+                               | (value << (BLOCK_SIZE - rBits));
+      }
+      bitPos = endBits;
+      if (bitPos >= BLOCK_SIZE) {
+        bitPos -= BLOCK_SIZE;
+        ++elementPos;
+      }
+    }
+    return sets;
+  }
+
+  @Override
+  public void fill(int fromIndex, int toIndex, long val) {
+    assert PackedInts.bitsRequired(val) <= bitsPerValue;
+    assert fromIndex <= toIndex;
+
+    // minimum number of values that use an exact number of full blocks
+    final int nAlignedValues = BLOCK_SIZE / gcd(BLOCK_SIZE, bitsPerValue);
+    final int span = toIndex - fromIndex;
+    if (span <= 3 * nAlignedValues) {
+      // there needs be at least 2 * nAlignedValues aligned values for the
+      // block approach to be worth trying
+      super.fill(fromIndex, toIndex, val);
+      return;
+    }
+
+    // fill the first values naively until the next block start
+    final int fromIndexModNAlignedValues = fromIndex % nAlignedValues;
+    if (fromIndexModNAlignedValues != 0) {
+      for (int i = fromIndexModNAlignedValues; i < nAlignedValues; ++i) {
+        set(fromIndex++, val);
+      }
+    }
+    assert fromIndex % nAlignedValues == 0;
+
+    // compute the long[] blocks for nAlignedValues consecutive values and
+    // use them to set as many values as possible without applying any mask
+    // or shift
+    final int nAlignedBlocks = (nAlignedValues * bitsPerValue) >> BLOCK_BITS;
+    final long[] nAlignedValuesBlocks;
+    {
+      Packed64 values = new Packed64(nAlignedValues, bitsPerValue);
+      for (int i = 0; i < nAlignedValues; ++i) {
+        values.set(i, val);
+      }
+      nAlignedValuesBlocks = values.blocks;
+      assert nAlignedBlocks <= nAlignedValuesBlocks.length;
+    }
+    final int startBlock = (int) (((long) fromIndex * bitsPerValue) >>> BLOCK_BITS);
+    final int endBlock = (int) (((long) toIndex * bitsPerValue) >>> BLOCK_BITS);
+    for (int block = startBlock; block < endBlock; ++block) {
+      final long blockValue = nAlignedValuesBlocks[block % nAlignedBlocks];
+      blocks[block] = blockValue;
+    }
+
+    // fill the gap
+    for (int i = (int) (((long) endBlock << BLOCK_BITS) / bitsPerValue); i < toIndex; ++i) {
+      set(i, val);
+    }
+  }
+
+  private static int gcd(int a, int b) {
+    if (a < b) {
+      return gcd(b, a);
+    } else if (b == 0) {
+      return a;
+    } else {
+      return gcd(b, a % b);
+    }
+  }
+
   @Override
   public String toString() {
     return "Packed64(bitsPerValue=" + bitsPerValue + ", size="
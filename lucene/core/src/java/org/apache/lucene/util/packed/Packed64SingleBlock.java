@@ -0,0 +1,480 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * This class is similar to {@link Packed64} except that it trades space for
+ * speed by ensuring that a single block needs to be read/written in order to
+ * read/write a value: a 64-bit block holds <code>64 / bitsPerValue</code>
+ * values and the remaining <code>64 % bitsPerValue</code> bits are wasted.
+ * <p>
+ * There is one final subclass per supported number of bits per value so that
+ * the divisions, shifts and masks of the single-value accessors are
+ * constants.
+ * <p>
+ * This format is only used in memory, see
+ * {@link PackedInts#getMutable(int, int, float)}.
+ */
+abstract class Packed64SingleBlock extends PackedInts.MutableImpl {
+
+  private static final int[] SUPPORTED_BITS_PER_VALUE = new int[] {1, 2, 3, 4, 5, 6, 7, 9, 10, 12, 21};
+
+  /** Returns true if the given number of bits per value is supported. */
+  public static boolean isSupported(int bitsPerValue) {
+    return Arrays.binarySearch(SUPPORTED_BITS_PER_VALUE, bitsPerValue) >= 0;
+  }
+
+  /** Returns the number of wasted bits per value. */
+  public static float overheadPerValue(int bitsPerValue) {
+    assert isSupported(bitsPerValue);
+    final int valuesPerBlock = 64 / bitsPerValue;
+    final int overhead = 64 % bitsPerValue;
+    return (float) overhead / valuesPerBlock;
+  }
+
+  /** Creates a new instance for the given number of bits per value. */
+  public static Packed64SingleBlock create(int valueCount, int bitsPerValue) {
+    switch (bitsPerValue) {
+      case 1:
+        return new Packed64SingleBlock1(valueCount);
+      case 2:
+        return new Packed64SingleBlock2(valueCount);
+      case 3:
+        return new Packed64SingleBlock3(valueCount);
+      case 4:
+        return new Packed64SingleBlock4(valueCount);
+      case 5:
+        return new Packed64SingleBlock5(valueCount);
+      case 6:
+        return new Packed64SingleBlock6(valueCount);
+      case 7:
+        return new Packed64SingleBlock7(valueCount);
+      case 9:
+        return new Packed64SingleBlock9(valueCount);
+      case 10:
+        return new Packed64SingleBlock10(valueCount);
+      case 12:
+        return new Packed64SingleBlock12(valueCount);
+      case 21:
+        return new Packed64SingleBlock21(valueCount);
+      default:
+        throw new IllegalArgumentException("Unsupported bitsPerValue: " + bitsPerValue);
+    }
+  }
+
+  private static int requiredCapacity(int valueCount, int valuesPerBlock) {
+    return valueCount / valuesPerBlock
+        + (valueCount % valuesPerBlock == 0 ? 0 : 1);
+  }
+
+  protected final long[] blocks;
+  protected final int valuesPerBlock;
+  protected final long mask;
+
+  Packed64SingleBlock(int valueCount, int bitsPerValue) {
+    super(valueCount, bitsPerValue);
+    assert isSupported(bitsPerValue);
+    valuesPerBlock = 64 / bitsPerValue;
+    blocks = new long[requiredCapacity(valueCount, valuesPerBlock)];
+    mask = ~(~0L << bitsPerValue);
+  }
+
+  public long get(int index) {
+    final int o = index / valuesPerBlock;
+    final int shift = (index % valuesPerBlock) * bitsPerValue;
+    return (blocks[o] >>> shift) & mask;
+  }
+
+  public void set(int index, long value) {
+    final int o = index / valuesPerBlock;
+    final int shift = (index % valuesPerBlock) * bitsPerValue;
+    blocks[o] = (blocks[o] & ~(mask << shift)) | (value << shift);
+  }
+
+  @Override
+  public int get(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    len = Math.min(len, valueCount - index);
+    final int originalIndex = index;
+
+    // go to the next block boundary
+    final int offsetInBlock = index % valuesPerBlock;
+    if (offsetInBlock != 0) {
+      for (int i = offsetInBlock; i < valuesPerBlock && len > 0; ++i) {
+        arr[off++] = get(index++);
+        --len;
+      }
+      if (len == 0) {
+        return index - originalIndex;
+      }
+    }
+
+    // decode whole blocks
+    assert index % valuesPerBlock == 0;
+    int blockIndex = index / valuesPerBlock;
+    while (len >= valuesPerBlock) {
+      long block = blocks[blockIndex++];
+      for (int i = 0; i < valuesPerBlock; ++i) {
+        arr[off++] = block & mask;
+        block >>>= bitsPerValue;
+      }
+      index += valuesPerBlock;
+      len -= valuesPerBlock;
+    }
+
+    // the remaining values
+    for (; len > 0; --len) {
+      arr[off++] = get(index++);
+    }
+
+    return index - originalIndex;
+  }
+
+  @Override
+  public int set(int index, long[] arr, int off, int len) {
+    assert len > 0 : "len must be > 0 (got " + len + ")";
+    assert index >= 0 && index < valueCount;
+    assert off + len <= arr.length;
+
+    len = Math.min(len, valueCount - index);
+    final int originalIndex = index;
+
+    // go to the next block boundary
+    final int offsetInBlock = index % valuesPerBlock;
+    if (offsetInBlock != 0) {
+      for (int i = offsetInBlock; i < valuesPerBlock && len > 0; ++i) {
+        set(index++, arr[off++]);
+        --len;
+      }
+      if (len == 0) {
+        return index - originalIndex;
+      }
+    }
+
+    // encode whole blocks
+    assert index % valuesPerBlock == 0;
+    int blockIndex = index / valuesPerBlock;
+    while (len >= valuesPerBlock) {
+      long block = 0L;
+      for (int i = 0, shift = 0; i < valuesPerBlock; ++i, shift += bitsPerValue) {
+        block |= arr[off++] << shift;
+      }
+      blocks[blockIndex++] = block;
+      index += valuesPerBlock;
+      len -= valuesPerBlock;
+    }
+
+    // the remaining values
+    for (; len > 0; --len) {
+      set(index++, arr[off++]);
+    }
+
+    return index - originalIndex;
+  }
+
+  @Override
+  public void fill(int fromIndex, int toIndex, long val) {
+    assert fromIndex >= 0;
+    assert fromIndex <= toIndex;
+    assert (val & mask) == val;
+
+    if (toIndex - fromIndex <= valuesPerBlock << 1) {
+      // there needs to be at least one full block to set for the block
+      // approach to be worth trying
+      super.fill(fromIndex, toIndex, val);
+      return;
+    }
+
+    // set values naively until the next block start
+    int fromOffsetInBlock = fromIndex % valuesPerBlock;
+    if (fromOffsetInBlock != 0) {
+      for (int i = fromOffsetInBlock; i < valuesPerBlock; ++i) {
+        set(fromIndex++, val);
+      }
+      assert fromIndex % valuesPerBlock == 0;
+    }
+
+    // bulk set of the inner blocks
+    final int fromBlock = fromIndex / valuesPerBlock;
+    final int toBlock = toIndex / valuesPerBlock;
+    assert fromBlock * valuesPerBlock == fromIndex;
+
+    long blockValue = 0L;
+    for (int i = 0; i < valuesPerBlock; ++i) {
+      blockValue = blockValue | (val << (i * bitsPerValue));
+    }
+    Arrays.fill(blocks, fromBlock, toBlock, blockValue);
+
+    // fill the gap
+    for (int i = valuesPerBlock * toBlock; i < toIndex; ++i) {
+      set(i, val);
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(blocks, 0L);
+  }
+
+  public long ramBytesUsed() {
+    return RamUsageEstimator.sizeOf(blocks);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(bitsPerValue=" + bitsPerValue
+        + ", size=" + size() + ", elements.length=" + blocks.length + ")";
+  }
+
+  static final class Packed64SingleBlock1 extends Packed64SingleBlock {
+
+    Packed64SingleBlock1(int valueCount) {
+      super(valueCount, 1);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 64;
+      final int shift = (index % 64) * 1;
+      return (blocks[o] >>> shift) & 1L;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 64;
+      final int shift = (index % 64) * 1;
+      blocks[o] = (blocks[o] & ~(1L << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock2 extends Packed64SingleBlock {
+
+    Packed64SingleBlock2(int valueCount) {
+      super(valueCount, 2);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 32;
+      final int shift = (index % 32) * 2;
+      return (blocks[o] >>> shift) & 3L;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 32;
+      final int shift = (index % 32) * 2;
+      blocks[o] = (blocks[o] & ~(3L << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock3 extends Packed64SingleBlock {
+
+    Packed64SingleBlock3(int valueCount) {
+      super(valueCount, 3);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 21;
+      final int shift = (index % 21) * 3;
+      return (blocks[o] >>> shift) & 7L;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 21;
+      final int shift = (index % 21) * 3;
+      blocks[o] = (blocks[o] & ~(7L << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock4 extends Packed64SingleBlock {
+
+    Packed64SingleBlock4(int valueCount) {
+      super(valueCount, 4);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 16;
+      final int shift = (index % 16) * 4;
+      return (blocks[o] >>> shift) & 15L;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 16;
+      final int shift = (index % 16) * 4;
+      blocks[o] = (blocks[o] & ~(15L << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock5 extends Packed64SingleBlock {
+
+    Packed64SingleBlock5(int valueCount) {
+      super(valueCount, 5);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 12;
+      final int shift = (index % 12) * 5;
+      return (blocks[o] >>> shift) & 0x1FL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 12;
+      final int shift = (index % 12) * 5;
+      blocks[o] = (blocks[o] & ~(0x1FL << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock6 extends Packed64SingleBlock {
+
+    Packed64SingleBlock6(int valueCount) {
+      super(valueCount, 6);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 10;
+      final int shift = (index % 10) * 6;
+      return (blocks[o] >>> shift) & 0x3FL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 10;
+      final int shift = (index % 10) * 6;
+      blocks[o] = (blocks[o] & ~(0x3FL << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock7 extends Packed64SingleBlock {
+
+    Packed64SingleBlock7(int valueCount) {
+      super(valueCount, 7);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 9;
+      final int shift = (index % 9) * 7;
+      return (blocks[o] >>> shift) & 0x7FL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 9;
+      final int shift = (index % 9) * 7;
+      blocks[o] = (blocks[o] & ~(0x7FL << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock9 extends Packed64SingleBlock {
+
+    Packed64SingleBlock9(int valueCount) {
+      super(valueCount, 9);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 7;
+      final int shift = (index % 7) * 9;
+      return (blocks[o] >>> shift) & 0x1FFL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 7;
+      final int shift = (index % 7) * 9;
+      blocks[o] = (blocks[o] & ~(0x1FFL << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock10 extends Packed64SingleBlock {
+
+    Packed64SingleBlock10(int valueCount) {
+      super(valueCount, 10);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 6;
+      final int shift = (index % 6) * 10;
+      return (blocks[o] >>> shift) & 0x3FFL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 6;
+      final int shift = (index % 6) * 10;
+      blocks[o] = (blocks[o] & ~(0x3FFL << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock12 extends Packed64SingleBlock {
+
+    Packed64SingleBlock12(int valueCount) {
+      super(valueCount, 12);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 5;
+      final int shift = (index % 5) * 12;
+      return (blocks[o] >>> shift) & 0xFFFL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 5;
+      final int shift = (index % 5) * 12;
+      blocks[o] = (blocks[o] & ~(0xFFFL << shift)) | (value << shift);
+    }
+  }
+
+  static final class Packed64SingleBlock21 extends Packed64SingleBlock {
+
+    Packed64SingleBlock21(int valueCount) {
+      super(valueCount, 21);
+    }
+
+    @Override
+    public long get(int index) {
+      final int o = index / 3;
+      final int shift = (index % 3) * 21;
+      return (blocks[o] >>> shift) & 0x1FFFFFL;
+    }
+
+    @Override
+    public void set(int index, long value) {
+      final int o = index / 3;
+      final int shift = (index % 3) * 21;
+      blocks[o] = (blocks[o] & ~(0x1FFFFFL << shift)) | (value << shift);
+    }
+  }
+}
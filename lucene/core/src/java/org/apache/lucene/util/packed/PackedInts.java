@@ -42,6 +42,31 @@ public class PackedInts {
   private final static int VERSION_START = 0;
   private final static int VERSION_CURRENT = VERSION_START;
 
+  /**
+   * At most 700% memory overhead, always select a direct implementation.
+   */
+  public static final float FASTEST = 7f;
+
+  /**
+   * At most 50% memory overhead, always select a reasonably fast implementation.
+   */
+  public static final float FAST = 0.5f;
+
+  /**
+   * At most 20% memory overhead.
+   */
+  public static final float DEFAULT = 0.2f;
+
+  /**
+   * No memory overhead at all, but the returned implementation may be slow.
+   */
+  public static final float COMPACT = 0f;
+
+  /**
+   * Default amount of memory to use for bulk operations.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 1024; // 1K
+
   /**
    * A read-only random access array of positive integers.
    * @lucene.internal
@@ -53,6 +78,16 @@ public class PackedInts {
      */
     long get(int index);
 
+    /**
+     * Bulk get: read at least one and at most <code>len</code> values
+     * starting from <code>index</code> into
+     * <code>arr[off:off+len]</code> and return the actual number of
+     * values that have been read. Implementations are free to read less
+     * than <code>len</code> values, callers should loop until they got
+     * everything they need.
+     */
+    int get(int index, long[] arr, int off, int len);
+
     /**
      * @return the number of bits used to store any given value.
      *         Note: This does not imply that memory usage is
@@ -116,6 +151,19 @@ public class PackedInts {
      */
     void set(int index, long value);
 
+    /**
+     * Bulk set: set at least one and at most <code>len</code> values
+     * starting from <code>index</code> to the values of
+     * <code>arr[off:off+len]</code> and return the actual number of
+     * values that have been written.
+     */
+    int set(int index, long[] arr, int off, int len);
+
+    /**
+     * Fill the range [fromIndex, toIndex) with <code>val</code>.
+     */
+    void fill(int fromIndex, int toIndex, long val);
+
     /**
      * Sets all values to 0.
      */
@@ -156,6 +204,50 @@ public class PackedInts {
     public boolean hasArray() {
       return false;
     }
+
+    public int get(int index, long[] arr, int off, int len) {
+      assert len > 0 : "len must be > 0 (got " + len + ")";
+      assert index >= 0 && index < valueCount;
+      assert off + len <= arr.length;
+
+      final int gets = Math.min(valueCount - index, len);
+      for (int i = index, o = off, end = index + gets; i < end; ++i, ++o) {
+        arr[o] = get(i);
+      }
+      return gets;
+    }
+  }
+
+  /**
+   * A {@link ReaderImpl} that is also {@link Mutable}, with naive
+   * implementations of the bulk methods.
+   * @lucene.internal
+   */
+  public static abstract class MutableImpl extends ReaderImpl implements Mutable {
+
+    protected MutableImpl(int valueCount, int bitsPerValue) {
+      super(valueCount, bitsPerValue);
+    }
+
+    public int set(int index, long[] arr, int off, int len) {
+      assert len > 0 : "len must be > 0 (got " + len + ")";
+      assert index >= 0 && index < valueCount;
+      assert off + len <= arr.length;
+
+      final int sets = Math.min(valueCount - index, len);
+      for (int i = index, o = off, end = index + sets; i < end; ++i, ++o) {
+        set(i, arr[o]);
+      }
+      return sets;
+    }
+
+    public void fill(int fromIndex, int toIndex, long val) {
+      assert val <= maxValue(bitsPerValue);
+      assert fromIndex <= toIndex;
+      for (int i = fromIndex; i < toIndex; ++i) {
+        set(i, val);
+      }
+    }
   }
 
   /** A write-once Writer.
@@ -250,32 +342,75 @@ public class PackedInts {
    * Create a packed integer array with the given amount of values initialized
    * to 0. the valueCount and the bitsPerValue cannot be changed after creation.
    * All Mutables known by this factory are kept fully in RAM.
+   * This is the same as calling {@link #getMutable(int, int, float)} with
+   * {@link #COMPACT}.
    * @param valueCount   the number of elements.
    * @param bitsPerValue the number of bits available for any given value.
    * @return a mutable packed integer array.
-   * @throws java.io.IOException if the Mutable could not be created. With the
-   *         current implementations, this never happens, but the method
-   *         signature allows for future persistence-backed Mutables.
    * @lucene.internal
    */
   public static Mutable getMutable(
          int valueCount, int bitsPerValue) {
-    switch (bitsPerValue) {
-    case 8:
+    return getMutable(valueCount, bitsPerValue, COMPACT);
+  }
+
+  /**
+   * Create a packed integer array with the given amount of values initialized
+   * to 0. the valueCount and the bitsPerValue cannot be changed after creation.
+   * All Mutables known by this factory are kept fully in RAM.
+   * <p>
+   * Positive values of <code>acceptableOverheadRatio</code> will trade space
+   * for speed by selecting a faster but potentially less memory-efficient
+   * implementation: either one of the direct (byte[], short[], int[],
+   * long[]) implementations or one that never lets a value span two
+   * 64-bit blocks. An <code>acceptableOverheadRatio</code> of
+   * {@link #COMPACT} will make sure that the most memory-efficient
+   * implementation is selected whereas {@link #FASTEST} will make sure
+   * that the fastest implementation is selected.
+   *
+   * @param valueCount   the number of elements.
+   * @param bitsPerValue the number of bits available for any given value.
+   * @param acceptableOverheadRatio an acceptable overhead
+   *        ratio per value
+   * @return a mutable packed integer array.
+   * @lucene.internal
+   */
+  public static Mutable getMutable(int valueCount,
+      int bitsPerValue, float acceptableOverheadRatio) {
+    acceptableOverheadRatio = Math.max(COMPACT, acceptableOverheadRatio);
+    acceptableOverheadRatio = Math.min(FASTEST, acceptableOverheadRatio);
+    // in bits
+    final float acceptableOverheadPerValue = acceptableOverheadRatio * bitsPerValue;
+    final int maxBitsPerValue = bitsPerValue + (int) acceptableOverheadPerValue;
+
+    if (bitsPerValue <= 8 && maxBitsPerValue >= 8) {
       return new Direct8(valueCount);
-    case 16:
+    } else if (bitsPerValue <= 16 && maxBitsPerValue >= 16) {
       return new Direct16(valueCount);
-    case 32:
+    } else if (bitsPerValue <= 32 && maxBitsPerValue >= 32) {
       return new Direct32(valueCount);
-    case 64:
+    } else if (bitsPerValue <= 64 && maxBitsPerValue >= 64) {
       return new Direct64(valueCount);
-    default:
-      if (Constants.JRE_IS_64BIT || bitsPerValue >= 32) {
-        return new Packed64(valueCount, bitsPerValue);
-      } else {
-        return new Packed32(valueCount, bitsPerValue);
+    }
+
+    if (Constants.JRE_IS_64BIT) {
+      // values that do not span two blocks are cheaper to decode
+      for (int bpv = bitsPerValue; bpv <= maxBitsPerValue; ++bpv) {
+        if (Packed64SingleBlock.isSupported(bpv)) {
+          final float overhead = Packed64SingleBlock.overheadPerValue(bpv);
+          final float acceptableOverhead = acceptableOverheadPerValue + bitsPerValue - bpv;
+          if (overhead <= acceptableOverhead) {
+            return Packed64SingleBlock.create(valueCount, bpv);
+          }
+        }
       }
     }
+
+    if (Constants.JRE_IS_64BIT || bitsPerValue >= 32) {
+      return new Packed64(valueCount, bitsPerValue);
+    } else {
+      return new Packed32(valueCount, bitsPerValue);
+    }
   }
 
   /**
@@ -343,4 +478,44 @@ public class PackedInts {
       return bitsPerValue;
     }
   }
+
+  /**
+   * Copy <code>src[srcPos:srcPos+len]</code> into
+   * <code>dest[destPos:destPos+len]</code> using at most <code>mem</code>
+   * bytes.
+   */
+  public static void copy(Reader src, int srcPos, Mutable dest, int destPos, int len, int mem) {
+    assert srcPos + len <= src.size();
+    assert destPos + len <= dest.size();
+    final int capacity = mem >>> 3;
+    if (capacity == 0) {
+      for (int i = 0; i < len; ++i) {
+        dest.set(destPos++, src.get(srcPos++));
+      }
+    } else {
+      // use bulk operations
+      final long[] buf = new long[Math.min(capacity, len)];
+      int remaining = 0;
+      while (len > 0) {
+        final int read = src.get(srcPos, buf, remaining, Math.min(len, buf.length - remaining));
+        assert read > 0;
+        srcPos += read;
+        len -= read;
+        remaining += read;
+        final int written = dest.set(destPos, buf, 0, remaining);
+        assert written > 0;
+        destPos += written;
+        if (written < remaining) {
+          System.arraycopy(buf, written, buf, 0, remaining - written);
+        }
+        remaining -= written;
+      }
+      while (remaining > 0) {
+        final int written = dest.set(destPos, buf, 0, remaining);
+        destPos += written;
+        remaining -= written;
+        System.arraycopy(buf, written, buf, 0, remaining);
+      }
+    }
+  }
 }
@@ -0,0 +1,215 @@
+package org.apache.lucene.analysis;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.util._TestUtil;
+
+public class TestCachingAnalyzerWrapper extends BaseTokenStreamTestCase {
+
+  public void testReplay() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(10, 100);
+    final Analyzer a = new CachingAnalyzerWrapper(new MockAnalyzer(random), cache);
+    for (int iter = 0; iter < 3; iter++) {
+      assertAnalyzesTo(a, "The quick Brown fox",
+          new String[] { "the", "quick", "brown", "fox" },
+          new int[] { 0, 4, 10, 16 },
+          new int[] { 3, 9, 15, 19 },
+          new int[] { 1, 1, 1, 1 });
+    }
+    assertEquals(1, cache.size());
+    assertEquals(3, cache.getLookupCount());
+    assertEquals(2, cache.getHitCount());
+
+    // same text in another field is a different entry:
+    assertTokenStreamContents(a.tokenStream("other", new StringReader("The quick Brown fox")),
+        new String[] { "the", "quick", "brown", "fox" },
+        new int[] { 0, 4, 10, 16 },
+        new int[] { 3, 9, 15, 19 },
+        19);
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  public void testEndState() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(10, 100);
+    final Analyzer a = new CachingAnalyzerWrapper(new MockAnalyzer(random), cache);
+    for (int iter = 0; iter < 2; iter++) {
+      // trailing whitespace must be reflected in the final offset:
+      assertTokenStreamContents(a.tokenStream("field", new StringReader("a b   ")),
+          new String[] { "a", "b" },
+          new int[] { 0, 2 },
+          new int[] { 1, 3 },
+          6);
+    }
+    assertEquals(1, cache.getHitCount());
+  }
+
+  public void testDifferentAttributes() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(10, 100);
+    final Analyzer a = new CachingAnalyzerWrapper(new MockAnalyzer(random), cache);
+    // record with an extra attribute added by the consumer:
+    final Analyzer other = new CachingAnalyzerWrapper(a, cache);
+    assertAnalyzesTo(other, "a b", new String[] { "a", "b" });
+    final Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          // this thread's chain lacks CheckClearAttributesAttribute:
+          TokenStream ts = other.tokenStream("field", new StringReader("a b"));
+          CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+          ts.reset();
+          assertTrue(ts.incrementToken());
+          assertEquals("a", termAtt.toString());
+          assertTrue(ts.incrementToken());
+          assertEquals("b", termAtt.toString());
+          assertFalse(ts.incrementToken());
+          ts.end();
+          ts.close();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    t.start();
+    t.join();
+  }
+
+  public void testConsumerAddsAttribute() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(10, 100);
+    final Analyzer delegate = new MockAnalyzer(random);
+    final Analyzer a = new CachingAnalyzerWrapper(delegate, cache);
+    final AnalysisCache.Key key = new AnalysisCache.Key(delegate, "field", "a b");
+    // record in another thread, whose chain has only the
+    // analyzer's attributes:
+    final Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          TokenStream ts = a.tokenStream("field", new StringReader("a b"));
+          ts.reset();
+          while (ts.incrementToken()) {
+          }
+          ts.end();
+          ts.close();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    t.start();
+    t.join();
+    assertFalse(cache.get(key).attributeClasses.contains(FlagsAttribute.class));
+
+    // this consumer adds an attribute the recording lacks,
+    // which a replay would not set:
+    for (int iter = 0; iter < 2; iter++) {
+      TokenStream ts = a.tokenStream("field", new StringReader("a b"));
+      CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+      FlagsAttribute flagsAtt = ts.addAttribute(FlagsAttribute.class);
+      ts.reset();
+      assertTrue(ts.incrementToken());
+      assertEquals("a", termAtt.toString());
+      assertEquals(0, flagsAtt.getFlags());
+      assertTrue(ts.incrementToken());
+      assertEquals("b", termAtt.toString());
+      assertFalse(ts.incrementToken());
+      ts.end();
+      ts.close();
+    }
+    // re-recorded with the extra attribute:
+    assertTrue(cache.get(key).attributeClasses.contains(FlagsAttribute.class));
+  }
+
+  public void testLongTextNotCached() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(10, 5);
+    final Analyzer a = new CachingAnalyzerWrapper(new MockAnalyzer(random), cache);
+    for (int iter = 0; iter < 2; iter++) {
+      assertAnalyzesTo(a, "abc def ghi", new String[] { "abc", "def", "ghi" });
+    }
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getLookupCount());
+    assertAnalyzesTo(a, "abc", new String[] { "abc" });
+    assertEquals(1, cache.size());
+  }
+
+  public void testEviction() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(2, 100);
+    final Analyzer a = new CachingAnalyzerWrapper(new MockAnalyzer(random), cache);
+    assertAnalyzesTo(a, "one", new String[] { "one" });
+    assertAnalyzesTo(a, "two", new String[] { "two" });
+    assertAnalyzesTo(a, "one", new String[] { "one" });
+    assertAnalyzesTo(a, "three", new String[] { "three" });
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    // "two" was least recently used:
+    assertAnalyzesTo(a, "one", new String[] { "one" });
+    assertAnalyzesTo(a, "two", new String[] { "two" });
+    assertEquals(2, cache.getHitCount());
+    assertEquals(6, cache.getLookupCount());
+  }
+
+  public void testSharedCache() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(10, 100);
+    final Analyzer a1 = new CachingAnalyzerWrapper(new MockAnalyzer(random, MockTokenizer.WHITESPACE, true), cache);
+    final Analyzer a2 = new CachingAnalyzerWrapper(new MockAnalyzer(random, MockTokenizer.WHITESPACE, false), cache);
+    assertAnalyzesTo(a1, "Foo Bar", new String[] { "foo", "bar" });
+    assertAnalyzesTo(a2, "Foo Bar", new String[] { "Foo", "Bar" });
+    assertEquals(2, cache.size());
+    assertEquals(0, cache.getHitCount());
+  }
+
+  public void testRandomStrings() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(_TestUtil.nextInt(random, 1, 100), _TestUtil.nextInt(random, 0, 50));
+    checkRandomData(random, new CachingAnalyzerWrapper(new MockAnalyzer(random), cache), 1000*RANDOM_MULTIPLIER);
+  }
+
+  public void testRandomRepeats() throws Exception {
+    final AnalysisCache cache = new AnalysisCache(_TestUtil.nextInt(random, 1, 20), 100);
+    final Analyzer uncached = new MockAnalyzer(random);
+    final Analyzer cached = new CachingAnalyzerWrapper(new MockAnalyzer(random), cache);
+    final String[] values = new String[10];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = _TestUtil.randomSimpleString(random, 30);
+    }
+    final int iters = atLeast(200);
+    for (int iter = 0; iter < iters; iter++) {
+      final String value = values[random.nextInt(values.length)];
+      final String field = random.nextBoolean() ? "f1" : "f2";
+      assertEquals(tokens(uncached, field, value), tokens(cached, field, value));
+    }
+    assertTrue(cache.getHitCount() > 0);
+  }
+
+  private static String tokens(Analyzer a, String field, String value) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    final TokenStream ts = a.tokenStream(field, new StringReader(value));
+    final CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+    ts.reset();
+    while (ts.incrementToken()) {
+      sb.append(termAtt).append(' ');
+    }
+    ts.end();
+    ts.close();
+    return sb.toString();
+  }
+}
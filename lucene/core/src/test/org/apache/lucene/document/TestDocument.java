@@ -33,6 +33,8 @@ import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -40,6 +42,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 
 
 /**
@@ -390,4 +393,90 @@ public class TestDocument extends LuceneTestCase {
     iw.close();
     dir.close();
   }
+
+  // the same Document and Field instances can be re-used
+  // across addDocument calls by changing their values:
+  public void testReuseFields() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random, dir);
+    Document doc = new Document();
+    Field id = new StringField("id", "");
+    Field body = new TextField("body", "");
+    doc.add(id);
+    doc.add(body);
+    final int numDocs = atLeast(20);
+    for(int i=0;i<numDocs;i++) {
+      id.setStringValue("id" + i);
+      body.setStringValue("common text" + (i % 2 == 0 ? " even" : " odd") + " doc" + i);
+      assertSame(id.tokenStream(null), id.tokenStream(null));
+      w.addDocument(doc);
+    }
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = newSearcher(r);
+    assertEquals(numDocs, s.search(new TermQuery(new Term("body", "common")), 1).totalHits);
+    assertEquals((numDocs+1)/2, s.search(new TermQuery(new Term("body", "even")), 1).totalHits);
+    for(int i=0;i<numDocs;i++) {
+      assertEquals(1, s.search(new TermQuery(new Term("id", "id" + i)), 1).totalHits);
+      assertEquals(1, s.search(new TermQuery(new Term("body", "doc" + i)), 1).totalHits);
+    }
+    r.close();
+    dir.close();
+  }
+
+  // Field instances must not be shared across threads, but
+  // each thread can re-use its own:
+  public void testReuseFieldsPerThread() throws Exception {
+    Directory dir = newDirectory();
+    final RandomIndexWriter w = new RandomIndexWriter(random, dir);
+    final int numThreads = _TestUtil.nextInt(random, 2, 5);
+    final int numDocs = atLeast(20);
+    final Thread[] threads = new Thread[numThreads];
+    final Throwable[] failures = new Throwable[numThreads];
+    for(int t=0;t<numThreads;t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            Document doc = new Document();
+            Field id = new StringField("id", "");
+            Field body = new TextField("body", "");
+            doc.add(id);
+            doc.add(body);
+            for(int i=0;i<numDocs;i++) {
+              id.setStringValue("id" + thread + "_" + i);
+              body.setStringValue("common thread" + thread + " doc" + i);
+              w.addDocument(doc);
+            }
+          } catch (Throwable th) {
+            failures[thread] = th;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for(int t=0;t<numThreads;t++) {
+      threads[t].join();
+      if (failures[t] != null) {
+        throw new RuntimeException(failures[t]);
+      }
+    }
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = newSearcher(r);
+    assertEquals(numThreads * numDocs, s.search(new TermQuery(new Term("body", "common")), 1).totalHits);
+    for(int t=0;t<numThreads;t++) {
+      assertEquals(numDocs, s.search(new TermQuery(new Term("body", "thread" + t)), 1).totalHits);
+      for(int i=0;i<numDocs;i++) {
+        BooleanQuery q = new BooleanQuery();
+        q.add(new TermQuery(new Term("id", "id" + t + "_" + i)), BooleanClause.Occur.MUST);
+        q.add(new TermQuery(new Term("body", "thread" + t)), BooleanClause.Occur.MUST);
+        q.add(new TermQuery(new Term("body", "doc" + i)), BooleanClause.Occur.MUST);
+        assertEquals(1, s.search(q, 1).totalHits);
+      }
+    }
+    r.close();
+    dir.close();
+  }
 }
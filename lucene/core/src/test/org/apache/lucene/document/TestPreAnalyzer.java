@@ -0,0 +1,190 @@
+package org.apache.lucene.document;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockPayloadAnalyzer;
+import org.apache.lucene.analysis.PreAnalyzedTokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FieldsEnum;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util._TestUtil;
+
+public class TestPreAnalyzer extends LuceneTestCase {
+
+  public void testReplay() throws Exception {
+    Analyzer a = new MockPayloadAnalyzer();
+    PreAnalyzedTokenStream ts = new PreAnalyzedTokenStream(a.tokenStream("f", new StringReader("foo bar  foo")));
+    assertEquals(3, ts.getTokenCount());
+    TermToBytesRefAttribute termAtt = ts.getAttribute(TermToBytesRefAttribute.class);
+    OffsetAttribute offsetAtt = ts.getAttribute(OffsetAttribute.class);
+    for(int iter=0;iter<2;iter++) {
+      ts.reset();
+      assertTrue(ts.incrementToken());
+      assertEquals(new BytesRef("foo").hashCode(), termAtt.fillBytesRef());
+      assertEquals(new BytesRef("foo"), termAtt.getBytesRef());
+      assertEquals(0, offsetAtt.startOffset());
+      assertEquals(3, offsetAtt.endOffset());
+      assertTrue(ts.incrementToken());
+      assertEquals(new BytesRef("bar"), termAtt.getBytesRef());
+      assertTrue(ts.incrementToken());
+      assertEquals(new BytesRef("foo"), termAtt.getBytesRef());
+      assertEquals(9, offsetAtt.startOffset());
+      assertFalse(ts.incrementToken());
+      ts.end();
+      assertEquals(12, offsetAtt.endOffset());
+    }
+  }
+
+  public void testSameIndex() throws Exception {
+    final Analyzer a = new MockPayloadAnalyzer();
+    final FieldType vectorType = new FieldType(TextField.TYPE_STORED);
+    vectorType.setStoreTermVectors(true);
+    vectorType.setStoreTermVectorPositions(true);
+    vectorType.setStoreTermVectorOffsets(true);
+
+    final int numDocs = atLeast(100);
+    final String[][] texts = new String[numDocs][];
+    for(int i=0;i<numDocs;i++) {
+      texts[i] = new String[] {randomText(), randomText(), randomText()};
+    }
+
+    final Directory dir1 = newDirectory();
+    final Directory dir2 = newDirectory();
+    IndexWriter w1 = new IndexWriter(dir1, newIndexWriterConfig(TEST_VERSION_CURRENT, a).setMergePolicy(newLogMergePolicy()));
+    for(int i=0;i<numDocs;i++) {
+      w1.addDocument(makeDocument(i, texts[i], vectorType));
+    }
+    w1.close();
+
+    final ExecutorService executor = random.nextBoolean() ? null :
+      Executors.newFixedThreadPool(_TestUtil.nextInt(random, 1, 4), new NamedThreadFactory("TestPreAnalyzer"));
+    try {
+      IndexWriter w2 = new IndexWriter(dir2, newIndexWriterConfig(TEST_VERSION_CURRENT, a).setMergePolicy(newLogMergePolicy()));
+      PreAnalyzer preAnalyzer = new PreAnalyzer(a, executor);
+      List<Document> docs = new ArrayList<Document>();
+      for(int i=0;i<numDocs;i++) {
+        docs.add(makeDocument(i, texts[i], vectorType));
+      }
+      preAnalyzer.addDocuments(w2, docs.iterator(), _TestUtil.nextInt(random, 1, 20));
+      w2.close();
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      }
+    }
+
+    DirectoryReader r1 = DirectoryReader.open(dir1);
+    DirectoryReader r2 = DirectoryReader.open(dir2);
+    assertEquals(r1.maxDoc(), r2.maxDoc());
+    assertFieldsEquals(MultiFields.getFields(r1), MultiFields.getFields(r2));
+    for(int docID=0;docID<r1.maxDoc();docID++) {
+      assertEquals(r1.document(docID).get("id"), r2.document(docID).get("id"));
+      assertEquals(r1.document(docID).get("body"), r2.document(docID).get("body"));
+      assertFieldsEquals(r1.getTermVectors(docID), r2.getTermVectors(docID));
+    }
+    r1.close();
+    r2.close();
+    dir1.close();
+    dir2.close();
+  }
+
+  private String randomText() {
+    StringBuilder sb = new StringBuilder();
+    final int numTokens = _TestUtil.nextInt(random, 0, 20);
+    for(int i=0;i<numTokens;i++) {
+      sb.append(' ');
+      sb.append((char) _TestUtil.nextInt(random, 'a', 'g'));
+      if (random.nextBoolean()) {
+        sb.append((char) _TestUtil.nextInt(random, 'a', 'g'));
+      }
+    }
+    return sb.toString();
+  }
+
+  private Document makeDocument(int id, String[] texts, FieldType vectorType) {
+    Document doc = new Document();
+    doc.add(new StringField("id", ""+id));
+    doc.add(new Field("body", texts[0], vectorType));
+    doc.add(new TextField("body", texts[1]));
+    doc.add(new TextField("reader", new StringReader(texts[2])));
+    doc.add(new IntField("int", id));
+    return doc;
+  }
+
+  private void assertFieldsEquals(Fields fields1, Fields fields2) throws Exception {
+    FieldsEnum fieldsEnum1 = fields1.iterator();
+    FieldsEnum fieldsEnum2 = fields2.iterator();
+    String field;
+    while ((field = fieldsEnum1.next()) != null) {
+      assertEquals(field, fieldsEnum2.next());
+      Terms terms1 = fieldsEnum1.terms();
+      Terms terms2 = fieldsEnum2.terms();
+      TermsEnum termsEnum1 = terms1.iterator(null);
+      TermsEnum termsEnum2 = terms2.iterator(null);
+      BytesRef term;
+      while ((term = termsEnum1.next()) != null) {
+        assertEquals(term, termsEnum2.next());
+        DocsAndPositionsEnum postings1 = termsEnum1.docsAndPositions(null, null, false);
+        DocsAndPositionsEnum postings2 = termsEnum2.docsAndPositions(null, null, false);
+        if (postings1 == null) {
+          assertNull(postings2);
+          continue;
+        }
+        int docID;
+        while ((docID = postings1.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          assertEquals(docID, postings2.nextDoc());
+          assertEquals(postings1.freq(), postings2.freq());
+          for(int i=0;i<postings1.freq();i++) {
+            assertEquals(postings1.nextPosition(), postings2.nextPosition());
+            assertEquals(postings1.startOffset(), postings2.startOffset());
+            assertEquals(postings1.endOffset(), postings2.endOffset());
+            assertEquals(postings1.hasPayload(), postings2.hasPayload());
+            if (postings1.hasPayload()) {
+              assertEquals(postings1.getPayload(), postings2.getPayload());
+            }
+          }
+        }
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, postings2.nextDoc());
+      }
+      assertNull(termsEnum2.next());
+    }
+    assertNull(fieldsEnum2.next());
+  }
+}
@@ -22,9 +22,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldType;
@@ -94,6 +102,103 @@ public class TestCheckIndex extends LuceneTestCase {
     dir.close();
   }
 
+  private void addSegments(Directory dir, int numSegments) throws IOException {
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)).setMergePolicy(NoMergePolicy.COMPOUND_FILES));
+    for(int i=0;i<numSegments;i++) {
+      Document doc = new Document();
+      doc.add(newField("field", "aaa"+i, TextField.TYPE_STORED));
+      writer.addDocument(doc);
+      writer.commit();
+    }
+    writer.close();
+  }
+
+  public void testExecutorService() throws Exception {
+    Directory dir = newDirectory();
+    addSegments(dir, 5);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+    CheckIndex checker = new CheckIndex(dir);
+    checker.setInfoStream(new PrintStream(bos));
+    ExecutorService executor = Executors.newFixedThreadPool(3, new NamedThreadFactory("testExecutorService"));
+    checker.setExecutorService(executor);
+    CheckIndex.Status indexStatus = checker.checkIndex();
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.SECONDS);
+    if (indexStatus.clean == false) {
+      System.out.println(bos.toString());
+      fail();
+    }
+    assertEquals(5, indexStatus.segmentInfos.size());
+    assertEquals(5, indexStatus.newSegments.size());
+    // messages are printed in segment order:
+    final String output = bos.toString();
+    int last = -1;
+    for(int i=0;i<5;i++) {
+      final int pos = output.indexOf("  " + (i+1) + " of 5: name=" + indexStatus.segmentInfos.get(i).name);
+      assertTrue(pos > last);
+      last = pos;
+    }
+    dir.close();
+  }
+
+  public void testVerifiedSegments() throws Exception {
+    MockDirectoryWrapper dir = newDirectory();
+    // we corrupt the index below:
+    dir.setCheckIndexOnClose(false);
+    dir.setPreventDoubleWrite(false);
+    addSegments(dir, 3);
+    Directory verifiedDir = newDirectory();
+
+    CheckIndex checker = new CheckIndex(dir);
+    CheckIndex.VerifiedSegments verified = CheckIndex.VerifiedSegments.read(verifiedDir, "verified");
+    assertEquals(0, verified.size());
+    checker.setVerifiedSegments(verified);
+    CheckIndex.Status indexStatus = checker.checkIndex();
+    assertTrue(indexStatus.clean);
+    assertEquals(0, indexStatus.numPreviouslyVerified);
+    verified.write(verifiedDir, "verified");
+
+    // Add one more segment; only that one is fully checked
+    addSegments(dir, 1);
+    checker = new CheckIndex(dir);
+    verified = CheckIndex.VerifiedSegments.read(verifiedDir, "verified");
+    assertEquals(3, verified.size());
+    checker.setVerifiedSegments(verified);
+    indexStatus = checker.checkIndex();
+    assertTrue(indexStatus.clean);
+    assertEquals(3, indexStatus.numPreviouslyVerified);
+    assertEquals(4, verified.size());
+    for(CheckIndex.Status.SegmentInfoStatus seg : indexStatus.segmentInfos) {
+      assertEquals(seg.openReaderPassed, !seg.previouslyVerified);
+    }
+
+    // Flip a byte in a file of the first segment
+    final String fileName = indexStatus.segmentInfos.get(0).name + ".cfs";
+    assertTrue(dir.fileExists(fileName));
+    final IndexInput in = dir.openInput(fileName, IOContext.DEFAULT);
+    final byte[] bytes = new byte[(int) in.length()];
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    bytes[bytes.length/2]++;
+    dir.deleteFile(fileName);
+    final IndexOutput out = dir.createOutput(fileName, IOContext.DEFAULT);
+    out.writeBytes(bytes, bytes.length);
+    out.close();
+
+    checker = new CheckIndex(dir);
+    checker.setChecksumsOnly(true);
+    checker.setVerifiedSegments(verified);
+    indexStatus = checker.checkIndex();
+    assertFalse(indexStatus.clean);
+    assertEquals(1, indexStatus.numBadSegments);
+    assertEquals(3, indexStatus.numPreviouslyVerified);
+    assertEquals(3, indexStatus.newSegments.size());
+
+    dir.close();
+    verifiedDir.close();
+  }
+
   public void testLuceneConstantVersion() throws IOException {
     // common-build.xml sets lucene.version
     final String version = System.getProperty("lucene.version");
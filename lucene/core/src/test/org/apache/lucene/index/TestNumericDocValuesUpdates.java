@@ -0,0 +1,433 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DocValues.Type;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.apache.lucene.util._TestUtil;
+import org.junit.Before;
+
+public class TestNumericDocValuesUpdates extends LuceneTestCase {
+
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    assumeFalse("cannot work with preflex codec", Codec.getDefault().getName().equals("Lucene3x"));
+  }
+
+  private Document doc(int id, long value, Type type) {
+    final Document doc = new Document();
+    doc.add(newField("id", "doc" + id, StringField.TYPE_UNSTORED));
+    doc.add(newField("group", "g" + (id % 2), StringField.TYPE_UNSTORED));
+    doc.add(new DocValuesField("val", value, type));
+    return doc;
+  }
+
+  // Returns the value of the doc with the given id
+  private long getValue(IndexReader reader, int id) throws IOException {
+    for (AtomicReaderContext ctx : reader.getTopReaderContext().leaves()) {
+      final AtomicReader r = ctx.reader();
+      final DocsEnum docs = _TestUtil.docs(random, r, "id", new BytesRef("doc" + id), r.getLiveDocs(), null, false);
+      if (docs != null) {
+        final int docID = docs.nextDoc();
+        if (docID != DocIdSetIterator.NO_MORE_DOCS) {
+          return r.docValues("val").getSource().getInt(docID);
+        }
+      }
+    }
+    fail("doc" + id + " not found");
+    return -1;
+  }
+
+  private void assertValues(long[] expected, IndexReader reader) throws IOException {
+    for (int id = 0; id < expected.length; id++) {
+      assertEquals("doc" + id, expected[id], getValue(reader, id));
+    }
+  }
+
+  public void testSimpleUpdate() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final long[] expected = new long[10];
+    for (int i = 0; i < expected.length; i++) {
+      writer.addDocument(doc(i, i, Type.FIXED_INTS_32));
+      expected[i] = i;
+    }
+    writer.commit();
+
+    writer.updateNumericDocValue(new Term("id", "doc3"), "val", 42);
+    expected[3] = 42;
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(expected.length, reader.numDocs());
+    assertValues(expected, reader);
+    reader.close();
+    dir.close();
+  }
+
+  public void testNRTReader() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final long[] expected = new long[6];
+    for (int i = 0; i < expected.length; i++) {
+      writer.addDocument(doc(i, i, Type.VAR_INTS));
+      expected[i] = i;
+    }
+    writer.commit();
+    DirectoryReader r1 = DirectoryReader.open(writer, true);
+
+    writer.updateNumericDocValue(new Term("group", "g1"), "val", -17);
+    DirectoryReader r2 = DirectoryReader.openIfChanged(r1, writer, true);
+    assertNotNull(r2);
+    // the old reader does not see the update:
+    assertValues(expected, r1);
+    expected[1] = expected[3] = expected[5] = -17;
+    assertValues(expected, r2);
+
+    // updates and deletes mixed:
+    writer.deleteDocuments(new Term("id", "doc0"));
+    writer.updateNumericDocValue(new Term("id", "doc2"), "val", 5);
+    expected[2] = 5;
+    DirectoryReader r3 = DirectoryReader.openIfChanged(r2, writer, true);
+    assertNotNull(r3);
+    assertEquals(expected.length - 1, r3.numDocs());
+    for (int id = 1; id < expected.length; id++) {
+      assertEquals(expected[id], getValue(r3, id));
+    }
+    r1.close();
+    r2.close();
+    r3.close();
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    for (int id = 1; id < expected.length; id++) {
+      assertEquals(expected[id], getValue(reader, id));
+    }
+    reader.close();
+    dir.close();
+  }
+
+  public void testUpdateBufferedDocs() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    writer.addDocument(doc(0, 10, Type.FIXED_INTS_64));
+    writer.addDocument(doc(1, 11, Type.FIXED_INTS_64));
+    writer.updateNumericDocValue(new Term("id", "doc0"), "val", 100);
+    // added after the update, so not affected by it:
+    writer.addDocument(doc(2, 12, Type.FIXED_INTS_64));
+    writer.updateNumericDocValue(new Term("group", "g1"), "val", 101);
+    writer.addDocument(doc(3, 13, Type.FIXED_INTS_64));
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertValues(new long[] {100, 101, 12, 13}, reader);
+    reader.close();
+    dir.close();
+  }
+
+  public void testLastUpdateWins() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    for (int i = 0; i < 4; i++) {
+      writer.addDocument(doc(i, i, Type.VAR_INTS));
+    }
+    if (random.nextBoolean()) {
+      writer.commit();
+    }
+    writer.updateNumericDocValue(new Term("group", "g0"), "val", 5);
+    writer.updateNumericDocValue(new Term("id", "doc2"), "val", 7);
+    writer.updateNumericDocValue(new Term("group", "g0"), "val", 9);
+    writer.updateNumericDocValue(new Term("id", "doc0"), "val", 11);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    assertValues(new long[] {11, 1, 9, 3}, reader);
+    reader.close();
+    writer.close();
+    dir.close();
+  }
+
+  public void testTypePromotion() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    writer.addDocument(doc(0, 1, Type.FIXED_INTS_8));
+    writer.addDocument(doc(1, 2, Type.FIXED_INTS_8));
+    writer.commit();
+    writer.updateNumericDocValue(new Term("id", "doc1"), "val", 100);
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    assertEquals(Type.FIXED_INTS_8, getOnlySegmentReader(reader).docValues("val").getType());
+    assertValues(new long[] {1, 100}, reader);
+    reader.close();
+
+    writer.updateNumericDocValue(new Term("id", "doc0"), "val", Long.MIN_VALUE);
+    writer.updateNumericDocValue(new Term("id", "doc1"), "val", Long.MAX_VALUE);
+    writer.close();
+    reader = DirectoryReader.open(dir);
+    assertEquals(Type.VAR_INTS, getOnlySegmentReader(reader).docValues("val").getType());
+    assertValues(new long[] {Long.MIN_VALUE, Long.MAX_VALUE}, reader);
+    reader.close();
+    dir.close();
+  }
+
+  public void testNonUpdatableField() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    Document doc = new Document();
+    doc.add(newField("id", "doc0", StringField.TYPE_UNSTORED));
+    doc.add(new DocValuesField("float", 1.5f, Type.FLOAT_32));
+    writer.addDocument(doc);
+    writer.updateNumericDocValue(new Term("id", "doc0"), "float", 3);
+    writer.updateNumericDocValue(new Term("id", "doc0"), "missing", 3);
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    final AtomicReader r = getOnlySegmentReader(reader);
+    assertEquals(1.5, r.docValues("float").getSource().getFloat(0), 0.0);
+    assertNull(r.docValues("missing"));
+    reader.close();
+    dir.close();
+  }
+
+  public void testUpdatesSurviveMerge() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+                                         .setMaxBufferedDocs(2).setMergePolicy(newLogMergePolicy(10)));
+    final long[] expected = new long[20];
+    for (int i = 0; i < expected.length; i++) {
+      writer.addDocument(doc(i, i, Type.FIXED_INTS_16));
+      expected[i] = i;
+    }
+    writer.commit();
+    for (int i = 0; i < expected.length; i += 3) {
+      writer.updateNumericDocValue(new Term("id", "doc" + i), "val", 1000 + i);
+      expected[i] = 1000 + i;
+    }
+    writer.commit();
+    writer.updateNumericDocValue(new Term("group", "g1"), "val", -1);
+    for (int i = 1; i < expected.length; i += 2) {
+      expected[i] = -1;
+    }
+    writer.forceMerge(1);
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(1, reader.getSequentialSubReaders().length);
+    assertValues(expected, reader);
+    reader.close();
+    dir.close();
+  }
+
+  // Pauses once all readers to merge were pulled, so the
+  // test can apply updates while the merge is running
+  private static class BlockingMerge extends MergePolicy.OneMerge {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch resume = new CountDownLatch(1);
+
+    BlockingMerge(SegmentInfos infos) {
+      super(infos.asList());
+    }
+
+    @Override
+    public void checkAborted(Directory dir) throws MergePolicy.MergeAbortedException {
+      super.checkAborted(dir);
+      if (readers != null && readers.size() == segments.size() && started.getCount() != 0) {
+        started.countDown();
+        try {
+          resume.await();
+        } catch (InterruptedException ie) {
+          throw new ThreadInterruptedException(ie);
+        }
+      }
+    }
+  }
+
+  // Merges all segments into one with a BlockingMerge on forceMerge
+  private static class BlockingMergePolicy extends MergePolicy {
+    volatile BlockingMerge merge;
+
+    @Override
+    public void close() {}
+
+    @Override
+    public MergeSpecification findMerges(SegmentInfos segmentInfos) {
+      return null;
+    }
+
+    @Override
+    public MergeSpecification findForcedMerges(SegmentInfos segmentInfos,
+        int maxSegmentCount, Map<SegmentInfo,Boolean> segmentsToMerge) {
+      if (segmentInfos.size() <= 1) {
+        return null;
+      }
+      merge = new BlockingMerge(segmentInfos);
+      final MergeSpecification ms = new MergeSpecification();
+      ms.add(merge);
+      return ms;
+    }
+
+    @Override
+    public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos) {
+      return null;
+    }
+
+    @Override
+    public boolean useCompoundFile(SegmentInfos segments, SegmentInfo newSegment) {
+      return false;
+    }
+  }
+
+  public void testUpdatesDuringMerge() throws Exception {
+    Directory dir = newDirectory();
+    final BlockingMergePolicy mergePolicy = new BlockingMergePolicy();
+    final IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+                                               .setMaxBufferedDocs(5).setMergePolicy(mergePolicy)
+                                               .setMergeScheduler(new SerialMergeScheduler()));
+    final long[] expected = new long[20];
+    for (int i = 0; i < expected.length; i++) {
+      writer.addDocument(doc(i, i, Type.FIXED_INTS_32));
+      expected[i] = i;
+    }
+    writer.commit();
+    assertEquals(4, writer.getSegmentCount());
+    // an update before the merge starts:
+    writer.updateNumericDocValue(new Term("id", "doc3"), "val", 300);
+    expected[3] = 300;
+    writer.commit();
+
+    final Throwable[] failure = new Throwable[1];
+    final Thread merger = new Thread() {
+      @Override
+      public void run() {
+        try {
+          writer.forceMerge(1);
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    };
+    merger.start();
+    while (mergePolicy.merge == null) {
+      Thread.sleep(1);
+    }
+    final BlockingMerge merge = mergePolicy.merge;
+    merge.started.await();
+
+    // the merge has pulled its readers; delete one document
+    // so the docIDs shift, and apply updates to the
+    // segments being merged:
+    writer.deleteDocuments(new Term("id", "doc1"));
+    writer.updateNumericDocValue(new Term("id", "doc7"), "val", 700);
+    writer.updateNumericDocValue(new Term("group", "g0"), "val", -2);
+    for (int i = 0; i < expected.length; i += 2) {
+      expected[i] = -2;
+    }
+    expected[7] = 700;
+    DirectoryReader reader = DirectoryReader.open(writer, true);
+    reader.close();
+
+    merge.resume.countDown();
+    merger.join();
+    assertNull(failure[0]);
+    writer.close();
+
+    reader = DirectoryReader.open(dir);
+    assertEquals(1, reader.getSequentialSubReaders().length);
+    assertEquals(expected.length - 1, reader.numDocs());
+    for (int id = 0; id < expected.length; id++) {
+      if (id != 1) {
+        assertEquals("doc" + id, expected[id], getValue(reader, id));
+      }
+    }
+    reader.close();
+    dir.close();
+  }
+
+  public void testRandom() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random))
+                                         .setMaxBufferedDocs(_TestUtil.nextInt(random, 2, 20)));
+    final int numDocs = atLeast(100);
+    final long[] expected = new long[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      expected[i] = random.nextInt(100);
+      writer.addDocument(doc(i, expected[i], Type.FIXED_INTS_32));
+    }
+    DirectoryReader reader = null;
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      final int numUpdates = _TestUtil.nextInt(random, 1, 10);
+      for (int i = 0; i < numUpdates; i++) {
+        final long value = random.nextInt(10) == 0 ? random.nextLong() : random.nextInt(1000);
+        if (random.nextInt(5) == 0) {
+          final int group = random.nextInt(2);
+          writer.updateNumericDocValue(new Term("group", "g" + group), "val", value);
+          for (int id = group; id < numDocs; id += 2) {
+            expected[id] = value;
+          }
+        } else {
+          final int id = random.nextInt(numDocs);
+          writer.updateNumericDocValue(new Term("id", "doc" + id), "val", value);
+          expected[id] = value;
+        }
+      }
+      switch (random.nextInt(4)) {
+        case 0:
+          writer.commit();
+          break;
+        case 1:
+          if (reader == null) {
+            reader = DirectoryReader.open(writer, true);
+          } else {
+            final DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer, true);
+            assertNotNull(newReader);
+            reader.close();
+            reader = newReader;
+          }
+          assertValues(expected, reader);
+          break;
+        case 2:
+          if (random.nextInt(5) == 0) {
+            writer.forceMerge(_TestUtil.nextInt(random, 1, 3));
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    if (reader != null) {
+      reader.close();
+    }
+    writer.close();
+    reader = DirectoryReader.open(dir);
+    assertValues(expected, reader);
+    reader.close();
+    dir.close();
+  }
+}
@@ -18,15 +18,26 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
@@ -41,6 +52,7 @@ import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.store.NRTCachingDirectory;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LuceneTestCase.UseNoMemoryExpensiveCodec;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 @UseNoMemoryExpensiveCodec
@@ -412,4 +424,203 @@ public class TestNRTManager extends ThreadedIndexingAndSearchingTestCase {
     other.close();
     dir.close();
   }
+
+  public void testSegmentWarmer() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final NRTManager.TrackingIndexWriter writer = new NRTManager.TrackingIndexWriter(iw);
+    final Map<Object,Integer> warmCounts = Collections.synchronizedMap(new IdentityHashMap<Object,Integer>());
+    final IndexWriter.IndexReaderWarmer warmer = new IndexWriter.IndexReaderWarmer() {
+      @Override
+      public void warm(AtomicReader reader) throws IOException {
+        final Integer count = warmCounts.get(reader.getCoreCacheKey());
+        warmCounts.put(reader.getCoreCacheKey(), count == null ? 1 : count + 1);
+      }
+    };
+    final ExecutorService es = Executors.newFixedThreadPool(2, new NamedThreadFactory("testSegmentWarmer"));
+    final NRTManager manager = new NRTManager(writer, null, true, warmer, es);
+    for (int iter = 0; iter < 5; iter++) {
+      Document doc = new Document();
+      doc.add(newField("body", "doc " + iter, TextField.TYPE_UNSTORED));
+      writer.addDocument(doc);
+      manager.maybeRefresh();
+      IndexSearcher searcher = manager.acquire();
+      try {
+        assertEquals(iter+1, searcher.getIndexReader().numDocs());
+        for (AtomicReaderContext ctx : searcher.getIndexReader().getTopReaderContext().leaves()) {
+          assertEquals(Integer.valueOf(1), warmCounts.get(ctx.reader().getCoreCacheKey()));
+        }
+      } finally {
+        manager.release(searcher);
+      }
+      assertTrue(manager.getLastVisibilityLatencyNS() > 0);
+      assertTrue(manager.getMaxVisibilityLatencyNS() >= manager.getLastVisibilityLatencyNS());
+    }
+    IOUtils.close(manager, iw, dir);
+    es.shutdown();
+    es.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  public void testCoalesceWhileWarming() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final NRTManager.TrackingIndexWriter writer = new NRTManager.TrackingIndexWriter(iw);
+    final CountDownLatch warming = new CountDownLatch(1);
+    final CountDownLatch finishWarming = new CountDownLatch(1);
+    final AtomicInteger warmCount = new AtomicInteger();
+    final IndexWriter.IndexReaderWarmer warmer = new IndexWriter.IndexReaderWarmer() {
+      @Override
+      public void warm(AtomicReader reader) throws IOException {
+        if (warmCount.incrementAndGet() == 1) {
+          warming.countDown();
+          try {
+            finishWarming.await();
+          } catch (InterruptedException ie) {
+            throw new ThreadInterruptedException(ie);
+          }
+        }
+      }
+    };
+    final ExecutorService es = Executors.newFixedThreadPool(2, new NamedThreadFactory("testCoalesceWhileWarming"));
+    final NRTManager manager = new NRTManager(writer, null, true, warmer, es);
+
+    Document doc = new Document();
+    doc.add(newField("body", "first", TextField.TYPE_UNSTORED));
+    writer.addDocument(doc);
+    Thread refresher = new Thread() {
+      @Override
+      public void run() {
+        try {
+          manager.maybeRefresh();
+        } catch (IOException ioe) {
+          throw new RuntimeException(ioe);
+        }
+      }
+    };
+    refresher.start();
+    // first segment is now stuck in warming:
+    warming.await();
+
+    doc = new Document();
+    doc.add(newField("body", "second", TextField.TYPE_UNSTORED));
+    final long gen = writer.addDocument(doc);
+    final AtomicBoolean finished = new AtomicBoolean();
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        manager.waitForGeneration(gen);
+        finished.set(true);
+      }
+    };
+    waiter.start();
+    while (manager.getCoalescedReopenCount() == 0) {
+      Thread.sleep(5);
+    }
+    assertFalse(finished.get());
+    finishWarming.countDown();
+    refresher.join();
+    waiter.join();
+    assertTrue(finished.get());
+    assertTrue(manager.getCurrentSearchingGen() >= gen);
+
+    IndexSearcher searcher = manager.acquire();
+    try {
+      assertEquals(2, searcher.getIndexReader().numDocs());
+    } finally {
+      manager.release(searcher);
+    }
+    IOUtils.close(manager, iw, dir);
+    es.shutdown();
+    es.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  public void testWarmerFailsOnce() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final NRTManager.TrackingIndexWriter writer = new NRTManager.TrackingIndexWriter(iw);
+    final AtomicInteger warmCount = new AtomicInteger();
+    final IndexWriter.IndexReaderWarmer warmer = new IndexWriter.IndexReaderWarmer() {
+      @Override
+      public void warm(AtomicReader reader) throws IOException {
+        if (warmCount.incrementAndGet() == 1) {
+          throw new IOException("fake warm failure");
+        }
+      }
+    };
+    final NRTManager manager = new NRTManager(writer, null, true, warmer, null);
+
+    Document doc = new Document();
+    doc.add(newField("body", "first", TextField.TYPE_UNSTORED));
+    writer.addDocument(doc);
+    try {
+      manager.maybeRefresh();
+      fail("warming should have failed");
+    } catch (IOException ioe) {
+      // expected
+    }
+
+    // the failed task is not cached, so the same segment is warmed again:
+    manager.maybeRefresh();
+    assertEquals(2, warmCount.get());
+    IndexSearcher searcher = manager.acquire();
+    try {
+      assertEquals(1, searcher.getIndexReader().numDocs());
+    } finally {
+      manager.release(searcher);
+    }
+    IOUtils.close(manager, iw, dir);
+  }
+
+  public void testWarmExecutorRejectsOnce() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final NRTManager.TrackingIndexWriter writer = new NRTManager.TrackingIndexWriter(iw);
+    final AtomicInteger warmCount = new AtomicInteger();
+    final IndexWriter.IndexReaderWarmer warmer = new IndexWriter.IndexReaderWarmer() {
+      @Override
+      public void warm(AtomicReader reader) throws IOException {
+        warmCount.incrementAndGet();
+      }
+    };
+    final AtomicBoolean reject = new AtomicBoolean(true);
+    final ExecutorService es = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                                                      new NamedThreadFactory("testWarmExecutorRejectsOnce")) {
+      @Override
+      public void execute(Runnable command) {
+        if (reject.getAndSet(false)) {
+          throw new RejectedExecutionException("fake rejection");
+        }
+        super.execute(command);
+      }
+    };
+    final NRTManager manager = new NRTManager(writer, null, true, warmer, es);
+
+    Document doc = new Document();
+    doc.add(newField("body", "first", TextField.TYPE_UNSTORED));
+    writer.addDocument(doc);
+    try {
+      manager.maybeRefresh();
+      fail("warming should have been rejected");
+    } catch (RejectedExecutionException ree) {
+      // expected
+    }
+    Thread.sleep(10);
+
+    // the change is still pending, and its latency counts from
+    // before the failed refresh:
+    manager.maybeRefresh();
+    assertEquals(1, warmCount.get());
+    assertTrue(manager.getLastVisibilityLatencyNS() >= TimeUnit.MILLISECONDS.toNanos(10));
+    IndexSearcher searcher = manager.acquire();
+    try {
+      assertEquals(1, searcher.getIndexReader().numDocs());
+    } finally {
+      manager.release(searcher);
+    }
+    // the rejected task released its segment reader, or closing
+    // the directory would fail on still open files:
+    IOUtils.close(manager, iw, dir);
+    es.shutdown();
+    es.awaitTermination(1, TimeUnit.SECONDS);
+  }
 }
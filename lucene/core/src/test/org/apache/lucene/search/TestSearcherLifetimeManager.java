@@ -0,0 +1,99 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestSearcherLifetimeManager extends LuceneTestCase {
+
+  private void addDocs(IndexWriter w, int start, int count) throws Exception {
+    for (int i = start; i < start + count; i++) {
+      Document doc = new Document();
+      doc.add(newField("id", Integer.toString(i), StringField.TYPE_UNSTORED));
+      w.addDocument(doc);
+    }
+  }
+
+  private void loadFieldCache(IndexSearcher s) throws Exception {
+    for (AtomicReaderContext ctx : s.getIndexReader().getTopReaderContext().leaves()) {
+      FieldCache.DEFAULT.getInts(ctx.reader(), "id", false);
+    }
+  }
+
+  public void testStatsAndPruneByRAM() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random)));
+    final SearcherLifetimeManager mgr = new SearcherLifetimeManager();
+    addDocs(w, 0, 100);
+    final IndexSearcher s1 = new IndexSearcher(DirectoryReader.open(w, true));
+    loadFieldCache(s1);
+    final long token1 = mgr.record(s1);
+
+    SearcherLifetimeManager.Stats stats = mgr.getStats();
+    assertEquals(1, stats.searcherCount);
+    assertEquals(0, stats.oldSegmentCount);
+    assertEquals(0, stats.oldRAMBytes);
+    assertTrue(stats.ramBytes > 0);
+
+    // Merge everything away so the first searcher pins
+    // segments the new one doesn't use:
+    addDocs(w, 100, 100);
+    w.deleteDocuments(new Term("id", "7"));
+    w.forceMerge(1);
+    final IndexSearcher s2 = new IndexSearcher(DirectoryReader.open(w, true));
+    loadFieldCache(s2);
+    final long token2 = mgr.record(s2);
+
+    stats = mgr.getStats();
+    assertEquals(2, stats.searcherCount);
+    assertEquals(s1.getIndexReader().getTopReaderContext().leaves().length, stats.oldSegmentCount);
+    assertTrue(stats.oldRAMBytes > 0);
+    assertTrue(stats.ramBytes > stats.oldRAMBytes);
+
+    // Budget is big enough: nothing is pruned
+    final SearcherLifetimeManager.PruneByRAM pruner = new SearcherLifetimeManager.PruneByRAM(1024.0);
+    mgr.prune(pruner);
+    assertEquals(2, mgr.getStats().searcherCount);
+    // Pruners are reusable across passes:
+    mgr.prune(pruner);
+    assertEquals(2, mgr.getStats().searcherCount);
+
+    // Zero budget drops all but the newest searcher
+    mgr.prune(new SearcherLifetimeManager.PruneByRAM(0.0));
+    assertNull(mgr.acquire(token1));
+    final IndexSearcher s = mgr.acquire(token2);
+    assertNotNull(s);
+    mgr.release(s);
+    stats = mgr.getStats();
+    assertEquals(1, stats.searcherCount);
+    assertEquals(0, stats.oldRAMBytes);
+
+    s1.getIndexReader().close();
+    s2.getIndexReader().close();
+    IOUtils.close(mgr, w, dir);
+  }
+}
@@ -269,6 +269,35 @@ public class TestBytesRefHash extends LuceneTestCase {
     }
   }
   
+  /**
+   * Entries that share a hash code must still be told apart
+   * by their bytes, across rehashes.
+   */
+  @Test
+  public void testEqualHashCodes() {
+    BytesRef ref = new BytesRef();
+    BytesRef scratch = new BytesRef();
+    final int code = random.nextInt();
+    final int num = atLeast(200);
+    for (int i = 0; i < num; i++) {
+      ref.copyChars("term" + i);
+      assertEquals(i, hash.add(ref, code));
+    }
+    assertEquals(num, hash.size());
+    for (int i = 0; i < num; i++) {
+      ref.copyChars("term" + i);
+      assertEquals(-(i+1), hash.add(ref, code));
+      assertEquals("term" + i, hash.get(i, scratch).utf8ToString());
+    }
+    int[] compact = hash.compact();
+    Set<Integer> ords = new HashSet<Integer>();
+    for (int i = 0; i < num; i++) {
+      assertTrue(ords.add(compact[i]));
+    }
+    assertEquals(num, ords.size());
+    hash.clear();
+  }
+
   /**
    * Test method for
    * {@link org.apache.lucene.util.BytesRefHash#addByPoolOffset(int)}
@@ -0,0 +1,147 @@
+package org.apache.lucene.util.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+import org.junit.Ignore;
+
+/**
+ * Compares {@link Util#get(FST, BytesRef)} and {@link
+ * BytesRefFSTEnum#seekCeil(BytesRef)} throughput on FSTs
+ * built with and without direct addressed array nodes, for
+ * terms shaped like a terms index (prefixes mapping to block
+ * pointers) and like a suggester dictionary.
+ */
+@Ignore("COMMENT ME TO RUN BENCHMARKS!")
+public class FSTLookupBenchmarkTest extends LuceneTestCase {
+  private final static int rounds = 15;
+  private final static int warmup = 5;
+  private final static int numTerms = 200000;
+  private final static int numLookups = 500000;
+
+  public void testTermsIndex() throws Exception {
+    // short prefixes over digits and lower case letters:
+    measure("terms index", randomTerms(new Random(0xdeadbeef), 1, 6, "0123456789abcdefghijklmnopqrstuvwxyz"));
+  }
+
+  public void testSuggestDictionary() throws Exception {
+    // longer words, mostly lower case letters:
+    measure("suggest", randomTerms(new Random(0xdeadbeef), 3, 15, "abcdefghijklmnopqrstuvwxyz"));
+  }
+
+  private static List<BytesRef> randomTerms(Random random, int minLength, int maxLength, String alphabet) {
+    final SortedSet<BytesRef> terms = new TreeSet<BytesRef>();
+    while (terms.size() < numTerms) {
+      final byte[] bytes = new byte[_TestUtil.nextInt(random, minLength, maxLength)];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+      }
+      terms.add(new BytesRef(bytes));
+    }
+    return new ArrayList<BytesRef>(terms);
+  }
+
+  private static FST<Long> build(List<BytesRef> terms, boolean direct) throws Exception {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, outputs);
+    builder.setAllowDirectArrays(direct);
+    final IntsRef scratch = new IntsRef();
+    long ord = 1;
+    for (BytesRef term : terms) {
+      builder.add(Util.toIntsRef(term, scratch), ord++);
+    }
+    return builder.finish();
+  }
+
+  private void measure(String name, List<BytesRef> terms) throws Exception {
+    final FST<Long> fixed = build(terms, false);
+    final FST<Long> direct = build(terms, true);
+
+    // half hits, half (mostly) misses:
+    final Random random = new Random(0xdeadbeef);
+    final List<BytesRef> lookups = new ArrayList<BytesRef>(numLookups);
+    for (int i = 0; i < numLookups; i++) {
+      final BytesRef term = terms.get(random.nextInt(terms.size()));
+      if (random.nextBoolean()) {
+        lookups.add(term);
+      } else {
+        final BytesRef miss = BytesRef.deepCopyOf(term);
+        miss.bytes[random.nextInt(miss.length)]++;
+        lookups.add(miss);
+      }
+    }
+    Collections.shuffle(lookups, random);
+
+    long fixedGet = 0, directGet = 0, fixedSeek = 0, directSeek = 0;
+    long sum = 0;
+    for (int round = 0; round < warmup + rounds; round++) {
+      long t0 = System.nanoTime();
+      sum += get(fixed, lookups);
+      long t1 = System.nanoTime();
+      sum += get(direct, lookups);
+      long t2 = System.nanoTime();
+      sum += seek(fixed, lookups);
+      long t3 = System.nanoTime();
+      sum += seek(direct, lookups);
+      long t4 = System.nanoTime();
+      if (round >= warmup) {
+        fixedGet += t1 - t0;
+        directGet += t2 - t1;
+        fixedSeek += t3 - t2;
+        directSeek += t4 - t3;
+      }
+    }
+    System.err.println(String.format("%-12s size: %8d vs %8d bytes; get: %7.2f vs %7.2f ms/round; seekCeil: %7.2f vs %7.2f ms/round (fixed vs direct; sum=%d)",
+        name, fixed.sizeInBytes(), direct.sizeInBytes(),
+        fixedGet / 1000000.0 / rounds, directGet / 1000000.0 / rounds,
+        fixedSeek / 1000000.0 / rounds, directSeek / 1000000.0 / rounds, sum));
+  }
+
+  private static long get(FST<Long> fst, List<BytesRef> lookups) throws Exception {
+    long sum = 0;
+    for (BytesRef term : lookups) {
+      final Long output = Util.get(fst, term);
+      if (output != null) {
+        sum += output;
+      }
+    }
+    return sum;
+  }
+
+  private static long seek(FST<Long> fst, List<BytesRef> lookups) throws Exception {
+    final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<Long>(fst);
+    long sum = 0;
+    for (BytesRef term : lookups) {
+      final BytesRefFSTEnum.InputOutput<Long> result = fstEnum.seekCeil(term);
+      if (result != null) {
+        sum += result.output;
+      }
+    }
+    return sum;
+  }
+}
@@ -44,6 +44,7 @@ import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IOContext;
@@ -2274,4 +2275,214 @@ public class TestFSTs extends LuceneTestCase {
       }
     }
   }
+
+  private static SortedSet<BytesRef> randomTerms(Random random, int count) {
+    final SortedSet<BytesRef> terms = new TreeSet<BytesRef>();
+    while(terms.size() < count) {
+      terms.add(new BytesRef(_TestUtil.randomSimpleString(random, 20)));
+    }
+    return terms;
+  }
+
+  private static FST<Long> buildFST(SortedSet<BytesRef> terms, boolean willPack, int maxNodeHashSize, DataOutput bytesOut) throws IOException {
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE,
+                                                    outputs, null, willPack, maxNodeHashSize, bytesOut);
+    final IntsRef scratch = new IntsRef();
+    long ord = 1;
+    for(BytesRef term : terms) {
+      builder.add(Util.toIntsRef(term, scratch), ord++);
+    }
+    return builder.finish();
+  }
+
+  private static void assertTerms(SortedSet<BytesRef> terms, FST<Long> fst) throws IOException {
+    long ord = 1;
+    for(BytesRef term : terms) {
+      assertEquals(Long.valueOf(ord++), Util.get(fst, term));
+    }
+    assertNull(Util.get(fst, new BytesRef("~not a term")));
+
+    final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<Long>(fst);
+    ord = 1;
+    for(BytesRef term : terms) {
+      final InputOutput<Long> io = fstEnum.next();
+      assertNotNull(io);
+      assertEquals(term, io.input);
+      assertEquals(Long.valueOf(ord++), io.output);
+    }
+    assertNull(fstEnum.next());
+  }
+
+  public void testOffHeap() throws Exception {
+    final SortedSet<BytesRef> terms = randomTerms(random, atLeast(1000));
+    final boolean pack = random.nextBoolean();
+    FST<Long> fst = buildFST(terms, pack, 0, null);
+    if (pack) {
+      fst = fst.pack(_TestUtil.nextInt(random, 1, 10), _TestUtil.nextInt(random, 0, 10000000));
+    }
+    IndexOutput out = dir.createOutput("fst.bin", IOContext.DEFAULT);
+    fst.save(out);
+    out.writeInt(42);
+    out.close();
+
+    final IndexInput in = dir.openInput("fst.bin", IOContext.DEFAULT);
+    try {
+      final FST<Long> offHeap = new FST<Long>(in, in, PositiveIntOutputs.getSingleton(true));
+      // input is positioned after the FST
+      assertEquals(42, in.readInt());
+      assertEquals(fst.sizeInBytes(), offHeap.sizeInBytes());
+      assertEquals(fst.getNodeCount(), offHeap.getNodeCount());
+      assertTerms(terms, offHeap);
+
+      // re-saving the off heap FST gives the same bytes
+      out = dir.createOutput("fst2.bin", IOContext.DEFAULT);
+      offHeap.save(out);
+      out.close();
+      assertEquals(dir.fileLength("fst.bin") - 4, dir.fileLength("fst2.bin"));
+      final FST<Long> reloaded = loadFST("fst2.bin");
+      assertTerms(terms, reloaded);
+    } finally {
+      in.close();
+    }
+  }
+
+  public void testBytesOutput() throws Exception {
+    // enough terms so that bytes are flushed several times:
+    final SortedSet<BytesRef> terms = randomTerms(random, atLeast(10000));
+    final FST<Long> fst = buildFST(terms, false, 0, null);
+
+    IndexOutput bytesOut = dir.createOutput("fst.bytes", IOContext.DEFAULT);
+    final FST<Long> spilled = buildFST(terms, false, 0, bytesOut);
+    bytesOut.close();
+    try {
+      Util.get(spilled, terms.first());
+      fail("should have hit IllegalStateException");
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+    IndexOutput metaOut = dir.createOutput("fst.meta", IOContext.DEFAULT);
+    spilled.saveMetadata(metaOut);
+    metaOut.close();
+
+    // same FST as when built in RAM:
+    assertEquals(fst.getNodeCount(), spilled.getNodeCount());
+    assertEquals(fst.getArcCount(), spilled.getArcCount());
+    assertEquals(fst.sizeInBytes(), spilled.sizeInBytes());
+    assertEquals(fst.sizeInBytes(), dir.fileLength("fst.bytes"));
+
+    final IndexInput metaIn = dir.openInput("fst.meta", IOContext.DEFAULT);
+    final IndexInput bytesIn = dir.openInput("fst.bytes", IOContext.DEFAULT);
+    try {
+      final FST<Long> offHeap = new FST<Long>(metaIn, bytesIn, PositiveIntOutputs.getSingleton(true));
+      assertTerms(terms, offHeap);
+    } finally {
+      metaIn.close();
+      bytesIn.close();
+    }
+  }
+
+  public void testBoundedNodeHash() throws Exception {
+    final SortedSet<BytesRef> terms = randomTerms(random, atLeast(2000));
+    final FST<Long> minimal = buildFST(terms, false, 0, null);
+    final int maxNodeHashSize = _TestUtil.nextInt(random, 1, 200);
+
+    final FST<Long> bounded = buildFST(terms, false, maxNodeHashSize, null);
+    assertTrue(bounded.getNodeCount() >= minimal.getNodeCount());
+    assertTerms(terms, bounded);
+
+    // with bytes written to a DataOutput we must get exactly
+    // the same FST:
+    IndexOutput bytesOut = dir.createOutput("fst.bytes", IOContext.DEFAULT);
+    final FST<Long> spilled = buildFST(terms, false, maxNodeHashSize, bytesOut);
+    bytesOut.close();
+    assertEquals(bounded.getNodeCount(), spilled.getNodeCount());
+    assertEquals(bounded.sizeInBytes(), spilled.sizeInBytes());
+
+    IndexOutput metaOut = dir.createOutput("fst.meta", IOContext.DEFAULT);
+    spilled.saveMetadata(metaOut);
+    metaOut.close();
+    final IndexInput metaIn = dir.openInput("fst.meta", IOContext.DEFAULT);
+    final IndexInput bytesIn = dir.openInput("fst.bytes", IOContext.DEFAULT);
+    try {
+      assertTerms(terms, new FST<Long>(metaIn, bytesIn, PositiveIntOutputs.getSingleton(true)));
+    } finally {
+      metaIn.close();
+      bytesIn.close();
+    }
+  }
+
+  public void testDirectArrays() throws Exception {
+    // dense labels, so most array'd nodes are direct addressed:
+    final SortedSet<BytesRef> terms = new TreeSet<BytesRef>();
+    final int numTerms = atLeast(2000);
+    while(terms.size() < numTerms) {
+      final byte[] bytes = new byte[_TestUtil.nextInt(random, 1, 4)];
+      for(int i=0;i<bytes.length;i++) {
+        bytes[i] = (byte) _TestUtil.nextInt(random, 'a', 'z');
+      }
+      terms.add(new BytesRef(bytes));
+    }
+
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(true);
+    final List<FST<Long>> fsts = new ArrayList<FST<Long>>();
+    final boolean pack = random.nextBoolean();
+    for(boolean direct : new boolean[] {false, true}) {
+      final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE,
+                                                      outputs, null, true);
+      builder.setAllowDirectArrays(direct);
+      final IntsRef scratch = new IntsRef();
+      long ord = 1;
+      for(BytesRef term : terms) {
+        builder.add(Util.toIntsRef(term, scratch), ord++);
+      }
+      FST<Long> fst = builder.finish();
+      if (pack) {
+        fst = fst.pack(_TestUtil.nextInt(random, 1, 10), _TestUtil.nextInt(random, 0, 10000000));
+      }
+      fsts.add(fst);
+    }
+    if (!pack) {
+      // presence bits take some space:
+      assertTrue(fsts.get(1).sizeInBytes() > fsts.get(0).sizeInBytes());
+    }
+
+    for(FST<Long> fst : fsts) {
+      assertTerms(terms, fst);
+    }
+
+    // lookups and seeks of random (mostly non-existing)
+    // terms give the same results:
+    final BytesRefFSTEnum<Long> enum0 = new BytesRefFSTEnum<Long>(fsts.get(0));
+    final BytesRefFSTEnum<Long> enum1 = new BytesRefFSTEnum<Long>(fsts.get(1));
+    for(int iter=0;iter<1000;iter++) {
+      final byte[] bytes = new byte[_TestUtil.nextInt(random, 1, 5)];
+      for(int i=0;i<bytes.length;i++) {
+        bytes[i] = (byte) _TestUtil.nextInt(random, 'a' - 2, 'z' + 2);
+      }
+      final BytesRef target = new BytesRef(bytes);
+      assertEquals(Util.get(fsts.get(0), target), Util.get(fsts.get(1), target));
+      assertSameInputOutput(enum0.seekCeil(target), enum1.seekCeil(target));
+      assertSameInputOutput(enum0.seekFloor(target), enum1.seekFloor(target));
+    }
+  }
+
+  private static void assertSameInputOutput(InputOutput<Long> expected, InputOutput<Long> actual) {
+    if (expected == null) {
+      assertNull(actual);
+    } else {
+      assertNotNull(actual);
+      assertEquals(expected.input, actual.input);
+      assertEquals(expected.output, actual.output);
+    }
+  }
+
+  private FST<Long> loadFST(String fileName) throws IOException {
+    final IndexInput in = dir.openInput(fileName, IOContext.DEFAULT);
+    try {
+      return new FST<Long>(in, PositiveIntOutputs.getSingleton(true));
+    } finally {
+      in.close();
+    }
+  }
 }
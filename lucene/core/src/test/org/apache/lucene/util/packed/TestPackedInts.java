@@ -19,8 +19,10 @@ package org.apache.lucene.util.packed;
 
 import org.apache.lucene.store.*;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.io.IOException;
@@ -197,6 +199,9 @@ public class TestPackedInts extends LuceneTestCase {
     if (bitsPerValue <= 63) {
       packedInts.add(new Packed64(valueCount, bitsPerValue));
     }
+    if (Packed64SingleBlock.isSupported(bitsPerValue)) {
+      packedInts.add(Packed64SingleBlock.create(valueCount, bitsPerValue));
+    }
     packedInts.add(new Direct64(valueCount));
     return packedInts;
   }
@@ -287,4 +292,174 @@ public class TestPackedInts extends LuceneTestCase {
     assertEquals("The value at position " + (INDEX-1)
         + " should be correct for Packed64", 1, p64.get(INDEX-1));
   }
+
+  public void testBulkGet() {
+    final int valueCount = 1111;
+    final int index = random.nextInt(valueCount);
+    final int len = _TestUtil.nextInt(random, 1, valueCount * 2);
+    final int off = random.nextInt(77);
+
+    for (int bpv = 1; bpv <= 64; ++bpv) {
+      long mask = PackedInts.maxValue(bpv);
+      List<PackedInts.Mutable> packedInts = createPackedInts(valueCount, bpv);
+
+      for (PackedInts.Mutable ints : packedInts) {
+        for (int i = 0; i < ints.size(); ++i) {
+          ints.set(i, (31L * i - 1099) & mask);
+        }
+        long[] arr = new long[off+len];
+
+        final String msg = ints.getClass().getSimpleName() + " valueCount=" + valueCount
+            + ", index=" + index + ", len=" + len + ", off=" + off;
+        final int gets = ints.get(index, arr, off, len);
+        assertTrue(msg, gets > 0);
+        assertTrue(msg, gets <= len);
+        assertTrue(msg, gets <= ints.size() - index);
+
+        for (int i = 0; i < arr.length; ++i) {
+          String m = msg + ", i=" + i;
+          if (i >= off && i < off + gets) {
+            assertEquals(m, ints.get(i - off + index), arr[i]);
+          } else {
+            assertEquals(m, 0, arr[i]);
+          }
+        }
+      }
+    }
+  }
+
+  public void testBulkSet() {
+    final int valueCount = 1111;
+    final int index = random.nextInt(valueCount);
+    final int len = _TestUtil.nextInt(random, 1, valueCount * 2);
+    final int off = random.nextInt(77);
+    long[] arr = new long[off+len];
+
+    for (int bpv = 1; bpv <= 64; ++bpv) {
+      long mask = PackedInts.maxValue(bpv);
+      List<PackedInts.Mutable> packedInts = createPackedInts(valueCount, bpv);
+      for (int i = 0; i < arr.length; ++i) {
+        arr[i] = (31L * i + 19) & mask;
+      }
+
+      for (PackedInts.Mutable ints : packedInts) {
+        String msg = ints.getClass().getSimpleName() + " valueCount=" + valueCount
+            + ", index=" + index + ", len=" + len + ", off=" + off;
+        final int sets = ints.set(index, arr, off, len);
+        assertTrue(msg, sets > 0);
+        assertTrue(msg, sets <= len);
+
+        for (int i = 0; i < ints.size(); ++i) {
+          String m = msg + ", i=" + i;
+          if (i >= index && i < index + sets) {
+            assertEquals(m, arr[off - index + i], ints.get(i));
+          } else {
+            assertEquals(m, 0, ints.get(i));
+          }
+        }
+      }
+    }
+  }
+
+  public void testFill() {
+    final int valueCount = 1111;
+    final int from = random.nextInt(valueCount + 1);
+    final int to = from + random.nextInt(valueCount + 1 - from);
+    for (int bpv = 1; bpv <= 64; ++bpv) {
+      final long val = nextLong(PackedInts.maxValue(bpv));
+      List<PackedInts.Mutable> packedInts = createPackedInts(valueCount, bpv);
+      for (PackedInts.Mutable ints : packedInts) {
+        String msg = ints.getClass().getSimpleName() + " bpv=" + bpv
+            + ", from=" + from + ", to=" + to + ", val=" + val;
+        ints.fill(0, ints.size(), 1);
+        ints.fill(from, to, val);
+        for (int i = 0; i < ints.size(); ++i) {
+          if (i >= from && i < to) {
+            assertEquals(msg + ", i=" + i, val, ints.get(i));
+          } else {
+            assertEquals(msg + ", i=" + i, 1, ints.get(i));
+          }
+        }
+      }
+    }
+  }
+
+  public void testCopy() {
+    final int valueCount = _TestUtil.nextInt(random, 5, 600);
+    final int off1 = random.nextInt(valueCount);
+    final int off2 = random.nextInt(valueCount);
+    final int len = random.nextInt(Math.min(valueCount - off1, valueCount - off2));
+    final int mem = random.nextInt(1024);
+
+    List<PackedInts.Mutable> packedInts1 = createPackedInts(valueCount, _TestUtil.nextInt(random, 1, 63));
+    List<PackedInts.Mutable> packedInts2 = createPackedInts(valueCount, _TestUtil.nextInt(random, 1, 63));
+    for (PackedInts.Mutable r1 : packedInts1) {
+      final long max = PackedInts.maxValue(r1.getBitsPerValue());
+      for (int i = 0; i < r1.size(); ++i) {
+        r1.set(i, nextLong(max));
+      }
+    }
+    for (PackedInts.Mutable r1 : packedInts1) {
+      for (PackedInts.Mutable r2 : packedInts2) {
+        if (r2.getBitsPerValue() < r1.getBitsPerValue()) {
+          continue;
+        }
+        r2.clear();
+        PackedInts.copy(r1, off1, r2, off2, len, mem);
+        final String msg = r1.getClass().getSimpleName() + " -> " + r2.getClass().getSimpleName()
+            + ", off1=" + off1 + ", off2=" + off2 + ", len=" + len + ", mem=" + mem;
+        for (int i = 0; i < len; ++i) {
+          assertEquals(msg + ", i=" + i, r1.get(off1 + i), r2.get(off2 + i));
+        }
+      }
+    }
+  }
+
+  public void testAcceptableOverheadRatio() {
+    final int valueCount = 1024;
+    for (int bpv = 1; bpv <= 64; ++bpv) {
+      // compact never wastes bits
+      PackedInts.Mutable compact = PackedInts.getMutable(valueCount, bpv, PackedInts.COMPACT);
+      assertEquals(bpv, compact.getBitsPerValue());
+      // fastest always uses a native array
+      PackedInts.Mutable fastest = PackedInts.getMutable(valueCount, bpv, PackedInts.FASTEST);
+      assertTrue(fastest.hasArray());
+      assertEquals(PackedInts.getNextFixedSize(bpv), fastest.getBitsPerValue());
+
+      final float ratio = random.nextFloat() * PackedInts.FASTEST;
+      PackedInts.Mutable ints = PackedInts.getMutable(valueCount, bpv, ratio);
+      assertTrue(ints.getBitsPerValue() >= bpv);
+      assertTrue(ints.getBitsPerValue() <= bpv + (int) (ratio * bpv));
+    }
+    assertTrue(PackedInts.getMutable(valueCount, 11, PackedInts.DEFAULT) instanceof Packed64SingleBlock);
+  }
+
+  public void testGrowableWriterBulk() {
+    final int valueCount = _TestUtil.nextInt(random, 1, 1000);
+    final GrowableWriter writer = new GrowableWriter(1, valueCount, random.nextBoolean() ? PackedInts.COMPACT : PackedInts.FAST);
+    final long[] values = new long[valueCount];
+    for (int i = 0; i < valueCount; ++i) {
+      values[i] = nextLong(1L << random.nextInt(40));
+    }
+    int index = 0;
+    while (index < valueCount) {
+      index += writer.set(index, values, index, valueCount - index);
+    }
+    final long[] read = new long[valueCount];
+    index = 0;
+    while (index < valueCount) {
+      index += writer.get(index, read, index, valueCount - index);
+    }
+    assertTrue(Arrays.equals(values, read));
+    final GrowableWriter resized = writer.resize(valueCount + 10);
+    for (int i = 0; i < valueCount; ++i) {
+      assertEquals(values[i], resized.get(i));
+    }
+  }
+
+  /** Returns a random long in [0, max]. */
+  private static long nextLong(long max) {
+    final long l = random.nextLong() & Long.MAX_VALUE;
+    return max == Long.MAX_VALUE ? l : l % (max + 1);
+  }
 }
@@ -18,7 +18,23 @@ package org.apache.lucene.analysis.hunspell;
  */
 
 import org.apache.lucene.analysis.util.CharArrayMap;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.Version;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.ByteSequenceOutputs;
+import org.apache.lucene.util.fst.FST;
 
 import java.io.*;
 import java.nio.charset.Charset;
@@ -26,12 +42,23 @@ import java.nio.charset.CharsetDecoder;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
 /**
  * In-memory structure for the dictionary (.dic) and affix (.aff)
  * data of a hunspell dictionary.
+ * <p>
+ * A dictionary can also be compiled, once, into a binary
+ * form with {@link #save(DataOutput)} (or from the command
+ * line with {@link #main}), in which the words are held in
+ * an {@link FST}.  Loading the compiled form with {@link
+ * #load(DataInput, Version)} requires no parsing and takes a
+ * fraction of the heap, or none of it for the words with {@link
+ * #loadOffHeap(IndexInput, Version)}; since a dictionary is immutable,
+ * the loaded instance can be shared by all analyzers that
+ * use it.
  */
 public class HunspellDictionary {
 
@@ -50,7 +77,14 @@ public class HunspellDictionary {
 
   private static final boolean IGNORE_CASE_DEFAULT = false;
 
+  static final String CODEC_NAME = "HunspellDictionary";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
   private CharArrayMap<List<HunspellWord>> words;
+  // words of a compiled dictionary: maps each word to its
+  // encoded flags (see encodeWords); words is null then
+  private FST<BytesRef> wordsFST;
   private CharArrayMap<List<HunspellAffix>> prefixes;
   private CharArrayMap<List<HunspellAffix>> suffixes;
 
@@ -120,9 +154,90 @@ public class HunspellDictionary {
    * @return List of HunspellWords that match the generated String, or {@code null} if none are found
    */
   public List<HunspellWord> lookupWord(char word[], int offset, int length) {
+    if (wordsFST != null) {
+      try {
+        return lookupCompiledWord(word, offset, length);
+      } catch (IOException ioe) {
+        // cannot happen: the FST is in RAM
+        throw new RuntimeException(ioe);
+      }
+    }
     return words.get(word, offset, length);
   }
 
+  private List<HunspellWord> lookupCompiledWord(char word[], int offset, int length) throws IOException {
+    final FST.Arc<BytesRef> arc = wordsFST.getFirstArc(new FST.Arc<BytesRef>());
+    final FST.BytesReader fstReader = wordsFST.getBytesReader(0);
+    final BytesRef noOutput = wordsFST.outputs.getNoOutput();
+    BytesRef output = noOutput;
+    final int end = offset + length;
+    for (int i = offset; i < end;) {
+      int codePoint = Character.codePointAt(word, i, end);
+      i += Character.charCount(codePoint);
+      if (ignoreCase) {
+        codePoint = Character.toLowerCase(codePoint);
+      }
+      if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        if (wordsFST.findTargetArc(codePoint, arc, arc, fstReader) == null) {
+          return null;
+        }
+        output = wordsFST.outputs.add(output, arc.output);
+      } else {
+        if (wordsFST.findTargetArc(Character.highSurrogate(codePoint), arc, arc, fstReader) == null) {
+          return null;
+        }
+        output = wordsFST.outputs.add(output, arc.output);
+        if (wordsFST.findTargetArc(Character.lowSurrogate(codePoint), arc, arc, fstReader) == null) {
+          return null;
+        }
+        output = wordsFST.outputs.add(output, arc.output);
+      }
+    }
+    if (!arc.isFinal()) {
+      return null;
+    }
+    return decodeWords(wordsFST.outputs.add(output, arc.nextFinalOutput));
+  }
+
+  // Encodes the entries of a word as: vInt count, then for
+  // each entry vInt(numFlags+1) (0 for no flags) followed by
+  // the flags as vInts.
+  private static BytesRef encodeWords(List<HunspellWord> entries, ByteArrayDataOutput out, byte[] buffer) throws IOException {
+    out.reset(buffer);
+    out.writeVInt(entries.size());
+    for (HunspellWord entry : entries) {
+      final char[] flags = entry.getFlags();
+      if (flags == null) {
+        out.writeVInt(0);
+      } else {
+        out.writeVInt(flags.length + 1);
+        for (char flag : flags) {
+          out.writeVInt(flag);
+        }
+      }
+    }
+    return new BytesRef(buffer, 0, out.getPosition());
+  }
+
+  private static List<HunspellWord> decodeWords(BytesRef bytes) {
+    final ByteArrayDataInput in = new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+    final int count = in.readVInt();
+    final List<HunspellWord> entries = new ArrayList<HunspellWord>(count);
+    for (int i = 0; i < count; i++) {
+      final int numFlags = in.readVInt() - 1;
+      if (numFlags == -1) {
+        entries.add(NOFLAGS);
+      } else {
+        final char[] flags = new char[numFlags];
+        for (int j = 0; j < numFlags; j++) {
+          flags[j] = (char) in.readVInt();
+        }
+        entries.add(new HunspellWord(flags));
+      }
+    }
+    return entries;
+  }
+
   /**
    * Looks up HunspellAffix prefixes that have an append that matches the String created from the given char array, offset and length
    *
@@ -352,6 +467,246 @@ public class HunspellDictionary {
     return version;
   }
 
+  /**
+   * Writes this dictionary in compiled form, which can later be
+   * loaded with {@link #load(DataInput, Version)}.
+   *
+   * @param out DataOutput to write the compiled dictionary to
+   * @throws IOException Can be thrown while writing
+   */
+  public void save(DataOutput out) throws IOException {
+    CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+    out.writeByte((byte) (ignoreCase ? 1 : 0));
+    writeAffixes(prefixes, out);
+    writeAffixes(suffixes, out);
+    final FST<BytesRef> fst = wordsFST != null ? wordsFST : buildWordsFST();
+    if (fst == null) {
+      // no words
+      out.writeByte((byte) 0);
+    } else {
+      out.writeByte((byte) 1);
+      fst.save(out);
+    }
+  }
+
+  private FST<BytesRef> buildWordsFST() throws IOException {
+    // FST inputs must be added in sorted order; String's
+    // natural order is the UTF-16 order of the chars we
+    // use as labels
+    final List<String> sortedWords = new ArrayList<String>(words.size());
+    final CharArrayMap<List<HunspellWord>>.EntryIterator it = words.entrySet().iterator();
+    while (it.hasNext()) {
+      sortedWords.add(it.nextKeyString());
+    }
+    Collections.sort(sortedWords);
+
+    final Builder<BytesRef> builder = new Builder<BytesRef>(FST.INPUT_TYPE.BYTE2, ByteSequenceOutputs.getSingleton());
+    final IntsRef scratchInts = new IntsRef();
+    final ByteArrayDataOutput scratchOutput = new ByteArrayDataOutput();
+    byte[] buffer = new byte[64];
+    for (String word : sortedWords) {
+      final List<HunspellWord> entries = words.get(word);
+      int maxSize = 5;
+      for (HunspellWord entry : entries) {
+        maxSize += 5 + (entry.getFlags() == null ? 0 : 3 * entry.getFlags().length);
+      }
+      if (buffer.length < maxSize) {
+        buffer = new byte[maxSize];
+      }
+      scratchInts.grow(word.length());
+      for (int i = 0; i < word.length(); i++) {
+        scratchInts.ints[i] = word.charAt(i);
+      }
+      scratchInts.length = word.length();
+      builder.add(scratchInts, BytesRef.deepCopyOf(encodeWords(entries, scratchOutput, buffer)));
+    }
+    return builder.finish();
+  }
+
+  private static void writeAffixes(CharArrayMap<List<HunspellAffix>> affixes, DataOutput out) throws IOException {
+    int count = 0;
+    for (List<HunspellAffix> list : affixes.values()) {
+      count += list.size();
+    }
+    out.writeVInt(count);
+    for (List<HunspellAffix> list : affixes.values()) {
+      for (HunspellAffix affix : list) {
+        out.writeVInt(affix.getFlag());
+        out.writeString(affix.getAppend());
+        out.writeString(affix.getStrip());
+        out.writeString(affix.getCondition());
+        final char[] appendFlags = affix.getAppendFlags();
+        if (appendFlags == null) {
+          out.writeVInt(0);
+        } else {
+          out.writeVInt(appendFlags.length + 1);
+          for (char flag : appendFlags) {
+            out.writeVInt(flag);
+          }
+        }
+        out.writeByte((byte) (affix.isCrossProduct() ? 1 : 0));
+      }
+    }
+  }
+
+  private CharArrayMap<List<HunspellAffix>> readAffixes(DataInput in, String conditionPattern) throws IOException {
+    final int count = in.readVInt();
+    final CharArrayMap<List<HunspellAffix>> affixes = new CharArrayMap<List<HunspellAffix>>(version, Math.max(8, count), ignoreCase);
+    for (int i = 0; i < count; i++) {
+      final HunspellAffix affix = new HunspellAffix();
+      affix.setFlag((char) in.readVInt());
+      affix.setAppend(in.readString());
+      affix.setStrip(in.readString());
+      final String condition = in.readString();
+      affix.setCondition(condition, String.format(conditionPattern, condition));
+      final int numAppendFlags = in.readVInt() - 1;
+      if (numAppendFlags != -1) {
+        final char[] appendFlags = new char[numAppendFlags];
+        for (int j = 0; j < numAppendFlags; j++) {
+          appendFlags[j] = (char) in.readVInt();
+        }
+        affix.setAppendFlags(appendFlags);
+      }
+      affix.setCrossProduct(in.readByte() == 1);
+
+      List<HunspellAffix> list = affixes.get(affix.getAppend());
+      if (list == null) {
+        list = new ArrayList<HunspellAffix>();
+        affixes.put(affix.getAppend(), list);
+      }
+      list.add(affix);
+    }
+    return affixes;
+  }
+
+  private HunspellDictionary(Version version, boolean ignoreCase) {
+    this.version = version;
+    this.ignoreCase = ignoreCase;
+  }
+
+  /**
+   * Loads a dictionary previously written with {@link #save(DataOutput)}.
+   *
+   * @param in DataInput to read the compiled dictionary from
+   * @param version Lucene Version
+   * @return the loaded dictionary
+   * @throws IOException Can be thrown while reading, or if the data is not a compiled dictionary
+   */
+  public static HunspellDictionary load(DataInput in, Version version) throws IOException {
+    return load(in, null, version);
+  }
+
+  /**
+   * Loads a compiled dictionary without copying its words into RAM: the
+   * words {@link FST} is read on demand from <code>in</code>, which must
+   * therefore not be closed while the dictionary is in use.  With
+   * {@link org.apache.lucene.store.MMapDirectory} the words are read
+   * straight from the mapped file.
+   *
+   * @param in IndexInput to read the compiled dictionary from
+   * @param version Lucene Version
+   * @return the loaded dictionary
+   * @throws IOException Can be thrown while reading, or if the data is not a compiled dictionary
+   * @lucene.experimental
+   */
+  public static HunspellDictionary loadOffHeap(IndexInput in, Version version) throws IOException {
+    return load(in, in, version);
+  }
+
+  // if bytesIn is null, the words FST is loaded into RAM
+  private static HunspellDictionary load(DataInput in, IndexInput bytesIn, Version version) throws IOException {
+    CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+    final HunspellDictionary dictionary = new HunspellDictionary(version, in.readByte() == 1);
+    dictionary.prefixes = dictionary.readAffixes(in, PREFIX_CONDITION_REGEX_PATTERN);
+    dictionary.suffixes = dictionary.readAffixes(in, SUFFIX_CONDITION_REGEX_PATTERN);
+    if (in.readByte() == 1) {
+      dictionary.wordsFST = bytesIn == null
+          ? new FST<BytesRef>(in, ByteSequenceOutputs.getSingleton())
+          : new FST<BytesRef>(in, bytesIn, ByteSequenceOutputs.getSingleton());
+    } else {
+      // no words
+      dictionary.words = new CharArrayMap<List<HunspellWord>>(version, 8, dictionary.ignoreCase);
+    }
+    return dictionary;
+  }
+
+  /**
+   * Loads a compiled dictionary from a file in the given Directory.  With
+   * {@link org.apache.lucene.store.MMapDirectory} the file is read from the
+   * OS cache without intermediate copies.
+   *
+   * @param dir Directory containing the compiled dictionary
+   * @param name Name of the compiled dictionary file
+   * @param version Lucene Version
+   * @return the loaded dictionary
+   * @throws IOException Can be thrown while reading
+   */
+  public static HunspellDictionary load(Directory dir, String name, Version version) throws IOException {
+    final IndexInput in = dir.openInput(name, IOContext.READONCE);
+    boolean success = false;
+    try {
+      final HunspellDictionary dictionary = load(in, version);
+      success = true;
+      return dictionary;
+    } finally {
+      if (success) {
+        IOUtils.close(in);
+      } else {
+        IOUtils.closeWhileHandlingException(in);
+      }
+    }
+  }
+
+  /**
+   * Compiles hunspell affix and dictionary files into the binary form read
+   * by {@link #load(Directory, String, Version)}.
+   * <p>
+   * Usage: java org.apache.lucene.analysis.hunspell.HunspellDictionary
+   * [-ignoreCase] affixFile dictionaryFile [dictionaryFile ...] outputFile
+   */
+  public static void main(String[] args) throws Exception {
+    boolean ignoreCase = IGNORE_CASE_DEFAULT;
+    final List<String> files = new ArrayList<String>();
+    for (String arg : args) {
+      if ("-ignoreCase".equals(arg)) {
+        ignoreCase = true;
+      } else {
+        files.add(arg);
+      }
+    }
+    if (files.size() < 3) {
+      System.out.println("\nUsage: java org.apache.lucene.analysis.hunspell.HunspellDictionary [-ignoreCase] affixFile dictionaryFile [dictionaryFile ...] outputFile\n");
+      System.exit(1);
+    }
+
+    final List<InputStream> dictionaries = new ArrayList<InputStream>();
+    InputStream affix = null;
+    final HunspellDictionary dictionary;
+    try {
+      affix = new FileInputStream(files.get(0));
+      for (String file : files.subList(1, files.size() - 1)) {
+        dictionaries.add(new FileInputStream(file));
+      }
+      dictionary = new HunspellDictionary(affix, dictionaries, Version.LUCENE_CURRENT, ignoreCase);
+    } finally {
+      IOUtils.close(affix);
+      IOUtils.close(dictionaries);
+    }
+
+    final File output = new File(files.get(files.size() - 1)).getAbsoluteFile();
+    final Directory dir = FSDirectory.open(output.getParentFile());
+    try {
+      final IndexOutput out = dir.createOutput(output.getName(), IOContext.DEFAULT);
+      try {
+        dictionary.save(out);
+      } finally {
+        out.close();
+      }
+    } finally {
+      dir.close();
+    }
+  }
+
   /**
    * Abstraction of the process of parsing flags taken from the affix and dic files
    */
@@ -123,6 +123,88 @@ public final class ASCIIFoldingFilter extends TokenFilter {
     for (int pos = inputPos; pos < end ; ++pos) {
       final char c = input[pos];
 
+      // Quick test: if it's not in range then just keep current character
+      if (c < '\u0080') {
+        output[outputPos++] = c;
+      } else {
+        final int entry = FOLD_ENTRIES[(FOLD_BLOCKS[c >>> 8] << 8) | (c & 0xFF)];
+        if (entry == 0) {
+          output[outputPos++] = c;
+        } else {
+          int replacementPos = entry >>> 2;
+          final int replacementEnd = replacementPos + (entry & 0x3) + 1;
+          while (replacementPos < replacementEnd) {
+            output[outputPos++] = FOLD_REPLACEMENTS[replacementPos++];
+          }
+        }
+      }
+    }
+    return outputPos;
+  }
+
+  // The foldings below are compiled, once, into a two-level
+  // lookup table: FOLD_BLOCKS maps the high byte of a char
+  // to a block of 256 entries in FOLD_ENTRIES (block 0 holds
+  // no foldings, so most blocks share it).  A non-zero entry
+  // is (replacementStart << 2) | (replacementLength - 1),
+  // pointing into FOLD_REPLACEMENTS:
+  private static final byte[] FOLD_BLOCKS = new byte[256];
+  private static final int[] FOLD_ENTRIES;
+  private static final char[] FOLD_REPLACEMENTS;
+
+  static {
+    final int[] entries = new int[256 * 256];
+    char[] replacements = new char[1024];
+    // Start at 1 so that 0 means "no folding":
+    int replacementUpto = 1;
+    int numBlocks = 1;
+
+    final char[] input = new char[1];
+    final char[] output = new char[4];
+    for (int block = 0; block < 256; block++) {
+      boolean blockHasFoldings = false;
+      for (int low = 0; low < 256; low++) {
+        final char c = (char) ((block << 8) | low);
+        if (c < '\u0080') {
+          continue;
+        }
+        input[0] = c;
+        final int outputLength = foldToASCIIBySwitch(input, 0, output, 0, 1);
+        assert outputLength > 0 && outputLength <= 4;
+        if (outputLength == 1 && output[0] == c) {
+          continue;
+        }
+        if (!blockHasFoldings) {
+          FOLD_BLOCKS[block] = (byte) numBlocks++;
+          blockHasFoldings = true;
+        }
+        if (replacementUpto + outputLength > replacements.length) {
+          replacements = ArrayUtil.grow(replacements, replacementUpto + outputLength);
+        }
+        System.arraycopy(output, 0, replacements, replacementUpto, outputLength);
+        entries[(FOLD_BLOCKS[block] << 8) | low] = (replacementUpto << 2) | (outputLength - 1);
+        replacementUpto += outputLength;
+      }
+    }
+    assert numBlocks < 128;
+
+    FOLD_ENTRIES = new int[numBlocks << 8];
+    System.arraycopy(entries, 0, FOLD_ENTRIES, 0, FOLD_ENTRIES.length);
+    FOLD_REPLACEMENTS = new char[replacementUpto];
+    System.arraycopy(replacements, 0, FOLD_REPLACEMENTS, 0, replacementUpto);
+  }
+
+  /**
+   * Reference implementation of {@link #foldToASCII(char[], int, char[], int, int)},
+   * which defines the foldings: it is only run once per char, to build the
+   * lookup tables, because the JIT will not compile a method this large.
+   */
+  static int foldToASCIIBySwitch(char input[], int inputPos, char output[], int outputPos, int length)
+  {
+    final int end = inputPos + length;
+    for (int pos = inputPos; pos < end ; ++pos) {
+      final char c = input[pos];
+
       // Quick test: if it's not in range then just keep current character
       if (c < '\u0080') {
         output[outputPos++] = c;
@@ -80,11 +80,15 @@ import org.apache.lucene.util.fst.FST;
  * used for parsing.  Subsequent tokens simply pass through
  * and are not parsed.  A future improvement would be to
  * allow these tokens to also be matched.</p>
+ *
+ * <p>Each incoming token is resolved once to its input word
+ * ID (see {@link SynonymMap#getInputWordID}); matching then
+ * steps the FST by one arc per token.  Tokens that must be
+ * buffered for lookahead are copied into a fixed ring of
+ * reused attribute sources, so that steady-state filtering
+ * does not allocate per token.</p>
  */ 
 
-// TODO: maybe we should resolve token -> wordID then run
-// FST on wordIDs, for better perf?
-
 // TODO: a more efficient approach would be Aho/Corasick's
 // algorithm
 // http://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_string_matching_algorithm
@@ -131,8 +135,10 @@ public final class SynonymFilter extends TokenFilter {
   // state for (and enumerate) all other tokens at this
   // position:
   private static class PendingInput {
-    final CharsRef term = new CharsRef();
-    AttributeSource.State state;
+    // Reused copy of all attributes, created on first capture:
+    AttributeSource saved;
+    boolean captured;
+    int wordID;
     boolean keepOrig;
     boolean matched;
     boolean consumed = true;
@@ -140,7 +146,7 @@ public final class SynonymFilter extends TokenFilter {
     int endOffset;
     
     public void reset() {
-      state = null;
+      captured = false;
       consumed = true;
       keepOrig = false;
       matched = false;
@@ -211,6 +217,9 @@ public final class SynonymFilter extends TokenFilter {
 
   private final ByteArrayDataInput bytesReader = new ByteArrayDataInput();
 
+  // Lower-cased term, when ignoreCase is true:
+  private char[] lowerCaseBuffer = new char[16];
+
   // Rolling buffer, holding stack of pending synonym
   // outputs, indexed by position:
   private final PendingOutputs[] futureOutputs;
@@ -273,9 +282,13 @@ public final class SynonymFilter extends TokenFilter {
     //System.out.println("  capture slot=" + nextWrite);
     final PendingInput input = futureInputs[nextWrite];
 
-    input.state = captureState();
+    if (input.saved == null) {
+      input.saved = cloneAttributes();
+    } else {
+      copyTo(input.saved);
+    }
+    input.captured = true;
     input.consumed = false;
-    input.term.copyChars(termAtt.buffer(), 0, termAtt.length());
 
     nextWrite = rollIncr(nextWrite);
 
@@ -295,6 +308,31 @@ public final class SynonymFilter extends TokenFilter {
   private int lastStartOffset;
   private int lastEndOffset;
 
+  // Resolves the current term to its input word ID, or -1
+  // if no rule's input contains this word:
+  private int lookupWordID() {
+    final char[] buffer = termAtt.buffer();
+    final int bufferLen = termAtt.length();
+    if (!ignoreCase) {
+      return synonyms.getInputWordID(buffer, 0, bufferLen);
+    }
+    if (lowerCaseBuffer.length < bufferLen) {
+      lowerCaseBuffer = new char[ArrayUtil.oversize(bufferLen, RamUsageEstimator.NUM_BYTES_CHAR)];
+    }
+    int upto = 0;
+    int bufUpto = 0;
+    while(bufUpto < bufferLen) {
+      final int codePoint = Character.codePointAt(buffer, bufUpto, bufferLen);
+      final int lowerCodePoint = Character.toLowerCase(codePoint);
+      if (upto + 2 > lowerCaseBuffer.length) {
+        lowerCaseBuffer = ArrayUtil.grow(lowerCaseBuffer, upto + 2);
+      }
+      upto += Character.toChars(lowerCodePoint, lowerCaseBuffer, upto);
+      bufUpto += Character.charCount(codePoint);
+    }
+    return synonyms.getInputWordID(lowerCaseBuffer, 0, upto);
+  }
+
   private void parse() throws IOException {
     //System.out.println("\nS: parse");
 
@@ -314,12 +352,10 @@ public final class SynonymFilter extends TokenFilter {
 
     int tokenCount = 0;
 
-    byToken:
     while(true) {
       
-      // Pull next token's chars:
-      final char[] buffer;
-      final int bufferLen;
+      // Pull next token's word ID:
+      final int wordID;
       //System.out.println("  cycle nextRead=" + curNextRead + " nextWrite=" + nextWrite);
 
       int inputEndOffset = 0;
@@ -339,13 +375,12 @@ public final class SynonymFilter extends TokenFilter {
           // to true:
           //assert !futureInputs[nextWrite].keepOrig;
           if (input.incrementToken()) {
-            buffer = termAtt.buffer();
-            bufferLen = termAtt.length();
             final PendingInput input = futureInputs[nextWrite];
+            wordID = input.wordID = lookupWordID();
             lastStartOffset = input.startOffset = offsetAtt.startOffset();
             lastEndOffset = input.endOffset = offsetAtt.endOffset();
             inputEndOffset = input.endOffset;
-            //System.out.println("  new token=" + new String(buffer, 0, bufferLen));
+            //System.out.println("  new token=" + termAtt + " wordID=" + wordID);
             if (nextRead != nextWrite) {
               capture();
             } else {
@@ -361,29 +396,22 @@ public final class SynonymFilter extends TokenFilter {
         }
       } else {
         // Still in our lookahead
-        buffer = futureInputs[curNextRead].term.chars;
-        bufferLen = futureInputs[curNextRead].term.length;
+        wordID = futureInputs[curNextRead].wordID;
         inputEndOffset = futureInputs[curNextRead].endOffset;
-        //System.out.println("  old token=" + new String(buffer, 0, bufferLen));
+        //System.out.println("  old token wordID=" + wordID);
       }
 
       tokenCount++;
 
-      // Run each char in this token through the FST:
-      int bufUpto = 0;
-      while(bufUpto < bufferLen) {
-        final int codePoint = Character.codePointAt(buffer, bufUpto, bufferLen);
-        if (fst.findTargetArc(ignoreCase ? Character.toLowerCase(codePoint) : codePoint, scratchArc, scratchArc, fstReader) == null) {
-          //System.out.println("    stop");
-          break byToken;
-        }
-
-        // Accum the output
-        pendingOutput = fst.outputs.add(pendingOutput, scratchArc.output);
-        //System.out.println("    char=" + buffer[bufUpto] + " output=" + pendingOutput + " arc.output=" + scratchArc.output);
-        bufUpto += Character.charCount(codePoint);
+      // Step the FST by this token's word ID:
+      if (wordID == -1 || fst.findTargetArc(wordID, scratchArc, scratchArc, fstReader) == null) {
+        //System.out.println("    stop");
+        break;
       }
 
+      // Accum the output
+      pendingOutput = fst.outputs.add(pendingOutput, scratchArc.output);
+
       // OK, entire token matched; now see if this is a final
       // state:
       if (scratchArc.isFinal()) {
@@ -395,15 +423,13 @@ public final class SynonymFilter extends TokenFilter {
 
       // See if the FST wants to continue matching (ie, needs to
       // see the next input token):
-      if (fst.findTargetArc(SynonymMap.WORD_SEPARATOR, scratchArc, scratchArc, fstReader) == null) {
+      if (!FST.targetHasArcs(scratchArc)) {
         // No further rules can match here; we're done
         // searching for matching rules starting at the
         // current input position.
         break;
       } else {
-        // More matching is possible -- accum the output (if
-        // any) of the WORD_SEP arc:
-        pendingOutput = fst.outputs.add(pendingOutput, scratchArc.output);
+        // More matching is possible:
         if (nextRead == nextWrite) {
           capture();
         }
@@ -524,10 +550,10 @@ public final class SynonymFilter extends TokenFilter {
         //System.out.println("  cycle nextRead=" + nextRead + " nextWrite=" + nextWrite + " inputSkipCount="+ inputSkipCount + " input.keepOrig=" + input.keepOrig + " input.consumed=" + input.consumed + " input.state=" + input.state);
 
         if (!input.consumed && (input.keepOrig || !input.matched)) {
-          if (input.state != null) {
+          if (input.captured) {
             // Return a previously saved token (because we
             // had to lookahead):
-            restoreState(input.state);
+            input.saved.copyTo(this);
           } else {
             // Pass-through case: return token we just pulled
             // but didn't capture:
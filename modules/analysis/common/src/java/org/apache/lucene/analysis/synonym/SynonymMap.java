@@ -23,21 +23,25 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.util.CharArrayMap;
 import org.apache.lucene.store.ByteArrayDataOutput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.UnicodeUtil;
+import org.apache.lucene.util.Version;
 import org.apache.lucene.util.fst.ByteSequenceOutputs;
 import org.apache.lucene.util.fst.FST;
-import org.apache.lucene.util.fst.Util;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
 
 /**
  * A map of synonyms, keys and values are phrases.
@@ -46,18 +50,86 @@ import org.apache.lucene.util.fst.Util;
 public class SynonymMap {
   /** for multiword support, you must separate words with this separator */
   public static final char WORD_SEPARATOR = 0;
-  /** map&lt;input word, list&lt;ord&gt;&gt; */
+  /** map&lt;input word ID sequence, list&lt;ord&gt;&gt; */
   public final FST<BytesRef> fst;
   /** map&lt;ord, outputword&gt; */
   public final BytesRefHash words;
+  /** map&lt;input word, input word ID&gt;; only words that
+   *  appear in some rule's input have an ID */
+  public final CharArrayMap<Integer> inputWords;
   /** maxHorizontalContext: maximum context we need on the tokenstream */
   public final int maxHorizontalContext;
 
-  public SynonymMap(FST<BytesRef> fst, BytesRefHash words, int maxHorizontalContext) {
+  public SynonymMap(FST<BytesRef> fst, BytesRefHash words, CharArrayMap<Integer> inputWords, int maxHorizontalContext) {
     this.fst = fst;
     this.words = words;
+    this.inputWords = inputWords;
     this.maxHorizontalContext = maxHorizontalContext;
   }
+
+  /**
+   * Creates a map from an FST over the UTF-32 chars of the input phrases,
+   * with words separated by {@link #WORD_SEPARATOR}, as built by earlier
+   * versions.  The FST is rebuilt over input word IDs.
+   * @deprecated use {@link Builder} or {@link
+   * #SynonymMap(FST, BytesRefHash, CharArrayMap, int)} instead
+   */
+  @Deprecated
+  public SynonymMap(FST<BytesRef> fst, BytesRefHash words, int maxHorizontalContext) {
+    this(new WordIDFST(fst), words, maxHorizontalContext);
+  }
+
+  private SynonymMap(WordIDFST converted, BytesRefHash words, int maxHorizontalContext) {
+    this(converted.fst, words, converted.inputWords, maxHorizontalContext);
+  }
+
+  /** An FST over UTF-32 chars, rebuilt over input word IDs */
+  private static final class WordIDFST {
+    final FST<BytesRef> fst;
+    final CharArrayMap<Integer> inputWords;
+
+    WordIDFST(FST<BytesRef> charFST) {
+      try {
+        final List<CharsRef> inputs = new ArrayList<CharsRef>();
+        final List<BytesRef> outputs = new ArrayList<BytesRef>();
+        final IntsRefFSTEnum<BytesRef> fstEnum = new IntsRefFSTEnum<BytesRef>(charFST);
+        IntsRefFSTEnum.InputOutput<BytesRef> io;
+        while ((io = fstEnum.next()) != null) {
+          final StringBuilder sb = new StringBuilder(io.input.length);
+          for (int i = io.input.offset; i < io.input.offset + io.input.length; i++) {
+            sb.appendCodePoint(io.input.ints[i]);
+          }
+          inputs.add(new CharsRef(sb.toString()));
+          outputs.add(BytesRef.deepCopyOf(io.output));
+        }
+
+        // the char order of the inputs is also the order of their
+        // word ID sequences, see Builder.build:
+        final CharsRef[] sortedKeys = inputs.toArray(new CharsRef[inputs.size()]);
+        final CharArrayMap<Integer> inputWords = Builder.assignInputWordIDs(sortedKeys);
+        final org.apache.lucene.util.fst.Builder<BytesRef> builder =
+          new org.apache.lucene.util.fst.Builder<BytesRef>(FST.INPUT_TYPE.BYTE4, ByteSequenceOutputs.getSingleton());
+        final IntsRef scratchIntsRef = new IntsRef();
+        for (int i = 0; i < sortedKeys.length; i++) {
+          builder.add(Builder.toWordIDs(sortedKeys[i], inputWords, scratchIntsRef), outputs.get(i));
+        }
+        this.fst = builder.finish();
+        this.inputWords = CharArrayMap.unmodifiableMap(inputWords);
+      } catch (IOException e) {
+        // only reads and writes memory
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /** Returns the ID of the input word, or -1 if this word
+   *  does not occur in the input of any rule.  This does
+   *  not allocate and is safe to call from multiple
+   *  threads. */
+  public int getInputWordID(char[] buffer, int offset, int length) {
+    final Integer id = inputWords.get(buffer, offset, length);
+    return id == null ? -1 : id.intValue();
+  }
   
   /**
    * Builds an FSTSynonymMap.
@@ -265,6 +337,12 @@ public class SynonymMap {
       CharsRef sortedKeys[] = keys.toArray(new CharsRef[keys.size()]);
       Arrays.sort(sortedKeys, CharsRef.getUTF16SortedAsUTF8Comparator());
 
+      // Assign input word IDs in the same (UTF8) order: since
+      // WORD_SEPARATOR sorts before any other char, the
+      // sorted keys then map to sorted ID sequences, as the
+      // FST Builder requires:
+      final CharArrayMap<Integer> inputWords = assignInputWordIDs(sortedKeys);
+
       final IntsRef scratchIntsRef = new IntsRef();
       
       //System.out.println("fmap.build");
@@ -311,11 +389,49 @@ public class SynonymMap {
         
         scratch.length = scratchOutput.getPosition() - scratch.offset;
         //System.out.println("  add input=" + input + " output=" + scratch + " offset=" + scratch.offset + " length=" + scratch.length + " count=" + count);
-        builder.add(Util.toUTF32(input, scratchIntsRef), BytesRef.deepCopyOf(scratch));
+        builder.add(toWordIDs(input, inputWords, scratchIntsRef), BytesRef.deepCopyOf(scratch));
       }
       
       FST<BytesRef> fst = builder.finish();
-      return new SynonymMap(fst, words, maxHorizontalContext);
+      return new SynonymMap(fst, words, CharArrayMap.unmodifiableMap(inputWords), maxHorizontalContext);
+    }
+
+    private static CharArrayMap<Integer> assignInputWordIDs(CharsRef[] sortedKeys) {
+      final TreeSet<CharsRef> uniqueWords = new TreeSet<CharsRef>(CharsRef.getUTF16SortedAsUTF8Comparator());
+      for (CharsRef input : sortedKeys) {
+        final int end = input.offset + input.length;
+        int lastStart = input.offset;
+        for (int chIDX = input.offset; chIDX <= end; chIDX++) {
+          if (chIDX == end || input.chars[chIDX] == SynonymMap.WORD_SEPARATOR) {
+            uniqueWords.add(new CharsRef(input.chars, lastStart, chIDX - lastStart));
+            lastStart = chIDX + 1;
+          }
+        }
+      }
+
+      final CharArrayMap<Integer> inputWords = new CharArrayMap<Integer>(Version.LUCENE_40, uniqueWords.size(), false);
+      int id = 0;
+      for (CharsRef word : uniqueWords) {
+        inputWords.put(word, id++);
+      }
+      return inputWords;
+    }
+
+    private static IntsRef toWordIDs(CharsRef input, CharArrayMap<Integer> inputWords, IntsRef scratch) {
+      final int end = input.offset + input.length;
+      // worst case every other char is a separator:
+      scratch.grow(1 + input.length / 2);
+      scratch.length = 0;
+      int lastStart = input.offset;
+      for (int chIDX = input.offset; chIDX <= end; chIDX++) {
+        if (chIDX == end || input.chars[chIDX] == SynonymMap.WORD_SEPARATOR) {
+          final Integer id = inputWords.get(input.chars, lastStart, chIDX - lastStart);
+          assert id != null;
+          scratch.ints[scratch.length++] = id.intValue();
+          lastStart = chIDX + 1;
+        }
+      }
+      return scratch;
     }
   }
 }
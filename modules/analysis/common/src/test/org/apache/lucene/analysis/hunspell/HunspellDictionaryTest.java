@@ -17,6 +17,10 @@ package org.apache.lucene.analysis.hunspell;
  * limitations under the License.
  */
 
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.Version;
 import org.junit.Test;
@@ -24,6 +28,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.ParseException;
+import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 
@@ -42,4 +47,53 @@ public class HunspellDictionaryTest extends LuceneTestCase {
     affixStream.close();
     dictStream.close();
   }
+
+  @Test
+  public void testCompiledDictionary() throws IOException, ParseException {
+    for (boolean ignoreCase : new boolean[] {false, true}) {
+      InputStream affixStream = getClass().getResourceAsStream("test.aff");
+      InputStream dictStream = getClass().getResourceAsStream("test.dic");
+      HunspellDictionary dictionary = new HunspellDictionary(affixStream, dictStream, TEST_VERSION_CURRENT, ignoreCase);
+      affixStream.close();
+      dictStream.close();
+
+      Directory dir = newDirectory();
+      IndexOutput out = dir.createOutput("test.hunspell", IOContext.DEFAULT);
+      dictionary.save(out);
+      out.close();
+      HunspellDictionary compiled;
+      IndexInput in = null;
+      if (random.nextBoolean()) {
+        compiled = HunspellDictionary.load(dir, "test.hunspell", TEST_VERSION_CURRENT);
+      } else {
+        in = dir.openInput("test.hunspell", IOContext.DEFAULT);
+        compiled = HunspellDictionary.loadOffHeap(in, TEST_VERSION_CURRENT);
+      }
+
+      assertEquals(ignoreCase, compiled.isIgnoreCase());
+      assertEquals(3, compiled.lookupSuffix(new char[]{'e'}, 0, 1).size());
+      assertEquals(1, compiled.lookupPrefix(new char[]{'s'}, 0, 1).size());
+      assertEquals(1, compiled.lookupWord(new char[]{'o', 'l', 'r'}, 0, 3).size());
+      assertNull(compiled.lookupWord(new char[]{'o', 'l'}, 0, 2));
+
+      HunspellStemmer expectedStemmer = new HunspellStemmer(dictionary);
+      HunspellStemmer compiledStemmer = new HunspellStemmer(compiled);
+      for (String word : new String[] {"lucene", "lucenes", "mahoute", "solr", "abcd", "apache",
+                                       "APACHE", "Apache", "foos", "food", "Foos", "Food", "unknown"}) {
+        assertEquals(stemStrings(expectedStemmer.stem(word)), stemStrings(compiledStemmer.stem(word)));
+      }
+      if (in != null) {
+        in.close();
+      }
+      dir.close();
+    }
+  }
+
+  private static String stemStrings(List<HunspellStemmer.Stem> stems) {
+    StringBuilder sb = new StringBuilder();
+    for (HunspellStemmer.Stem stem : stems) {
+      sb.append(stem.getStemString()).append(' ');
+    }
+    return sb.toString();
+  }
 }
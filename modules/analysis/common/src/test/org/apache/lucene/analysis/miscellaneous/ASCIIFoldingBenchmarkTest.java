@@ -0,0 +1,83 @@
+package org.apache.lucene.analysis.miscellaneous;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+import org.junit.Ignore;
+
+/**
+ * Compares the throughput of the table driven {@link
+ * ASCIIFoldingFilter#foldToASCII(char[], int, char[], int, int)}
+ * with the reference switch it is compiled from.
+ */
+@Ignore("COMMENT ME TO RUN BENCHMARKS!")
+public class ASCIIFoldingBenchmarkTest extends LuceneTestCase {
+  private final static int rounds = 15;
+  private final static int warmup = 5;
+  private final static int numTerms = 100000;
+
+  public void testLatinTerms() throws Exception {
+    // mostly accented latin, the common case for folding:
+    measure("latin", randomTerms(new Random(0xdeadbeef), '\u0080', '\u024F'));
+  }
+
+  public void testUnicodeTerms() throws Exception {
+    measure("bmp", randomTerms(new Random(0xdeadbeef), '\u0080', '\uFFFF'));
+  }
+
+  private static char[][] randomTerms(Random random, char start, char end) {
+    final char[][] terms = new char[numTerms][];
+    for (int i = 0; i < numTerms; i++) {
+      final char[] term = new char[1 + random.nextInt(12)];
+      for (int j = 0; j < term.length; j++) {
+        // half plain ascii, half from the requested range:
+        term[j] = random.nextBoolean()
+          ? (char) ('a' + random.nextInt(26))
+          : (char) _TestUtil.nextInt(random, start, end);
+      }
+      terms[i] = term;
+    }
+    return terms;
+  }
+
+  private void measure(String name, char[][] terms) {
+    final char[] output = new char[4 * 16];
+    long switchTime = 0, tableTime = 0;
+    int sum = 0;
+    for (int round = 0; round < warmup + rounds; round++) {
+      long t0 = System.nanoTime();
+      for (char[] term : terms) {
+        sum += ASCIIFoldingFilter.foldToASCIIBySwitch(term, 0, output, 0, term.length);
+      }
+      long t1 = System.nanoTime();
+      for (char[] term : terms) {
+        sum += ASCIIFoldingFilter.foldToASCII(term, 0, output, 0, term.length);
+      }
+      long t2 = System.nanoTime();
+      if (round >= warmup) {
+        switchTime += t1 - t0;
+        tableTime += t2 - t1;
+      }
+    }
+    System.err.println(String.format("%-6s switch: %8.2f ms/round, table: %8.2f ms/round (sum=%d)",
+        name, switchTime / 1000000.0 / rounds, tableTime / 1000000.0 / rounds, sum));
+  }
+}
@@ -1923,4 +1923,17 @@ public class TestASCIIFoldingFilter extends BaseTokenStreamTestCase {
     };
     checkRandomData(random, a, 10000*RANDOM_MULTIPLIER);
   }
+
+  /** the lookup tables must fold every char exactly like the reference switch */
+  public void testLookupTablesMatchSwitch() throws Exception {
+    final char[] input = new char[1];
+    final char[] expected = new char[4];
+    final char[] actual = new char[4];
+    for (int c = 0; c <= Character.MAX_VALUE; c++) {
+      input[0] = (char) c;
+      final int expectedLength = ASCIIFoldingFilter.foldToASCIIBySwitch(input, 0, expected, 0, 1);
+      final int actualLength = ASCIIFoldingFilter.foldToASCII(input, 0, actual, 0, 1);
+      assertEquals("char=" + Integer.toHexString(c), new String(expected, 0, expectedLength), new String(actual, 0, actualLength));
+    }
+  }
 }
@@ -33,8 +33,15 @@ import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.analysis.MockTokenizer;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util._TestUtil;
+import org.apache.lucene.util.fst.ByteSequenceOutputs;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.Util;
 
 public class TestSynonymMapFilter extends BaseTokenStreamTestCase {
 
@@ -764,4 +771,90 @@ public class TestSynonymMapFilter extends BaseTokenStreamTestCase {
         new int[] { 8, 22, 15, 22 },
         new int[] { 1, 0, 1, 1 });
   }
+
+  public void testInputWordIDs() throws Exception {
+    b = new SynonymMap.Builder(true);
+    add("national hockey league", "nhl", true);
+    add("hockey", "puck", true);
+    final SynonymMap map = b.build();
+    final char[] national = "national".toCharArray();
+    final char[] hockey = "hockey".toCharArray();
+    final char[] nhl = "nhl".toCharArray();
+    assertTrue(map.getInputWordID(national, 0, national.length) >= 0);
+    assertTrue(map.getInputWordID(hockey, 0, hockey.length) >= 0);
+    assertTrue(map.getInputWordID(national, 0, national.length) != map.getInputWordID(hockey, 0, hockey.length));
+    // only input words get an ID:
+    assertEquals(-1, map.getInputWordID(nhl, 0, nhl.length));
+    assertEquals(-1, map.getInputWordID(national, 0, 4));
+  }
+
+  public void testIgnoreCase() throws Exception {
+    b = new SynonymMap.Builder(true);
+    add("national hockey league", "nhl", true);
+    final SynonymMap map = b.build();
+    for (final boolean ignoreCase : new boolean[] {true, false}) {
+      Analyzer a = new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+          Tokenizer tokenizer = new MockTokenizer(reader, MockTokenizer.WHITESPACE, false);
+          return new TokenStreamComponents(tokenizer, new SynonymFilter(tokenizer, map, ignoreCase));
+        }
+      };
+      if (ignoreCase) {
+        assertAnalyzesTo(a, "National HOCKEY league",
+            new String[] { "National", "nhl", "HOCKEY", "league" },
+            new int[] { 1, 0, 1, 1 });
+      } else {
+        assertAnalyzesTo(a, "National HOCKEY league",
+            new String[] { "National", "HOCKEY", "league" },
+            new int[] { 1, 1, 1 });
+      }
+    }
+  }
+
+  /** A map with an FST over the UTF-32 chars of the inputs, built like earlier versions did */
+  @SuppressWarnings("deprecation")
+  public void testCharFSTMap() throws Exception {
+    // inputs in UTF-32 order; WORD_SEPARATOR sorts first
+    final String[][] rules = {
+      {"a", "foo"},
+      {"a b", "bar"},
+      {"ab", "baz"},
+      {"b c", "dog collar"},
+    };
+    final BytesRefHash words = new BytesRefHash();
+    final org.apache.lucene.util.fst.Builder<BytesRef> builder =
+      new org.apache.lucene.util.fst.Builder<BytesRef>(FST.INPUT_TYPE.BYTE4, ByteSequenceOutputs.getSingleton());
+    final IntsRef scratchIntsRef = new IntsRef();
+    for (String[] rule : rules) {
+      int ord = words.add(new BytesRef(rule[1].replaceAll(" +", "\u0000")));
+      if (ord < 0) {
+        ord = -ord-1;
+      }
+      // one output, include the original
+      final byte[] bytes = new byte[10];
+      final ByteArrayDataOutput out = new ByteArrayDataOutput(bytes);
+      out.writeVInt(1 << 1);
+      out.writeVInt(ord);
+      builder.add(Util.toUTF32(rule[0].replaceAll(" +", "\u0000"), scratchIntsRef), new BytesRef(bytes, 0, out.getPosition()));
+    }
+    final SynonymMap map = new SynonymMap(builder.finish(), words, 2);
+
+    tokensIn = new MockTokenizer(new StringReader("a"), MockTokenizer.WHITESPACE, true);
+    tokensIn.reset();
+    assertTrue(tokensIn.incrementToken());
+    assertFalse(tokensIn.incrementToken());
+    tokensIn.end();
+    tokensIn.close();
+
+    tokensOut = new SynonymFilter(tokensIn, map, true);
+    termAtt = tokensOut.addAttribute(CharTermAttribute.class);
+    posIncrAtt = tokensOut.addAttribute(PositionIncrementAttribute.class);
+    offsetAtt = tokensOut.addAttribute(OffsetAttribute.class);
+
+    verify("a", "a/foo");
+    verify("a b", "a/bar:3 b");
+    verify("ab", "ab/baz");
+    verify("x b c", "x b/dog c/collar");
+  }
 }
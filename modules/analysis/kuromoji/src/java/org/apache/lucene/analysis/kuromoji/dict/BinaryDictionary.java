@@ -19,11 +19,17 @@ package org.apache.lucene.analysis.kuromoji.dict;
 
 import java.io.BufferedInputStream;
 import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
 import org.apache.lucene.store.DataInput;
@@ -34,6 +40,13 @@ import org.apache.lucene.util.IOUtils;
 
 /**
  * Base class for a binary-encoded in-memory dictionary.
+ * <p>
+ * If the dictionary data files are plain files on disk, either
+ * because they are unpacked on the classpath or because the
+ * {@link #DICT_DIR_PROPERTY} system property names a directory
+ * holding them, the (large) dictionary buffer is memory-mapped
+ * instead of being read into a direct buffer, so that all JVMs on
+ * a machine share the same pages of the OS cache.
  */
 public abstract class BinaryDictionary implements Dictionary {
   
@@ -45,6 +58,13 @@ public abstract class BinaryDictionary implements Dictionary {
   public static final String TARGETMAP_HEADER = "kuromoji_dict_map";
   public static final String POSDICT_HEADER = "kuromoji_dict_pos";
   public static final int VERSION = 1;
+
+  /**
+   * System property naming a directory to load the dictionary data
+   * files from (using the same file names as the classpath resources),
+   * instead of the classpath.
+   */
+  public static final String DICT_DIR_PROPERTY = "kuromoji.dict.dir";
   
   private final ByteBuffer buffer;
   private final int[] targetMapOffsets, targetMap;
@@ -104,19 +124,24 @@ public abstract class BinaryDictionary implements Dictionary {
       }
       posIS.close(); posIS = null;
       
-      dictIS = getResource(DICT_FILENAME_SUFFIX);
-      // no buffering here, as we load in one large buffer
-      in = new InputStreamDataInput(dictIS);
-      CodecUtil.checkHeader(in, DICT_HEADER, VERSION, VERSION);
-      final int size = in.readVInt();
-      final ByteBuffer tmpBuffer = ByteBuffer.allocateDirect(size);
-      final ReadableByteChannel channel = Channels.newChannel(dictIS);
-      final int read = channel.read(tmpBuffer);
-      if (read != size) {
-        throw new EOFException("Cannot read whole dictionary");
+      final File dictFile = getClassResourceFile(getClass(), DICT_FILENAME_SUFFIX);
+      if (dictFile != null) {
+        buffer = mapBuffer(dictFile);
+      } else {
+        dictIS = getResource(DICT_FILENAME_SUFFIX);
+        // no buffering here, as we load in one large buffer
+        in = new InputStreamDataInput(dictIS);
+        CodecUtil.checkHeader(in, DICT_HEADER, VERSION, VERSION);
+        final int size = in.readVInt();
+        final ByteBuffer tmpBuffer = ByteBuffer.allocateDirect(size);
+        final ReadableByteChannel channel = Channels.newChannel(dictIS);
+        final int read = channel.read(tmpBuffer);
+        if (read != size) {
+          throw new EOFException("Cannot read whole dictionary");
+        }
+        dictIS.close(); dictIS = null;
+        buffer = tmpBuffer.asReadOnlyBuffer();
       }
-      dictIS.close(); dictIS = null;
-      buffer = tmpBuffer.asReadOnlyBuffer();
     } catch (IOException ioe) {
       priorE = ioe;
     } finally {
@@ -135,8 +160,63 @@ public abstract class BinaryDictionary implements Dictionary {
     return getClassResource(getClass(), suffix);
   }
   
+  /** Maps the data of a dictionary buffer file, skipping its header. */
+  private static ByteBuffer mapBuffer(File file) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final DataInput in = new InputStreamDataInput(new BufferedInputStream(new FileInputStream(raf.getFD())));
+      CodecUtil.checkHeader(in, DICT_HEADER, VERSION, VERSION);
+      final int size = in.readVInt();
+      final long offset = raf.length() - size;
+      if (offset < CodecUtil.headerLength(DICT_HEADER)) {
+        throw new EOFException("Cannot read whole dictionary");
+      }
+      // the mapping stays valid after the file is closed
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, size).asReadOnlyBuffer();
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Returns the data file for the given class and suffix if it is a plain
+   * file on disk (from {@link #DICT_DIR_PROPERTY}, or an unpacked classpath
+   * resource), else null.
+   */
+  public static final File getClassResourceFile(Class<?> clazz, String suffix) {
+    final String name = clazz.getSimpleName() + suffix;
+    final String dir = System.getProperty(DICT_DIR_PROPERTY);
+    if (dir != null) {
+      final File file = new File(dir, name);
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    final URL url = clazz.getResource(name);
+    if (url != null && "file".equals(url.getProtocol())) {
+      try {
+        final File file = new File(url.toURI());
+        if (file.isFile()) {
+          return file;
+        }
+      } catch (URISyntaxException use) {
+        // fall back to the stream
+      } catch (IllegalArgumentException iae) {
+        // fall back to the stream
+      }
+    }
+    return null;
+  }
+
   // util, reused by ConnectionCosts and CharacterDefinition
   public static final InputStream getClassResource(Class<?> clazz, String suffix) throws IOException {
+    final String dir = System.getProperty(DICT_DIR_PROPERTY);
+    if (dir != null) {
+      final File file = new File(dir, clazz.getSimpleName() + suffix);
+      if (file.isFile()) {
+        return new FileInputStream(file);
+      }
+    }
     final InputStream is = clazz.getResourceAsStream(clazz.getSimpleName() + suffix);
     if (is == null)
       throw new FileNotFoundException("Not in classpath: " + clazz.getName().replace('.','/') + suffix);
@@ -35,28 +35,29 @@ public final class ConnectionCosts {
   public static final String HEADER = "kuromoji_cc";
   public static final int VERSION = 1;
   
-  private final short[][] costs; // array is backward IDs first since get is called using the same backward ID consecutively. maybe doesn't matter.
+  // flat array, backward IDs first since get is called using the same
+  // backward ID consecutively: costs[backwardId * forwardSize + forwardId]
+  private final short[] costs;
+  private final int forwardSize;
   
   private ConnectionCosts() throws IOException {
     IOException priorE = null;
     InputStream is = null;
-    short[][] costs = null;
+    short[] costs = null;
+    int forwardSize = 0;
     try {
       is = BinaryDictionary.getClassResource(getClass(), FILENAME_SUFFIX);
       is = new BufferedInputStream(is);
       final DataInput in = new InputStreamDataInput(is);
       CodecUtil.checkHeader(in, HEADER, VERSION, VERSION);
-      int forwardSize = in.readVInt();
+      forwardSize = in.readVInt();
       int backwardSize = in.readVInt();
-      costs = new short[backwardSize][forwardSize];
+      costs = new short[backwardSize * forwardSize];
       int accum = 0;
-      for (int j = 0; j < costs.length; j++) {
-        final short[] a = costs[j];
-        for (int i = 0; i < a.length; i++) {
-          int raw = in.readVInt();
-          accum += (raw >>> 1) ^ -(raw & 1);
-          a[i] = (short)accum;
-        }
+      for (int i = 0; i < costs.length; i++) {
+        int raw = in.readVInt();
+        accum += (raw >>> 1) ^ -(raw & 1);
+        costs[i] = (short)accum;
       }
     } catch (IOException ioe) {
       priorE = ioe;
@@ -65,10 +66,11 @@ public final class ConnectionCosts {
     }
     
     this.costs = costs;
+    this.forwardSize = forwardSize;
   }
   
   public int get(int forwardId, int backwardId) {
-    return costs[backwardId][forwardId];
+    return costs[backwardId * forwardSize + forwardId];
   }
   
   public static ConnectionCosts getInstance() {
@@ -17,6 +17,10 @@ package org.apache.lucene.benchmark.byTask.stats;
  * limitations under the License.
  */
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
 import org.apache.lucene.benchmark.byTask.tasks.PerfTask;
 
 /**
@@ -44,6 +48,12 @@ public class TaskStats implements Cloneable {
   /** max used mem during task */
   private long maxUsedMem;
   
+  /** bytes allocated on the heap by the thread running the task, or -1 if unknown */
+  private long allocatedBytes = -1;
+
+  /** thread allocation counter at task start, or -1 if unsupported */
+  private long startAllocatedBytes;
+
   /** serial run number of this task run in the perf run */
   private int taskRunNum;
   
@@ -72,8 +82,43 @@ public class TaskStats implements Cloneable {
     this.round = round;
     maxTotMem = Runtime.getRuntime().totalMemory();
     maxUsedMem = maxTotMem - Runtime.getRuntime().freeMemory();
+    startAllocatedBytes = currentThreadAllocatedBytes();
     start = System.currentTimeMillis();
   }
+
+  // com.sun.management.ThreadMXBean is not available on
+  // all JVMs, so look up getThreadAllocatedBytes reflectively:
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+  private static final Method GET_THREAD_ALLOCATED_BYTES;
+  static {
+    Method m = null;
+    try {
+      final Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+      if (clazz.isInstance(THREAD_BEAN)) {
+        m = clazz.getMethod("getThreadAllocatedBytes", long.class);
+        if (((Long) m.invoke(THREAD_BEAN, Thread.currentThread().getId())).longValue() < 0) {
+          m = null; // disabled
+        }
+      }
+    } catch (Exception e) {
+      m = null;
+    }
+    GET_THREAD_ALLOCATED_BYTES = m;
+  }
+
+  /** Returns the number of bytes allocated so far by the
+   *  current thread, or -1 if the JVM does not support
+   *  this measurement. */
+  public static long currentThreadAllocatedBytes() {
+    if (GET_THREAD_ALLOCATED_BYTES == null) {
+      return -1;
+    }
+    try {
+      return ((Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId())).longValue();
+    } catch (Exception e) {
+      return -1;
+    }
+  }
   
   /**
    * mark the end of a task
@@ -88,6 +133,12 @@ public class TaskStats implements Cloneable {
     if (usedMem > maxUsedMem) {
       maxUsedMem = usedMem;
     }
+    if (startAllocatedBytes >= 0) {
+      final long endAllocatedBytes = currentThreadAllocatedBytes();
+      if (endAllocatedBytes >= 0) {
+        allocatedBytes = endAllocatedBytes - startAllocatedBytes;
+      }
+    }
     this.numParallelTasks = numParallelTasks;
     this.count = count;
   }
@@ -156,6 +207,17 @@ public class TaskStats implements Cloneable {
     return maxUsedMem;
   }
 
+  /**
+   * @return bytes allocated by the thread that ran this
+   * task (summed over aggregated runs), or -1 if the JVM
+   * does not support measuring per-thread allocation.
+   * Allocations done by other threads (eg for parallel
+   * child tasks) are accounted in their own stats.
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
   /**
    * @return Returns the numParallelTasks.
    */
@@ -186,6 +248,11 @@ public class TaskStats implements Cloneable {
     elapsed += stat2.getElapsed();
     maxTotMem += stat2.getMaxTotMem();
     maxUsedMem += stat2.getMaxUsedMem();
+    if (allocatedBytes < 0 || stat2.getAllocatedBytes() < 0) {
+      allocatedBytes = -1;
+    } else {
+      allocatedBytes += stat2.getAllocatedBytes();
+    }
     count += stat2.getCount();
     if (round != stat2.round) {
       round = -1; // no meaning if aggregating tasks of different round. 
@@ -0,0 +1,133 @@
+package org.apache.lucene.benchmark.byTask.tasks;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.Reader;
+import java.util.StringTokenizer;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.synonym.SolrSynonymParser;
+import org.apache.lucene.analysis.synonym.SynonymFilter;
+import org.apache.lucene.analysis.synonym.SynonymMap;
+import org.apache.lucene.benchmark.byTask.PerfRunData;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Task to support benchmarking SynonymFilter: wraps an
+ * analyzer so that its output is run through a {@link
+ * SynonymFilter}, using rules read from a file in the
+ * Solr synonyms format.
+ * <p>
+ * <ul>
+ *  <li> <code>NewSynonymAnalyzer(synonyms:conf/synonyms.txt)</code>
+ *  <li> <code>NewSynonymAnalyzer(analyzer:standard.StandardAnalyzer,synonyms:conf/synonyms.txt,expand:true,ignoreCase:false)</code>
+ * </ul>
+ * </p>
+ */
+public class NewSynonymAnalyzerTask extends PerfTask {
+
+  private String analyzerClassName = "standard.StandardAnalyzer";
+  private String synonymsFile = null;
+  private boolean expand = true;
+  private boolean ignoreCase = false;
+  
+  public NewSynonymAnalyzerTask(PerfRunData runData) {
+    super(runData);
+  }
+
+  private void setAnalyzer() throws Exception {
+    if (synonymsFile == null) {
+      throw new IllegalArgumentException("synonyms file must be specified");
+    }
+    String className = analyzerClassName;
+    if (-1 == className.indexOf(".")) {
+      className = "org.apache.lucene.analysis.core." + className;
+    } else if (className.startsWith("standard.")) {
+      className = "org.apache.lucene.analysis." + className;
+    }
+    final Analyzer wrappedAnalyzer = NewAnalyzerTask.createAnalyzer(className);
+
+    final SolrSynonymParser parser = new SolrSynonymParser(true, expand, wrappedAnalyzer);
+    final Reader in = IOUtils.getDecodingReader(new File(synonymsFile), IOUtils.CHARSET_UTF_8);
+    try {
+      parser.add(in);
+    } finally {
+      in.close();
+    }
+    final SynonymMap map = parser.build();
+
+    getRunData().setAnalyzer(new AnalyzerWrapper() {
+      @Override
+      protected Analyzer getWrappedAnalyzer(String fieldName) {
+        return wrappedAnalyzer;
+      }
+
+      @Override
+      protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+        if (map.fst == null) {
+          return components;
+        }
+        return new TokenStreamComponents(components.getTokenizer(),
+            new SynonymFilter(components.getTokenStream(), map, ignoreCase));
+      }
+    });
+  }
+  
+  @Override
+  public int doLogic() throws Exception {
+    try {
+      setAnalyzer();
+      System.out.println
+        ("Changed Analyzer to: SynonymFilter over " + analyzerClassName
+         + " with synonyms from " + synonymsFile);
+    } catch (Exception e) {
+      throw new RuntimeException("Error creating Analyzer", e);
+    }
+    return 1;
+  }
+  
+  @Override
+  public void setParams(String params) {
+    super.setParams(params);
+    StringTokenizer st = new StringTokenizer(params, ",");
+    while (st.hasMoreTokens()) {
+      String param = st.nextToken();
+      StringTokenizer expr = new StringTokenizer(param, ":");
+      String key = expr.nextToken();
+      String value = expr.nextToken();
+      if (key.equalsIgnoreCase("analyzer")) {
+        analyzerClassName = value;
+      } else if (key.equalsIgnoreCase("synonyms")) {
+        synonymsFile = value;
+      } else if (key.equalsIgnoreCase("expand")) {
+        expand = Boolean.parseBoolean(value);
+      } else if (key.equalsIgnoreCase("ignoreCase")) {
+        ignoreCase = Boolean.parseBoolean(value);
+      } else {
+        throw new RuntimeException("Unknown parameter " + param);
+      }
+    }
+  }
+
+  @Override
+  public boolean supportsParams() {
+    return true;
+  }
+}
@@ -67,13 +67,17 @@ public abstract class ReportTask extends PerfTask {
   protected static final String ELAPSED =     "  elapsedSec";
   protected static final String USEDMEM =     "    avgUsedMem";
   protected static final String TOTMEM =      "    avgTotalMem";
+  protected static final String ALLOCMB =     "   avgAllocMB";
+  protected static final String ALLOCRATE =   "   allocMB/s";
   protected static final String COLS[] = {
       RUNCNT,
       RECCNT,
       RECSEC,
       ELAPSED,
       USEDMEM,
-      TOTMEM
+      TOTMEM,
+      ALLOCMB,
+      ALLOCRATE
   };
 
   /**
@@ -130,6 +134,15 @@ public abstract class ReportTask extends PerfTask {
     sb.append(Format.format(2, (float) stat.getElapsed() / 1000, ELAPSED));
     sb.append(Format.format(0, (float) stat.getMaxUsedMem() / stat.getNumRuns(), USEDMEM)); 
     sb.append(Format.format(0, (float) stat.getMaxTotMem() / stat.getNumRuns(), TOTMEM));
+    if (stat.getAllocatedBytes() >= 0) {
+      // heap allocation by the task's own thread; a proxy for GC pressure
+      final double allocMB = stat.getAllocatedBytes() / 1024.0 / 1024.0;
+      sb.append(Format.format(2, (float) (allocMB / stat.getNumRuns()), ALLOCMB));
+      sb.append(Format.format(2, (float) (allocMB * 1000.0 / elapsed), ALLOCRATE));
+    } else {
+      sb.append(Format.formatPaddLeft("-", ALLOCMB));
+      sb.append(Format.formatPaddLeft("-", ALLOCRATE));
+    }
     return sb.toString();
   }
 
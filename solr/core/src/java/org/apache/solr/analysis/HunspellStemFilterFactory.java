@@ -17,6 +17,8 @@ package org.apache.solr.analysis;
  * limitations under the License.
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,6 +26,12 @@ import java.util.List;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.hunspell.HunspellDictionary;
 import org.apache.lucene.analysis.hunspell.HunspellStemFilter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.IOUtils;
 import org.apache.solr.common.ResourceLoader;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
@@ -39,6 +47,16 @@ import org.apache.solr.util.plugin.ResourceLoaderAware;
  *    ignoreCase=&quot;true&quot; /&gt;</pre>
  * Both parameters dictionary and affix are mandatory.
  * <br/>
+ * Alternatively, a dictionary compiled with
+ * {@link HunspellDictionary#main} can be used, which loads much faster and
+ * uses far less memory:
+ * <pre class="prettyprint" >
+ * &lt;filter class=&quot;solr.HunspellStemFilterFactory&quot;
+ *    compiledDictionary=&quot;en_GB.hunspell&quot; /&gt;</pre>
+ * Identical compiled dictionaries are loaded only once and shared by all
+ * cores. The ignoreCase setting is recorded in the compiled dictionary; an
+ * ignoreCase parameter that differs from it is a configuration error.
+ * <br/>
  * The parameter ignoreCase (true/false) controls whether matching is case sensitive or not. Default false.
  * <br/> 
  * Dictionaries for many languages are available through the OpenOffice project.
@@ -50,12 +68,16 @@ public class HunspellStemFilterFactory extends BaseTokenFilterFactory implements
   private static final String PARAM_DICTIONARY = "dictionary";
   private static final String PARAM_AFFIX = "affix";
   private static final String PARAM_IGNORE_CASE = "ignoreCase";
+  private static final String PARAM_COMPILED_DICTIONARY = "compiledDictionary";
   private static final String TRUE = "true";
   private static final String FALSE = "false";
   
   private HunspellDictionary dictionary;
   private boolean ignoreCase = false;
 
+  private static final ResourceContentCache<HunspellDictionary> compiledDictionaries =
+    new ResourceContentCache<HunspellDictionary>();
+
   /**
    * Loads the hunspell dictionary and affix files defined in the configuration
    *  
@@ -63,14 +85,27 @@ public class HunspellStemFilterFactory extends BaseTokenFilterFactory implements
    */
   public void inform(ResourceLoader loader) {
     assureMatchVersion();
-    String dictionaryFiles[] = args.get(PARAM_DICTIONARY).split(",");
-    String affixFile = args.get(PARAM_AFFIX);
     String pic = args.get(PARAM_IGNORE_CASE);
     if(pic != null) {
       if(pic.equalsIgnoreCase(TRUE)) ignoreCase = true;
       else if(pic.equalsIgnoreCase(FALSE)) ignoreCase = false;
       else throw new SolrException(ErrorCode.UNKNOWN, "Unknown value for "+PARAM_IGNORE_CASE+": "+pic+". Must be true or false");
     }
+    String compiledFile = args.get(PARAM_COMPILED_DICTIONARY);
+    if (compiledFile != null) {
+      try {
+        this.dictionary = loadCompiled(loader, compiledFile);
+      } catch (Exception e) {
+        throw new RuntimeException("Unable to load compiled hunspell data! [" + PARAM_COMPILED_DICTIONARY + "=" + compiledFile + "]", e);
+      }
+      if (pic != null && ignoreCase != dictionary.isIgnoreCase()) {
+        throw new SolrException(ErrorCode.UNKNOWN, PARAM_IGNORE_CASE + "=" + pic + " conflicts with " + PARAM_COMPILED_DICTIONARY + "=" +
+            compiledFile + ", which was compiled with " + PARAM_IGNORE_CASE + "=" + dictionary.isIgnoreCase());
+      }
+      return;
+    }
+    String dictionaryFiles[] = args.get(PARAM_DICTIONARY).split(",");
+    String affixFile = args.get(PARAM_AFFIX);
 
     try {
       List<InputStream> dictionaries = new ArrayList<InputStream>();
@@ -83,6 +118,40 @@ public class HunspellStemFilterFactory extends BaseTokenFilterFactory implements
     }
   }
 
+  private HunspellDictionary loadCompiled(ResourceLoader loader, String file) throws IOException {
+    return compiledDictionaries.get(loader, file, luceneMatchVersion.toString(), new ResourceContentCache.Builder<HunspellDictionary>() {
+      public HunspellDictionary build(InputStream content) throws IOException {
+        return HunspellDictionary.load(new InputStreamDataInput(content), luceneMatchVersion);
+      }
+
+      @Override
+      public HunspellDictionary build(File file) throws IOException {
+        // the words are read from the mapped file; the input is not closed, which would unmap
+        // it under the shared dictionary, and the mapping is released once the dictionary is collected
+        final Directory dir = new MMapDirectory(file.getParentFile());
+        try {
+          final IndexInput in = dir.openInput(file.getName(), IOContext.READ);
+          boolean success = false;
+          try {
+            final HunspellDictionary dictionary = HunspellDictionary.loadOffHeap(in, luceneMatchVersion);
+            success = true;
+            return dictionary;
+          } finally {
+            if (!success) {
+              IOUtils.closeWhileHandlingException(in);
+            }
+          }
+        } finally {
+          dir.close();
+        }
+      }
+    });
+  }
+
+  HunspellDictionary getDictionary() {
+    return dictionary;
+  }
+
   /**
    * Creates an instance of {@link org.apache.lucene.analysis.hunspell.HunspellStemFilter} that will filter the given
    * TokenStream
@@ -17,6 +17,7 @@ package org.apache.solr.analysis;
  * limitations under the License.
  */
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -50,6 +51,9 @@ import org.apache.solr.util.plugin.ResourceLoaderAware;
  *   &lt;/analyzer&gt;
  * &lt;/fieldType&gt;
  * </pre>
+ * <p>
+ * Identical user dictionaries are parsed only once and shared by all
+ * factories (and cores) using them.
  */
 public class KuromojiTokenizerFactory extends BaseTokenizerFactory implements ResourceLoaderAware {
   private static final String MODE = "mode";
@@ -60,6 +64,9 @@ public class KuromojiTokenizerFactory extends BaseTokenizerFactory implements Re
 
   private UserDictionary userDictionary;
   private Mode mode;
+
+  private static final ResourceContentCache<UserDictionary> userDictionaries =
+    new ResourceContentCache<UserDictionary>();
   
   @Override
   public void inform(ResourceLoader loader) {
@@ -67,16 +74,11 @@ public class KuromojiTokenizerFactory extends BaseTokenizerFactory implements Re
     String userDictionaryPath = args.get(USER_DICT_PATH);
     try {
       if (userDictionaryPath != null) {
-        InputStream stream = loader.openResource(userDictionaryPath);
         String encoding = args.get(USER_DICT_ENCODING);
         if (encoding == null) {
           encoding = IOUtils.UTF_8;
         }
-        CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
-            .onMalformedInput(CodingErrorAction.REPORT)
-            .onUnmappableCharacter(CodingErrorAction.REPORT);
-        Reader reader = new InputStreamReader(stream, decoder);
-        userDictionary = new UserDictionary(reader);
+        userDictionary = loadUserDictionary(loader, userDictionaryPath, encoding);
       } else {
         userDictionary = null;
       }
@@ -85,6 +87,22 @@ public class KuromojiTokenizerFactory extends BaseTokenizerFactory implements Re
     }
   }
   
+  private static UserDictionary loadUserDictionary(ResourceLoader loader, String path, final String encoding) throws IOException {
+    return userDictionaries.get(loader, path, encoding, new ResourceContentCache.Builder<UserDictionary>() {
+      public UserDictionary build(InputStream content) throws IOException {
+        CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        return new UserDictionary(new InputStreamReader(content, decoder));
+      }
+    });
+  }
+
+  /** the user dictionary, or null if none is configured */
+  UserDictionary getUserDictionary() {
+    return userDictionary;
+  }
+
   @Override
   public Tokenizer create(Reader input) {
     return new KuromojiTokenizer(input, userDictionary, true, mode);
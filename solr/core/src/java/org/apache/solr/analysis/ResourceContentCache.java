@@ -0,0 +1,158 @@
+package org.apache.solr.analysis;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.lucene.util.IOUtils;
+import org.apache.solr.cloud.ZkSolrResourceLoader;
+import org.apache.solr.common.ResourceLoader;
+import org.apache.solr.core.SolrResourceLoader;
+
+/**
+ * Shares the objects that factories build from resource files, like
+ * dictionaries, across factories and cores: a resource is built only once,
+ * and the result is kept as long as some factory still uses it.
+ * <p>
+ * Resources that are plain files are looked up by path and checked against
+ * their modification time and length, so a hit does not read the file.
+ * Other resources (from the classpath or ZooKeeper) are read and looked up
+ * by the checksum of their content.
+ */
+final class ResourceContentCache<T> {
+
+  /** Builds the shared object from a resource */
+  abstract static class Builder<T> {
+    abstract T build(InputStream content) throws IOException;
+
+    /** Builds from the file the resource is read from; by default from its content */
+    T build(File file) throws IOException {
+      final InputStream in = new BufferedInputStream(new FileInputStream(file));
+      try {
+        return build(in);
+      } finally {
+        IOUtils.close(in);
+      }
+    }
+  }
+
+  private static final class Entry<T> {
+    final String stamp;
+    volatile WeakReference<T> ref;
+
+    Entry(String stamp) {
+      this.stamp = stamp;
+    }
+  }
+
+  // keyed by file path, or by content checksum and length, and the settings the result depends on
+  private final Map<String,Entry<T>> cache = new HashMap<String,Entry<T>>();
+
+  /**
+   * Returns the object built from the content of the resource, building it
+   * only if no factory uses one for the same resource yet.
+   *
+   * @param settings the settings, other than the content, the object depends on
+   */
+  T get(ResourceLoader loader, String resource, String settings, Builder<T> builder) throws IOException {
+    final File file = resolveFile(loader, resource);
+    final String key, stamp;
+    byte[] bytes = null;
+    if (file != null) {
+      key = "file:" + file.getAbsolutePath() + ":" + settings;
+      stamp = file.lastModified() + ":" + file.length();
+    } else {
+      bytes = read(loader, resource);
+      final CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length);
+      key = "crc:" + crc.getValue() + ":" + bytes.length + ":" + settings;
+      stamp = "";
+    }
+
+    Entry<T> entry;
+    synchronized (cache) {
+      entry = cache.get(key);
+      if (entry == null || !entry.stamp.equals(stamp)) {
+        // prune objects no longer used by any factory
+        final Iterator<Entry<T>> it = cache.values().iterator();
+        while (it.hasNext()) {
+          final WeakReference<T> ref = it.next().ref;
+          if (ref != null && ref.get() == null) {
+            it.remove();
+          }
+        }
+        entry = new Entry<T>(stamp);
+        cache.put(key, entry);
+      }
+    }
+
+    // build outside of the cache lock, so that other resources can be loaded meanwhile
+    synchronized (entry) {
+      T value = entry.ref == null ? null : entry.ref.get();
+      if (value == null) {
+        value = bytes != null ? builder.build(new ByteArrayInputStream(bytes)) : builder.build(file);
+        entry.ref = new WeakReference<T>(value);
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Returns the file {@link SolrResourceLoader#openResource} reads the
+   * resource from, or null if it is not read from a plain file.
+   */
+  private static File resolveFile(ResourceLoader loader, String resource) {
+    if (!(loader instanceof SolrResourceLoader) || loader instanceof ZkSolrResourceLoader) {
+      return null;
+    }
+    final File f0 = new File(resource);
+    if (!f0.isAbsolute()) {
+      final File f = new File(((SolrResourceLoader) loader).getConfigDir() + resource);
+      if (f.isFile() && f.canRead()) {
+        return f;
+      }
+    }
+    return f0.isFile() && f0.canRead() ? f0 : null;
+  }
+
+  private static byte[] read(ResourceLoader loader, String resource) throws IOException {
+    final InputStream in = loader.openResource(resource);
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int len;
+      while ((len = in.read(buffer)) > 0) {
+        out.write(buffer, 0, len);
+      }
+      return out.toByteArray();
+    } finally {
+      IOUtils.close(in);
+    }
+  }
+}
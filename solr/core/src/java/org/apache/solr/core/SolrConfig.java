@@ -136,6 +136,7 @@ public class SolrConfig extends Config {
 
     
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
+    perSegmentFilterCache = filterCacheConfig != null && getBool("query/filterCache/@perSegment", false);
     queryResultCacheConfig = CacheConfig.getConfig(this, "query/queryResultCache");
     documentCacheConfig = CacheConfig.getConfig(this, "query/documentCache");
     CacheConfig conf = CacheConfig.getConfig(this, "query/fieldValueCache");
@@ -148,6 +149,7 @@ public class SolrConfig extends Config {
       conf = new CacheConfig(FastLRUCache.class, args, null);
     }
     fieldValueCacheConfig = conf;
+    facetCacheConfig = CacheConfig.getConfig(this, "query/facetCache");
     unlockOnStartup = getBool("mainIndex/unlockOnStartup", false);
     useColdSearcher = getBool("query/useColdSearcher",false);
     dataDir = get("dataDir", null);
@@ -233,9 +235,13 @@ public class SolrConfig extends Config {
   public final float filtOptThreshold;
   // SolrIndexSearcher - caches configurations
   public final CacheConfig filterCacheConfig ;
+  /** if true, filterCache entries are kept per segment and survive commits that don't touch the segment */
+  public final boolean perSegmentFilterCache;
   public final CacheConfig queryResultCacheConfig;
   public final CacheConfig documentCacheConfig;
   public final CacheConfig fieldValueCacheConfig;
+  /** optional cache of facet.field counts, keyed by {@link org.apache.solr.request.FacetCacheKey} */
+  public final CacheConfig facetCacheConfig;
   public final CacheConfig[] userCacheConfigs;
   // SolrIndexSearcher - more...
   public final boolean useFilterForSortedQuery;
@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.SorterTemplate;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.ResultContext;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Returns all documents matching a query, in sort order, without the cost of deep paging.
+ * <p>
+ * Paging through a large result with start and rows collects start+rows documents
+ * into a priority queue for every page.  Instead this sorts the matching documents of each
+ * segment with the FieldCache values of the sort fields, merges the segments, and lets the
+ * response writer read the stored fields of one document at a time, bypassing the
+ * documentCache.  When <code>rows</code> is set, each segment only keeps its best
+ * <code>rows</code> documents after the cursor in a heap, so a page costs
+ * O(matches&nbsp;log&nbsp;rows) however deep it is.  Only sorts on single valued string and numeric fields are supported,
+ * and the uniqueKey field is added to the sort as a tie break.
+ * <p>
+ * Parameters: <code>q</code> (default <code>*:*</code>), <code>fq</code>, <code>sort</code> (required),
+ * <code>fl</code>, <code>rows</code> (default all documents) and {@link #CURSOR}.
+ * When <code>rows</code> cuts the export short, the response contains a <code>nextCursor</code>
+ * token, to be passed as the cursor of the next request.  <code>numFound</code> is the
+ * number of documents after the cursor.
+ */
+public class ExportRequestHandler extends RequestHandlerBase {
+  /** The position to start from, as returned in <code>nextCursor</code>, or {@link CursorMark#START} */
+  public static final String CURSOR = "cursor";
+
+  @Override
+  public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
+    SolrParams params = req.getParams();
+    SolrIndexSearcher searcher = req.getSearcher();
+
+    SchemaField uniqueKey = req.getSchema().getUniqueKeyField();
+    if (uniqueKey == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Export requires a uniqueKey field");
+    }
+    String sortStr = params.get(CommonParams.SORT);
+    Sort sort = QueryParsing.parseSort(sortStr, req);
+    if (sort == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Export requires a sort on fields, got: " + sortStr);
+    }
+    SortFieldValues[] fields = SortFieldValues.create(SortFieldValues.withTieBreak(sort, uniqueKey));
+    CursorMark cursor = CursorMark.parse(params.get(CURSOR, CursorMark.START), fields);
+    int rows = params.getInt(CommonParams.ROWS, Integer.MAX_VALUE);
+
+    Query query;
+    List<Query> filters = new ArrayList<Query>();
+    try {
+      String defType = params.get(QueryParsing.DEFTYPE, QParserPlugin.DEFAULT_QTYPE);
+      query = QParser.getParser(params.get(CommonParams.Q, "*:*"), defType, req).getQuery();
+      String[] fqs = params.getParams(CommonParams.FQ);
+      if (fqs != null) {
+        for (String fq : fqs) {
+          if (fq != null && fq.trim().length() != 0) {
+            Query fqQuery = QParser.getParser(fq, null, req).getQuery();
+            if (fqQuery != null) filters.add(fqQuery);
+          }
+        }
+      }
+    } catch (ParseException e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+    }
+
+    DocSet docs;
+    if (query == null) {
+      docs = new SortedIntDocSet(new int[0]);
+    } else {
+      // filters are likely to be reused, the main query of an export is not
+      if (!(query instanceof ExtendedQuery)) {
+        WrappedQuery wrapped = new WrappedQuery(query);
+        wrapped.setCache(false);
+        query = wrapped;
+      }
+      docs = searcher.getDocSet(query, filters.isEmpty() ? null : searcher.getDocSet(filters));
+    }
+
+    ExportResult result = sortDocs(searcher, docs, fields, cursor, rows);
+
+    ResultContext ctx = new ResultContext();
+    ctx.query = query;
+    ctx.docs = new DocSlice(0, result.docs.length, result.docs, null, result.matches, 0.0f);
+    ctx.cacheDocs = false;
+    rsp.setReturnFields(new ReturnFields(req));
+    rsp.add("response", ctx);
+    if (result.next != null) {
+      rsp.add("nextCursor", result.next.toString());
+    }
+  }
+
+  /** The sorted documents, the number of documents after the cursor, and the cursor to continue with if not all were returned */
+  static final class ExportResult {
+    int[] docs;
+    int matches;
+    CursorMark next;
+    long comparisons;  // document comparisons made while sorting the segments, for tests
+  }
+
+  /**
+   * Sorts the documents of the set that come after the cursor, and returns the first <code>rows</code> of them.
+   */
+  static ExportResult sortDocs(SolrIndexSearcher searcher, DocSet docs, SortFieldValues[] fields,
+                               CursorMark cursor, int rows) throws IOException {
+    Filter filter = docs.getTopFilter();
+    AtomicReaderContext[] leaves = searcher.getTopReaderContext().leaves();
+    List<SegmentDocs> segments = new ArrayList<SegmentDocs>(leaves.length);
+    int matches = 0;
+    long comparisons = 0;
+
+    for (AtomicReaderContext leaf : leaves) {
+      DocIdSet idSet = filter.getDocIdSet(leaf, null);
+      DocIdSetIterator iter = idSet == null ? null : idSet.iterator();
+      if (iter == null) continue;
+      SortFieldValues.Segment[] values = new SortFieldValues.Segment[fields.length];
+      for (int i=0; i<fields.length; i++) {
+        values[i] = fields[i].getSegment(leaf.reader());
+      }
+      SegmentDocs seg = new SegmentDocs(leaf.docBase, values, rows);
+      int doc;
+      while ((doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (cursor.compareDoc(values, doc) > 0) {
+          seg.add(doc);
+        }
+      }
+      matches += seg.count;
+      if (seg.size > 0) {
+        seg.sort();
+        segments.add(seg);
+        comparisons += seg.comparisons;
+      }
+    }
+
+    ExportResult result = new ExportResult();
+    result.matches = matches;
+    result.comparisons = comparisons;
+    result.docs = new int[Math.min(rows, matches)];
+
+    PriorityQueue<SegmentDocs> queue = new PriorityQueue<SegmentDocs>(segments.size()) {
+      @Override
+      protected boolean lessThan(SegmentDocs a, SegmentDocs b) {
+        int c = a.compareHead(b);
+        return c < 0 || (c == 0 && a.docBase < b.docBase);
+      }
+    };
+    for (SegmentDocs seg : segments) {
+      queue.add(seg);
+    }
+
+    SegmentDocs last = null;
+    for (int i=0; i<result.docs.length; i++) {
+      last = queue.top();
+      result.docs[i] = last.docBase + last.docs[last.pos];
+      if (++last.pos < last.size) {
+        queue.updateTop();
+      } else {
+        queue.pop();
+      }
+    }
+
+    if (result.docs.length < matches) {
+      result.next = last == null ? cursor : CursorMark.forDoc(fields, last.values, last.docs[last.pos - 1]);
+    }
+    return result;
+  }
+
+  /**
+   * The best matching documents of one segment, sorted.  Up to <code>limit</code>
+   * documents are simply collected; once there are more, the kept ones become a heap
+   * with the worst one on top, which each further document has to beat.
+   */
+  static final class SegmentDocs extends SorterTemplate {
+    final int docBase;
+    final SortFieldValues.Segment[] values;
+    final int limit;
+    int[] docs;
+    int size;   // the number of documents kept
+    int count;  // the number of documents added
+    int pos;  // the next document to merge
+    long comparisons;
+    private boolean heap;
+    private int pivot;
+
+    SegmentDocs(int docBase, SortFieldValues.Segment[] values, int limit) {
+      this.docBase = docBase;
+      this.values = values;
+      this.limit = limit;
+      this.docs = new int[Math.min(16, limit)];
+    }
+
+    void add(int doc) {
+      count++;
+      if (size < limit) {
+        if (size == docs.length) {
+          docs = ArrayUtil.grow(docs, size + 1);
+        }
+        docs[size++] = doc;
+      } else if (limit > 0) {
+        if (!heap) {
+          for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            downHeap(i);
+          }
+          heap = true;
+        }
+        if (compareDocs(doc, docs[0]) < 0) {
+          docs[0] = doc;
+          downHeap(0);
+        }
+      }
+    }
+
+    // restores the heap below i, the worst document being at 0
+    private void downHeap(int i) {
+      int doc = docs[i];
+      int child;
+      while ((child = (i << 1) + 1) < size) {
+        if (child + 1 < size && compareDocs(docs[child + 1], docs[child]) > 0) {
+          child++;
+        }
+        if (compareDocs(docs[child], doc) <= 0) {
+          break;
+        }
+        docs[i] = docs[child];
+        i = child;
+      }
+      docs[i] = doc;
+    }
+
+    void sort() {
+      quickSort(0, size - 1);
+    }
+
+    private int compareDocs(int doc1, int doc2) {
+      comparisons++;
+      for (SortFieldValues.Segment v : values) {
+        int c = v.compare(doc1, doc2);
+        if (c != 0) return c;
+      }
+      return doc1 - doc2;
+    }
+
+    /** compares the next documents of this and another segment */
+    int compareHead(SegmentDocs other) {
+      int doc = docs[pos];
+      int otherDoc = other.docs[other.pos];
+      for (int i=0; i<values.length; i++) {
+        int c = values[i].compare(doc, other.values[i], otherDoc);
+        if (c != 0) return c;
+      }
+      return 0;
+    }
+
+    @Override
+    protected void swap(int i, int j) {
+      int tmp = docs[i];
+      docs[i] = docs[j];
+      docs[j] = tmp;
+    }
+
+    @Override
+    protected int compare(int i, int j) {
+      return compareDocs(docs[i], docs[j]);
+    }
+
+    @Override
+    protected void setPivot(int i) {
+      pivot = docs[i];
+    }
+
+    @Override
+    protected int comparePivot(int j) {
+      return compareDocs(pivot, docs[j]);
+    }
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+  @Override
+  public String getVersion() {
+    return "$Revision$";
+  }
+
+  @Override
+  public String getDescription() {
+    return "Exports all documents matching a query in sort order";
+  }
+
+  @Override
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  @Override
+  public String getSource() {
+    return "$URL$";
+  }
+
+  @Override
+  public URL[] getDocs() {
+    return null;
+  }
+}
@@ -50,7 +50,10 @@ public class HttpShardHandler extends ShardHandler {
 
   private HttpShardHandlerFactory httpShardHandlerFactory;
   private CompletionService<ShardResponse> completionService;
-  private     Set<Future<ShardResponse>> pending;
+  // the outstanding attempts, to the shard they were sent for
+  private Map<Future<ShardResponse>,PendingShard> pending;
+  // the shards that have not answered yet
+  private List<PendingShard> pendingShards;
   private Map<String,List<String>> shardToURLs;
   private HttpClient httpClient;
 
@@ -60,7 +63,8 @@ public class HttpShardHandler extends ShardHandler {
     this.httpClient = httpClient;
     this.httpShardHandlerFactory = httpShardHandlerFactory;
     completionService = new ExecutorCompletionService<ShardResponse>(httpShardHandlerFactory.commExecutor);
-    pending = new HashSet<Future<ShardResponse>>();
+    pending = new HashMap<Future<ShardResponse>,PendingShard>();
+    pendingShards = new ArrayList<PendingShard>();
 
     // maps "localhost:8983|localhost:7574" to a shuffled List("http://localhost:8983","http://localhost:7574")
       // This is primarily to keep track of what order we should use to query the replicas of a shard
@@ -116,11 +120,100 @@ public class HttpShardHandler extends ShardHandler {
   }
 
 
+  /**
+   * A shard request that has not been answered yet: the attempts sent for it, and
+   * the times at which to hedge it and to give up on it.
+   */
+  private class PendingShard {
+    final ShardRequest sreq;
+    final String shard;
+    final List<String> urls;
+    final ModifiableSolrParams params;
+    final long startTime = System.currentTimeMillis();
+    final List<Future<ShardResponse>> attempts = new ArrayList<Future<ShardResponse>>(2);
+    boolean hedged;
+
+    PendingShard(ShardRequest sreq, String shard, List<String> urls, ModifiableSolrParams params) {
+      this.sreq = sreq;
+      this.shard = shard;
+      this.urls = urls;
+      this.params = params;
+    }
+
+    void send(List<String> urls) {
+      Future<ShardResponse> future = completionService.submit(newTask(sreq, shard, urls, params));
+      attempts.add(future);
+      pending.put(future, this);
+    }
+
+    /** a second request, to the replicas in a different order, for a shard that is slow to answer */
+    void hedge() {
+      hedged = true;
+      List<String> rotated = new ArrayList<String>(urls.size());
+      rotated.addAll(urls.subList(1, urls.size()));
+      rotated.add(urls.get(0));
+      send(rotated);
+    }
+
+    boolean canHedge() {
+      return !hedged && httpShardHandlerFactory.hedgeDelay > 0 && urls.size() > 1;
+    }
+
+    /** returns the next time something has to be done for this shard, or Long.MAX_VALUE */
+    long deadline() {
+      long deadline = Long.MAX_VALUE;
+      if (canHedge()) deadline = startTime + httpShardHandlerFactory.hedgeDelay;
+      if (httpShardHandlerFactory.shardTimeout > 0) {
+        deadline = Math.min(deadline, startTime + httpShardHandlerFactory.shardTimeout);
+      }
+      return deadline;
+    }
+
+    boolean isTimedOut(long now) {
+      return httpShardHandlerFactory.shardTimeout > 0 && now >= startTime + httpShardHandlerFactory.shardTimeout;
+    }
+
+    /** forgets all attempts for this shard, cancelling those still running.  Interrupting
+     *  does not stop a blocked socket read; the socket timeout, which is at most the shard
+     *  timeout, does, see {@link HttpShardHandlerFactory#INIT_SHARD_TIMEOUT} */
+    void finish() {
+      for (Future<ShardResponse> future : attempts) {
+        if (pending.remove(future) != null) {
+          future.cancel(true);
+        }
+      }
+      pendingShards.remove(this);
+    }
+
+    ShardResponse timedOut(long now) {
+      ShardResponse srsp = new ShardResponse();
+      srsp.setShardRequest(sreq);
+      srsp.setShard(shard);
+      SimpleSolrResponse ssr = new SimpleSolrResponse();
+      ssr.elapsedTime = now - startTime;
+      srsp.setSolrResponse(ssr);
+      srsp.setException(new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE,
+          "no response from shard " + shard + " within " + httpShardHandlerFactory.shardTimeout + "ms"));
+      srsp.setResponseCode(SolrException.ErrorCode.SERVICE_UNAVAILABLE.code);
+      return srsp;
+    }
+  }
+
+
   public void submit(final ShardRequest sreq, final String shard, final ModifiableSolrParams params) {
     // do this outside of the callable for thread safety reasons
     final List<String> urls = getURLs(shard);
+    // the params are shared by a request and its hedge, so don't modify them in the callable
+    params.remove(CommonParams.WT); // use default (currently javabin)
+    params.remove(CommonParams.VERSION);
+
+    PendingShard ps = new PendingShard(sreq, shard, urls, params);
+    pendingShards.add(ps);
+    ps.send(urls);
+  }
 
-    Callable<ShardResponse> task = new Callable<ShardResponse>() {
+  private Callable<ShardResponse> newTask(final ShardRequest sreq, final String shard, final List<String> urls, final ModifiableSolrParams params) {
+    return new Callable<ShardResponse>() {
       public ShardResponse call() throws Exception {
 
         ShardResponse srsp = new ShardResponse();
@@ -131,9 +224,6 @@ public class HttpShardHandler extends ShardHandler {
         long startTime = System.currentTimeMillis();
 
         try {
-          params.remove(CommonParams.WT); // use default (currently javabin)
-          params.remove(CommonParams.VERSION);
-
           // SolrRequest req = new QueryRequest(SolrRequest.METHOD.POST, "/select");
           // use generic request to avoid extra processing of queries
           QueryRequest req = new QueryRequest(params);
@@ -176,8 +266,6 @@ public class HttpShardHandler extends ShardHandler {
         return srsp;
       }
     };
-
-    pending.add( completionService.submit(task) );
   }
 
   /** returns a ShardResponse of the last response correlated with a ShardRequest.  This won't 
@@ -197,11 +285,10 @@ public class HttpShardHandler extends ShardHandler {
   
   private ShardResponse take(boolean bailOnError) {
     
-    while (pending.size() > 0) {
+    while (pendingShards.size() > 0) {
       try {
-        Future<ShardResponse> future = completionService.take();
-        pending.remove(future);
-        ShardResponse rsp = future.get();
+        ShardResponse rsp = nextResponse();
+        if (rsp == null) continue;
         if (bailOnError && rsp.getException() != null) return rsp; // if exception, return immediately
         // add response to the response list... we do this after the take() and
         // not after the completion of "call" so we know when the last response
@@ -222,9 +309,57 @@ public class HttpShardHandler extends ShardHandler {
     return null;
   }
 
+  /**
+   * Waits for the next attempt to complete, or for the next hedge or timeout to be due.
+   * Returns the response of a shard, or null if there is none yet.
+   */
+  private ShardResponse nextResponse() throws InterruptedException, ExecutionException {
+    long deadline = Long.MAX_VALUE;
+    for (PendingShard ps : pendingShards) {
+      deadline = Math.min(deadline, ps.deadline());
+    }
+
+    Future<ShardResponse> future;
+    if (deadline == Long.MAX_VALUE) {
+      future = completionService.take();
+    } else {
+      future = completionService.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    if (future == null) {
+      long now = System.currentTimeMillis();
+      for (PendingShard ps : new ArrayList<PendingShard>(pendingShards)) {
+        if (ps.isTimedOut(now)) {
+          ps.finish();
+          return ps.timedOut(now);
+        }
+        if (ps.canHedge() && now >= ps.startTime + httpShardHandlerFactory.hedgeDelay) {
+          ps.hedge();
+        }
+      }
+      return null;
+    }
+
+    PendingShard ps = pending.remove(future);
+    if (ps == null) return null;  // an attempt that was cancelled after its shard answered
+    ShardResponse rsp = future.get();
+    if (rsp.getException() != null && hasAttempts(ps)) {
+      return null;  // wait for the other attempt, which may still succeed
+    }
+    ps.finish();
+    return rsp;
+  }
+
+  private boolean hasAttempts(PendingShard ps) {
+    for (Future<ShardResponse> attempt : ps.attempts) {
+      if (pending.containsKey(attempt)) return true;
+    }
+    return false;
+  }
+
 
   public void cancelAll() {
-    for (Future<ShardResponse> future : pending) {
+    for (Future<ShardResponse> future : pending.keySet()) {
       // TODO: any issues with interrupting?  shouldn't be if
       // there are finally blocks to release connections.
       future.cancel(true);
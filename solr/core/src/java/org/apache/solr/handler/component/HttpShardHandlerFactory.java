@@ -61,6 +61,8 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements Plug
   int keepAliveTime = 5;
   int queueSize = 1;
   boolean accessPolicy = true;
+  int shardTimeout = 0;
+  int hedgeDelay = 0;
 
   public String scheme = "http://"; //current default values
 
@@ -96,6 +98,18 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements Plug
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // time in ms after which a shard that has not responded counts as failed, 0 to wait
+  // for as long as the socket timeout allows.  With shards.tolerant the request then
+  // completes without that shard.  Giving up on a request does not interrupt a blocked
+  // socket read, so the socket timeout is lowered to the shard timeout if it is longer
+  // (or 0); a request that is given up on then frees its thread and connection once a
+  // read stalls for that long.
+  static final String INIT_SHARD_TIMEOUT = "shardTimeout";
+
+  // time in ms after which a shard with several replicas that has not responded yet
+  // is sent a second request to another replica; the first response wins. 0 disables.
+  static final String INIT_HEDGE_DELAY = "hedgeDelay";
+
   public ShardHandler getShardHandler() {
     return getShardHandler(null);
   }
@@ -117,6 +131,11 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements Plug
     this.keepAliveTime = getParameter(args, MAX_THREAD_IDLE_TIME, 5);
     this.queueSize = getParameter(args, INIT_SIZE_OF_QUEUE, -1);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, false);
+    this.shardTimeout = getParameter(args, INIT_SHARD_TIMEOUT, 0);
+    this.hedgeDelay = getParameter(args, INIT_HEDGE_DELAY, 0);
+    if (this.shardTimeout > 0 && (this.soTimeout == 0 || this.soTimeout > this.shardTimeout)) {
+      this.soTimeout = this.shardTimeout;
+    }
 
     BlockingQueue<Runnable> blockingQueue = (this.queueSize == -1) ?
         new SynchronousQueue<Runnable>(this.accessPolicy) :
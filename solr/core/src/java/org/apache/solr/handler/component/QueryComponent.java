@@ -157,6 +157,11 @@ public class QueryComponent extends SearchComponent
       throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
     }
 
+    String cursorMark = params.get(CommonParams.CURSOR_MARK);
+    if (cursorMark != null) {
+      prepareCursorMark(rb, cursorMark);
+    }
+
     boolean grouping = params.getBool(GroupParams.GROUP, false);
     if (!grouping) {
       return;
@@ -425,10 +430,50 @@ public class QueryComponent extends SearchComponent
     rsp.add("response", ctx);
     rsp.getToLog().add("hits", rb.getResults().docList.matches());
 
+    if (rb.getCursorMark() != null) {
+      rb.setNextCursorMark(nextCursorMark(rb, searcher));
+      rsp.add(CommonParams.CURSOR_MARK_NEXT, rb.getNextCursorMark().toString());
+    }
+
     doFieldSortValues(rb, searcher);
     doPrefetch(rb);
   }
 
+  /**
+   * Validates the cursorMark parameter: deep paging with a cursor replaces start, and
+   * needs a sort on fields that orders all documents, so the uniqueKey is added to the sort.
+   */
+  protected void prepareCursorMark(ResponseBuilder rb, String cursorMark) {
+    SortSpec sortSpec = rb.getSortSpec();
+    SchemaField uniqueKey = rb.req.getSchema().getUniqueKeyField();
+    if (rb.req.getParams().getBool(GroupParams.GROUP, false)) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, CommonParams.CURSOR_MARK + " can not be used with grouping");
+    }
+    if (sortSpec.getOffset() != 0) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, CommonParams.CURSOR_MARK + " can not be used with a start offset");
+    }
+    if (uniqueKey == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, CommonParams.CURSOR_MARK + " requires a uniqueKey field");
+    }
+    if (sortSpec.getSort() == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, CommonParams.CURSOR_MARK + " requires a sort on fields");
+    }
+    Sort sort = SortFieldValues.withTieBreak(sortSpec.getSort(), uniqueKey);
+    rb.setSortSpec(new SortSpec(sort, 0, sortSpec.getCount()));
+    rb.setCursorMark(CursorMark.parse(cursorMark, SortFieldValues.create(sort)));
+  }
+
+  /** Returns the mark of the last document of the page, or the requested mark if the page is empty */
+  protected CursorMark nextCursorMark(ResponseBuilder rb, SolrIndexSearcher searcher) throws IOException {
+    DocList docList = rb.getResults().docList;
+    if (docList.size() == 0) return rb.getCursorMark();
+    int last = -1;
+    for (DocIterator iter = docList.iterator(); iter.hasNext();) {
+      last = iter.nextDoc();
+    }
+    return CursorMark.forTopDoc(rb.getCursorMark().getSortFieldValues(), searcher, last);
+  }
+
   protected void doFieldSortValues(ResponseBuilder rb, SolrIndexSearcher searcher) throws IOException
   {
     SolrQueryRequest req = rb.req;
@@ -699,6 +744,9 @@ public class QueryComponent extends SearchComponent
     }
 
     rb.rsp.add("response", rb._responseDocs);
+    if (rb.getNextCursorMark() != null) {
+      rb.rsp.add(CommonParams.CURSOR_MARK_NEXT, rb.getNextCursorMark().toString());
+    }
   }
 
   private void createDistributedIdf(ResponseBuilder rb) {
@@ -879,14 +927,20 @@ public class QueryComponent extends SearchComponent
       resultSize = Math.max(0, resultSize);  // there may not be any docs in range
 
       Map<Object,ShardDoc> resultIds = new HashMap<Object,ShardDoc>();
+      ShardDoc lastDoc = null;
       for (int i=resultSize-1; i>=0; i--) {
         ShardDoc shardDoc = queue.pop();
         shardDoc.positionInResponse = i;
+        if (lastDoc == null) lastDoc = shardDoc;
         // Need the toString() for correlation with other lists that must
         // be strings (like keys in highlighting, explain, etc)
         resultIds.put(shardDoc.id.toString(), shardDoc);
       }
 
+      if (rb.getCursorMark() != null) {
+        rb.setNextCursorMark(lastDoc == null ? rb.getCursorMark() : shardCursorMark(rb, lastDoc));
+      }
+
 
       SolrDocumentList responseDocs = new SolrDocumentList();
       if (maxScore!=null) responseDocs.setMaxScore(maxScore);
@@ -905,6 +959,18 @@ public class QueryComponent extends SearchComponent
       }
   }
 
+  /** Returns the mark of a merged document, from the sort values its shard returned for it */
+  private CursorMark shardCursorMark(ResponseBuilder rb, ShardDoc shardDoc) {
+    SortFieldValues[] fields = rb.getCursorMark().getSortFieldValues();
+    Object[] values = new Object[fields.length];
+    for (int i=0; i<fields.length; i++) {
+      String fieldName = fields[i].getSortField().getField();
+      List sortVals = (List)shardDoc.sortFieldValues.get(fieldName);
+      values[i] = fields[i].fromSortValue(sortVals.get(shardDoc.orderInShard), rb.req.getSchema().getFieldType(fieldName));
+    }
+    return new CursorMark(fields, values);
+  }
+
   private void createRetrieveDocs(ResponseBuilder rb) {
 
     // TODO: in a system with nTiers > 2, we could be passed "ids" here
@@ -941,6 +1007,9 @@ public class QueryComponent extends SearchComponent
       // we already have the field sort values
       sreq.params.remove(ResponseBuilder.FIELD_SORT_VALUES);
 
+      // the docs are given by id, and there is no sort to continue
+      sreq.params.remove(CommonParams.CURSOR_MARK);
+
       // make sure that the id is returned for correlation.
       String fl = sreq.params.get(CommonParams.FL);
       if (fl != null) {
@@ -30,6 +30,7 @@ import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.CursorMark;
 import org.apache.solr.search.DocListAndSet;
 import org.apache.solr.search.QParser;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -72,6 +73,8 @@ public class ResponseBuilder
   private GroupingSpecification groupingSpec;
   //used for handling deep paging
   private ScoreDoc scoreDoc;
+  private CursorMark cursorMark;
+  private CursorMark nextCursorMark;
 
 
   private DocListAndSet results = null;
@@ -384,6 +387,7 @@ public class ResponseBuilder
             .setLen(getSortSpec().getCount())
             .setFlags(getFieldFlags())
             .setNeedDocSet(isNeedDocSet())
+            .setCursorMark(getCursorMark())
             .setScoreDoc(getScoreDoc()); //Issue 1726
     return cmd;
   }
@@ -407,4 +411,22 @@ public class ResponseBuilder
   {
 	  this.scoreDoc = scoreDoc;
   }
+
+  /** the position to continue the sort from, if the cursorMark parameter was given */
+  public CursorMark getCursorMark() {
+    return cursorMark;
+  }
+
+  public void setCursorMark(CursorMark cursorMark) {
+    this.cursorMark = cursorMark;
+  }
+
+  /** the position after the last returned document, to pass as the cursorMark of the next page */
+  public CursorMark getNextCursorMark() {
+    return nextCursorMark;
+  }
+
+  public void setNextCursorMark(CursorMark nextCursorMark) {
+    this.nextCursorMark = nextCursorMark;
+  }
 }
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Counts the documents of a {@link DocSet} into an array of term counts,
+ * optionally splitting the work over several threads.
+ * <p>
+ * When split, the range of top level document ids is cut into one chunk per
+ * thread (and at segment boundaries), every chunk is counted into its own array,
+ * and the arrays are summed at the end.  Splitting is only worth it for large sets,
+ * so sets with fewer than {@link #minDocsPerThread} documents per thread are
+ * counted by fewer threads.
+ */
+abstract class DocRangeCounter {
+
+  /** The minimum number of documents of the set each counting thread should get.  Lowered by tests. */
+  static int minDocsPerThread = 10000;
+
+  final SolrIndexSearcher searcher;
+  final DocSet docs;
+  final String fieldName;
+
+  DocRangeCounter(SolrIndexSearcher searcher, DocSet docs, String fieldName) {
+    this.searcher = searcher;
+    this.docs = docs;
+    this.fieldName = fieldName;
+  }
+
+  /**
+   * Counts the documents of the iterator, which are top level document ids, into counts.
+   * Called concurrently for different chunks of the set, each with its own counts array.
+   */
+  protected abstract void countDocs(DocIterator iter, int[] counts) throws IOException;
+
+  /**
+   * Adds the counts of all documents of the set to counts, using at most
+   * <code>threads</code> threads of the executor.
+   */
+  void count(int[] counts, Executor executor, int threads) throws IOException {
+    int nChunks = Math.min(threads, docs.size() / minDocsPerThread);
+    if (nChunks <= 1) {
+      countDocs(docs.iterator(), counts);
+      return;
+    }
+
+    final Filter filter = docs.getTopFilter();
+    final AtomicReaderContext[] leaves = searcher.getTopReaderContext().leaves();
+    final int maxDoc = searcher.maxDoc();
+    final int chunkSize = maxDoc / nChunks + 1;
+
+    CompletionService<int[]> completionService = new ExecutorCompletionService<int[]>(executor);
+    for (int i=0; i<nChunks; i++) {
+      final int start = i * chunkSize;
+      final int end = Math.min(maxDoc, start + chunkSize);
+      final int[] chunkCounts = i==0 ? counts : new int[counts.length];
+      completionService.submit(new Callable<int[]>() {
+        public int[] call() throws Exception {
+          for (AtomicReaderContext leaf : leaves) {
+            int leafEnd = leaf.docBase + leaf.reader().maxDoc();
+            if (leafEnd <= start || leaf.docBase >= end) continue;
+            DocIdSet idSet = filter.getDocIdSet(leaf, null);
+            DocIdSetIterator leafIter = idSet == null ? null : idSet.iterator();
+            if (leafIter == null) continue;
+            countDocs(new RangeIterator(leafIter, leaf.docBase, Math.max(start, leaf.docBase), Math.min(end, leafEnd)), chunkCounts);
+          }
+          return chunkCounts;
+        }
+      });
+    }
+
+    List<int[]> results = new ArrayList<int[]>(nChunks);
+    for (int i=0; i<nChunks; i++) {
+      try {
+        results.add(completionService.take().get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error in parallel faceting on field: " + fieldName, cause);
+        }
+      }
+    }
+
+    for (int[] chunkCounts : results) {
+      if (chunkCounts == counts) continue;
+      for (int i=0; i<counts.length; i++) {
+        counts[i] += chunkCounts[i];
+      }
+    }
+  }
+
+  /** Iterates over the top level document ids of one segment between start and end. */
+  static final class RangeIterator implements DocIterator {
+    private final DocIdSetIterator iter;
+    private final int docBase;
+    private final int end;
+    private int next;
+
+    RangeIterator(DocIdSetIterator iter, int docBase, int start, int end) throws IOException {
+      this.iter = iter;
+      this.docBase = docBase;
+      this.end = end;
+      setNext(iter.advance(start - docBase));
+    }
+
+    private void setNext(int doc) {
+      next = doc == DocIdSetIterator.NO_MORE_DOCS || doc + docBase >= end ? DocIdSetIterator.NO_MORE_DOCS : doc + docBase;
+    }
+
+    public boolean hasNext() {
+      return next != DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    public int nextDoc() {
+      int doc = next;
+      try {
+        setNext(iter.nextDoc());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return doc;
+    }
+
+    public Integer next() {
+      return nextDoc();
+    }
+
+    public float score() {
+      return 0;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException("The remove  operation is not supported by this Iterator.");
+    }
+  }
+}
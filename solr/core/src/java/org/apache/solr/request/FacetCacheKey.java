@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+import java.util.List;
+
+/**
+ * A hash key for the facetCache: the queries the base DocSet was built from
+ * (main query and filters), the field, and the resolved facet parameters for it.
+ */
+public final class FacetCacheKey {
+  final List<Query> queries;
+  final String field;
+  final int offset;
+  final int limit;
+  final int mincount;
+  final boolean missing;
+  final String sort;
+  final String prefix;
+  final String method;
+
+  private final int hc;  // cached hashCode
+
+  public FacetCacheKey(List<Query> queries, String field, int offset, int limit, int mincount, boolean missing, String sort, String prefix, String method) {
+    this.queries = queries;
+    this.field = field;
+    this.offset = offset;
+    this.limit = limit;
+    this.mincount = mincount;
+    this.missing = missing;
+    this.sort = sort;
+    this.prefix = prefix;
+    this.method = method;
+
+    int h = queries.hashCode();
+    h = h*31 + field.hashCode();
+    h = h*31 + offset;
+    h = h*31 + limit;
+    h = h*31 + mincount;
+    h = h*31 + (missing ? 1 : 0);
+    h = h*31 + sort.hashCode();
+    h = h*31 + (prefix == null ? 0 : prefix.hashCode());
+    h = h*31 + (method == null ? 0 : method.hashCode());
+    hc = h;
+  }
+
+  /** the queries (main query first, then the filters) whose intersection is the base DocSet */
+  public List<Query> getQueries() {
+    return queries;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /** Returns facet params that reproduce the counts for this key with {@link SimpleFacets#getTermCounts(String)}. */
+  public ModifiableSolrParams getParams() {
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set(FacetParams.FACET_OFFSET, offset);
+    params.set(FacetParams.FACET_LIMIT, limit);
+    params.set(FacetParams.FACET_MINCOUNT, mincount);
+    params.set(FacetParams.FACET_MISSING, missing);
+    params.set(FacetParams.FACET_SORT, sort);
+    if (prefix != null) params.set(FacetParams.FACET_PREFIX, prefix);
+    if (method != null) params.set(FacetParams.FACET_METHOD, method);
+    return params;
+  }
+
+  @Override
+  public int hashCode() {
+    return hc;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o==this) return true;
+    if (!(o instanceof FacetCacheKey)) return false;
+    FacetCacheKey other = (FacetCacheKey)o;
+
+    if (this.hc != other.hc) return false;
+    if (this.offset != other.offset || this.limit != other.limit
+        || this.mincount != other.mincount || this.missing != other.missing) return false;
+    if (!this.field.equals(other.field) || !this.sort.equals(other.sort)) return false;
+    if (!isEqual(this.prefix, other.prefix) || !isEqual(this.method, other.method)) return false;
+    return this.queries.equals(other.queries);
+  }
+
+  @Override
+  public String toString() {
+    return "FacetCacheKey(" + queries + "," + field + ",offset=" + offset + ",limit=" + limit
+        + ",mincount=" + mincount + ",missing=" + missing + ",sort=" + sort
+        + ",prefix=" + prefix + ",method=" + method + ")";
+  }
+
+  private static boolean isEqual(Object o1, Object o2) {
+    if (o1==o2) return true;  // takes care of identity and null cases
+    if (o1==null || o2==null) return false;
+    return o1.equals(o2);
+  }
+}
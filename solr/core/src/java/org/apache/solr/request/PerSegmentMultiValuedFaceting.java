@@ -0,0 +1,455 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocTermOrds;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.LongPriorityQueue;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Per-segment faceting on multi-valued fields, used for <code>facet.method=fcs</code>.
+ * <p>
+ * Unlike {@link UnInvertedField}, which un-inverts the whole top level reader and
+ * has to be rebuilt from scratch after every commit, the terms of each segment are
+ * un-inverted separately with {@link FieldCache#getDocTermOrds}.  The resulting
+ * {@link DocTermOrds} are cached per segment core, so after a reopen only new
+ * segments need to be un-inverted.  Per-segment counts are merged through an
+ * {@link OrdinalMap} from segment term numbers to global term numbers, which only
+ * needs to walk the terms dictionaries and is cached per top level reader.
+ */
+class PerSegmentMultiValuedFaceting {
+
+  // input params
+  SolrIndexSearcher searcher;
+  DocSet docs;
+  String fieldName;
+  int offset;
+  int limit;
+  int mincount;
+  boolean missing;
+  String sort;
+  String prefix;
+
+  Filter baseSet;
+
+  int nThreads;
+
+  public PerSegmentMultiValuedFaceting(SolrIndexSearcher searcher, DocSet docs, String fieldName, int offset, int limit, int mincount, boolean missing, String sort, String prefix) {
+    this.searcher = searcher;
+    this.docs = docs;
+    this.fieldName = fieldName;
+    this.offset = offset;
+    this.limit = limit;
+    this.mincount = mincount;
+    this.missing = missing;
+    this.sort = sort;
+    this.prefix = prefix;
+  }
+
+  public void setNumThreads(int threads) {
+    nThreads = threads;
+  }
+
+
+  NamedList<Integer> getFacetCounts(Executor executor) throws IOException {
+
+    CompletionService<SegFacet> completionService = new ExecutorCompletionService<SegFacet>(executor);
+
+    // reuse the translation logic to go from top level set to per-segment set
+    baseSet = docs.getTopFilter();
+
+    final AtomicReaderContext[] leaves = searcher.getTopReaderContext().leaves();
+    final SegFacet[] segFacets = new SegFacet[leaves.length];
+    // The list of pending tasks that aren't immediately submitted
+    LinkedList<Callable<SegFacet>> pending = new LinkedList<Callable<SegFacet>>();
+
+    int threads = nThreads <= 0 ? Integer.MAX_VALUE : nThreads;
+
+    for (int i=0; i<leaves.length; i++) {
+      final SegFacet segFacet = segFacets[i] = new SegFacet(leaves[i]);
+
+      Callable<SegFacet> task = new Callable<SegFacet>() {
+        public SegFacet call() throws Exception {
+          segFacet.countTerms();
+          return segFacet;
+        }
+      };
+
+      if (--threads >= 0) {
+        completionService.submit(task);
+      } else {
+        pending.add(task);
+      }
+    }
+
+    int missingCount = 0;
+    for (int i=0; i<leaves.length; i++) {
+      try {
+        Future<SegFacet> future = completionService.take();
+        missingCount += future.get().missingCount;
+        if (!pending.isEmpty()) {
+          completionService.submit(pending.removeFirst());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error in per-segment faceting on field: " + fieldName, cause);
+        }
+      }
+    }
+
+    // all segments are un-inverted by now, so the ordinal map can be built if
+    // this is the first request for the field since the searcher was opened.
+    final OrdinalMap ordinalMap = getOrdinalMap(searcher.getIndexReader(), fieldName, segFacets);
+    final int numTerms = ordinalMap.numTerms;
+
+    // merge the per-segment counts, and find the range of global term numbers
+    // matching the prefix (if any).
+    final int[] counts = new int[numTerms];
+    int startTerm = prefix == null ? 0 : numTerms;
+    int endTerm = prefix == null ? numTerms : 0;  // one past the end
+    for (int i=0; i<segFacets.length; i++) {
+      SegFacet seg = segFacets[i];
+      if (seg.startTermIndex >= seg.endTermIndex) continue;
+      final int[] segToGlobal = ordinalMap.segmentToGlobalOrds[i];
+      final int[] segCounts = seg.counts;
+      for (int segOrd=seg.startTermIndex; segOrd<seg.endTermIndex; segOrd++) {
+        counts[segToGlobal[segOrd]] += segCounts[segOrd - seg.startTermIndex];
+      }
+      // the terms with the prefix form one contiguous range in every segment as
+      // well as globally, and each global term is in at least one segment
+      startTerm = Math.min(startTerm, segToGlobal[seg.startTermIndex]);
+      endTerm = Math.max(endTerm, segToGlobal[seg.endTermIndex - 1] + 1);
+    }
+
+    FieldType ft = searcher.getSchema().getFieldType(fieldName);
+    TermLookup lookup = new TermLookup(leaves, segFacets, ordinalMap, ft);
+    NamedList<Integer> res = new NamedList<Integer>();  // order is important
+
+    int off=offset;
+    int lim=limit>=0 ? limit : Integer.MAX_VALUE;
+
+    if (sort.equals(FacetParams.FACET_SORT_COUNT) || sort.equals(FacetParams.FACET_SORT_COUNT_LEGACY)) {
+      int maxsize = limit>0 ? offset+limit : Integer.MAX_VALUE-1;
+      maxsize = Math.min(maxsize, numTerms);
+      LongPriorityQueue queue = new LongPriorityQueue(Math.min(maxsize,1000), maxsize, Long.MIN_VALUE);
+
+      int min=mincount-1;  // the smallest value in the top 'N' values
+      for (int i=startTerm; i<endTerm; i++) {
+        int c = counts[i];
+        if (c>min) {
+          // NOTE: we use c>min rather than c>=min as an optimization because we are going in
+          // index order, so we already know that the keys are ordered.
+
+          // smaller term numbers sort higher, so subtract the term number instead
+          long pair = (((long)c)<<32) + (Integer.MAX_VALUE - i);
+          boolean displaced = queue.insert(pair);
+          if (displaced) min=(int)(queue.top() >>> 32);
+        }
+      }
+
+      // if we are deep paging, we don't have to order the highest "offset" counts.
+      int collectCount = Math.max(0, queue.size() - off);
+      assert collectCount <= lim;
+
+      // the start and end indexes of our list "sorted" (starting with the highest value)
+      int sortedIdxStart = queue.size() - (collectCount - 1);
+      int sortedIdxEnd = queue.size() + 1;
+      final long[] sorted = queue.sort(collectCount);
+
+      for (int i=sortedIdxStart; i<sortedIdxEnd; i++) {
+        long pair = sorted[i];
+        int c = (int)(pair >>> 32);
+        int tnum = Integer.MAX_VALUE - (int)pair;
+        res.add(lookup.label(tnum), c);
+      }
+
+    } else {
+      // add results in index order
+      int i=startTerm;
+      if (mincount<=0) {
+        // if mincount<=0, then we won't discard any terms and we know exactly
+        // where to start.
+        i=startTerm+off;
+        off=0;
+      }
+
+      for (; i<endTerm; i++) {
+        int c = counts[i];
+        if (c<mincount || --off>=0) continue;
+        if (--lim<0) break;
+        res.add(lookup.label(i), c);
+      }
+    }
+
+    if (missing) {
+      res.add(null, missingCount);
+    }
+
+    return res;
+  }
+
+  class SegFacet {
+    AtomicReaderContext context;
+    SegFacet(AtomicReaderContext context) {
+      this.context = context;
+    }
+
+    DocTermOrds dto;
+    int startTermIndex;
+    int endTermIndex;
+    int[] counts;
+    int missingCount;
+
+    void countTerms() throws IOException {
+      dto = FieldCache.DEFAULT.getDocTermOrds(context.reader(), fieldName);
+
+      DocIdSet idSet = baseSet.getDocIdSet(context, null);  // this set only includes live docs
+      DocIdSetIterator iter = idSet.iterator();
+      int doc;
+
+      TermsEnum te = dto.getOrdTermsEnum(context.reader());
+      if (te == null) {
+        // no live document of this segment has a value
+        while (iter.nextDoc() < DocIdSetIterator.NO_MORE_DOCS) {
+          missingCount++;
+        }
+        return;
+      }
+
+      if (prefix != null) {
+        BytesRef prefixRef = new BytesRef(prefix);
+        if (te.seekCeil(prefixRef, true) == TermsEnum.SeekStatus.END) {
+          startTermIndex = dto.numTerms();
+        } else {
+          startTermIndex = (int) te.ord();
+        }
+        prefixRef.append(UnicodeUtil.BIG_TERM);
+        if (te.seekCeil(prefixRef, true) == TermsEnum.SeekStatus.END) {
+          endTermIndex = dto.numTerms();
+        } else {
+          endTermIndex = (int) te.ord();
+        }
+      } else {
+        startTermIndex = 0;
+        endTermIndex = dto.numTerms();
+      }
+
+      // count collection array only needs to be as big as the number of terms we are
+      // going to collect counts for.
+      final int nTerms = Math.max(0, endTermIndex - startTermIndex);
+      final int[] counts = this.counts = new int[nTerms];
+      final int[] buffer = new int[16];
+      DocTermOrds.TermOrdsIterator ordIter = null;
+
+      while ((doc = iter.nextDoc()) < DocIdSetIterator.NO_MORE_DOCS) {
+        ordIter = dto.lookup(doc, ordIter);
+        int n = ordIter.read(buffer);
+        if (n == 0) {
+          missingCount++;
+          continue;
+        }
+        for (;;) {
+          for (int i=0; i<n; i++) {
+            int arrIdx = buffer[i] - startTermIndex;
+            if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+          }
+          if (n < buffer.length) break;
+          n = ordIter.read(buffer);
+        }
+      }
+    }
+  }
+
+  /** Resolves global term numbers to readable labels. */
+  private static class TermLookup {
+    final AtomicReaderContext[] leaves;
+    final SegFacet[] segFacets;
+    final OrdinalMap ordinalMap;
+    final FieldType ft;
+    final TermsEnum[] termsEnums;
+    final CharsRef charsRef = new CharsRef();
+
+    TermLookup(AtomicReaderContext[] leaves, SegFacet[] segFacets, OrdinalMap ordinalMap, FieldType ft) {
+      this.leaves = leaves;
+      this.segFacets = segFacets;
+      this.ordinalMap = ordinalMap;
+      this.ft = ft;
+      this.termsEnums = new TermsEnum[leaves.length];
+    }
+
+    String label(int globalOrd) throws IOException {
+      final int seg = ordinalMap.firstSegments[globalOrd];
+      TermsEnum te = termsEnums[seg];
+      if (te == null) {
+        te = termsEnums[seg] = segFacets[seg].dto.getOrdTermsEnum(leaves[seg].reader());
+      }
+      BytesRef term = segFacets[seg].dto.lookupTerm(te, ordinalMap.firstSegmentOrds[globalOrd]);
+      return ft.indexedToReadable(term, charsRef).toString();
+    }
+  }
+
+
+  /**
+   * Maps the term numbers of every segment of a reader to global term numbers,
+   * which are the positions of the terms in the merged terms dictionary.
+   */
+  static final class OrdinalMap {
+    /** number of distinct terms over all segments */
+    final int numTerms;
+    /** per segment (in leaf order), the global term number for each segment term number */
+    final int[][] segmentToGlobalOrds;
+    /** for each global term number, the first segment containing the term */
+    final int[] firstSegments;
+    /** for each global term number, the term number in its first segment */
+    final int[] firstSegmentOrds;
+
+    OrdinalMap(int numTerms, int[][] segmentToGlobalOrds, int[] firstSegments, int[] firstSegmentOrds) {
+      this.numTerms = numTerms;
+      this.segmentToGlobalOrds = segmentToGlobalOrds;
+      this.firstSegments = firstSegments;
+      this.firstSegmentOrds = firstSegmentOrds;
+    }
+  }
+
+  // The maps hold no reference to the reader, so they go away along with it.
+  private static final Map<IndexReader,Map<String,OrdinalMap>> ordinalMaps = new WeakHashMap<IndexReader,Map<String,OrdinalMap>>();
+
+  static OrdinalMap getOrdinalMap(IndexReader topReader, String field, SegFacet[] segFacets) throws IOException {
+    synchronized (ordinalMaps) {
+      Map<String,OrdinalMap> fieldMaps = ordinalMaps.get(topReader);
+      if (fieldMaps != null) {
+        OrdinalMap map = fieldMaps.get(field);
+        if (map != null) return map;
+      }
+    }
+
+    // build outside of the lock, at worst two threads do it at the same time
+    OrdinalMap map = buildOrdinalMap(segFacets);
+
+    synchronized (ordinalMaps) {
+      Map<String,OrdinalMap> fieldMaps = ordinalMaps.get(topReader);
+      if (fieldMaps == null) {
+        fieldMaps = new HashMap<String,OrdinalMap>();
+        ordinalMaps.put(topReader, fieldMaps);
+      }
+      OrdinalMap existing = fieldMaps.get(field);
+      if (existing != null) return existing;
+      fieldMaps.put(field, map);
+      return map;
+    }
+  }
+
+  private static class SegTerms {
+    final int seg;
+    final TermsEnum te;
+    BytesRef term;
+    int ord;
+
+    SegTerms(int seg, TermsEnum te) {
+      this.seg = seg;
+      this.te = te;
+    }
+  }
+
+  /** Merges the terms of all segments, in the manner of a multi-way merge sort. */
+  static OrdinalMap buildOrdinalMap(SegFacet[] segFacets) throws IOException {
+    final int[][] segToGlobal = new int[segFacets.length][];
+    PriorityQueue<SegTerms> queue = new PriorityQueue<SegTerms>(Math.max(1, segFacets.length)) {
+      @Override
+      protected boolean lessThan(SegTerms a, SegTerms b) {
+        int cmp = a.term.compareTo(b.term);
+        return cmp != 0 ? cmp < 0 : a.seg < b.seg;
+      }
+    };
+
+    int maxSegTerms = 0;
+    for (int i=0; i<segFacets.length; i++) {
+      DocTermOrds dto = segFacets[i].dto;
+      TermsEnum te = dto.getOrdTermsEnum(segFacets[i].context.reader());
+      if (te == null) {
+        segToGlobal[i] = new int[0];
+        continue;
+      }
+      segToGlobal[i] = new int[dto.numTerms()];
+      maxSegTerms = Math.max(maxSegTerms, dto.numTerms());
+      SegTerms st = new SegTerms(i, te);
+      st.term = te.next();
+      if (st.term != null) {
+        queue.add(st);
+      }
+    }
+
+    int[] firstSegments = new int[maxSegTerms];
+    int[] firstSegmentOrds = new int[maxSegTerms];
+    final BytesRef lastTerm = new BytesRef();
+    int numTerms = 0;
+
+    while (queue.size() > 0) {
+      SegTerms top = queue.top();
+      if (numTerms == 0 || !top.term.bytesEquals(lastTerm)) {
+        if (numTerms == firstSegments.length) {
+          firstSegments = ArrayUtil.grow(firstSegments, numTerms + 1);
+          firstSegmentOrds = ArrayUtil.grow(firstSegmentOrds, numTerms + 1);
+        }
+        firstSegments[numTerms] = top.seg;
+        firstSegmentOrds[numTerms] = top.ord;
+        lastTerm.copyBytes(top.term);
+        numTerms++;
+      }
+      segToGlobal[top.seg][top.ord++] = numTerms - 1;
+
+      top.term = top.te.next();
+      if (top.term == null) {
+        queue.pop();
+      } else {
+        queue.updateTop();
+      }
+    }
+
+    return new OrdinalMap(numTerms, segToGlobal,
+        ArrayUtil.shrink(firstSegments, numTerms), ArrayUtil.shrink(firstSegmentOrds, numTerms));
+  }
+
+}
@@ -72,6 +72,7 @@ public class SimpleFacets {
   SolrParams localParams; // localParams on this particular facet command
   String facetValue;      // the field to or query to facet on (minus local params)
   DocSet base;            // the base docset for this particular facet
+  List<Query> baseQueries; // the queries base was built from, or null if unknown (used as facetCache key)
   String key;             // what name should the results be stored under
   int threads;
 
@@ -97,6 +98,7 @@ public class SimpleFacets {
   void parseParams(String type, String param) throws ParseException, IOException {
     localParams = QueryParsing.getLocalParams(param, req.getParams());
     base = docs;
+    baseQueries = getMainQueries();
     facetValue = param;
     key = param;
     threads = -1;
@@ -158,6 +160,7 @@ public class SimpleFacets {
 
       // get the new base docset for this facet
       DocSet base = searcher.getDocSet(qlist);
+      if (baseQueries != null) baseQueries = qlist;
       if (rb.grouping() && rb.getGroupingSpec().isTruncateGroups()) {
         Grouping grouping = new Grouping(searcher, null, rb.getQueryCommand(), false, 0, false);
         if (rb.getGroupingSpec().getFields().length > 0) {
@@ -182,6 +185,21 @@ public class SimpleFacets {
   }
 
 
+  /**
+   * Returns the main query and filters of the request, which the main DocSet was built from,
+   * or null if they are not known.
+   */
+  private List<Query> getMainQueries() {
+    // with grouping the DocSet may be reduced to the group heads, which the queries don't capture
+    if (rb == null || rb.getQuery() == null || rb.grouping()) return null;
+    List<Query> qlist = new ArrayList<Query>();
+    qlist.add(rb.getQuery());
+    if (rb.getFilters() != null) {
+      qlist.addAll(rb.getFilters());
+    }
+    return qlist;
+  }
+
   /**
    * Looks at various Params to determing if any simple Facet Constraint count
    * computations are desired.
@@ -275,6 +293,18 @@ public class SimpleFacets {
     // TODO: default to per-segment or not?
     boolean per_segment = FacetParams.FACET_METHOD_fcs.equals(method);
 
+    // the threads local param applies to this field only, facet.threads to every field of the request
+    int numThreads = threads >= 0 ? threads : params.getInt(FacetParams.FACET_THREADS, -1);
+
+    boolean groupFacet = params.getFieldBool(field, GroupParams.GROUP_FACET, false);
+    SolrCache<FacetCacheKey,NamedList<Integer>> facetCache = searcher.getFacetCache();
+    FacetCacheKey cacheKey = null;
+    if (facetCache != null && baseQueries != null && !groupFacet) {
+      cacheKey = new FacetCacheKey(baseQueries, field, offset, limit, mincount, missing, sort, prefix, method);
+      counts = facetCache.get(cacheKey);
+      if (counts != null) return counts.clone();
+    }
+
     if (method == null && ft instanceof BoolField) {
       // Always use filters for booleans... we know the number of values is very small.
       enumMethod = true;
@@ -288,7 +318,7 @@ public class SimpleFacets {
       multiToken = true;
     }
 
-    if (params.getFieldBool(field, GroupParams.GROUP_FACET, false)) {
+    if (groupFacet) {
       counts = getGroupedCounts(searcher, base, field, multiToken, offset,limit, mincount, missing, sort, prefix);
     } else {
       // unless the enum method is explicitly specified, use a counting method.
@@ -296,27 +326,54 @@ public class SimpleFacets {
         counts = getFacetTermEnumCounts(searcher, base, field, offset, limit, mincount,missing,sort,prefix);
       } else {
         if (multiToken) {
-          UnInvertedField uif = UnInvertedField.getUnInvertedField(field, searcher);
-          counts = uif.getCounts(searcher, base, offset, limit, mincount,missing,sort,prefix);
+          if (per_segment && TrieField.getMainValuePrefix(ft) == null) {
+            // un-inverts per segment, so that only new segments need work after a commit
+            PerSegmentMultiValuedFaceting ps = new PerSegmentMultiValuedFaceting(searcher, base, field, offset,limit, mincount, missing, sort, prefix);
+            Executor executor = numThreads == 0 ? directExecutor : facetExecutor;
+            ps.setNumThreads(numThreads);
+            counts = ps.getFacetCounts(executor);
+          } else {
+            UnInvertedField uif = UnInvertedField.getUnInvertedField(field, searcher);
+            counts = uif.getCounts(searcher, base, offset, limit, mincount,missing,sort,prefix, facetExecutor, numThreads);
+          }
         } else {
           // TODO: future logic could use filters instead of the fieldcache if
           // the number of terms in the field is small enough.
           if (per_segment) {
             PerSegmentSingleValuedFaceting ps = new PerSegmentSingleValuedFaceting(searcher, base, field, offset,limit, mincount, missing, sort, prefix);
-            Executor executor = threads == 0 ? directExecutor : facetExecutor;
-            ps.setNumThreads(threads);
+            Executor executor = numThreads == 0 ? directExecutor : facetExecutor;
+            ps.setNumThreads(numThreads);
             counts = ps.getFacetCounts(executor);
           } else {
-            counts = getFieldCacheCounts(searcher, base, field, offset,limit, mincount, missing, sort, prefix);
+            counts = getFieldCacheCounts(searcher, base, field, offset,limit, mincount, missing, sort, prefix, facetExecutor, numThreads);
           }
 
         }
       }
     }
 
+    if (cacheKey != null) {
+      facetCache.put(cacheKey, counts.clone());
+    }
+
     return counts;
   }
 
+  /**
+   * Computes the counts of a facetCache entry again against a new searcher.
+   * Used to autowarm the facetCache.
+   */
+  public static void regenerateFacetCacheEntry(final SolrIndexSearcher newSearcher, SolrCache<FacetCacheKey,NamedList<Integer>> newCache, FacetCacheKey key) throws IOException {
+    SolrParams params = key.getParams();
+    SolrQueryRequest req = new LocalSolrQueryRequest(newSearcher.getCore(), params) {
+      @Override public SolrIndexSearcher getSearcher() { return newSearcher; }
+      @Override public void close() { }
+    };
+    DocSet base = newSearcher.getDocSet(key.getQueries());
+    NamedList<Integer> counts = new SimpleFacets(req, base, params).getTermCounts(key.getField());
+    newCache.put(key, counts);
+  }
+
   public NamedList<Integer> getGroupedCounts(SolrIndexSearcher searcher,
                                              DocSet base,
                                              String field,
@@ -434,6 +491,14 @@ public class SimpleFacets {
    * The field must have at most one indexed token per document.
    */
   public static NamedList<Integer> getFieldCacheCounts(SolrIndexSearcher searcher, DocSet docs, String fieldName, int offset, int limit, int mincount, boolean missing, String sort, String prefix) throws IOException {
+    return getFieldCacheCounts(searcher, docs, fieldName, offset, limit, mincount, missing, sort, prefix, directExecutor, 1);
+  }
+
+  /**
+   * Same as {@link #getFieldCacheCounts(SolrIndexSearcher, DocSet, String, int, int, int, boolean, String, String)},
+   * but splits the counting over up to <code>threads</code> threads of the executor.
+   */
+  public static NamedList<Integer> getFieldCacheCounts(SolrIndexSearcher searcher, DocSet docs, String fieldName, int offset, int limit, int mincount, boolean missing, String sort, String prefix, Executor executor, int threads) throws IOException {
     // TODO: If the number of terms is high compared to docs.size(), and zeros==false,
     //  we should use an alternate strategy to avoid
     //  1) creating another huge int[] for the counts
@@ -450,7 +515,7 @@ public class SimpleFacets {
     FieldType ft = searcher.getSchema().getFieldType(fieldName);
     NamedList<Integer> res = new NamedList<Integer>();
 
-    FieldCache.DocTermsIndex si = FieldCache.DEFAULT.getTermsIndex(searcher.getAtomicReader(), fieldName);
+    final FieldCache.DocTermsIndex si = FieldCache.DEFAULT.getTermsIndex(searcher.getAtomicReader(), fieldName);
 
     final BytesRef prefixRef;
     if (prefix == null) {
@@ -486,8 +551,6 @@ public class SimpleFacets {
       // going to collect counts for.
       final int[] counts = new int[nTerms];
 
-      DocIterator iter = docs.iterator();
-
       PackedInts.Reader ordReader = si.getDocToOrd();
       final Object arr;
       if (ordReader.hasArray()) {
@@ -496,52 +559,60 @@ public class SimpleFacets {
         arr = null;
       }
 
-      if (arr instanceof int[]) {
-        int[] ords = (int[]) arr;
-        if (prefix==null) {
-          while (iter.hasNext()) {
-            counts[ords[iter.nextDoc()]]++;
-          }
-        } else {
-          while (iter.hasNext()) {
-            int term = ords[iter.nextDoc()];
-            int arrIdx = term-startTermIndex;
-            if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
-          }
-        }
-      } else if (arr instanceof short[]) {
-        short[] ords = (short[]) arr;
-        if (prefix==null) {
-          while (iter.hasNext()) {
-            counts[ords[iter.nextDoc()] & 0xffff]++;
-          }
-        } else {
-          while (iter.hasNext()) {
-            int term = ords[iter.nextDoc()] & 0xffff;
-            int arrIdx = term-startTermIndex;
-            if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
-          }
-        }
-      } else if (arr instanceof byte[]) {
-        byte[] ords = (byte[]) arr;
-        if (prefix==null) {
-          while (iter.hasNext()) {
-            counts[ords[iter.nextDoc()] & 0xff]++;
-          }
-        } else {
-          while (iter.hasNext()) {
-            int term = ords[iter.nextDoc()] & 0xff;
-            int arrIdx = term-startTermIndex;
-            if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+      final boolean hasPrefix = prefix!=null;
+      final int startTerm = startTermIndex;
+      DocRangeCounter counter = new DocRangeCounter(searcher, docs, fieldName) {
+        @Override
+        protected void countDocs(DocIterator iter, int[] counts) {
+          if (arr instanceof int[]) {
+            int[] ords = (int[]) arr;
+            if (!hasPrefix) {
+              while (iter.hasNext()) {
+                counts[ords[iter.nextDoc()]]++;
+              }
+            } else {
+              while (iter.hasNext()) {
+                int term = ords[iter.nextDoc()];
+                int arrIdx = term-startTerm;
+                if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+              }
+            }
+          } else if (arr instanceof short[]) {
+            short[] ords = (short[]) arr;
+            if (!hasPrefix) {
+              while (iter.hasNext()) {
+                counts[ords[iter.nextDoc()] & 0xffff]++;
+              }
+            } else {
+              while (iter.hasNext()) {
+                int term = ords[iter.nextDoc()] & 0xffff;
+                int arrIdx = term-startTerm;
+                if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+              }
+            }
+          } else if (arr instanceof byte[]) {
+            byte[] ords = (byte[]) arr;
+            if (!hasPrefix) {
+              while (iter.hasNext()) {
+                counts[ords[iter.nextDoc()] & 0xff]++;
+              }
+            } else {
+              while (iter.hasNext()) {
+                int term = ords[iter.nextDoc()] & 0xff;
+                int arrIdx = term-startTerm;
+                if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+              }
+            }
+          } else {
+            while (iter.hasNext()) {
+              int term = si.getOrd(iter.nextDoc());
+              int arrIdx = term-startTerm;
+              if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
+            }
           }
         }
-      } else {
-        while (iter.hasNext()) {
-          int term = si.getOrd(iter.nextDoc());
-          int arrIdx = term-startTermIndex;
-          if (arrIdx>=0 && arrIdx<nTerms) counts[arrIdx]++;
-        }
-      }
+      };
+      counter.count(counts, executor, threads);
 
       if (startTermIndex == 0) {
         missingCount = counts[0];
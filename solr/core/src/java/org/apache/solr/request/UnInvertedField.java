@@ -47,6 +47,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -202,6 +203,14 @@ public class UnInvertedField extends DocTermOrds {
   }
 
   public NamedList<Integer> getCounts(SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, Integer mincount, boolean missing, String sort, String prefix) throws IOException {
+    return getCounts(searcher, baseDocs, offset, limit, mincount, missing, sort, prefix, SimpleFacets.directExecutor, 1);
+  }
+
+  /**
+   * Same as {@link #getCounts(SolrIndexSearcher, DocSet, int, int, Integer, boolean, String, String)},
+   * but splits the counting over up to <code>threads</code> threads of the executor.
+   */
+  public NamedList<Integer> getCounts(SolrIndexSearcher searcher, DocSet baseDocs, int offset, int limit, Integer mincount, boolean missing, String sort, String prefix, Executor executor, int threads) throws IOException {
     use.incrementAndGet();
 
     FieldType ft = searcher.getSchema().getFieldType(field);
@@ -215,7 +224,6 @@ public class UnInvertedField extends DocTermOrds {
     //System.out.println("GET COUNTS field=" + field + " baseSize=" + baseSize + " minCount=" + mincount + " maxDoc=" + maxDoc + " numTermsInField=" + numTermsInField);
     if (baseSize >= mincount) {
 
-      final int[] index = this.index;
       // tricky: we add more more element than we need because we will reuse this array later
       // for ordering term ords before converting to term labels.
       final int[] counts = new int[numTermsInField + 1];
@@ -255,10 +263,11 @@ public class UnInvertedField extends DocTermOrds {
 
       boolean doNegative = baseSize > maxDoc >> 1 && termInstances > 0
               && startTerm==0 && endTerm==numTermsInField
-              && docs instanceof BitDocSet;
+              && (docs instanceof BitDocSet || docs instanceof RoaringDocSet);
 
       if (doNegative) {
-        OpenBitSet bs = (OpenBitSet)((BitDocSet)docs).getBits().clone();
+        // RoaringDocSet.getBits() already returns a new bitset
+        OpenBitSet bs = docs instanceof BitDocSet ? (OpenBitSet)docs.getBits().clone() : docs.getBits();
         bs.flip(0, maxDoc);
         // TODO: when iterator across negative elements is available, use that
         // instead of creating a new bitset and inverting.
@@ -290,47 +299,13 @@ public class UnInvertedField extends DocTermOrds {
       // Perhaps a different copy of the code would be warranted.
 
       if (termInstances > 0) {
-        DocIterator iter = docs.iterator();
-        while (iter.hasNext()) {
-          int doc = iter.nextDoc();
-          //System.out.println("iter doc=" + doc);
-          int code = index[doc];
-
-          if ((code & 0xff)==1) {
-            //System.out.println("  ptr");
-            int pos = code>>>8;
-            int whichArray = (doc >>> 16) & 0xff;
-            byte[] arr = tnums[whichArray];
-            int tnum = 0;
-            for(;;) {
-              int delta = 0;
-              for(;;) {
-                byte b = arr[pos++];
-                delta = (delta << 7) | (b & 0x7f);
-                if ((b & 0x80) == 0) break;
-              }
-              if (delta == 0) break;
-              tnum += delta - TNUM_OFFSET;
-              //System.out.println("    tnum=" + tnum);
-              counts[tnum]++;
-            }
-          } else {
-            //System.out.println("  inlined");
-            int tnum = 0;
-            int delta = 0;
-            for (;;) {
-              delta = (delta << 7) | (code & 0x7f);
-              if ((code & 0x80)==0) {
-                if (delta==0) break;
-                tnum += delta - TNUM_OFFSET;
-                //System.out.println("    tnum=" + tnum);
-                counts[tnum]++;
-                delta = 0;
-              }
-              code >>>= 8;
-            }
+        DocRangeCounter counter = new DocRangeCounter(searcher, docs, field) {
+          @Override
+          protected void countDocs(DocIterator iter, int[] counts) {
+            UnInvertedField.this.countDocs(iter, counts);
           }
-        }
+        };
+        counter.count(counts, executor, threads);
       }
       final CharsRef charsRef = new CharsRef();
 
@@ -445,6 +420,51 @@ public class UnInvertedField extends DocTermOrds {
     return res;
   }
 
+  /** Adds the term counts of the documents of the iterator to counts. */
+  private void countDocs(DocIterator iter, int[] counts) {
+    final int[] index = this.index;
+    while (iter.hasNext()) {
+      int doc = iter.nextDoc();
+      //System.out.println("iter doc=" + doc);
+      int code = index[doc];
+
+      if ((code & 0xff)==1) {
+        //System.out.println("  ptr");
+        int pos = code>>>8;
+        int whichArray = (doc >>> 16) & 0xff;
+        byte[] arr = tnums[whichArray];
+        int tnum = 0;
+        for(;;) {
+          int delta = 0;
+          for(;;) {
+            byte b = arr[pos++];
+            delta = (delta << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) break;
+          }
+          if (delta == 0) break;
+          tnum += delta - TNUM_OFFSET;
+          //System.out.println("    tnum=" + tnum);
+          counts[tnum]++;
+        }
+      } else {
+        //System.out.println("  inlined");
+        int tnum = 0;
+        int delta = 0;
+        for (;;) {
+          delta = (delta << 7) | (code & 0x7f);
+          if ((code & 0x80)==0) {
+            if (delta==0) break;
+            tnum += delta - TNUM_OFFSET;
+            //System.out.println("    tnum=" + tnum);
+            counts[tnum]++;
+            delta = 0;
+          }
+          code >>>= 8;
+        }
+      }
+    }
+  }
+
   /**
    * Collect statistics about the UninvertedField.  Code is very similar to {@link #getCounts(org.apache.solr.search.SolrIndexSearcher, org.apache.solr.search.DocSet, int, int, Integer, boolean, String, String)}
    * It can be used to calculate stats on multivalued fields.
@@ -502,11 +522,12 @@ public class UnInvertedField extends DocTermOrds {
     if (finfo.length == 0) {
       //if we're collecting statistics with a facet field, can't do inverted counting
       doNegative = baseSize > maxDoc >> 1 && termInstances > 0
-              && docs instanceof BitDocSet;
+              && (docs instanceof BitDocSet || docs instanceof RoaringDocSet);
     }
 
     if (doNegative) {
-      OpenBitSet bs = (OpenBitSet) ((BitDocSet) docs).getBits().clone();
+      // RoaringDocSet.getBits() already returns a new bitset
+      OpenBitSet bs = docs instanceof BitDocSet ? (OpenBitSet)docs.getBits().clone() : docs.getBits();
       bs.flip(0, maxDoc);
       // TODO: when iterator across negative elements is available, use that
       // instead of creating a new bitset and inverting.
@@ -138,7 +138,7 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
       context.iterator = ids.iterator();
       for (int i = 0; i < sz; i++) {
         int id = context.iterator.nextDoc();
-        Document doc = searcher.doc(id, fnames);
+        Document doc = res.cacheDocs ? searcher.doc(id, fnames) : searcher.docNC(id, fnames);
         SolrDocument sdoc = getDoc(doc);
         if( transformer != null ) {
           transformer.transform(sdoc, id);
@@ -28,4 +28,6 @@ import org.apache.solr.search.DocList;
 public class ResultContext {
   public Query query;
   public DocList docs;
+  /** if false, documents are read without the documentCache, see {@link org.apache.solr.search.SolrIndexSearcher#docNC} */
+  public boolean cacheDocs = true;
 }
@@ -267,7 +267,7 @@ public abstract class TextResponseWriter {
     Set<String> fnames = fields.getLuceneFieldNames();
     for (int i=0; i<sz; i++) {
       int id = context.iterator.nextDoc();
-      Document doc = context.searcher.doc(id, fnames);
+      Document doc = res.cacheDocs ? context.searcher.doc(id, fnames) : context.searcher.docNC(id, fnames);
       SolrDocument sdoc = toSolrDocument( doc );
       if( transformer != null ) {
         transformer.transform( sdoc, id);
@@ -212,6 +212,8 @@ public class BitDocSet extends DocSetBase {
     OpenBitSet newbits = (OpenBitSet)(bits.clone());
      if (other instanceof BitDocSet) {
        newbits.andNot(((BitDocSet)other).bits);
+     } else if (other instanceof RoaringDocSet) {
+       ((RoaringDocSet)other).clearBitsOn(newbits);
      } else {
        DocIterator iter = other.iterator();
        while (iter.hasNext()) newbits.clear(iter.nextDoc());
@@ -224,6 +226,8 @@ public class BitDocSet extends DocSetBase {
      OpenBitSet newbits = (OpenBitSet)(bits.clone());
      if (other instanceof BitDocSet) {
        newbits.union(((BitDocSet)other).bits);
+     } else if (other instanceof RoaringDocSet) {
+       other.setBitsOn(newbits);
      } else {
        DocIterator iter = other.iterator();
        while (iter.hasNext()) newbits.set(iter.nextDoc());
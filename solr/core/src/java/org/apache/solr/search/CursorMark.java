@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ReaderUtil;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.Base64;
+import org.apache.solr.common.util.JavaBinCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A position in a sorted result: the sort values of the last document that was returned.
+ * <p>
+ * The string form is an opaque token that also records the sort, so that
+ * a token can only be used to continue the sort it was created for.
+ * The sort must order all documents (see {@link SortFieldValues#withTieBreak}),
+ * so that the documents after a mark are exactly those not yet returned.
+ */
+public final class CursorMark {
+  /** The token for the start of a sort, before all documents */
+  public static final String START = "*";
+
+  private final SortFieldValues[] fields;
+  private final Object[] values;  // null at the start
+
+  /**
+   * @param values the sort values of the last returned document, as returned by
+   * {@link SortFieldValues.Segment#value}, or null for the start
+   */
+  public CursorMark(SortFieldValues[] fields, Object[] values) {
+    this.fields = fields;
+    this.values = values;
+  }
+
+  /** Returns the mark of a document, given the values of its segment */
+  public static CursorMark forDoc(SortFieldValues[] fields, SortFieldValues.Segment[] segments, int doc) {
+    Object[] values = new Object[segments.length];
+    for (int i=0; i<segments.length; i++) {
+      values[i] = segments[i].value(doc);
+    }
+    return new CursorMark(fields, values);
+  }
+
+  /** Returns the mark of a document, given its top level id */
+  public static CursorMark forTopDoc(SortFieldValues[] fields, SolrIndexSearcher searcher, int doc) throws IOException {
+    AtomicReaderContext[] leaves = searcher.getTopReaderContext().leaves();
+    AtomicReaderContext leaf = leaves[ReaderUtil.subIndex(doc, leaves)];
+    Object[] values = new Object[fields.length];
+    for (int i=0; i<fields.length; i++) {
+      values[i] = fields[i].getSegment(leaf.reader()).value(doc - leaf.docBase);
+    }
+    return new CursorMark(fields, values);
+  }
+
+  /**
+   * Parses a token created by {@link #toString} for the same sort.
+   * @throws SolrException if the token is invalid or was created for a different sort
+   */
+  public static CursorMark parse(String token, SortFieldValues[] fields) {
+    if (START.equals(token)) return new CursorMark(fields, null);
+
+    List<Object> list;
+    try {
+      list = (List<Object>) new JavaBinCodec().unmarshal(new ByteArrayInputStream(Base64.base64ToByteArray(token)));
+    } catch (Exception e) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unable to parse cursor: " + token, e);
+    }
+
+    if (list.size() != fields.length + 1 || !describe(fields).equals(list.get(0))) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+          "Cursor does not match the sort " + describe(fields) + ": " + token);
+    }
+    Object[] values = new Object[fields.length];
+    for (int i=0; i<fields.length; i++) {
+      Object val = list.get(i+1);
+      if (val instanceof byte[]) {
+        val = new BytesRef((byte[])val);
+      }
+      if (!fields[i].isValue(val)) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+            "Invalid cursor value " + val + " for " + fields[i].getSortField() + ": " + token);
+      }
+      values[i] = val;
+    }
+    return new CursorMark(fields, values);
+  }
+
+  public SortFieldValues[] getSortFieldValues() {
+    return fields;
+  }
+
+  public boolean isStart() {
+    return values == null;
+  }
+
+  /** Returns the sort values, or null at the start */
+  public Object[] getValues() {
+    return values;
+  }
+
+  /**
+   * Compares a document to this mark, in sort order: a positive number means the
+   * document comes after the mark.
+   * @param segments the values of the segment of the document, one per sort field
+   */
+  public int compareDoc(SortFieldValues.Segment[] segments, int doc) {
+    if (values == null) return 1;
+    for (int i=0; i<segments.length; i++) {
+      int c = segments[i].compareToValue(doc, values[i]);
+      if (c != 0) return c;
+    }
+    return 0;
+  }
+
+  /** Returns the token for this mark */
+  @Override
+  public String toString() {
+    if (values == null) return START;
+
+    List<Object> list = new ArrayList<Object>(values.length + 1);
+    list.add(describe(fields));
+    for (Object val : values) {
+      if (val instanceof BytesRef) {
+        BytesRef br = (BytesRef)val;
+        byte[] bytes = new byte[br.length];
+        System.arraycopy(br.bytes, br.offset, bytes, 0, br.length);
+        val = bytes;
+      }
+      list.add(val);
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new JavaBinCodec().marshal(list, out);
+      byte[] bytes = out.toByteArray();
+      return Base64.byteArrayToBase64(bytes, 0, bytes.length);
+    } catch (IOException e) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+    }
+  }
+
+  private static String describe(SortFieldValues[] fields) {
+    StringBuilder sb = new StringBuilder();
+    for (SortFieldValues f : fields) {
+      SortField sf = f.getSortField();
+      if (sb.length() > 0) sb.append(',');
+      sb.append(sf.getField()).append(sf.getReverse() ? " desc" : " asc");
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+
+/**
+ * Passes on only the hits that sort after a {@link CursorMark}, so that a
+ * collector of the top n hits returns the n hits following the mark, whatever
+ * the depth of the mark.  Counts all hits.
+ */
+public class CursorMarkCollector extends Collector {
+  private final Collector delegate;
+  private final CursorMark mark;
+  private final SortFieldValues[] fields;
+  private final SortFieldValues.Segment[] segments;
+  private int totalHits;
+
+  public CursorMarkCollector(Collector delegate, CursorMark mark) {
+    this.delegate = delegate;
+    this.mark = mark;
+    this.fields = mark.getSortFieldValues();
+    this.segments = new SortFieldValues.Segment[fields.length];
+  }
+
+  /** Returns the number of hits, including those before the mark */
+  public int getTotalHits() {
+    return totalHits;
+  }
+
+  @Override
+  public void setScorer(Scorer scorer) throws IOException {
+    delegate.setScorer(scorer);
+  }
+
+  @Override
+  public void collect(int doc) throws IOException {
+    totalHits++;
+    if (mark.compareDoc(segments, doc) > 0) {
+      delegate.collect(doc);
+    }
+  }
+
+  @Override
+  public void setNextReader(AtomicReaderContext context) throws IOException {
+    for (int i=0; i<fields.length; i++) {
+      segments[i] = fields[i].getSegment(context.reader());
+    }
+    delegate.setNextReader(context);
+  }
+
+  @Override
+  public boolean acceptsDocsOutOfOrder() {
+    return delegate.acceptsDocsOutOfOrder();
+  }
+}
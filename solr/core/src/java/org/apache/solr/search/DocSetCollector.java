@@ -76,7 +76,8 @@ public class DocSetCollector extends Collector {
     } else {
       // set the bits for ids that were collected in the array
       for (int i=0; i<scratch.length; i++) bits.fastSet(scratch[i]);
-      return new BitDocSet(bits,pos);
+      // mid-density sets are often much smaller compressed
+      return RoaringDocSet.compressIfSmaller(bits,pos);
     }
   }
 
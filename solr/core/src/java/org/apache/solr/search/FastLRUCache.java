@@ -57,6 +57,13 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private String description = "Concurrent LRU Cache";
   private ConcurrentLRUCache<K,V> cache;
   private int showItems = 0;
+  private long maxRamBytes = 0;
+
+  private static final class RamWeigher<K,V> implements ConcurrentLRUCache.Weigher<K,V> {
+    public long weigh(K key, V value) {
+      return ramBytesUsed(key, value);
+    }
+  }
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     state = State.CREATED;
@@ -93,15 +100,21 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     str = (String) args.get("showItems");
     showItems = str == null ? 0 : Integer.parseInt(str);
 
+    maxRamBytes = parseMaxRamBytes(args.get(MAX_RAM_MB_PARAM));
 
     description = "Concurrent LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
             ", minSize="+minLimit + ", acceptableSize="+acceptableLimit+", cleanupThread="+newThread;
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + toMB(maxRamBytes);
+    }
     if (autowarm.isAutoWarmingOn()) {
       description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
     }
     description += ')';
 
-    cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    // like minSize, a sweep triggered by maxRamMB frees 10% of the limit
+    cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null,
+        maxRamBytes, (long) (maxRamBytes * 0.9), new RamWeigher<K,V>());
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLRUCache.Stats>) persistence;
@@ -237,6 +250,10 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamBytes > 0) {
+      lst.add("maxRamMB", toMB(maxRamBytes));
+      lst.add("ramBytesUsed", stats.getCurrentRamBytes());
+    }
 
     lst.add("warmupTime", warmupTime);
 
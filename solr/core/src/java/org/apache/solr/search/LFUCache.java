@@ -60,6 +60,13 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
   private ConcurrentLFUCache<K, V> cache;
   private int showItems = 0;
   private Boolean timeDecay = true;
+  private long maxRamBytes = 0;
+
+  private static final class RamWeigher<K, V> implements ConcurrentLFUCache.Weigher<K, V> {
+    public long weigh(K key, V value) {
+      return SolrCacheBase.ramBytesUsed(key, value);
+    }
+  }
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     state = State.CREATED;
@@ -101,15 +108,22 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     str = (String) args.get("timeDecay");
     timeDecay = (str == null) ? true : Boolean.parseBoolean(str);
 
+    maxRamBytes = SolrCacheBase.parseMaxRamBytes(args.get(SolrCacheBase.MAX_RAM_MB_PARAM));
+
     description = "Concurrent LFU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
         ", minSize=" + minLimit + ", acceptableSize=" + acceptableSize + ", cleanupThread=" + newThread +
         ", timeDecay=" + Boolean.toString(timeDecay);
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + SolrCacheBase.toMB(maxRamBytes);
+    }
     if (autowarmCount > 0) {
       description += ", autowarmCount=" + autowarmCount + ", regenerator=" + regenerator;
     }
     description += ')';
 
-    cache = new ConcurrentLFUCache<K, V>(limit, minLimit, acceptableSize, initialSize, newThread, false, null, timeDecay);
+    // like minSize, a sweep triggered by maxRamMB frees 10% of the limit
+    cache = new ConcurrentLFUCache<K, V>(limit, minLimit, acceptableSize, initialSize, newThread, false, null, timeDecay,
+        maxRamBytes, (long) (maxRamBytes * 0.9), new RamWeigher<K, V>());
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLFUCache.Stats>) persistence;
@@ -245,6 +259,10 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamBytes > 0) {
+      lst.add("maxRamMB", SolrCacheBase.toMB(maxRamBytes));
+      lst.add("ramBytesUsed", stats.getCurrentRamBytes());
+    }
 
     lst.add("warmupTime", warmupTime);
     lst.add("timeDecay", timeDecay);
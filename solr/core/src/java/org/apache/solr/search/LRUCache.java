@@ -51,7 +51,9 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private long hits;
   private long inserts;
   private long evictions;
+  private long ramBytesUsed;
 
+  private long maxRamBytes;
   private long warmupTime = 0;
 
   private Map<K,V> map;
@@ -70,7 +72,11 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     str = (String)args.get("initialSize");
     final int initialSize = Math.min(str==null ? 1024 : Integer.parseInt(str), limit);
     autowarm = new AutoWarmCountRef((String)args.get("autowarmCount"));
+    maxRamBytes = parseMaxRamBytes(args.get(MAX_RAM_MB_PARAM));
     description = "LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize;
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + toMB(maxRamBytes);
+    }
     if (autowarm.isAutoWarmingOn()) {
       description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
     }
@@ -85,6 +91,9 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
             // only be called in the context of a higher level synchronized block.
             evictions++;
             stats.evictions.incrementAndGet();
+            if (maxRamBytes > 0) {
+              ramBytesUsed -= ramBytesUsed(eldest.getKey(), eldest.getValue());
+            }
             return true;
           }
           return false;
@@ -120,7 +129,29 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       // increment local inserts regardless of state???
       // it does make it more consistent with the current size...
       inserts++;
-      return map.put(key,value);
+      V old = map.put(key,value);
+      if (maxRamBytes > 0) {
+        if (old != null) {
+          ramBytesUsed -= ramBytesUsed(key, old);
+        }
+        ramBytesUsed += ramBytesUsed(key, value);
+        evictByRam();
+      }
+      return old;
+    }
+  }
+
+  // evicts the least recently used entries (possibly including the one just
+  // added) until the estimated size is within maxRamBytes.  Called with the
+  // lock on map held.
+  private void evictByRam() {
+    Iterator<Map.Entry<K,V>> iter = map.entrySet().iterator();
+    while (ramBytesUsed > maxRamBytes && iter.hasNext()) {
+      Map.Entry<K,V> eldest = iter.next();
+      ramBytesUsed -= ramBytesUsed(eldest.getKey(), eldest.getValue());
+      iter.remove();
+      evictions++;
+      stats.evictions.incrementAndGet();
     }
   }
 
@@ -143,6 +174,7 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   public void clear() {
     synchronized(map) {
       map.clear();
+      ramBytesUsed = 0;
     }
   }
 
@@ -263,6 +295,10 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       lst.add("inserts", inserts);
       lst.add("evictions", evictions);
       lst.add("size", map.size());
+      if (maxRamBytes > 0) {
+        lst.add("maxRamMB", toMB(maxRamBytes));
+        lst.add("ramBytesUsed", ramBytesUsed);
+      }
     }
 
     lst.add("warmupTime", warmupTime);
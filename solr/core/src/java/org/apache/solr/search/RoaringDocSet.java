@@ -0,0 +1,971 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * <code>RoaringDocSet</code> is a compressed DocSet.  The doc id space is split in
+ * chunks of 65536 docs, and every non-empty chunk is stored in the smallest of
+ * three containers: a sorted array of the low 16 bits of its docs (sparse chunks),
+ * a bitmap (dense chunks), or a list of runs of consecutive docs (chunks where
+ * matching docs are clustered, e.g. a range on a field the index is sorted by).
+ * <p>
+ * Set operations work chunk by chunk, with dedicated kernels for every pair of
+ * container types, against other <code>RoaringDocSet</code>s as well as against
+ * {@link BitDocSet}s.  {@link #compressIfSmaller} picks this implementation over a
+ * <code>BitDocSet</code> when it takes considerably less memory, which is typically
+ * the case for mid-density sets.
+ *
+ * @lucene.experimental
+ */
+public final class RoaringDocSet extends DocSetBase {
+  static final int CHUNK_SHIFT = 16;
+  static final int CHUNK_MASK = 0xFFFF;
+  static final int CHUNK_WORDS = 1 << (CHUNK_SHIFT - 6);
+  /** An array container takes 2 bytes per doc, so it is smaller than a bitmap up to this size */
+  static final int MAX_ARRAY_SIZE = 4096;
+  static final int BITMAP_BYTES = CHUNK_WORDS << 3;
+
+  private final char[] keys;             // high 16 bits of the docs of each container
+  private final Container[] containers;
+  private final int size;
+
+  private RoaringDocSet(char[] keys, Container[] containers) {
+    assert keys.length == containers.length;
+    this.keys = keys;
+    this.containers = containers;
+    int sz = 0;
+    for (Container c : containers) {
+      sz += c.cardinality();
+    }
+    this.size = sz;
+  }
+
+  /** Builds a set from the given bits. */
+  public RoaringDocSet(OpenBitSet bits) {
+    this(fromWords(bits.getBits(), bits.getNumWords()));
+  }
+
+  /** Builds a set from the first len docs of the given sorted array. */
+  public RoaringDocSet(int[] docs, int len) {
+    this(fromSortedDocs(docs, len));
+  }
+
+  private RoaringDocSet(Builder builder) {
+    this(Arrays.copyOf(builder.keys, builder.n), Arrays.copyOf(builder.containers, builder.n));
+  }
+
+  /**
+   * Returns a <code>RoaringDocSet</code> over the given bits if it would take less
+   * than half the memory of a {@link BitDocSet}, and a <code>BitDocSet</code> otherwise.
+   *
+   * @param size the number of set bits, or -1 if unknown
+   */
+  public static DocSet compressIfSmaller(OpenBitSet bits, int size) {
+    final long[] words = bits.getBits();
+    final int numWords = bits.getNumWords();
+    long compressed = 32;
+    for (int off=0; off<numWords; off+=CHUNK_WORDS) {
+      final int len = Math.min(CHUNK_WORDS, numWords - off);
+      int card = 0;
+      int runs = 0;
+      long prev = 0;
+      for (int i=off, end=off+len; i<end; i++) {
+        final long w = words[i];
+        card += Long.bitCount(w);
+        runs += Long.bitCount(w & ~((w << 1) | (prev >>> 63)));
+        prev = w;
+      }
+      if (card > 0) compressed += containerBytes(card, runs) + 32;
+    }
+    final long uncompressed = ((long)words.length << 3) + 16;
+    if (compressed <= uncompressed >> 1) {
+      return new RoaringDocSet(bits);
+    }
+    return size < 0 ? new BitDocSet(bits) : new BitDocSet(bits, size);
+  }
+
+  private static int containerBytes(int card, int runs) {
+    return Math.min(Math.min(card << 1, runs << 2), BITMAP_BYTES);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long memSize() {
+    long sz = 32 + (keys.length << 1) + (containers.length << 3);
+    for (Container c : containers) {
+      sz += c.memSize();
+    }
+    return sz;
+  }
+
+  public boolean exists(int doc) {
+    final int i = Arrays.binarySearch(keys, (char)(doc >>> CHUNK_SHIFT));
+    return i >= 0 && containers[i].contains(doc & CHUNK_MASK);
+  }
+
+  // one past the largest doc in the set
+  private int maxDoc() {
+    if (keys.length == 0) return 0;
+    final int last = keys.length - 1;
+    return (keys[last] << CHUNK_SHIFT) + containers[last].last() + 1;
+  }
+
+  public DocIterator iterator() {
+    return new DocIterator() {
+      final Cursor cursor = new Cursor();
+      int next = advance(cursor, 0);
+
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      public Integer next() {
+        return nextDoc();
+      }
+
+      /**
+       * The remove  operation is not supported by this Iterator.
+       */
+      public void remove() {
+        throw new UnsupportedOperationException("The remove  operation is not supported by this Iterator.");
+      }
+
+      public int nextDoc() {
+        final int doc = next;
+        next = advance(cursor, doc + 1);
+        return doc;
+      }
+
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  /** Position inside the set; only moves forward. */
+  static final class Cursor {
+    int ci;   // current container
+    int idx;  // position inside the current container, see Container.next
+  }
+
+  /** Returns the first doc &gt;= target, or -1.  target must not be less than the previous one. */
+  int advance(Cursor cursor, int target) {
+    final int key = target >>> CHUNK_SHIFT;
+    int ci = cursor.ci;
+    if (ci < keys.length && keys[ci] < key) {
+      // binary search for the first container with a key >= key
+      int low = ci + 1;
+      int high = keys.length - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (keys[mid] < key) low = mid + 1;
+        else high = mid - 1;
+      }
+      ci = low;
+      cursor.idx = 0;
+    }
+    while (ci < keys.length) {
+      final int from = keys[ci] == key ? target & CHUNK_MASK : 0;
+      final int v = containers[ci].next(cursor, from);
+      if (v >= 0) {
+        cursor.ci = ci;
+        return (keys[ci] << CHUNK_SHIFT) | v;
+      }
+      ci++;
+      cursor.idx = 0;
+    }
+    cursor.ci = ci;
+    return -1;
+  }
+
+  @Override
+  public OpenBitSet getBits() {
+    final OpenBitSet bits = new OpenBitSet(maxDoc());
+    setBitsOn(bits);
+    return bits;
+  }
+
+  @Override
+  public void setBitsOn(OpenBitSet target) {
+    final int maxDoc = maxDoc();
+    if (maxDoc == 0) return;
+    if (target.getNumWords() < OpenBitSet.bits2words(maxDoc)) {
+      target.set(maxDoc - 1);  // grows the number of words in use
+    }
+    final long[] words = target.getBits();
+    final int numWords = target.getNumWords();
+    for (int i=0; i<keys.length; i++) {
+      final int off = keys[i] << (CHUNK_SHIFT - 6);
+      containers[i].orInto(words, off, Math.min(CHUNK_WORDS, numWords - off));
+    }
+  }
+
+  /** Clears the bits of the docs in this set from target. */
+  void clearBitsOn(OpenBitSet target) {
+    final long[] words = target.getBits();
+    final int numWords = target.getNumWords();
+    final long[] scratch = new long[CHUNK_WORDS];
+    for (int i=0; i<keys.length; i++) {
+      final int off = keys[i] << (CHUNK_SHIFT - 6);
+      final int len = Math.min(CHUNK_WORDS, numWords - off);
+      if (len <= 0) break;
+      Arrays.fill(scratch, 0L);
+      containers[i].orInto(scratch, 0, CHUNK_WORDS);
+      for (int j=0; j<len; j++) {
+        words[off + j] &= ~scratch[j];
+      }
+    }
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      final RoaringDocSet o = (RoaringDocSet)other;
+      int count = 0;
+      for (int i=0, j=0; i<keys.length && j<o.keys.length;) {
+        if (keys[i] < o.keys[j]) i++;
+        else if (keys[i] > o.keys[j]) j++;
+        else count += containers[i++].intersectionCount(o.containers[j++]);
+      }
+      return count;
+    } else if (other instanceof BitDocSet) {
+      final OpenBitSet bits = ((BitDocSet)other).getBits();
+      final long[] words = bits.getBits();
+      final int numWords = bits.getNumWords();
+      int count = 0;
+      for (int i=0; i<keys.length; i++) {
+        final int off = keys[i] << (CHUNK_SHIFT - 6);
+        final int len = Math.min(CHUNK_WORDS, numWords - off);
+        if (len <= 0) break;
+        count += containers[i].intersectionCount(words, off, len);
+      }
+      return count;
+    }
+    // the remaining implementations iterate over their own docs and call exists()
+    return other.intersectionSize(this);
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      final RoaringDocSet o = (RoaringDocSet)other;
+      for (int i=0, j=0; i<keys.length && j<o.keys.length;) {
+        if (keys[i] < o.keys[j]) i++;
+        else if (keys[i] > o.keys[j]) j++;
+        else if (containers[i++].intersectionCount(o.containers[j++]) > 0) return true;
+      }
+      return false;
+    } else if (other instanceof BitDocSet) {
+      final OpenBitSet bits = ((BitDocSet)other).getBits();
+      final long[] words = bits.getBits();
+      final int numWords = bits.getNumWords();
+      for (int i=0; i<keys.length; i++) {
+        final int off = keys[i] << (CHUNK_SHIFT - 6);
+        final int len = Math.min(CHUNK_WORDS, numWords - off);
+        if (len <= 0) break;
+        if (containers[i].intersectionCount(words, off, len) > 0) return true;
+      }
+      return false;
+    }
+    return other.intersects(this);
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    final long[] s1 = new long[CHUNK_WORDS];
+    if (other instanceof RoaringDocSet) {
+      final RoaringDocSet o = (RoaringDocSet)other;
+      final long[] s2 = new long[CHUNK_WORDS];
+      final Builder result = new Builder(Math.min(keys.length, o.keys.length));
+      for (int i=0, j=0; i<keys.length && j<o.keys.length;) {
+        if (keys[i] < o.keys[j]) i++;
+        else if (keys[i] > o.keys[j]) j++;
+        else result.add(keys[i], containers[i++].and(o.containers[j++], s1, s2));
+      }
+      return new RoaringDocSet(result);
+    } else if (other instanceof BitDocSet) {
+      final OpenBitSet bits = ((BitDocSet)other).getBits();
+      final long[] words = bits.getBits();
+      final int numWords = bits.getNumWords();
+      final Builder result = new Builder(keys.length);
+      for (int i=0; i<keys.length; i++) {
+        final int off = keys[i] << (CHUNK_SHIFT - 6);
+        final int len = Math.min(CHUNK_WORDS, numWords - off);
+        if (len <= 0) break;
+        result.add(keys[i], containers[i].and(words, off, len, s1));
+      }
+      return new RoaringDocSet(result);
+    }
+    return other.intersection(this);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    final long[] s1 = new long[CHUNK_WORDS];
+    if (other instanceof RoaringDocSet) {
+      final RoaringDocSet o = (RoaringDocSet)other;
+      final long[] s2 = new long[CHUNK_WORDS];
+      final Builder result = new Builder(keys.length);
+      int j = 0;
+      for (int i=0; i<keys.length; i++) {
+        while (j < o.keys.length && o.keys[j] < keys[i]) j++;
+        if (j < o.keys.length && o.keys[j] == keys[i]) {
+          result.add(keys[i], containers[i].andNot(o.containers[j], s1, s2));
+        } else {
+          result.add(keys[i], containers[i]);
+        }
+      }
+      return new RoaringDocSet(result);
+    } else if (other instanceof BitDocSet) {
+      final OpenBitSet bits = ((BitDocSet)other).getBits();
+      final long[] words = bits.getBits();
+      final int numWords = bits.getNumWords();
+      final Builder result = new Builder(keys.length);
+      for (int i=0; i<keys.length; i++) {
+        final int off = keys[i] << (CHUNK_SHIFT - 6);
+        final int len = Math.min(CHUNK_WORDS, numWords - off);
+        result.add(keys[i], len <= 0 ? containers[i] : containers[i].andNot(words, off, len, s1));
+      }
+      return new RoaringDocSet(result);
+    }
+    final OpenBitSet bits = getBits();
+    final int maxDoc = maxDoc();
+    for (DocIterator iter = other.iterator(); iter.hasNext();) {
+      final int doc = iter.nextDoc();
+      if (doc < maxDoc) bits.fastClear(doc);
+    }
+    return compressIfSmaller(bits, -1);
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    if (other instanceof RoaringDocSet) {
+      final RoaringDocSet o = (RoaringDocSet)other;
+      final long[] s1 = new long[CHUNK_WORDS];
+      final Builder result = new Builder(keys.length + o.keys.length);
+      int i = 0, j = 0;
+      while (i < keys.length || j < o.keys.length) {
+        if (j == o.keys.length || (i < keys.length && keys[i] < o.keys[j])) {
+          result.add(keys[i], containers[i++]);
+        } else if (i == keys.length || keys[i] > o.keys[j]) {
+          result.add(o.keys[j], o.containers[j++]);
+        } else {
+          result.add(keys[i], containers[i++].or(o.containers[j++], s1));
+        }
+      }
+      return new RoaringDocSet(result);
+    }
+    final OpenBitSet bits;
+    if (other instanceof BitDocSet) {
+      bits = (OpenBitSet)((BitDocSet)other).getBits().clone();
+    } else {
+      bits = new OpenBitSet(maxDoc());
+      for (DocIterator iter = other.iterator(); iter.hasNext();) {
+        bits.set(iter.nextDoc());
+      }
+    }
+    setBitsOn(bits);
+    return compressIfSmaller(bits, -1);
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+        AtomicReader reader = context.reader();
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (reader.getLiveDocs() == acceptDocs ? null : acceptDocs);
+
+        final int base = context.docBase;
+        final int max = base + reader.maxDoc();   // one past the max doc in this segment.
+
+        return BitsFilteredDocIdSet.wrap(new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() throws IOException {
+            return new DocIdSetIterator() {
+              final Cursor cursor = new Cursor();
+              int adjustedDoc = -1;
+
+              @Override
+              public int docID() {
+                return adjustedDoc;
+              }
+
+              @Override
+              public int nextDoc() throws IOException {
+                return advance(adjustedDoc + 1);
+              }
+
+              @Override
+              public int advance(int target) throws IOException {
+                if (target == NO_MORE_DOCS) return adjustedDoc = NO_MORE_DOCS;
+                final int doc = RoaringDocSet.this.advance(cursor, target + base);
+                return adjustedDoc = (doc >= 0 && doc < max) ? doc - base : NO_MORE_DOCS;
+              }
+            };
+          }
+
+          @Override
+          public boolean isCacheable() {
+            return true;
+          }
+
+          @Override
+          public Bits bits() throws IOException {
+            // exists() is a binary search, so don't advertise random access
+            return null;
+          }
+
+        }, acceptDocs2);
+      }
+    };
+  }
+
+  //
+  // building
+  //
+
+  private static final class Builder {
+    char[] keys;
+    Container[] containers;
+    int n;
+
+    Builder(int initialSize) {
+      keys = new char[Math.max(1, initialSize)];
+      containers = new Container[keys.length];
+    }
+
+    /** Adds the container for the next key, or nothing if c is null */
+    void add(int key, Container c) {
+      if (c == null) return;
+      if (n == keys.length) {
+        keys = Arrays.copyOf(keys, n << 1);
+        containers = Arrays.copyOf(containers, n << 1);
+      }
+      keys[n] = (char)key;
+      containers[n++] = c;
+    }
+  }
+
+  private static Builder fromWords(long[] words, int numWords) {
+    final Builder builder = new Builder(((numWords - 1) >> (CHUNK_SHIFT - 6)) + 1);
+    for (int off=0; off<numWords; off+=CHUNK_WORDS) {
+      builder.add(off >> (CHUNK_SHIFT - 6), containerFromWords(words, off, Math.min(CHUNK_WORDS, numWords - off)));
+    }
+    return builder;
+  }
+
+  private static Builder fromSortedDocs(int[] docs, int len) {
+    final Builder builder = new Builder(len == 0 ? 1 : (docs[len-1] >>> CHUNK_SHIFT) + 1);
+    final long[] scratch = new long[CHUNK_WORDS];
+    int i = 0;
+    while (i < len) {
+      final int key = docs[i] >>> CHUNK_SHIFT;
+      Arrays.fill(scratch, 0L);
+      for (; i < len && (docs[i] >>> CHUNK_SHIFT) == key; i++) {
+        final int v = docs[i] & CHUNK_MASK;
+        scratch[v >>> 6] |= 1L << v;
+      }
+      builder.add(key, containerFromWords(scratch, 0, CHUNK_WORDS));
+    }
+    return builder;
+  }
+
+  /** Returns the smallest container for the given chunk of a bitset, or null if it is empty. */
+  static Container containerFromWords(long[] words, int off, int len) {
+    int card = 0;
+    int runs = 0;
+    long prev = 0;
+    for (int i=off, end=off+len; i<end; i++) {
+      final long w = words[i];
+      card += Long.bitCount(w);
+      runs += Long.bitCount(w & ~((w << 1) | (prev >>> 63)));
+      prev = w;
+    }
+    if (card == 0) return null;
+    final int bytes = containerBytes(card, runs);
+    if (bytes == runs << 2) {
+      return RunContainer.fromWords(words, off, len, runs, card);
+    } else if (bytes == card << 1) {
+      return ArrayContainer.fromWords(words, off, len, card);
+    } else {
+      final long[] bitmap = new long[CHUNK_WORDS];
+      System.arraycopy(words, off, bitmap, 0, len);
+      return new BitmapContainer(bitmap, card);
+    }
+  }
+
+  // index of the first set bit >= from, or -1
+  static int nextSetBit(long[] words, int off, int len, int from) {
+    int i = from >>> 6;
+    if (i >= len) return -1;
+    long w = words[off + i] >>> from;
+    if (w != 0) return from + Long.numberOfTrailingZeros(w);
+    while (++i < len) {
+      w = words[off + i];
+      if (w != 0) return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+    return -1;
+  }
+
+  // index of the first clear bit >= from; bits past len words are clear
+  static int nextClearBit(long[] words, int off, int len, int from) {
+    int i = from >>> 6;
+    if (i >= len) return from;
+    long w = ~words[off + i] >>> from;
+    if (w != 0) return from + Long.numberOfTrailingZeros(w);
+    while (++i < len) {
+      w = ~words[off + i];
+      if (w != 0) return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+    return len << 6;
+  }
+
+  // number of set bits in [from, to) of the len words at off
+  static int popRange(long[] words, int off, int len, int from, int to) {
+    to = Math.min(to, len << 6);
+    if (from >= to) return 0;
+    final int startWord = from >>> 6;
+    final int endWord = (to - 1) >>> 6;
+    final long startMask = -1L << from;
+    final long endMask = -1L >>> -to;
+    if (startWord == endWord) {
+      return Long.bitCount(words[off + startWord] & startMask & endMask);
+    }
+    int count = Long.bitCount(words[off + startWord] & startMask);
+    for (int i=startWord+1; i<endWord; i++) {
+      count += Long.bitCount(words[off + i]);
+    }
+    return count + Long.bitCount(words[off + endWord] & endMask);
+  }
+
+  // sets the bits in [from, to) of the len words at off, ignoring bits past len words
+  static void setRange(long[] words, int off, int len, int from, int to) {
+    to = Math.min(to, len << 6);
+    if (from >= to) return;
+    final int startWord = from >>> 6;
+    final int endWord = (to - 1) >>> 6;
+    final long startMask = -1L << from;
+    final long endMask = -1L >>> -to;
+    if (startWord == endWord) {
+      words[off + startWord] |= startMask & endMask;
+      return;
+    }
+    words[off + startWord] |= startMask;
+    for (int i=startWord+1; i<endWord; i++) {
+      words[off + i] = -1L;
+    }
+    words[off + endWord] |= endMask;
+  }
+
+  //
+  // containers
+  //
+
+  /** The docs of one chunk, as values in [0, 65536). */
+  static abstract class Container {
+    abstract int cardinality();
+
+    abstract boolean contains(int v);
+
+    /** the largest value */
+    abstract int last();
+
+    abstract long memSize();
+
+    /** Returns the first value &gt;= from, or -1.  cursor.idx may be used to remember the position. */
+    abstract int next(Cursor cursor, int from);
+
+    /** ORs this container into the len (at most 1024) words at off. */
+    abstract void orInto(long[] words, int off, int len);
+
+    /** Number of values whose bit is set in the len (at most 1024) words at off. */
+    abstract int intersectionCount(long[] words, int off, int len);
+
+    int intersectionCount(Container other) {
+      if (other instanceof BitmapContainer) {
+        return intersectionCount(((BitmapContainer)other).words, 0, CHUNK_WORDS);
+      }
+      return other.intersectionCount(this);
+    }
+
+    /** this AND the len words at off */
+    Container and(long[] words, int off, int len, long[] scratch) {
+      Arrays.fill(scratch, 0L);
+      orInto(scratch, 0, CHUNK_WORDS);
+      for (int i=0; i<CHUNK_WORDS; i++) {
+        scratch[i] &= i < len ? words[off + i] : 0L;
+      }
+      return containerFromWords(scratch, 0, CHUNK_WORDS);
+    }
+
+    /** this AND NOT the len words at off */
+    Container andNot(long[] words, int off, int len, long[] scratch) {
+      Arrays.fill(scratch, 0L);
+      orInto(scratch, 0, CHUNK_WORDS);
+      for (int i=0; i<len; i++) {
+        scratch[i] &= ~words[off + i];
+      }
+      return containerFromWords(scratch, 0, CHUNK_WORDS);
+    }
+
+    Container and(Container other, long[] s1, long[] s2) {
+      if (other instanceof ArrayContainer) {
+        return ((ArrayContainer)other).filter(this, true);
+      }
+      return and(other.words(s2), 0, CHUNK_WORDS, s1);
+    }
+
+    Container andNot(Container other, long[] s1, long[] s2) {
+      return andNot(other.words(s2), 0, CHUNK_WORDS, s1);
+    }
+
+    Container or(Container other, long[] scratch) {
+      Arrays.fill(scratch, 0L);
+      orInto(scratch, 0, CHUNK_WORDS);
+      other.orInto(scratch, 0, CHUNK_WORDS);
+      return containerFromWords(scratch, 0, CHUNK_WORDS);
+    }
+
+    /** Returns the bitmap of this container, using scratch unless it already is a bitmap */
+    long[] words(long[] scratch) {
+      Arrays.fill(scratch, 0L);
+      orInto(scratch, 0, CHUNK_WORDS);
+      return scratch;
+    }
+  }
+
+  static final class ArrayContainer extends Container {
+    final char[] values;
+
+    ArrayContainer(char[] values) {
+      this.values = values;
+    }
+
+    static ArrayContainer fromWords(long[] words, int off, int len, int card) {
+      final char[] values = new char[card];
+      int k = 0;
+      for (int i=0; i<len; i++) {
+        long w = words[off + i];
+        while (w != 0) {
+          values[k++] = (char)((i << 6) + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      return new ArrayContainer(values);
+    }
+
+    @Override
+    int cardinality() {
+      return values.length;
+    }
+
+    @Override
+    boolean contains(int v) {
+      return Arrays.binarySearch(values, (char)v) >= 0;
+    }
+
+    @Override
+    int last() {
+      return values[values.length - 1];
+    }
+
+    @Override
+    long memSize() {
+      return 32 + (values.length << 1);
+    }
+
+    @Override
+    int next(Cursor cursor, int from) {
+      int i = cursor.idx;
+      if (i >= values.length) return -1;
+      if (values[i] < from) {
+        // probe the next few values before resorting to a binary search
+        final int probeEnd = Math.min(values.length, i + 8);
+        while (++i < probeEnd && values[i] < from);
+        if (i == probeEnd && i < values.length) {
+          int high = values.length - 1;
+          while (i <= high) {
+            final int mid = (i + high) >>> 1;
+            if (values[mid] < from) i = mid + 1;
+            else high = mid - 1;
+          }
+        }
+        cursor.idx = i;
+        if (i >= values.length) return -1;
+      }
+      return values[i];
+    }
+
+    @Override
+    void orInto(long[] words, int off, int len) {
+      for (char v : values) {
+        if ((v >>> 6) >= len) break;
+        words[off + (v >>> 6)] |= 1L << v;
+      }
+    }
+
+    @Override
+    int intersectionCount(long[] words, int off, int len) {
+      int count = 0;
+      for (char v : values) {
+        if ((v >>> 6) >= len) break;
+        if ((words[off + (v >>> 6)] & (1L << v)) != 0) count++;
+      }
+      return count;
+    }
+
+    @Override
+    int intersectionCount(Container other) {
+      if (!(other instanceof ArrayContainer)) {
+        if (other instanceof BitmapContainer) {
+          return intersectionCount(((BitmapContainer)other).words, 0, CHUNK_WORDS);
+        }
+        int count = 0;
+        for (char v : values) {
+          if (other.contains(v)) count++;
+        }
+        return count;
+      }
+      final char[] a = values;
+      final char[] b = ((ArrayContainer)other).values;
+      int count = 0;
+      for (int i=0, j=0; i<a.length && j<b.length;) {
+        if (a[i] < b[j]) i++;
+        else if (a[i] > b[j]) j++;
+        else { count++; i++; j++; }
+      }
+      return count;
+    }
+
+    /** the values that are (keep=true) or are not (keep=false) in other */
+    Container filter(Container other, boolean keep) {
+      final char[] result = new char[values.length];
+      int k = 0;
+      for (char v : values) {
+        if (other.contains(v) == keep) result[k++] = v;
+      }
+      return k == 0 ? null : new ArrayContainer(k == result.length ? result : Arrays.copyOf(result, k));
+    }
+
+    @Override
+    Container and(long[] words, int off, int len, long[] scratch) {
+      final char[] result = new char[values.length];
+      int k = 0;
+      for (char v : values) {
+        if ((v >>> 6) >= len) break;
+        if ((words[off + (v >>> 6)] & (1L << v)) != 0) result[k++] = v;
+      }
+      return k == 0 ? null : new ArrayContainer(k == result.length ? result : Arrays.copyOf(result, k));
+    }
+
+    @Override
+    Container andNot(long[] words, int off, int len, long[] scratch) {
+      final char[] result = new char[values.length];
+      int k = 0;
+      for (char v : values) {
+        if ((v >>> 6) >= len || (words[off + (v >>> 6)] & (1L << v)) == 0) result[k++] = v;
+      }
+      return k == 0 ? null : new ArrayContainer(k == result.length ? result : Arrays.copyOf(result, k));
+    }
+
+    @Override
+    Container and(Container other, long[] s1, long[] s2) {
+      return filter(other, true);
+    }
+
+    @Override
+    Container andNot(Container other, long[] s1, long[] s2) {
+      return filter(other, false);
+    }
+  }
+
+  static final class BitmapContainer extends Container {
+    final long[] words;  // always CHUNK_WORDS long
+    final int card;
+
+    BitmapContainer(long[] words, int card) {
+      this.words = words;
+      this.card = card;
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(int v) {
+      return (words[v >>> 6] & (1L << v)) != 0;
+    }
+
+    @Override
+    int last() {
+      int i = CHUNK_WORDS - 1;
+      while (words[i] == 0) i--;
+      return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+    }
+
+    @Override
+    long memSize() {
+      return 32 + BITMAP_BYTES;
+    }
+
+    @Override
+    int next(Cursor cursor, int from) {
+      return nextSetBit(words, 0, CHUNK_WORDS, from);
+    }
+
+    @Override
+    void orInto(long[] target, int off, int len) {
+      for (int i=0; i<len; i++) {
+        target[off + i] |= words[i];
+      }
+    }
+
+    @Override
+    int intersectionCount(long[] target, int off, int len) {
+      int count = 0;
+      for (int i=0; i<len; i++) {
+        count += Long.bitCount(words[i] & target[off + i]);
+      }
+      return count;
+    }
+
+    @Override
+    int intersectionCount(Container other) {
+      return other.intersectionCount(words, 0, CHUNK_WORDS);
+    }
+
+    @Override
+    long[] words(long[] scratch) {
+      return words;
+    }
+  }
+
+  static final class RunContainer extends Container {
+    final char[] runs;  // pairs of (start, length - 1)
+    final int card;
+
+    RunContainer(char[] runs, int card) {
+      this.runs = runs;
+      this.card = card;
+    }
+
+    static RunContainer fromWords(long[] words, int off, int len, int numRuns, int card) {
+      final char[] runs = new char[numRuns << 1];
+      int k = 0;
+      int start = nextSetBit(words, off, len, 0);
+      while (start >= 0) {
+        final int end = nextClearBit(words, off, len, start);
+        runs[k++] = (char)start;
+        runs[k++] = (char)(end - 1 - start);
+        start = end < (len << 6) ? nextSetBit(words, off, len, end) : -1;
+      }
+      assert k == runs.length;
+      return new RunContainer(runs, card);
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(int v) {
+      // find the last run starting at or before v
+      int low = 0;
+      int high = (runs.length >> 1) - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (runs[mid << 1] <= v) low = mid + 1;
+        else high = mid - 1;
+      }
+      return high >= 0 && v <= runs[high << 1] + runs[(high << 1) + 1];
+    }
+
+    @Override
+    int last() {
+      return runs[runs.length - 2] + runs[runs.length - 1];
+    }
+
+    @Override
+    long memSize() {
+      return 32 + (runs.length << 1);
+    }
+
+    @Override
+    int next(Cursor cursor, int from) {
+      int i = cursor.idx;
+      while (i < runs.length && runs[i] + runs[i + 1] < from) i += 2;
+      cursor.idx = i;
+      return i < runs.length ? Math.max(from, runs[i]) : -1;
+    }
+
+    @Override
+    void orInto(long[] words, int off, int len) {
+      for (int i=0; i<runs.length; i+=2) {
+        setRange(words, off, len, runs[i], runs[i] + runs[i + 1] + 1);
+      }
+    }
+
+    @Override
+    int intersectionCount(long[] words, int off, int len) {
+      int count = 0;
+      for (int i=0; i<runs.length; i+=2) {
+        count += popRange(words, off, len, runs[i], runs[i] + runs[i + 1] + 1);
+      }
+      return count;
+    }
+
+    @Override
+    int intersectionCount(Container other) {
+      if (!(other instanceof RunContainer)) {
+        return super.intersectionCount(other);
+      }
+      // sum of the overlaps of the runs
+      final char[] a = runs;
+      final char[] b = ((RunContainer)other).runs;
+      int count = 0;
+      for (int i=0, j=0; i<a.length && j<b.length;) {
+        final int aEnd = a[i] + a[i + 1];
+        final int bEnd = b[j] + b[j + 1];
+        final int overlap = Math.min(aEnd, bEnd) - Math.max(a[i], b[j]) + 1;
+        if (overlap > 0) count += overlap;
+        if (aEnd < bEnd) i += 2;
+        else j += 2;
+      }
+      return count;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.search.Query;
+
+/**
+ * A filterCache key for the set of documents matching a query within a single
+ * segment.  The segment is identified by its core and deletes key, so an entry
+ * stays valid across commits for as long as the segment is neither merged away
+ * nor gets new deletions.
+ *
+ * @see org.apache.solr.core.SolrConfig#perSegmentFilterCache
+ * @lucene.internal
+ */
+public final class SegmentFilterKey {
+  final Query query;
+  final Object readerKey;
+  private final int hc;  // cached hashCode
+
+  public SegmentFilterKey(Query query, AtomicReader reader) {
+    this.query = query;
+    this.readerKey = reader.getCombinedCoreAndDeletesKey();
+    this.hc = query.hashCode() * 31 + System.identityHashCode(readerKey);
+  }
+
+  public Query getQuery() {
+    return query;
+  }
+
+  @Override
+  public int hashCode() {
+    return hc;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o==this) return true;
+    if (!(o instanceof SegmentFilterKey)) return false;
+    SegmentFilterKey other = (SegmentFilterKey)o;
+    return this.hc == other.hc && this.readerKey == other.readerKey && this.query.equals(other.query);
+  }
+
+  @Override
+  public String toString() {
+    return query + " @ " + readerKey;
+  }
+}
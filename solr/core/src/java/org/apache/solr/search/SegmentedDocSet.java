@@ -0,0 +1,336 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * A <code>DocSet</code> made of one DocSet per segment of a searcher, each of
+ * them using segment relative document ids.  This is what the per-segment
+ * filterCache hands out: the per-segment sets are cached individually, and
+ * they are only combined into a top-level set if a caller needs one.
+ * <p>
+ * Set operations are done segment by segment: with another
+ * <code>SegmentedDocSet</code> over the same segments the per-segment sets are
+ * combined directly, otherwise each segment's docs are looked up in the other
+ * set by their top-level id.  {@link #getTopFilter} uses the per-segment sets
+ * directly, so only {@link #getBits} needs the top-level set.
+ *
+ * @see org.apache.solr.core.SolrConfig#perSegmentFilterCache
+ * @lucene.internal
+ */
+public class SegmentedDocSet extends DocSetBase {
+  private final AtomicReaderContext[] leaves;
+  private final DocSet[] sets;
+  private final int size;
+  private volatile DocSet topLevel;  // lazily built top-level equivalent
+
+  /**
+   * @param leaves the leaves of the searcher the sets were computed against
+   * @param sets one set per leaf, using doc ids relative to that leaf
+   */
+  public SegmentedDocSet(AtomicReaderContext[] leaves, DocSet[] sets) {
+    assert leaves.length == sets.length;
+    this.leaves = leaves;
+    this.sets = sets;
+    int sz = 0;
+    for (DocSet set : sets) {
+      sz += set.size();
+    }
+    this.size = sz;
+  }
+
+  /** Returns the segment relative set for the leaf with the given ord */
+  public DocSet getSegmentDocSet(int ord) {
+    return sets[ord];
+  }
+
+  /** Returns true if the per-segment sets are the given ones. */
+  boolean hasSegmentDocSets(DocSet[] other) {
+    if (other.length != sets.length) return false;
+    for (int i=0; i<sets.length; i++) {
+      if (sets[i] != other[i]) return false;
+    }
+    return true;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean exists(int docid) {
+    final int i = ReaderUtil.subIndex(docid, leaves);
+    return sets[i].exists(docid - leaves[i].docBase);
+  }
+
+  public long memSize() {
+    long sz = (sets.length << 3) + 32;
+    for (DocSet set : sets) {
+      sz += set.memSize();
+    }
+    return sz;
+  }
+
+  /** Returns the equivalent set using top-level doc ids, building it on first use. */
+  DocSet getTopLevelDocSet() {
+    DocSet answer = topLevel;
+    if (answer == null) {
+      final AtomicReaderContext last = leaves.length == 0 ? null : leaves[leaves.length-1];
+      final int maxDoc = last == null ? 0 : last.docBase + last.reader().maxDoc();
+      final DocSetCollector collector = new DocSetCollector(maxDoc>>6, maxDoc);
+      try {
+        for (int i=0; i<leaves.length; i++) {
+          collector.setNextReader(leaves[i]);
+          for (DocIterator iter = sets[i].iterator(); iter.hasNext();) {
+            collector.collect(iter.nextDoc());
+          }
+        }
+      } catch (IOException e) {
+        // DocSetCollector does no I/O
+        throw new RuntimeException(e);
+      }
+      topLevel = answer = collector.getDocSet();
+    }
+    return answer;
+  }
+
+  /** Returns true if the top-level set was built. */
+  boolean hasTopLevelDocSet() {
+    return topLevel != null;
+  }
+
+  // same segments, so the per-segment sets can be combined directly
+  private SegmentedDocSet sameSegments(DocSet other) {
+    if (other instanceof SegmentedDocSet && ((SegmentedDocSet)other).leaves == leaves) {
+      return (SegmentedDocSet)other;
+    }
+    return null;
+  }
+
+  public DocIterator iterator() {
+    return new DocIterator() {
+      int ord = -1;
+      int base;
+      DocIterator sub;
+
+      public boolean hasNext() {
+        while (sub == null || !sub.hasNext()) {
+          if (ord+1 >= sets.length) return false;
+          ord++;
+          sub = sets[ord].iterator();
+          base = leaves[ord].docBase;
+        }
+        return true;
+      }
+
+      public Integer next() {
+        return nextDoc();
+      }
+
+      /**
+       * The remove  operation is not supported by this Iterator.
+       */
+      public void remove() {
+        throw new UnsupportedOperationException("The remove  operation is not supported by this Iterator.");
+      }
+
+      public int nextDoc() {
+        hasNext();
+        return sub.nextDoc() + base;
+      }
+
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public OpenBitSet getBits() {
+    return getTopLevelDocSet().getBits();
+  }
+
+  @Override
+  public void setBitsOn(OpenBitSet target) {
+    for (int i=0; i<sets.length; i++) {
+      final int base = leaves[i].docBase;
+      for (DocIterator iter = sets[i].iterator(); iter.hasNext();) {
+        target.fastSet(iter.nextDoc() + base);
+      }
+    }
+  }
+
+  // does the top-level set other contain doc?  otherBits are its bits if it is a BitDocSet,
+  // which may be shorter than maxDoc
+  private static boolean contains(DocSet other, OpenBitSet otherBits, int doc) {
+    return otherBits != null ? otherBits.get(doc) : other.exists(doc);
+  }
+
+  private static OpenBitSet bitsOf(DocSet other) {
+    return other instanceof BitDocSet ? ((BitDocSet)other).getBits() : null;
+  }
+
+  // the docs of segment i that are (keep==true) or are not (keep==false) in the top-level set other
+  private DocSet filterSegment(int i, DocSet other, OpenBitSet otherBits, boolean keep) {
+    final int base = leaves[i].docBase;
+    final int maxDoc = leaves[i].reader().maxDoc();
+    final DocSetCollector collector = new DocSetCollector(maxDoc>>6, maxDoc);
+    try {
+      for (DocIterator iter = sets[i].iterator(); iter.hasNext();) {
+        final int doc = iter.nextDoc();
+        if (contains(other, otherBits, doc + base) == keep) {
+          collector.collect(doc);
+        }
+      }
+    } catch (IOException e) {
+      // DocSetCollector does no I/O
+      throw new RuntimeException(e);
+    }
+    return collector.getDocSet();
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    final SegmentedDocSet o = sameSegments(other);
+    final OpenBitSet otherBits = bitsOf(other);
+    final DocSet[] result = new DocSet[sets.length];
+    for (int i=0; i<sets.length; i++) {
+      result[i] = o != null ? sets[i].intersection(o.sets[i]) : filterSegment(i, other, otherBits, true);
+    }
+    return new SegmentedDocSet(leaves, result);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    final SegmentedDocSet o = sameSegments(other);
+    int sz = 0;
+    if (o != null) {
+      for (int i=0; i<sets.length; i++) {
+        sz += sets[i].intersectionSize(o.sets[i]);
+      }
+    } else {
+      final OpenBitSet otherBits = bitsOf(other);
+      for (int i=0; i<sets.length; i++) {
+        final int base = leaves[i].docBase;
+        for (DocIterator iter = sets[i].iterator(); iter.hasNext();) {
+          if (contains(other, otherBits, iter.nextDoc() + base)) sz++;
+        }
+      }
+    }
+    return sz;
+  }
+
+  @Override
+  public boolean intersects(DocSet other) {
+    final SegmentedDocSet o = sameSegments(other);
+    final OpenBitSet otherBits = bitsOf(other);
+    for (int i=0; i<sets.length; i++) {
+      if (o != null) {
+        if (sets[i].intersects(o.sets[i])) return true;
+      } else {
+        final int base = leaves[i].docBase;
+        for (DocIterator iter = sets[i].iterator(); iter.hasNext();) {
+          if (contains(other, otherBits, iter.nextDoc() + base)) return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    final SegmentedDocSet o = sameSegments(other);
+    final OpenBitSet[] bits = new OpenBitSet[sets.length];
+    for (int i=0; i<sets.length; i++) {
+      // size the bits to the segment so that exists() works for any doc in it
+      bits[i] = new OpenBitSet(leaves[i].reader().maxDoc());
+      sets[i].setBitsOn(bits[i]);
+      if (o != null) o.sets[i].setBitsOn(bits[i]);
+    }
+    if (o == null) {
+      // spread the top-level docs of other over the segments
+      for (DocIterator iter = other.iterator(); iter.hasNext();) {
+        final int doc = iter.nextDoc();
+        final int i = ReaderUtil.subIndex(doc, leaves);
+        bits[i].fastSet(doc - leaves[i].docBase);
+      }
+    }
+    final DocSet[] result = new DocSet[sets.length];
+    for (int i=0; i<sets.length; i++) {
+      result[i] = new BitDocSet(bits[i]);
+    }
+    return new SegmentedDocSet(leaves, result);
+  }
+
+  @Override
+  public int unionSize(DocSet other) {
+    return size + other.size() - intersectionSize(other);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    final SegmentedDocSet o = sameSegments(other);
+    final OpenBitSet otherBits = bitsOf(other);
+    final DocSet[] result = new DocSet[sets.length];
+    for (int i=0; i<sets.length; i++) {
+      result[i] = o != null ? sets[i].andNot(o.sets[i]) : filterSegment(i, other, otherBits, false);
+    }
+    return new SegmentedDocSet(leaves, result);
+  }
+
+  @Override
+  public int andNotSize(DocSet other) {
+    return size - intersectionSize(other);
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    final Filter[] filters = new Filter[sets.length];
+    for (int i=0; i<sets.length; i++) {
+      filters[i] = sets[i].getTopFilter();
+    }
+
+    return new Filter() {
+      Filter topLevelFilter;
+
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final AtomicReader reader = context.reader();
+        final int ord = context.ord;
+        if (context.isTopLevel || ord >= leaves.length || leaves[ord].reader() != reader) {
+          // not one of our segments (e.g. the top-level atomic view): use top-level doc ids
+          if (topLevelFilter == null) topLevelFilter = getTopLevelDocSet().getTopFilter();
+          return topLevelFilter.getDocIdSet(context, acceptDocs);
+        }
+        // all Solr DocSets that are used as filters only include live docs
+        final Bits acceptDocs2 = acceptDocs == null ? null : (reader.getLiveDocs() == acceptDocs ? null : acceptDocs);
+        // the per-segment set uses segment relative ids, so hand it the segment as a top-level context
+        return BitsFilteredDocIdSet.wrap(filters[ord].getDocIdSet(reader.getTopReaderContext(), null), acceptDocs2);
+      }
+    };
+  }
+}
@@ -17,11 +17,107 @@
 
 package org.apache.solr.search;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.request.UnInvertedField;
+
 /**
  * Common base class of reusable functionality for SolrCaches
  */
 public abstract class SolrCacheBase {
 
+  /** Name of the init arg that limits a cache by its estimated heap usage. */
+  public static final String MAX_RAM_MB_PARAM = "maxRamMB";
+
+  /**
+   * Estimated bookkeeping overhead of a single cache entry (hash map entry,
+   * the entry object of the concurrent caches and the references to key and value).
+   */
+  public static final long ENTRY_OVERHEAD_BYTES = RamUsageEstimator.alignObjectSize(
+      2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 6 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+      + 4 * RamUsageEstimator.NUM_BYTES_LONG);
+
+  /**
+   * Estimate used for keys and values we know nothing about, most notably
+   * queries, which are not walked since they may reference large shared structures.
+   */
+  public static final long DEFAULT_OBJECT_BYTES = 256;
+
+  /**
+   * Parses the {@link #MAX_RAM_MB_PARAM} init arg, returning the limit in bytes
+   * or <code>0</code> if the cache should not be limited by heap usage.
+   */
+  public static long parseMaxRamBytes(Object configValue) {
+    if (configValue == null) return 0;
+    final double mb = Double.parseDouble(configValue.toString().trim());
+    if (mb < 0) {
+      throw new IllegalArgumentException(MAX_RAM_MB_PARAM + " must be >= 0: " + configValue);
+    }
+    return (long) (mb * RamUsageEstimator.ONE_MB);
+  }
+
+  /**
+   * Returns the estimated number of heap bytes used by a cache entry.
+   * DocSets (including DocLists) and UnInvertedFields report their own size, Documents
+   * and Strings are estimated from their stored values, and everything else is
+   * charged a flat {@link #DEFAULT_OBJECT_BYTES}.
+   */
+  public static long ramBytesUsed(Object key, Object value) {
+    return ENTRY_OVERHEAD_BYTES + ramBytesUsed(key) + ramBytesUsed(value);
+  }
+
+  private static long ramBytesUsed(Object o) {
+    if (o == null) {
+      return 0;
+    } else if (o instanceof DocSet) {
+      return ((DocSet) o).memSize();
+    } else if (o instanceof UnInvertedField) {
+      return ((UnInvertedField) o).memSize();
+    } else if (o instanceof Document) {
+      return ramBytesUsed((Document) o);
+    } else if (o instanceof String) {
+      return ramBytesUsed((String) o);
+    } else if (o instanceof Number) {
+      return RamUsageEstimator.shallowSizeOf(o);
+    } else {
+      return DEFAULT_OBJECT_BYTES;
+    }
+  }
+
+  // Walks the stored fields rather than the object graph: field types are
+  // shared between documents and must not be charged to each of them.
+  private static long ramBytesUsed(Document doc) {
+    long size = RamUsageEstimator.shallowSizeOf(doc) + DEFAULT_OBJECT_BYTES / 4;  // the field list
+    for (IndexableField field : doc) {
+      size += RamUsageEstimator.shallowSizeOf(field) + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+      final BytesRef bytes = field.binaryValue();
+      if (bytes != null) {
+        size += RamUsageEstimator.shallowSizeOf(bytes) + RamUsageEstimator.sizeOf(bytes.bytes);
+      } else if (field.stringValue() != null) {
+        size += ramBytesUsed(field.stringValue());
+      } else if (field.numericValue() != null) {
+        size += RamUsageEstimator.shallowSizeOf(field.numericValue());
+      }
+    }
+    return size;
+  }
+
+  private static long ramBytesUsed(String s) {
+    return RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+        + RamUsageEstimator.NUM_BYTES_OBJECT_REF + 3 * RamUsageEstimator.NUM_BYTES_INT)
+        + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+        + (long) s.length() * RamUsageEstimator.NUM_BYTES_CHAR);
+  }
+
+  /**
+   * Formats a byte limit as configured with {@link #MAX_RAM_MB_PARAM}, for cache descriptions.
+   */
+  public static String toMB(long bytes) {
+    return Double.toString((double) bytes / RamUsageEstimator.ONE_MB);
+  }
+
   /**
    * Decides how many things to autowarm based on the size of another cache
    */
@@ -42,6 +42,7 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.ReaderUtil;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -49,8 +50,10 @@ import org.apache.solr.core.DirectoryFactory;
 import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.core.SolrInfoMBean;
+import org.apache.solr.request.FacetCacheKey;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SimpleFacets;
 import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.request.UnInvertedField;
 import org.apache.solr.response.SolrQueryResponse;
@@ -95,9 +98,24 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
   
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
+  // used instead of filterCache if SolrConfig.perSegmentFilterCache is set
+  private final SolrCache<SegmentFilterKey,DocSet> segmentFilterCache;
+  // queries found while autowarming the segmentFilterCache, computed for new segments once it is warmed
+  private final Set<Query> segmentFiltersToWarm = new LinkedHashSet<Query>();
+  // the SegmentedDocSets most recently built from the segmentFilterCache, handed out again while
+  // their per-segment sets are still the cached ones, so that a top-level set is built only once
+  @SuppressWarnings("serial")
+  private final Map<Query,SegmentedDocSet> segmentedDocSets = new LinkedHashMap<Query,SegmentedDocSet>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Query,SegmentedDocSet> eldest) {
+      return size() > MAX_SEGMENTED_DOC_SETS;
+    }
+  };
+  private static final int MAX_SEGMENTED_DOC_SETS = 16;
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
   private final SolrCache<Integer,Document> documentCache;
   private final SolrCache<String,UnInvertedField> fieldValueCache;
+  private final SolrCache<FacetCacheKey,NamedList<Integer>> facetCache;
 
   private final LuceneQueryOptimizer optimizer;
   
@@ -158,8 +176,17 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       ArrayList<SolrCache> clist = new ArrayList<SolrCache>();
       fieldValueCache = solrConfig.fieldValueCacheConfig==null ? null : solrConfig.fieldValueCacheConfig.newInstance();
       if (fieldValueCache!=null) clist.add(fieldValueCache);
-      filterCache= solrConfig.filterCacheConfig==null ? null : solrConfig.filterCacheConfig.newInstance();
-      if (filterCache!=null) clist.add(filterCache);
+      facetCache = solrConfig.facetCacheConfig==null ? null : solrConfig.facetCacheConfig.newInstance();
+      if (facetCache!=null) clist.add(facetCache);
+      if (solrConfig.perSegmentFilterCache) {
+        filterCache = null;
+        segmentFilterCache = solrConfig.filterCacheConfig.newInstance();
+        clist.add(segmentFilterCache);
+      } else {
+        filterCache= solrConfig.filterCacheConfig==null ? null : solrConfig.filterCacheConfig.newInstance();
+        if (filterCache!=null) clist.add(filterCache);
+        segmentFilterCache = null;
+      }
       queryResultCache = solrConfig.queryResultCacheConfig==null ? null : solrConfig.queryResultCacheConfig.newInstance();
       if (queryResultCache!=null) clist.add(queryResultCache);
       documentCache = solrConfig.documentCacheConfig==null ? null : solrConfig.documentCacheConfig.newInstance();
@@ -182,9 +209,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       cacheList = clist.toArray(new SolrCache[clist.size()]);
     } else {
       filterCache=null;
+      segmentFilterCache=null;
       queryResultCache=null;
       documentCache=null;
       fieldValueCache=null;
+      facetCache=null;
       cacheMap = noGenericCaches;
       cacheList= noCaches;
     }
@@ -329,11 +358,26 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       );
     }
 
+    if (solrConfig.facetCacheConfig != null && solrConfig.facetCacheConfig.getRegenerator() == null) {
+      solrConfig.facetCacheConfig.setRegenerator(
+              new CacheRegenerator() {
+                public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+                  SimpleFacets.regenerateFacetCacheEntry(newSearcher, newCache, (FacetCacheKey)oldKey);
+                  return true;
+                }
+              }
+      );
+    }
+
     if (solrConfig.filterCacheConfig != null && solrConfig.filterCacheConfig.getRegenerator() == null) {
       solrConfig.filterCacheConfig.setRegenerator(
               new CacheRegenerator() {
                 public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
-                  newSearcher.cacheDocSet((Query)oldKey, null, false);
+                  if (oldKey instanceof SegmentFilterKey) {
+                    newSearcher.regenerateSegmentFilter(newCache, (SegmentFilterKey)oldKey, (DocSet)oldVal);
+                  } else {
+                    newSearcher.cacheDocSet((Query)oldKey, null, false);
+                  }
                   return true;
                 }
               }
@@ -521,13 +565,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       if (d!=null) return d;
     }
 
-    if(!enableLazyFieldLoading || fields == null) {
-      d = getIndexReader().document(i);
-    } else {
-      final SetNonLazyFieldSelector visitor = new SetNonLazyFieldSelector(fields, getIndexReader(), i);
-      getIndexReader().document(i, visitor);
-      d = visitor.doc;
-    }
+    d = docNC(i, fields);
 
     if (documentCache != null) {
       documentCache.put(i, d);
@@ -536,6 +574,22 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     return d;
   }
 
+  /**
+   * Retrieve the {@link Document} instance corresponding to the document id
+   * like {@link #doc(int, Set)}, but without using the documentCache.
+   * Use this when reading many documents that are unlikely to be requested again,
+   * as when exporting a whole result set.
+   */
+  public Document docNC(int i, Set<String> fields) throws IOException {
+    if(!enableLazyFieldLoading || fields == null) {
+      return getIndexReader().document(i);
+    } else {
+      final SetNonLazyFieldSelector visitor = new SetNonLazyFieldSelector(fields, getIndexReader(), i);
+      getIndexReader().document(i, visitor);
+      return visitor.doc;
+    }
+  }
+
   /**
    * Takes a list of docs (the doc ids actually), and reads them into an array 
    * of Documents.
@@ -565,6 +619,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     return fieldValueCache;
   }
 
+  /** expert: internal API, subject to change.  Returns null if no facetCache is configured. */
+  public SolrCache<FacetCacheKey,NamedList<Integer>> getFacetCache() {
+    return facetCache;
+  }
+
   /** Returns a weighted sort according to this searcher */
   public Sort weightSort(Sort sort) throws IOException {
     return (sort != null) ? sort.rewrite(this) : null;
@@ -646,9 +705,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     // Even if the cache is null, still compute the DocSet as it may serve to warm the Lucene
     // or OS disk cache.
     if (optionalAnswer != null) {
-      if (filterCache!=null) {
-        filterCache.put(query,optionalAnswer);
-      }
+      filterCachePut(query,optionalAnswer);
       return;
     }
 
@@ -685,6 +742,11 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     Query absQ = QueryUtils.getAbs(query);
     boolean positive = query==absQ;
 
+    if (segmentFilterCache != null) {
+      DocSet absAnswer = getSegmentedDocSet(absQ);
+      return positive ? absAnswer : getPositiveDocSet(matchAllDocsQuery).andNot(absAnswer);
+    }
+
     if (filterCache != null) {
       DocSet absAnswer = filterCache.get(absQ);
       if (absAnswer!=null) {
@@ -706,6 +768,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
   // only handle positive (non negative) queries
   DocSet getPositiveDocSet(Query q) throws IOException {
+    if (segmentFilterCache != null) return getSegmentedDocSet(q);
     DocSet answer;
     if (filterCache != null) {
       answer = filterCache.get(q);
@@ -719,6 +782,116 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
   private static Query matchAllDocsQuery = new MatchAllDocsQuery();
 
+  /** Puts a top-level DocSet into the filterCache, splitting it per segment if the filterCache is per segment. */
+  private void filterCachePut(Query query, DocSet answer) throws IOException {
+    if (filterCache != null) {
+      filterCache.put(query, answer);
+    } else if (segmentFilterCache != null && !(answer instanceof SegmentedDocSet)) {
+      final Filter filter = answer.getTopFilter();
+      final AtomicReaderContext[] leaves = leafContexts;
+      for (int i=0; i<leaves.length; i++) {
+        final AtomicReaderContext leaf = leaves[i];
+        final int maxDoc = leaf.reader().maxDoc();
+        final DocSetCollector collector = new DocSetCollector(maxDoc>>6, maxDoc);
+        final DocIdSet idSet = filter.getDocIdSet(leaf, null);
+        final DocIdSetIterator idIter = idSet == null ? null : idSet.iterator();
+        if (idIter != null) {
+          int docid;
+          while ((docid = idIter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            collector.collect(docid);
+          }
+        }
+        segmentFilterCache.put(new SegmentFilterKey(query, leaf.reader()), collector.getDocSet());
+      }
+    }
+  }
+
+  /**
+   * Returns the DocSet matching the positive query q as a {@link SegmentedDocSet},
+   * looking up each segment in the per-segment filterCache and only searching the
+   * segments that are not cached yet.
+   */
+  private DocSet getSegmentedDocSet(Query q) throws IOException {
+    final AtomicReaderContext[] leaves = leafContexts;
+    final DocSet[] sets = new DocSet[leaves.length];
+    Weight weight = null;
+    boolean allCached = true;
+    for (int i=0; i<leaves.length; i++) {
+      final AtomicReaderContext leaf = leaves[i];
+      final SegmentFilterKey key = new SegmentFilterKey(q, leaf.reader());
+      DocSet set = segmentFilterCache.get(key);
+      if (set == null) {
+        if (weight == null && !(q instanceof TermQuery)) {
+          weight = createNormalizedWeight(q);
+        }
+        set = getSegmentDocSetNC(q, weight, leaf);
+        segmentFilterCache.put(key, set);
+        allCached = false;
+      }
+      sets[i] = set;
+    }
+
+    synchronized (segmentedDocSets) {
+      final SegmentedDocSet prev = segmentedDocSets.get(q);
+      if (allCached && prev != null && prev.hasSegmentDocSets(sets)) {
+        return prev;
+      }
+      final SegmentedDocSet answer = new SegmentedDocSet(leaves, sets);
+      segmentedDocSets.put(q, answer);
+      return answer;
+    }
+  }
+
+  // computes the set of docs matching q in a single segment, using segment relative ids.
+  // weight may only be null for a TermQuery.
+  private DocSet getSegmentDocSetNC(Query q, Weight weight, AtomicReaderContext leaf) throws IOException {
+    final AtomicReader reader = leaf.reader();
+    final int maxDoc = reader.maxDoc();
+    final Bits liveDocs = reader.getLiveDocs();
+    final DocSetCollector collector = new DocSetCollector(maxDoc>>6, maxDoc);
+    DocIdSetIterator docs = null;
+    if (weight == null) {
+      final Term t = ((TermQuery)q).getTerm();
+      docs = reader.termDocsEnum(liveDocs, t.field(), t.bytes(), false);
+    } else {
+      docs = weight.scorer(leaf, true, false, liveDocs);
+    }
+    if (docs != null) {
+      int docid;
+      while ((docid = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        collector.collect(docid);
+      }
+    }
+    return collector.getDocSet();
+  }
+
+  /**
+   * Called by the filterCache regenerator when it is per segment: entries of segments that
+   * are still part of this searcher are reused as they are, and the query is remembered so
+   * that it can be computed for new segments once autowarming of the cache is done.
+   */
+  void regenerateSegmentFilter(SolrCache newCache, SegmentFilterKey oldKey, DocSet oldVal) {
+    final AtomicReaderContext[] leaves = leafContexts;
+    for (int i=0; i<leaves.length; i++) {
+      if (leaves[i].reader().getCombinedCoreAndDeletesKey() == oldKey.readerKey) {
+        newCache.put(oldKey, oldVal);
+        break;
+      }
+    }
+    segmentFiltersToWarm.add(oldKey.query);
+  }
+
+  private void warmSegmentFilters() {
+    for (Query q : segmentFiltersToWarm) {
+      try {
+        getSegmentedDocSet(q);
+      } catch (Throwable e) {
+        SolrException.log(log, "Error during auto-warming of filter " + q, e);
+      }
+    }
+    segmentFiltersToWarm.clear();
+  }
+
 
   public static class ProcessedFilter {
     public DocSet answer;  // the answer, if non-null
@@ -906,6 +1079,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     boolean useCache = filterCache != null && largestPossible >= deState.minSetSizeCached;
     TermQuery key = null;
 
+    if (segmentFilterCache != null && largestPossible >= deState.minSetSizeCached) {
+      return getSegmentedDocSet(new TermQuery(new Term(deState.fieldName, BytesRef.deepCopyOf(deState.termsEnum.term()))));
+    }
+
     if (useCache) {
       key = new TermQuery(new Term(deState.fieldName, BytesRef.deepCopyOf(deState.termsEnum.term())));
       DocSet result = filterCache.get(key);
@@ -969,7 +1146,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         obs.fastSet(docs[i]);  
       }
       bitsSet += upto;
-      result = new BitDocSet(obs, bitsSet);
+      result = RoaringDocSet.compressIfSmaller(obs, bitsSet);
     } else {
       result = upto==0 ? DocSet.EMPTY : new SortedIntDocSet(Arrays.copyOf(docs, upto));
     }
@@ -1056,6 +1233,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     boolean positive = absQ==query;
 
     DocSet first;
+    if (segmentFilterCache != null) {
+      first = getSegmentedDocSet(absQ);
+      return positive ? first.intersection(filter) : filter.andNot(first);
+    }
     if (filterCache != null) {
       first = filterCache.get(absQ);
       if (first==null) {
@@ -1160,6 +1341,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         flags |= (NO_CHECK_QCACHE | NO_SET_QCACHE | NO_CHECK_FILTERCACHE);
       }
     }
+    if (cmd.getCursorMark() != null) {
+      // the page depends on the mark, and sortDocSet() does not know about it
+      flags |= (NO_CHECK_QCACHE | NO_SET_QCACHE | NO_CHECK_FILTERCACHE);
+    }
 
 
     // we can try and look up the complete query in the cache.
@@ -1226,7 +1411,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
     // check if we should try and use the filter cache
     boolean useFilterCache=false;
-    if ((flags & (GET_SCORES|NO_CHECK_FILTERCACHE))==0 && useFilterForSortedQuery && cmd.getSort() != null && filterCache != null) {
+    if ((flags & (GET_SCORES|NO_CHECK_FILTERCACHE))==0 && useFilterForSortedQuery && cmd.getSort() != null && (filterCache != null || segmentFilterCache != null)) {
       useFilterCache=true;
       SortField[] sfields = cmd.getSort().getSort();
       for (SortField sf : sfields) {
@@ -1260,14 +1445,16 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         // the base query and all filters.
         DocSet qDocSet = getDocListAndSetNC(qr,cmd);
         // cache the docSet matching the query w/o filtering
-        if (qDocSet!=null && filterCache!=null && !qr.isPartialResults()) filterCache.put(cmd.getQuery(),qDocSet);
+        if (qDocSet!=null && !qr.isPartialResults()) filterCachePut(cmd.getQuery(),qDocSet);
       } else {
         getDocListNC(qr,cmd);
         //Parameters: cmd.getQuery(),theFilt,cmd.getSort(),0,supersetMaxDoc,cmd.getFlags(),cmd.getTimeAllowed(),responseHeader);
       }
 
       superset = out.docList;
-      out.docList = superset.subset(cmd.getOffset(),cmd.getLen());
+      // with a cursor, matches counts the hits before the mark too, so subset()
+      // would take a short last page for a truncated one; the offset is always 0
+      out.docList = cmd.getCursorMark() != null ? superset : superset.subset(cmd.getOffset(),cmd.getLen());
     }
 
     // lastly, put the superset in the cache if the size is less than or equal
@@ -1379,6 +1566,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         topCollector = TopFieldCollector.create(weightSort(cmd.getSort()), len, false, needScores, needScores, true);
       }
       Collector collector = topCollector;
+      CursorMarkCollector cursorCollector = null;
+      if (cmd.getCursorMark() != null) {
+        collector = cursorCollector = new CursorMarkCollector(topCollector, cmd.getCursorMark());
+      }
       if( timeAllowed > 0 ) {
         collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeAllowed);
       }
@@ -1394,7 +1585,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         qr.setPartialResults(true);
       }
 
-      totalHits = topCollector.getTotalHits();
+      totalHits = cursorCollector != null ? cursorCollector.getTotalHits() : topCollector.getTotalHits();
       TopDocs topDocs = topCollector.topDocs(0, len);
       maxScore = totalHits>0 ? topDocs.getMaxScore() : 0.0f;
       nDocsReturned = topDocs.scoreDocs.length;
@@ -1500,7 +1691,12 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
         topCollector = TopFieldCollector.create(weightSort(cmd.getSort()), len, false, needScores, needScores, true);
       }
 
-      DocSetCollector setCollector = new DocSetDelegateCollector(maxDoc>>6, maxDoc, topCollector);
+      Collector topOrCursorCollector = topCollector;
+      if (cmd.getCursorMark() != null) {
+        // the set, and the number of hits, include the hits before the mark
+        topOrCursorCollector = new CursorMarkCollector(topCollector, cmd.getCursorMark());
+      }
+      DocSetCollector setCollector = new DocSetDelegateCollector(maxDoc>>6, maxDoc, topOrCursorCollector);
       Collector collector = setCollector;
 
       if( timeAllowed > 0 ) {
@@ -1520,8 +1716,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
       set = setCollector.getDocSet();      
 
-      totalHits = topCollector.getTotalHits();
-      assert(totalHits == set.size());
+      totalHits = set.size();
+      assert(cmd.getCursorMark() != null || totalHits == topCollector.getTotalHits());
 
       TopDocs topDocs = topCollector.topDocs(0, len);
       maxScore = totalHits>0 ? topDocs.getMaxScore() : 0.0f;
@@ -1781,7 +1977,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
   protected DocList sortDocSet(DocSet set, Sort sort, int nDocs) throws IOException {
     // bit of a hack to tell if a set is sorted - do it better in the futute.
-    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet;
+    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet || set instanceof RoaringDocSet;
 
     TopDocsCollector topCollector = TopFieldCollector.create(weightSort(sort), nDocs, false, false, false, inOrder);
 
@@ -1918,6 +2114,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
       try {
         this.cacheList[i].warm(this, old.cacheList[i]);
+        if (this.cacheList[i] == segmentFilterCache) warmSegmentFilters();
       } finally {
         try {
           req.close();
@@ -2036,6 +2233,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     	this.scoreDoc = scoreDoc;
     }
     //Issue 1726 end
+    private CursorMark cursorMark;
 
     // public List<Grouping.Command> groupCommands;
 
@@ -2133,6 +2331,13 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       return this;
     }
     
+    /** only hits after the mark are returned, see {@link CursorMarkCollector} */
+    public CursorMark getCursorMark() { return cursorMark; }
+    public QueryCommand setCursorMark(CursorMark cursorMark) {
+      this.cursorMark = cursorMark;
+      return this;
+    }
+
     public boolean isNeedDocSet() { return (flags & GET_DOCSET) != 0; }
     public QueryCommand setNeedDocSet(boolean needDocSet) {
       return needDocSet ? setFlags(GET_DOCSET) : clearFlags(GET_DOCSET);
@@ -0,0 +1,475 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.DateField;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.SchemaField;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Reads the values of one {@link SortField} from the FieldCache, one segment at a time.
+ * <p>
+ * Unlike a {@link org.apache.lucene.search.FieldComparator}, which compares a fixed
+ * number of slots, this compares any two documents of a segment (using ords for strings),
+ * documents of different segments, and a document against a value taken from
+ * another searcher, as needed to sort all documents of a set or to resume
+ * a sort after a given position.
+ * <p>
+ * Only sorts on single valued string and numeric fields are supported.
+ */
+public abstract class SortFieldValues {
+  protected final SortField sortField;
+  protected final String field;
+  protected final boolean reverse;
+
+  protected SortFieldValues(SortField sortField) {
+    this.sortField = sortField;
+    this.field = sortField.getField();
+    this.reverse = sortField.getReverse();
+  }
+
+  /**
+   * Returns the values for a sort field.
+   * @throws SolrException if the sort is not on a string or numeric field
+   */
+  public static SortFieldValues create(SortField sortField) {
+    switch (sortField.getType()) {
+      case STRING:
+        return new StringValues(sortField, false);
+      case CUSTOM:
+        if (sortField.getComparatorSource() instanceof MissingStringLastComparatorSource) {
+          return new StringValues(sortField, true);
+        }
+        break;
+      case INT:
+        return new IntValues(sortField);
+      case LONG:
+        return new LongValues(sortField);
+      case FLOAT:
+        return new FloatValues(sortField);
+      case DOUBLE:
+        return new DoubleValues(sortField);
+    }
+    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+        "Only sorts on string and numeric fields are supported, can not sort on " + sortField);
+  }
+
+  public static SortFieldValues[] create(Sort sort) {
+    SortField[] sortFields = sort.getSort();
+    SortFieldValues[] values = new SortFieldValues[sortFields.length];
+    for (int i=0; i<sortFields.length; i++) {
+      values[i] = create(sortFields[i]);
+    }
+    return values;
+  }
+
+  /**
+   * Returns the sort with an ascending sort on the uniqueKey field appended,
+   * unless it already sorts on it, so that no two documents compare equal.
+   */
+  public static Sort withTieBreak(Sort sort, SchemaField uniqueKey) {
+    SortField[] sortFields = sort.getSort();
+    for (SortField sf : sortFields) {
+      if (uniqueKey.getName().equals(sf.getField())) return sort;
+    }
+    SortField[] withKey = new SortField[sortFields.length + 1];
+    System.arraycopy(sortFields, 0, withKey, 0, sortFields.length);
+    withKey[sortFields.length] = uniqueKey.getSortField(false);
+    return new Sort(withKey);
+  }
+
+  public SortField getSortField() {
+    return sortField;
+  }
+
+  /** Returns the values of a segment. */
+  public abstract Segment getSegment(AtomicReader reader) throws IOException;
+
+  /** Compares two values returned by {@link Segment#value}, in sort order. */
+  public final int compareValues(Object v1, Object v2) {
+    int c = compareNatural(v1, v2);
+    return reverse ? -c : c;
+  }
+
+  /** Returns true if o is a value that could have been returned by {@link Segment#value} */
+  public abstract boolean isValue(Object o);
+
+  protected abstract int compareNatural(Object v1, Object v2);
+
+  /**
+   * Converts a sort value as returned by a shard in the sort_values of a distributed
+   * search to a value as returned by {@link Segment#value}.
+   */
+  public Object fromSortValue(Object sortValue, FieldType ft) {
+    return sortValue;
+  }
+
+  /** The values of one segment.  Instances are not thread safe. */
+  public abstract class Segment {
+
+    /** Compares two documents of this segment in sort order. */
+    public final int compare(int doc1, int doc2) {
+      int c = compareDocs(doc1, doc2);
+      return reverse ? -c : c;
+    }
+
+    /** Compares a document of this segment to a document of another segment of the same field, in sort order. */
+    public final int compare(int doc, Segment other, int otherDoc) {
+      int c = compareAcross(doc, other, otherDoc);
+      return reverse ? -c : c;
+    }
+
+    /** Compares a document to a value returned by {@link #value}, in sort order. */
+    public final int compareToValue(int doc, Object value) {
+      int c = compareDocToValue(doc, value);
+      return reverse ? -c : c;
+    }
+
+    /** Returns the sort value of a document: a BytesRef (or null if missing) for strings, a boxed number otherwise. */
+    public abstract Object value(int doc);
+
+    protected abstract int compareDocs(int doc1, int doc2);
+
+    protected abstract int compareAcross(int doc, Segment other, int otherDoc);
+
+    protected int compareDocToValue(int doc, Object value) {
+      return compareNatural(value(doc), value);
+    }
+  }
+
+
+  static final class StringValues extends SortFieldValues {
+    private final boolean missingLast;
+
+    StringValues(SortField sortField, boolean missingLast) {
+      super(sortField);
+      this.missingLast = missingLast;
+    }
+
+    @Override
+    public Segment getSegment(AtomicReader reader) throws IOException {
+      return new StringSegment(FieldCache.DEFAULT.getTermsIndex(reader, field));
+    }
+
+    @Override
+    public boolean isValue(Object o) {
+      return o == null || o instanceof BytesRef;
+    }
+
+    @Override
+    public Object fromSortValue(Object sortValue, FieldType ft) {
+      if (sortValue == null) return null;
+      // sort_values holds the readable form of the term (see QueryComponent.doFieldSortValues)
+      if (sortValue instanceof Date && ft instanceof DateField) {
+        return new BytesRef(((DateField)ft).toInternal((Date)sortValue));
+      }
+      BytesRef indexed = new BytesRef();
+      ft.readableToIndexed(sortValue.toString(), indexed);
+      return indexed;
+    }
+
+    @Override
+    protected int compareNatural(Object v1, Object v2) {
+      if (v1 == null) {
+        return v2 == null ? 0 : (missingLast ? 1 : -1);
+      }
+      if (v2 == null) {
+        return missingLast ? -1 : 1;
+      }
+      return ((BytesRef)v1).compareTo((BytesRef)v2);
+    }
+
+    final class StringSegment extends Segment {
+      private final FieldCache.DocTermsIndex index;
+      private final BytesRef spare = new BytesRef();
+
+      StringSegment(FieldCache.DocTermsIndex index) {
+        this.index = index;
+      }
+
+      private int ord(int doc) {
+        int ord = index.getOrd(doc);
+        return ord == 0 && missingLast ? Integer.MAX_VALUE : ord;
+      }
+
+      private BytesRef term(int doc) {
+        int ord = index.getOrd(doc);
+        return ord == 0 ? null : index.lookup(ord, spare);
+      }
+
+      @Override
+      public Object value(int doc) {
+        BytesRef term = term(doc);
+        return term == null ? null : BytesRef.deepCopyOf(term);
+      }
+
+      @Override
+      protected int compareDocs(int doc1, int doc2) {
+        int ord1 = ord(doc1);
+        int ord2 = ord(doc2);
+        return ord1 < ord2 ? -1 : (ord1 == ord2 ? 0 : 1);
+      }
+
+      @Override
+      protected int compareAcross(int doc, Segment other, int otherDoc) {
+        return compareNatural(term(doc), ((StringSegment)other).term(otherDoc));
+      }
+
+      private Object lastValue;  // the last value compared to, and its ord or insertion point
+      private int lastOrd;
+
+      // compares ords, as this is called for every hit when resuming after a cursor
+      @Override
+      protected int compareDocToValue(int doc, Object value) {
+        int ord = index.getOrd(doc);
+        if (value == null) {
+          return ord == 0 ? 0 : (missingLast ? -1 : 1);
+        }
+        if (ord == 0) {
+          return missingLast ? 1 : -1;
+        }
+        if (value != lastValue) {
+          lastOrd = index.binarySearchLookup((BytesRef)value, spare);
+          lastValue = value;
+        }
+        if (lastOrd >= 0) {
+          return ord < lastOrd ? -1 : (ord == lastOrd ? 0 : 1);
+        }
+        // not in this segment: all ords from the insertion point on are greater
+        return ord < -lastOrd - 1 ? -1 : 1;
+      }
+    }
+  }
+
+
+  /** Base class for numeric values, where documents without a value sort as the SortField's missingValue, or 0 */
+  abstract static class NumericValues extends SortFieldValues {
+    NumericValues(SortField sortField) {
+      super(sortField);
+    }
+
+    Bits getDocsWithField(AtomicReader reader) throws IOException {
+      if (sortField.missingValue == null) return null;
+      Bits docsWithField = FieldCache.DEFAULT.getDocsWithField(reader, field);
+      return docsWithField instanceof Bits.MatchAllBits ? null : docsWithField;
+    }
+  }
+
+  static final class IntValues extends NumericValues {
+    IntValues(SortField sortField) {
+      super(sortField);
+    }
+
+    @Override
+    public Segment getSegment(AtomicReader reader) throws IOException {
+      final int[] vals = FieldCache.DEFAULT.getInts(reader, field, (FieldCache.IntParser)sortField.getParser(), sortField.missingValue != null);
+      final Bits docsWithField = getDocsWithField(reader);
+      final int missing = sortField.missingValue == null ? 0 : (Integer)sortField.missingValue;
+      return new Segment() {
+        int get(int doc) {
+          int v = vals[doc];
+          return v == 0 && docsWithField != null && !docsWithField.get(doc) ? missing : v;
+        }
+
+        @Override
+        public Object value(int doc) {
+          return get(doc);
+        }
+
+        @Override
+        protected int compareDocs(int doc1, int doc2) {
+          int v1 = get(doc1);
+          int v2 = get(doc2);
+          return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        }
+
+        @Override
+        protected int compareAcross(int doc, Segment other, int otherDoc) {
+          return compareNatural(value(doc), other.value(otherDoc));
+        }
+      };
+    }
+
+    @Override
+    public boolean isValue(Object o) {
+      return o instanceof Integer;
+    }
+
+    @Override
+    protected int compareNatural(Object v1, Object v2) {
+      int i1 = (Integer)v1;
+      int i2 = (Integer)v2;
+      return i1 < i2 ? -1 : (i1 == i2 ? 0 : 1);
+    }
+  }
+
+  static final class LongValues extends NumericValues {
+    LongValues(SortField sortField) {
+      super(sortField);
+    }
+
+    @Override
+    public Segment getSegment(AtomicReader reader) throws IOException {
+      final long[] vals = FieldCache.DEFAULT.getLongs(reader, field, (FieldCache.LongParser)sortField.getParser(), sortField.missingValue != null);
+      final Bits docsWithField = getDocsWithField(reader);
+      final long missing = sortField.missingValue == null ? 0L : (Long)sortField.missingValue;
+      return new Segment() {
+        long get(int doc) {
+          long v = vals[doc];
+          return v == 0 && docsWithField != null && !docsWithField.get(doc) ? missing : v;
+        }
+
+        @Override
+        public Object value(int doc) {
+          return get(doc);
+        }
+
+        @Override
+        protected int compareDocs(int doc1, int doc2) {
+          long v1 = get(doc1);
+          long v2 = get(doc2);
+          return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        }
+
+        @Override
+        protected int compareAcross(int doc, Segment other, int otherDoc) {
+          return compareNatural(value(doc), other.value(otherDoc));
+        }
+      };
+    }
+
+    @Override
+    public boolean isValue(Object o) {
+      return o instanceof Long;
+    }
+
+    @Override
+    protected int compareNatural(Object v1, Object v2) {
+      long l1 = (Long)v1;
+      long l2 = (Long)v2;
+      return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+    }
+  }
+
+  static final class FloatValues extends NumericValues {
+    FloatValues(SortField sortField) {
+      super(sortField);
+    }
+
+    @Override
+    public Segment getSegment(AtomicReader reader) throws IOException {
+      final float[] vals = FieldCache.DEFAULT.getFloats(reader, field, (FieldCache.FloatParser)sortField.getParser(), sortField.missingValue != null);
+      final Bits docsWithField = getDocsWithField(reader);
+      final float missing = sortField.missingValue == null ? 0f : (Float)sortField.missingValue;
+      return new Segment() {
+        float get(int doc) {
+          float v = vals[doc];
+          return v == 0 && docsWithField != null && !docsWithField.get(doc) ? missing : v;
+        }
+
+        @Override
+        public Object value(int doc) {
+          return get(doc);
+        }
+
+        @Override
+        protected int compareDocs(int doc1, int doc2) {
+          // same as FieldComparator.FloatComparator, which does not order NaN or -0
+          float v1 = get(doc1);
+          float v2 = get(doc2);
+          return v1 < v2 ? -1 : (v1 > v2 ? 1 : 0);
+        }
+
+        @Override
+        protected int compareAcross(int doc, Segment other, int otherDoc) {
+          return compareNatural(value(doc), other.value(otherDoc));
+        }
+      };
+    }
+
+    @Override
+    public boolean isValue(Object o) {
+      return o instanceof Float;
+    }
+
+    @Override
+    protected int compareNatural(Object v1, Object v2) {
+      float f1 = (Float)v1;
+      float f2 = (Float)v2;
+      return f1 < f2 ? -1 : (f1 > f2 ? 1 : 0);
+    }
+  }
+
+  static final class DoubleValues extends NumericValues {
+    DoubleValues(SortField sortField) {
+      super(sortField);
+    }
+
+    @Override
+    public Segment getSegment(AtomicReader reader) throws IOException {
+      final double[] vals = FieldCache.DEFAULT.getDoubles(reader, field, (FieldCache.DoubleParser)sortField.getParser(), sortField.missingValue != null);
+      final Bits docsWithField = getDocsWithField(reader);
+      final double missing = sortField.missingValue == null ? 0.0 : (Double)sortField.missingValue;
+      return new Segment() {
+        double get(int doc) {
+          double v = vals[doc];
+          return v == 0 && docsWithField != null && !docsWithField.get(doc) ? missing : v;
+        }
+
+        @Override
+        public Object value(int doc) {
+          return get(doc);
+        }
+
+        @Override
+        protected int compareDocs(int doc1, int doc2) {
+          double v1 = get(doc1);
+          double v2 = get(doc2);
+          return v1 < v2 ? -1 : (v1 > v2 ? 1 : 0);
+        }
+
+        @Override
+        protected int compareAcross(int doc, Segment other, int otherDoc) {
+          return compareNatural(value(doc), other.value(otherDoc));
+        }
+      };
+    }
+
+    @Override
+    public boolean isValue(Object o) {
+      return o instanceof Double;
+    }
+
+    @Override
+    protected int compareNatural(Object v1, Object v2) {
+      double d1 = (Double)v1;
+      double d2 = (Double)v2;
+      return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package org.apache.solr.search;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.util.ConcurrentTinyLFUCache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * SolrCache based on ConcurrentTinyLFUCache implementation.
+ * <p/>
+ * Unlike {@link FastLRUCache} and {@link LFUCache} this implementation never
+ * sweeps over all entries: the cleanup work is done in small batches, by
+ * default on a background executor shared by all caches
+ * (<code>cleanupThread="false"</code> has the calling threads do it instead).
+ * New entries are only kept if they are estimated to be requested more often
+ * than the entries they would evict, which makes the cache resistant to
+ * scans of one-off queries.
+ * <p/>
+ * Supported init args are <code>size</code>, <code>initialSize</code>,
+ * <code>autowarmCount</code>, <code>cleanupThread</code>, <code>showItems</code>
+ * and <code>maxRamMB</code>.  If <code>maxRamMB</code> is given, it replaces
+ * <code>size</code> as the bound of the cache, and <code>size</code> is only
+ * used as the expected number of entries.
+ * <p/>
+ * <b>This API is experimental and subject to change</b>
+ *
+ * @see org.apache.solr.util.ConcurrentTinyLFUCache
+ * @see org.apache.solr.search.SolrCache
+ */
+public class TinyLFUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
+
+  // contains the statistics objects for all open caches of the same type
+  private List<ConcurrentTinyLFUCache.Stats> statsList;
+
+  private long warmupTime = 0;
+
+  private String name;
+  private AutoWarmCountRef autowarm;
+  private State state;
+  private CacheRegenerator regenerator;
+  private String description = "TinyLFU Cache";
+  private ConcurrentTinyLFUCache<K,V> cache;
+  private int showItems = 0;
+  private long maxRamBytes = 0;
+
+  private static final class RamWeigher<K,V> implements ConcurrentTinyLFUCache.Weigher<K,V> {
+    public long weigh(K key, V value) {
+      return ramBytesUsed(key, value);
+    }
+  }
+
+  public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
+    state = State.CREATED;
+    this.regenerator = regenerator;
+    name = (String) args.get("name");
+    String str = (String) args.get("size");
+    final int limit = str == null ? 1024 : Integer.parseInt(str);
+    str = (String) args.get("initialSize");
+    final int initialSize = str == null ? limit : Integer.parseInt(str);
+    autowarm = new AutoWarmCountRef((String)args.get("autowarmCount"));
+    str = (String) args.get("cleanupThread");
+    boolean cleanupThread = str == null ? true : Boolean.parseBoolean(str);
+
+    str = (String) args.get("showItems");
+    showItems = str == null ? 0 : Integer.parseInt(str);
+
+    maxRamBytes = parseMaxRamBytes(args.get(MAX_RAM_MB_PARAM));
+
+    description = "TinyLFU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
+            ", cleanupThread=" + cleanupThread;
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + toMB(maxRamBytes);
+    }
+    if (autowarm.isAutoWarmingOn()) {
+      description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
+    }
+    description += ')';
+
+    cache = new ConcurrentTinyLFUCache<K,V>(maxRamBytes > 0 ? maxRamBytes : limit, Math.max(limit, initialSize),
+        cleanupThread ? ConcurrentTinyLFUCache.getSharedCleanupExecutor() : null,
+        null, maxRamBytes > 0 ? new RamWeigher<K,V>() : null);
+    cache.setAlive(false);
+
+    statsList = (List<ConcurrentTinyLFUCache.Stats>) persistence;
+    if (statsList == null) {
+      // must be the first time a cache of this type is being created
+      // Use a CopyOnWriteArrayList since puts are very rare and iteration may be a frequent operation
+      // because it is used in getStatistics()
+      statsList = new CopyOnWriteArrayList<ConcurrentTinyLFUCache.Stats>();
+
+      // the first entry will be for cumulative stats of caches that have been closed.
+      statsList.add(new ConcurrentTinyLFUCache.Stats());
+    }
+    statsList.add(cache.getStats());
+    return statsList;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public V put(K key, V value) {
+    return cache.put(key, value);
+  }
+
+  public V get(K key) {
+    return cache.get(key);
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  public void setState(State state) {
+    this.state = state;
+    cache.setAlive(state == State.LIVE);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void warm(SolrIndexSearcher searcher, SolrCache old) throws IOException {
+    if (regenerator == null) return;
+    long warmingStartTime = System.currentTimeMillis();
+    TinyLFUCache other = (TinyLFUCache) old;
+    // warm entries
+    if (autowarm.isAutoWarmingOn()) {
+      int sz = autowarm.getWarmCount(other.size());
+      Map items = other.cache.getHottestItems(sz);
+      Map.Entry[] itemsArr = new Map.Entry[items.size()];
+      int counter = 0;
+      for (Object mapEntry : items.entrySet()) {
+        itemsArr[counter++] = (Map.Entry) mapEntry;
+      }
+      // regenerate the hottest entries last, so they are the most recently used
+      for (int i = itemsArr.length - 1; i >= 0; i--) {
+        try {
+          boolean continueRegen = regenerator.regenerateItem(searcher,
+                  this, old, itemsArr[i].getKey(), itemsArr[i].getValue());
+          if (!continueRegen) break;
+        }
+        catch (Throwable e) {
+          SolrException.log(log, "Error during auto-warming of key:" + itemsArr[i].getKey(), e);
+        }
+      }
+    }
+    warmupTime = System.currentTimeMillis() - warmingStartTime;
+  }
+
+
+  public void close() {
+    // add the stats to the cumulative stats object (the first in the statsList)
+    statsList.get(0).add(cache.getStats());
+    statsList.remove(cache.getStats());
+    cache.destroy();
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+  public String getName() {
+    return TinyLFUCache.class.getName();
+  }
+
+  public String getVersion() {
+    return SolrCore.version;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  public String getSource() {
+    return "$URL$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+  // returns a ratio, not a percent.
+  private static String calcHitRatio(long lookups, long hits) {
+    if (lookups == 0) return "0.00";
+    if (lookups == hits) return "1.00";
+    int hundredths = (int) (hits * 100 / lookups);   // rounded down
+    if (hundredths < 10) return "0.0" + hundredths;
+    return "0." + hundredths;
+  }
+
+  public NamedList getStatistics() {
+    NamedList<Serializable> lst = new SimpleOrderedMap<Serializable>();
+    if (cache == null)  return lst;
+    ConcurrentTinyLFUCache.Stats stats = cache.getStats();
+    long lookups = stats.getCumulativeLookups();
+    long hits = stats.getCumulativeHits();
+    long inserts = stats.getCumulativePuts();
+    long evictions = stats.getCumulativeEvictions();
+    long size = cache.size();
+
+    lst.add("lookups", lookups);
+    lst.add("hits", hits);
+    lst.add("hitratio", calcHitRatio(lookups, hits));
+    lst.add("inserts", inserts);
+    lst.add("evictions", evictions);
+    lst.add("size", size);
+    if (maxRamBytes > 0) {
+      lst.add("maxRamMB", toMB(maxRamBytes));
+      lst.add("ramBytesUsed", stats.getWeightedSize());
+    }
+
+    lst.add("warmupTime", warmupTime);
+
+    long clookups = 0;
+    long chits = 0;
+    long cinserts = 0;
+    long cevictions = 0;
+
+    // NOTE: It is safe to iterate on a CopyOnWriteArrayList
+    for (ConcurrentTinyLFUCache.Stats statistics : statsList) {
+      clookups += statistics.getCumulativeLookups();
+      chits += statistics.getCumulativeHits();
+      cinserts += statistics.getCumulativePuts();
+      cevictions += statistics.getCumulativeEvictions();
+    }
+    lst.add("cumulative_lookups", clookups);
+    lst.add("cumulative_hits", chits);
+    lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
+    lst.add("cumulative_inserts", cinserts);
+    lst.add("cumulative_evictions", cevictions);
+
+    if (showItems != 0) {
+      Map items = cache.getHottestItems(showItems == -1 ? Integer.MAX_VALUE : showItems);
+      for (Map.Entry e : (Set <Map.Entry>)items.entrySet()) {
+        Object k = e.getKey();
+        Object v = e.getValue();
+
+        String ks = "item_" + k;
+        String vs = v.toString();
+        lst.add(ks,vs);
+      }
+    }
+
+    return lst;
+  }
+
+  @Override
+  public String toString() {
+    return name + getStatistics().toString();
+  }
+}
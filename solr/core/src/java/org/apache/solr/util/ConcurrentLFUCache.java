@@ -21,6 +21,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeSet;
@@ -36,6 +38,10 @@ import java.util.concurrent.locks.ReentrantLock;
  * LRU version were not directly usable, perhaps it might be possible to
  * rewrite them with LFU in mind.
  * <p/>
+ * If constructed with a {@link Weigher} and a ram upper water mark, the cache
+ * additionally keeps the summed weight of its entries below that limit by
+ * evicting least used entries until the ram lower water mark is reached.
+ * <p/>
  * <b>This API is experimental and subject to change</b>
  *
  * @version $Id: ConcurrentLFUCache.java 1170772 2011-09-14 19:09:56Z sarowe $
@@ -56,13 +62,38 @@ public class ConcurrentLFUCache<K, V> {
   private final EvictionListener<K, V> evictionListener;
   private CleanupThread cleanupThread;
   private final boolean timeDecay;
+  private final long ramUpperWaterMark, ramLowerWaterMark;
+  private final Weigher<K, V> weigher;
 
   public ConcurrentLFUCache(int upperWaterMark, final int lowerWaterMark, int acceptableSize,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K, V> evictionListener, boolean timeDecay) {
+    this(upperWaterMark, lowerWaterMark, acceptableSize, initialSize, runCleanupThread,
+        runNewThreadForCleanup, evictionListener, timeDecay, 0, 0, null);
+  }
+
+  /**
+   * @param ramUpperWaterMark the summed weight of all entries that triggers a cleanup,
+   *        or <code>0</code> to only limit the number of entries
+   * @param ramLowerWaterMark the summed weight a cleanup triggered by weight brings the cache down to
+   * @param weigher computes the weight (usually estimated heap bytes) of an entry
+   */
+  public ConcurrentLFUCache(int upperWaterMark, final int lowerWaterMark, int acceptableSize,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K, V> evictionListener, boolean timeDecay,
+                            long ramUpperWaterMark, long ramLowerWaterMark, Weigher<K, V> weigher) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramUpperWaterMark > 0) {
+      if (weigher == null)
+        throw new IllegalArgumentException("a weigher is required when ramUpperWaterMark is set");
+      if (ramLowerWaterMark < 0 || ramLowerWaterMark >= ramUpperWaterMark)
+        throw new IllegalArgumentException("ramLowerWaterMark must be >= 0 and < ramUpperWaterMark");
+    }
+    this.ramUpperWaterMark = ramUpperWaterMark;
+    this.ramLowerWaterMark = ramLowerWaterMark;
+    this.weigher = ramUpperWaterMark > 0 ? weigher : null;
     map = new ConcurrentHashMap<Object, CacheEntry<K, V>>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
@@ -102,6 +133,7 @@ public class ConcurrentLFUCache<K, V> {
     CacheEntry<K, V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      if (cacheEntry.ramBytes != 0) stats.ramBytes.addAndGet(-cacheEntry.ramBytes);
       return cacheEntry.value;
     }
     return null;
@@ -110,6 +142,7 @@ public class ConcurrentLFUCache<K, V> {
   public V put(K key, V val) {
     if (val == null) return null;
     CacheEntry<K, V> e = new CacheEntry<K, V>(key, val, stats.accessCounter.incrementAndGet());
+    if (weigher != null) e.ramBytes = weigher.weigh(key, val);
     CacheEntry<K, V> oldCacheEntry = map.put(key, e);
     int currentSize;
     if (oldCacheEntry == null) {
@@ -117,6 +150,11 @@ public class ConcurrentLFUCache<K, V> {
     } else {
       currentSize = stats.size.get();
     }
+    long currentRamBytes = 0;
+    if (weigher != null) {
+      long delta = oldCacheEntry == null ? e.ramBytes : e.ramBytes - oldCacheEntry.ramBytes;
+      currentRamBytes = stats.ramBytes.addAndGet(delta);
+    }
     if (islive) {
       stats.putCounter.incrementAndGet();
     } else {
@@ -133,7 +171,8 @@ public class ConcurrentLFUCache<K, V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || (weigher != null && currentRamBytes > ramUpperWaterMark))
+        && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -168,7 +207,12 @@ public class ConcurrentLFUCache<K, V> {
       isCleaning = true;
       this.lowHitCount = lowHitCount;     // volatile write to make isCleaning visible
 
+      if (weigher != null && stats.ramBytes.get() > ramUpperWaterMark) {
+        markAndSweepByRamSize();
+      }
+
       int sz = stats.size.get();
+      if (sz <= upperWaterMark) return;
 
       int wantToRemove = sz - lowerWaterMark;
 
@@ -206,10 +250,29 @@ public class ConcurrentLFUCache<K, V> {
     }
   }
 
+  /**
+   * Evicts the least used entries until the summed weight is no more than
+   * 'ramLowerWaterMark'.  Must be called with the markAndSweepLock held.
+   */
+  private void markAndSweepByRamSize() {
+    ArrayList<CacheEntry<K, V>> entries = new ArrayList<CacheEntry<K, V>>(map.size());
+    for (CacheEntry<K, V> ce : map.values()) {
+      ce.hitsCopy = ce.hits.get();
+      ce.lastAccessedCopy = ce.lastAccessed;
+      entries.add(ce);
+    }
+    // CacheEntry sorts most used first
+    Collections.sort(entries);
+    for (int i = entries.size() - 1; i >= 0 && stats.ramBytes.get() > ramLowerWaterMark; i--) {
+      evictEntry(entries.get(i).key);
+    }
+  }
+
   private void evictEntry(K key) {
     CacheEntry<K, V> o = map.remove(key);
     if (o == null) return;
     stats.size.decrementAndGet();
+    if (o.ramBytes != 0) stats.ramBytes.addAndGet(-o.ramBytes);
     stats.evictionCounter.incrementAndGet();
     if (evictionListener != null) evictionListener.evictedEntry(o.key, o.value);
   }
@@ -308,6 +371,15 @@ public class ConcurrentLFUCache<K, V> {
 
   public void clear() {
     map.clear();
+    stats.ramBytes.set(0);
+  }
+
+  /**
+   * Returns the summed weight of all entries, or <code>0</code> if this
+   * cache was created without a {@link Weigher}.
+   */
+  public long ramBytesUsed() {
+    return stats.ramBytes.get();
   }
 
   public Map<Object, CacheEntry<K, V>> getMap() {
@@ -321,6 +393,7 @@ public class ConcurrentLFUCache<K, V> {
     long hitsCopy = 0;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    long ramBytes = 0;  // written before the entry is published in the map
 
     public CacheEntry(K key, V value, long lastAccessed) {
       this.key = key;
@@ -377,6 +450,7 @@ public class ConcurrentLFUCache<K, V> {
         nonLivePutCounter = new AtomicLong(0),
         missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong ramBytes = new AtomicLong();
     private AtomicLong evictionCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
@@ -399,6 +473,10 @@ public class ConcurrentLFUCache<K, V> {
       return size.get();
     }
 
+    public long getCurrentRamBytes() {
+      return ramBytes.get();
+    }
+
     public long getCumulativeNonLivePuts() {
       return nonLivePutCounter.get();
     }
@@ -414,6 +492,7 @@ public class ConcurrentLFUCache<K, V> {
       missCounter.addAndGet(other.missCounter.get());
       evictionCounter.addAndGet(other.evictionCounter.get());
       size.set(Math.max(size.get(), other.size.get()));
+      ramBytes.set(Math.max(ramBytes.get(), other.ramBytes.get()));
     }
   }
 
@@ -421,6 +500,11 @@ public class ConcurrentLFUCache<K, V> {
     public void evictedEntry(K key, V value);
   }
 
+  /** Computes the weight of a cache entry, usually its estimated heap usage in bytes. */
+  public static interface Weigher<K, V> {
+    public long weigh(K key, V value);
+  }
+
   private static class CleanupThread extends Thread {
     private WeakReference<ConcurrentLFUCache> cache;
 
@@ -20,6 +20,7 @@ import org.apache.lucene.util.PriorityQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -39,6 +40,10 @@ import java.lang.ref.WeakReference;
  * strategy. Instead it strives to remove least recently used items but when the initial
  * cleanup does not remove enough items to reach the 'acceptableWaterMark' limit, it can
  * remove more items forcefully regardless of access order.
+ * <p/>
+ * If constructed with a {@link Weigher} and a ram upper water mark, the cache
+ * additionally keeps the summed weight of its entries below that limit by
+ * evicting least recently used entries until the ram lower water mark is reached.
  *
  *
  * @since solr 1.4
@@ -57,13 +62,38 @@ public class ConcurrentLRUCache<K,V> {
   private long oldestEntry = 0;  // not volatile, only accessed in the cleaning method
   private final EvictionListener<K,V> evictionListener;
   private CleanupThread cleanupThread ;
+  private final long ramUpperWaterMark, ramLowerWaterMark;
+  private final Weigher<K,V> weigher;
 
   public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K,V> evictionListener) {
+    this(upperWaterMark, lowerWaterMark, acceptableWatermark, initialSize, runCleanupThread,
+        runNewThreadForCleanup, evictionListener, 0, 0, null);
+  }
+
+  /**
+   * @param ramUpperWaterMark the summed weight of all entries that triggers a cleanup,
+   *        or <code>0</code> to only limit the number of entries
+   * @param ramLowerWaterMark the summed weight a cleanup triggered by weight brings the cache down to
+   * @param weigher computes the weight (usually estimated heap bytes) of an entry
+   */
+  public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K,V> evictionListener,
+                            long ramUpperWaterMark, long ramLowerWaterMark, Weigher<K,V> weigher) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramUpperWaterMark > 0) {
+      if (weigher == null)
+        throw new IllegalArgumentException("a weigher is required when ramUpperWaterMark is set");
+      if (ramLowerWaterMark < 0 || ramLowerWaterMark >= ramUpperWaterMark)
+        throw new IllegalArgumentException("ramLowerWaterMark must be >= 0 and < ramUpperWaterMark");
+    }
+    this.ramUpperWaterMark = ramUpperWaterMark;
+    this.ramLowerWaterMark = ramLowerWaterMark;
+    this.weigher = ramUpperWaterMark > 0 ? weigher : null;
     map = new ConcurrentHashMap<Object, CacheEntry<K,V>>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
@@ -99,6 +129,7 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      if (cacheEntry.ramBytes != 0) stats.ramBytes.addAndGet(-cacheEntry.ramBytes);
       return cacheEntry.value;
     }
     return null;
@@ -107,6 +138,7 @@ public class ConcurrentLRUCache<K,V> {
   public V put(K key, V val) {
     if (val == null) return null;
     CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet());
+    if (weigher != null) e.ramBytes = weigher.weigh(key, val);
     CacheEntry<K,V> oldCacheEntry = map.put(key, e);
     int currentSize;
     if (oldCacheEntry == null) {
@@ -114,6 +146,11 @@ public class ConcurrentLRUCache<K,V> {
     } else {
       currentSize = stats.size.get();
     }
+    long currentRamBytes = 0;
+    if (weigher != null) {
+      long delta = oldCacheEntry == null ? e.ramBytes : e.ramBytes - oldCacheEntry.ramBytes;
+      currentRamBytes = stats.ramBytes.addAndGet(delta);
+    }
     if (islive) {
       stats.putCounter.incrementAndGet();
     } else {
@@ -130,7 +167,8 @@ public class ConcurrentLRUCache<K,V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || (weigher != null && currentRamBytes > ramUpperWaterMark))
+        && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -147,6 +185,49 @@ public class ConcurrentLRUCache<K,V> {
     return oldCacheEntry == null ? null : oldCacheEntry.value;
   }
 
+  /**
+   * Brings the summed weight of the entries down to the ram lower water mark
+   * if it exceeds the ram upper water mark, and the number of entries down
+   * as described in {@link #markAndSweepByCacheSize} if it exceeds the upper water mark.
+   */
+  private void markAndSweep() {
+    if (!markAndSweepLock.tryLock()) return;
+    try {
+      long oldestEntry = this.oldestEntry;
+      isCleaning = true;
+      this.oldestEntry = oldestEntry;     // volatile write to make isCleaning visible
+
+      if (weigher != null && stats.ramBytes.get() > ramUpperWaterMark) {
+        markAndSweepByRamSize();
+      }
+      if (stats.size.get() > upperWaterMark) {
+        markAndSweepByCacheSize();
+      }
+    } finally {
+      isCleaning = false;  // set before markAndSweep.unlock() for visibility
+      markAndSweepLock.unlock();
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries until the summed weight is no more
+   * than 'ramLowerWaterMark'.  Unlike the count based sweep this always sorts
+   * all entries, since a single heavy entry may be worth many light ones.
+   * Must be called with the markAndSweepLock held.
+   */
+  private void markAndSweepByRamSize() {
+    ArrayList<CacheEntry<K,V>> entries = new ArrayList<CacheEntry<K,V>>(map.size());
+    for (CacheEntry<K,V> ce : map.values()) {
+      ce.lastAccessedCopy = ce.lastAccessed;
+      entries.add(ce);
+    }
+    // CacheEntry sorts most recently accessed first
+    Collections.sort(entries);
+    for (int i = entries.size() - 1; i >= 0 && stats.ramBytes.get() > ramLowerWaterMark; i--) {
+      evictEntry(entries.get(i).key);
+    }
+  }
+
   /**
    * Removes items from the cache to bring the size down
    * to an acceptable value ('acceptableWaterMark').
@@ -157,8 +238,10 @@ public class ConcurrentLRUCache<K,V> {
    * <p/>
    * The second stage is more intensive and tries to bring down the cache size
    * to the 'lowerWaterMark' config parameter.
+   * <p/>
+   * Must be called with the markAndSweepLock held.
    */
-  private void markAndSweep() {
+  private void markAndSweepByCacheSize() {
     // if we want to keep at least 1000 entries, then timestamps of
     // current through current-1000 are guaranteed not to be the oldest (but that does
     // not mean there are 1000 entries in that group... it's acutally anywhere between
@@ -167,189 +250,181 @@ public class ConcurrentLRUCache<K,V> {
     // oldestEntry through oldestEntry+500 are guaranteed to be
     // removed (however many there are there).
 
-    if (!markAndSweepLock.tryLock()) return;
-    try {
-      long oldestEntry = this.oldestEntry;
-      isCleaning = true;
-      this.oldestEntry = oldestEntry;     // volatile write to make isCleaning visible
-
-      long timeCurrent = stats.accessCounter.get();
-      int sz = stats.size.get();
-
-      int numRemoved = 0;
-      int numKept = 0;
-      long newestEntry = timeCurrent;
-      long newNewestEntry = -1;
-      long newOldestEntry = Long.MAX_VALUE;
-
-      int wantToKeep = lowerWaterMark;
-      int wantToRemove = sz - lowerWaterMark;
+    long oldestEntry = this.oldestEntry;
+
+    long timeCurrent = stats.accessCounter.get();
+    int sz = stats.size.get();
+
+    int numRemoved = 0;
+    int numKept = 0;
+    long newestEntry = timeCurrent;
+    long newNewestEntry = -1;
+    long newOldestEntry = Long.MAX_VALUE;
+
+    int wantToKeep = lowerWaterMark;
+    int wantToRemove = sz - lowerWaterMark;
+
+    @SuppressWarnings("unchecked") // generic array's are anoying
+    CacheEntry<K,V>[] eset = new CacheEntry[sz];
+    int eSize = 0;
+
+    // System.out.println("newestEntry="+newestEntry + " oldestEntry="+oldestEntry);
+    // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " esetSz="+ eSize + " sz-numRemoved=" + (sz-numRemoved));
+
+    for (CacheEntry<K,V> ce : map.values()) {
+      // set lastAccessedCopy to avoid more volatile reads
+      ce.lastAccessedCopy = ce.lastAccessed;
+      long thisEntry = ce.lastAccessedCopy;
+
+      // since the wantToKeep group is likely to be bigger than wantToRemove, check it first
+      if (thisEntry > newestEntry - wantToKeep) {
+        // this entry is guaranteed not to be in the bottom
+        // group, so do nothing.
+        numKept++;
+        newOldestEntry = Math.min(thisEntry, newOldestEntry);
+      } else if (thisEntry < oldestEntry + wantToRemove) { // entry in bottom group?
+        // this entry is guaranteed to be in the bottom group
+        // so immediately remove it from the map.
+        evictEntry(ce.key);
+        numRemoved++;
+      } else {
+        // This entry *could* be in the bottom group.
+        // Collect these entries to avoid another full pass... this is wasted
+        // effort if enough entries are normally removed in this first pass.
+        // An alternate impl could make a full second pass.
+        if (eSize < eset.length-1) {
+          eset[eSize++] = ce;
+          newNewestEntry = Math.max(thisEntry, newNewestEntry);
+          newOldestEntry = Math.min(thisEntry, newOldestEntry);
+        }
+      }
+    }
 
-      @SuppressWarnings("unchecked") // generic array's are anoying
-      CacheEntry<K,V>[] eset = new CacheEntry[sz];
-      int eSize = 0;
+    // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " esetSz="+ eSize + " sz-numRemoved=" + (sz-numRemoved));
+    // TODO: allow this to be customized in the constructor?
+    int numPasses=1; // maximum number of linear passes over the data
 
-      // System.out.println("newestEntry="+newestEntry + " oldestEntry="+oldestEntry);
-      // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " esetSz="+ eSize + " sz-numRemoved=" + (sz-numRemoved));
+    // if we didn't remove enough entries, then make more passes
+    // over the values we collected, with updated min and max values.
+    while (sz - numRemoved > acceptableWaterMark && --numPasses>=0) {
 
-      for (CacheEntry<K,V> ce : map.values()) {
-        // set lastAccessedCopy to avoid more volatile reads
-        ce.lastAccessedCopy = ce.lastAccessed;
+      oldestEntry = newOldestEntry == Long.MAX_VALUE ? oldestEntry : newOldestEntry;
+      newOldestEntry = Long.MAX_VALUE;
+      newestEntry = newNewestEntry;
+      newNewestEntry = -1;
+      wantToKeep = lowerWaterMark - numKept;
+      wantToRemove = sz - lowerWaterMark - numRemoved;
+
+      // iterate backward to make it easy to remove items.
+      for (int i=eSize-1; i>=0; i--) {
+        CacheEntry<K,V> ce = eset[i];
         long thisEntry = ce.lastAccessedCopy;
 
-        // since the wantToKeep group is likely to be bigger than wantToRemove, check it first
         if (thisEntry > newestEntry - wantToKeep) {
           // this entry is guaranteed not to be in the bottom
-          // group, so do nothing.
+          // group, so do nothing but remove it from the eset.
           numKept++;
+          // remove the entry by moving the last element to it's position
+          eset[i] = eset[eSize-1];
+          eSize--;
+
           newOldestEntry = Math.min(thisEntry, newOldestEntry);
+          
         } else if (thisEntry < oldestEntry + wantToRemove) { // entry in bottom group?
+
           // this entry is guaranteed to be in the bottom group
           // so immediately remove it from the map.
           evictEntry(ce.key);
           numRemoved++;
+
+          // remove the entry by moving the last element to it's position
+          eset[i] = eset[eSize-1];
+          eSize--;
         } else {
-          // This entry *could* be in the bottom group.
-          // Collect these entries to avoid another full pass... this is wasted
-          // effort if enough entries are normally removed in this first pass.
-          // An alternate impl could make a full second pass.
-          if (eSize < eset.length-1) {
-            eset[eSize++] = ce;
-            newNewestEntry = Math.max(thisEntry, newNewestEntry);
-            newOldestEntry = Math.min(thisEntry, newOldestEntry);
-          }
+          // This entry *could* be in the bottom group, so keep it in the eset,
+          // and update the stats.
+          newNewestEntry = Math.max(thisEntry, newNewestEntry);
+          newOldestEntry = Math.min(thisEntry, newOldestEntry);
         }
       }
-
       // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " esetSz="+ eSize + " sz-numRemoved=" + (sz-numRemoved));
-      // TODO: allow this to be customized in the constructor?
-      int numPasses=1; // maximum number of linear passes over the data
-
-      // if we didn't remove enough entries, then make more passes
-      // over the values we collected, with updated min and max values.
-      while (sz - numRemoved > acceptableWaterMark && --numPasses>=0) {
-
-        oldestEntry = newOldestEntry == Long.MAX_VALUE ? oldestEntry : newOldestEntry;
-        newOldestEntry = Long.MAX_VALUE;
-        newestEntry = newNewestEntry;
-        newNewestEntry = -1;
-        wantToKeep = lowerWaterMark - numKept;
-        wantToRemove = sz - lowerWaterMark - numRemoved;
-
-        // iterate backward to make it easy to remove items.
-        for (int i=eSize-1; i>=0; i--) {
-          CacheEntry<K,V> ce = eset[i];
-          long thisEntry = ce.lastAccessedCopy;
-
-          if (thisEntry > newestEntry - wantToKeep) {
-            // this entry is guaranteed not to be in the bottom
-            // group, so do nothing but remove it from the eset.
-            numKept++;
-            // remove the entry by moving the last element to it's position
-            eset[i] = eset[eSize-1];
-            eSize--;
-
-            newOldestEntry = Math.min(thisEntry, newOldestEntry);
-            
-          } else if (thisEntry < oldestEntry + wantToRemove) { // entry in bottom group?
-
-            // this entry is guaranteed to be in the bottom group
-            // so immediately remove it from the map.
-            evictEntry(ce.key);
-            numRemoved++;
-
-            // remove the entry by moving the last element to it's position
-            eset[i] = eset[eSize-1];
-            eSize--;
-          } else {
-            // This entry *could* be in the bottom group, so keep it in the eset,
-            // and update the stats.
-            newNewestEntry = Math.max(thisEntry, newNewestEntry);
-            newOldestEntry = Math.min(thisEntry, newOldestEntry);
-          }
-        }
-        // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " esetSz="+ eSize + " sz-numRemoved=" + (sz-numRemoved));
-      }
+    }
 
 
 
-      // if we still didn't remove enough entries, then make another pass while
-      // inserting into a priority queue
-      if (sz - numRemoved > acceptableWaterMark) {
-
-        oldestEntry = newOldestEntry == Long.MAX_VALUE ? oldestEntry : newOldestEntry;
-        newOldestEntry = Long.MAX_VALUE;
-        newestEntry = newNewestEntry;
-        newNewestEntry = -1;
-        wantToKeep = lowerWaterMark - numKept;
-        wantToRemove = sz - lowerWaterMark - numRemoved;
-
-        PQueue<K,V> queue = new PQueue<K,V>(wantToRemove);
-
-        for (int i=eSize-1; i>=0; i--) {
-          CacheEntry<K,V> ce = eset[i];
-          long thisEntry = ce.lastAccessedCopy;
-
-          if (thisEntry > newestEntry - wantToKeep) {
-            // this entry is guaranteed not to be in the bottom
-            // group, so do nothing but remove it from the eset.
-            numKept++;
-            // removal not necessary on last pass.
-            // eset[i] = eset[eSize-1];
-            // eSize--;
-
-            newOldestEntry = Math.min(thisEntry, newOldestEntry);
-            
-          } else if (thisEntry < oldestEntry + wantToRemove) {  // entry in bottom group?
-            // this entry is guaranteed to be in the bottom group
-            // so immediately remove it.
-            evictEntry(ce.key);
-            numRemoved++;
-
-            // removal not necessary on last pass.
-            // eset[i] = eset[eSize-1];
-            // eSize--;
-          } else {
-            // This entry *could* be in the bottom group.
-            // add it to the priority queue
-
-            // everything in the priority queue will be removed, so keep track of
-            // the lowest value that ever comes back out of the queue.
-
-            // first reduce the size of the priority queue to account for
-            // the number of items we have already removed while executing
-            // this loop so far.
-            queue.myMaxSize = sz - lowerWaterMark - numRemoved;
-            while (queue.size() > queue.myMaxSize && queue.size() > 0) {
-              CacheEntry otherEntry = (CacheEntry) queue.pop();
-              newOldestEntry = Math.min(otherEntry.lastAccessedCopy, newOldestEntry);
-            }
-            if (queue.myMaxSize <= 0) break;
-
-            Object o = queue.myInsertWithOverflow(ce);
-            if (o != null) {
-              newOldestEntry = Math.min(((CacheEntry)o).lastAccessedCopy, newOldestEntry);
-            }
-          }
-        }
+    // if we still didn't remove enough entries, then make another pass while
+    // inserting into a priority queue
+    if (sz - numRemoved > acceptableWaterMark) {
+
+      oldestEntry = newOldestEntry == Long.MAX_VALUE ? oldestEntry : newOldestEntry;
+      newOldestEntry = Long.MAX_VALUE;
+      newestEntry = newNewestEntry;
+      newNewestEntry = -1;
+      wantToKeep = lowerWaterMark - numKept;
+      wantToRemove = sz - lowerWaterMark - numRemoved;
+
+      PQueue<K,V> queue = new PQueue<K,V>(wantToRemove);
+
+      for (int i=eSize-1; i>=0; i--) {
+        CacheEntry<K,V> ce = eset[i];
+        long thisEntry = ce.lastAccessedCopy;
+
+        if (thisEntry > newestEntry - wantToKeep) {
+          // this entry is guaranteed not to be in the bottom
+          // group, so do nothing but remove it from the eset.
+          numKept++;
+          // removal not necessary on last pass.
+          // eset[i] = eset[eSize-1];
+          // eSize--;
 
-        // Now delete everything in the priority queue.
-        // avoid using pop() since order doesn't matter anymore
-        for (CacheEntry<K,V> ce : queue.getValues()) {
-          if (ce==null) continue;
+          newOldestEntry = Math.min(thisEntry, newOldestEntry);
+          
+        } else if (thisEntry < oldestEntry + wantToRemove) {  // entry in bottom group?
+          // this entry is guaranteed to be in the bottom group
+          // so immediately remove it.
           evictEntry(ce.key);
           numRemoved++;
+
+          // removal not necessary on last pass.
+          // eset[i] = eset[eSize-1];
+          // eSize--;
+        } else {
+          // This entry *could* be in the bottom group.
+          // add it to the priority queue
+
+          // everything in the priority queue will be removed, so keep track of
+          // the lowest value that ever comes back out of the queue.
+
+          // first reduce the size of the priority queue to account for
+          // the number of items we have already removed while executing
+          // this loop so far.
+          queue.myMaxSize = sz - lowerWaterMark - numRemoved;
+          while (queue.size() > queue.myMaxSize && queue.size() > 0) {
+            CacheEntry otherEntry = (CacheEntry) queue.pop();
+            newOldestEntry = Math.min(otherEntry.lastAccessedCopy, newOldestEntry);
+          }
+          if (queue.myMaxSize <= 0) break;
+
+          Object o = queue.myInsertWithOverflow(ce);
+          if (o != null) {
+            newOldestEntry = Math.min(((CacheEntry)o).lastAccessedCopy, newOldestEntry);
+          }
         }
+      }
 
-        // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " initialQueueSize="+ wantToRemove + " finalQueueSize=" + queue.size() + " sz-numRemoved=" + (sz-numRemoved));
+      // Now delete everything in the priority queue.
+      // avoid using pop() since order doesn't matter anymore
+      for (CacheEntry<K,V> ce : queue.getValues()) {
+        if (ce==null) continue;
+        evictEntry(ce.key);
+        numRemoved++;
       }
 
-      oldestEntry = newOldestEntry == Long.MAX_VALUE ? oldestEntry : newOldestEntry;
-      this.oldestEntry = oldestEntry;
-    } finally {
-      isCleaning = false;  // set before markAndSweep.unlock() for visibility
-      markAndSweepLock.unlock();
+      // System.out.println("items removed:" + numRemoved + " numKept=" + numKept + " initialQueueSize="+ wantToRemove + " finalQueueSize=" + queue.size() + " sz-numRemoved=" + (sz-numRemoved));
     }
+
+    oldestEntry = newOldestEntry == Long.MAX_VALUE ? oldestEntry : newOldestEntry;
+    this.oldestEntry = oldestEntry;
   }
 
   private static class PQueue<K,V> extends PriorityQueue<CacheEntry<K,V>> {
@@ -395,6 +470,7 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> o = map.remove(key);
     if (o == null) return;
     stats.size.decrementAndGet();
+    if (o.ramBytes != 0) stats.ramBytes.addAndGet(-o.ramBytes);
     stats.evictionCounter.incrementAndGet();
     if(evictionListener != null) evictionListener.evictedEntry(o.key,o.value);
   }
@@ -470,6 +546,15 @@ public class ConcurrentLRUCache<K,V> {
 
   public void clear() {
     map.clear();
+    stats.ramBytes.set(0);
+  }
+
+  /**
+   * Returns the summed weight of all entries, or <code>0</code> if this
+   * cache was created without a {@link Weigher}.
+   */
+  public long ramBytesUsed() {
+    return stats.ramBytes.get();
   }
 
   public Map<Object, CacheEntry<K,V>> getMap() {
@@ -481,6 +566,7 @@ public class ConcurrentLRUCache<K,V> {
     V value;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    long ramBytes = 0;  // written before the entry is published in the map
 
 
     public CacheEntry(K key, V value, long lastAccessed) {
@@ -536,6 +622,7 @@ public class ConcurrentLRUCache<K,V> {
             nonLivePutCounter = new AtomicLong(0),
             missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong ramBytes = new AtomicLong();
     private AtomicLong evictionCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
@@ -558,6 +645,10 @@ public class ConcurrentLRUCache<K,V> {
       return size.get();
     }
 
+    public long getCurrentRamBytes() {
+      return ramBytes.get();
+    }
+
     public long getCumulativeNonLivePuts() {
       return nonLivePutCounter.get();
     }
@@ -573,6 +664,7 @@ public class ConcurrentLRUCache<K,V> {
       missCounter.addAndGet(other.missCounter.get());
       evictionCounter.addAndGet(other.evictionCounter.get());
       size.set(Math.max(size.get(), other.size.get()));
+      ramBytes.set(Math.max(ramBytes.get(), other.ramBytes.get()));
     }
   }
 
@@ -580,6 +672,11 @@ public class ConcurrentLRUCache<K,V> {
     public void evictedEntry(K key, V value);
   }
 
+  /** Computes the weight of a cache entry, usually its estimated heap usage in bytes. */
+  public static interface Weigher<K,V>{
+    public long weigh(K key, V value);
+  }
+
   private static class CleanupThread extends Thread {
     private WeakReference<ConcurrentLRUCache> cache;
 
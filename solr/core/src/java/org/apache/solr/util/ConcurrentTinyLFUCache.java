@@ -0,0 +1,630 @@
+package org.apache.solr.util;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache using the W-TinyLFU eviction policy, without any full
+ * sweeps over the entries.
+ * <p/>
+ * Reads and writes go straight to a ConcurrentHashMap and are recorded in
+ * buffers: reads in a set of small striped ring buffers that simply drop
+ * events when full or contended, writes in a queue.  The buffers are replayed
+ * against the eviction policy in batches, by a task submitted to an
+ * {@link Executor} (by default one that is shared by all caches) or, if no
+ * executor is given, by whichever calling thread manages to <code>tryLock</code>
+ * the policy.  Only if the write queue grows beyond a bound do writers block,
+ * to keep the cache from growing without limit.
+ * <p/>
+ * The policy keeps new entries in a small LRU "window" (1% of the capacity).
+ * Entries falling out of the window are only admitted to the main space if a
+ * {@link FrequencySketch} estimates that they were requested more often than
+ * the entry they would evict, which keeps one-off requests (e.g. a crawler
+ * paging through results) from flushing popular entries.  The main space is a
+ * segmented LRU: entries that are hit again move from its probation to its
+ * protected segment (80% of the main space).  Every operation costs amortized
+ * constant time.
+ * <p/>
+ * If constructed with a {@link Weigher}, the capacity is a maximum summed
+ * weight rather than a number of entries.
+ * <p/>
+ * <b>This API is experimental and subject to change</b>
+ *
+ * @see FrequencySketch
+ */
+public class ConcurrentTinyLFUCache<K,V> {
+
+  private static final int NCPU = Runtime.getRuntime().availableProcessors();
+  /** number of read buffers, a power of two */
+  private static final int READ_BUFFERS = ceilingPowerOfTwo(Math.max(4, NCPU));
+  /** capacity of a single read buffer, a power of two */
+  private static final int READ_BUFFER_SIZE = 32;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+  /** pending writes beyond which writers apply them themselves */
+  private static final int WRITE_BUFFER_MAX = 128 * READ_BUFFERS;
+
+  private static final byte NONE = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3;
+
+  private static final Executor SHARED_CLEANUP_EXECUTOR;
+  static {
+    final int threads = Math.max(1, Math.min(4, NCPU / 2));
+    final ThreadFactory factory = new DefaultSolrThreadFactory("cacheCleanup");
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = factory.newThread(r);
+            // must not keep the JVM alive
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    SHARED_CLEANUP_EXECUTOR = executor;
+  }
+
+  private final ConcurrentHashMap<K, Node<K,V>> map;
+  private final ReadBuffer<K,V>[] readBuffers;
+  private final ConcurrentLinkedQueue<Write<K,V>> writeBuffer = new ConcurrentLinkedQueue<Write<K,V>>();
+  private final AtomicInteger pendingWrites = new AtomicInteger();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final Executor executor;
+  private final Runnable drainTask;
+  private final EvictionListener<K,V> evictionListener;
+  private final Weigher<K,V> weigher;
+  private final Stats stats = new Stats();
+  private volatile boolean islive = true;
+
+  // the eviction policy, guarded by evictionLock
+  private final FrequencySketch sketch;
+  private final AccessOrderDeque<K,V> window = new AccessOrderDeque<K,V>();
+  private final AccessOrderDeque<K,V> probation = new AccessOrderDeque<K,V>();
+  private final AccessOrderDeque<K,V> protectedSegment = new AccessOrderDeque<K,V>();
+  private final long maximum, windowMaximum, mainMaximum, protectedMaximum;
+  private long windowWeight, probationWeight, protectedWeight;
+
+  /**
+   * @param maximum the maximum number of entries, or the maximum summed weight if a weigher is given
+   * @param expectedSize the number of entries the cache is expected to hold,
+   *        used to size the map and the frequency sketch
+   * @param executor runs the cleanup, or <code>null</code> to have calling threads do it
+   * @param evictionListener notified of evicted entries, may be <code>null</code>
+   * @param weigher computes the weight of an entry, or <code>null</code> to count entries
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentTinyLFUCache(long maximum, int expectedSize, Executor executor,
+                                EvictionListener<K,V> evictionListener, Weigher<K,V> weigher) {
+    if (maximum < 1) throw new IllegalArgumentException("maximum must be > 0");
+    if (expectedSize < 0) throw new IllegalArgumentException("expectedSize must be >= 0");
+    this.maximum = maximum;
+    this.windowMaximum = Math.max(1, maximum / 100);
+    this.mainMaximum = maximum - windowMaximum;
+    this.protectedMaximum = (long) (mainMaximum * 0.8);
+    this.executor = executor;
+    this.evictionListener = evictionListener;
+    this.weigher = weigher;
+    map = new ConcurrentHashMap<K, Node<K,V>>(expectedSize);
+    sketch = new FrequencySketch(expectedSize);
+    readBuffers = new ReadBuffer[READ_BUFFERS];
+    for (int i = 0; i < readBuffers.length; i++) {
+      readBuffers[i] = new ReadBuffer<K,V>();
+    }
+    drainTask = new Runnable() {
+      public void run() {
+        drainScheduled.set(false);
+        cleanUp();
+        // more writes may have arrived than a single run applies
+        if (pendingWrites.get() > 0) scheduleDrain();
+      }
+    };
+  }
+
+  /**
+   * Creates a cache of at most <code>maximumSize</code> entries whose cleanup
+   * is done by the calling threads.
+   */
+  public ConcurrentTinyLFUCache(int maximumSize) {
+    this(maximumSize, maximumSize, null, null, null);
+  }
+
+  /** Returns the executor shared by all caches that do not bring their own. */
+  public static Executor getSharedCleanupExecutor() {
+    return SHARED_CLEANUP_EXECUTOR;
+  }
+
+  public void setAlive(boolean live) {
+    islive = live;
+  }
+
+  public V get(K key) {
+    Node<K,V> node = map.get(key);
+    if (node == null) {
+      if (islive) stats.missCounter.incrementAndGet();
+      return null;
+    }
+    if (islive) stats.hitCounter.incrementAndGet();
+    ReadBuffer<K,V> buffer = readBuffers[readBufferIndex()];
+    if (buffer.offer(node)) {
+      scheduleDrain();
+    }
+    return node.value;
+  }
+
+  public V put(K key, V val) {
+    if (val == null) return null;
+    long weight = weigher == null ? 1 : Math.max(1, weigher.weigh(key, val));
+    Node<K,V> node = new Node<K,V>(key, val, weight);
+    Node<K,V> old = map.put(key, node);
+    if (islive) {
+      stats.putCounter.incrementAndGet();
+    } else {
+      stats.nonLivePutCounter.incrementAndGet();
+    }
+    if (old != null) {
+      old.retired = true;
+      afterWrite(new Write<K,V>(old, false));
+    }
+    afterWrite(new Write<K,V>(node, true));
+    return old == null ? null : old.value;
+  }
+
+  public V remove(K key) {
+    Node<K,V> node = map.remove(key);
+    if (node == null) return null;
+    node.retired = true;
+    afterWrite(new Write<K,V>(node, false));
+    return node.value;
+  }
+
+  public void clear() {
+    for (K key : map.keySet()) {
+      remove(key);
+    }
+  }
+
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * Returns the summed weight of the entries known to the eviction policy,
+   * which trails writes that have not been applied yet.
+   */
+  public long weightedSize() {
+    return stats.weightedSize.get();
+  }
+
+  /** Applies all buffered reads and writes to the eviction policy and evicts as needed. */
+  public void cleanUp() {
+    evictionLock.lock();
+    try {
+      maintenance();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Returns up to 'n' entries, most frequently used first.  Entries with the same
+   * estimated frequency are ordered protected, window, then probation segment,
+   * each most recently used first.
+   *
+   * @param n the number of items needed
+   * @return a LinkedHashMap containing 'n' or less than 'n' entries
+   */
+  public Map<K,V> getHottestItems(int n) {
+    Map<K,V> result = new LinkedHashMap<K,V>();
+    if (n <= 0) return result;
+    final List<Node<K,V>> nodes = new ArrayList<Node<K,V>>();
+    final Map<Node<K,V>,Integer> frequencies = new IdentityHashMap<Node<K,V>,Integer>();
+    evictionLock.lock();
+    try {
+      maintenance();
+      protectedSegment.addToListMostRecentFirst(nodes);
+      window.addToListMostRecentFirst(nodes);
+      probation.addToListMostRecentFirst(nodes);
+      for (Node<K,V> node : nodes) {
+        frequencies.put(node, sketch.frequency(node.key));
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+    // stable, so recency breaks ties
+    Collections.sort(nodes, new Comparator<Node<K,V>>() {
+      public int compare(Node<K,V> a, Node<K,V> b) {
+        return frequencies.get(b).compareTo(frequencies.get(a));
+      }
+    });
+    for (Node<K,V> node : nodes) {
+      if (result.size() >= n) break;
+      result.put(node.key, node.value);
+    }
+    return result;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  public void destroy() {
+    // nothing to stop: the cleanup executor is shared and pending cleanups are harmless
+  }
+
+  private int readBufferIndex() {
+    long id = Thread.currentThread().getId();
+    int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & (READ_BUFFERS - 1);
+  }
+
+  private void afterWrite(Write<K,V> write) {
+    writeBuffer.offer(write);
+    if (pendingWrites.incrementAndGet() > WRITE_BUFFER_MAX) {
+      // the cleanup is falling behind: apply the writes here rather than
+      // letting the cache grow without bounds
+      cleanUp();
+    } else {
+      scheduleDrain();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (executor != null) {
+      if (!drainScheduled.compareAndSet(false, true)) return;
+      try {
+        executor.execute(drainTask);
+        return;
+      } catch (RejectedExecutionException e) {
+        drainScheduled.set(false);
+        // fall through and do it ourselves
+      }
+    }
+    if (evictionLock.tryLock()) {
+      try {
+        maintenance();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  // must be called with the evictionLock held
+  private void maintenance() {
+    for (ReadBuffer<K,V> buffer : readBuffers) {
+      drainReadBuffer(buffer);
+    }
+    drainWriteBuffer();
+    evict();
+  }
+
+  private void drainReadBuffer(ReadBuffer<K,V> buffer) {
+    long head = buffer.readCounter;
+    final long tail = buffer.writeCounter.get();
+    for (; head < tail; head++) {
+      final int index = (int) head & READ_BUFFER_MASK;
+      Node<K,V> node = buffer.buffer.get(index);
+      if (node == null) break;  // the writer has claimed the slot but not yet filled it
+      buffer.buffer.lazySet(index, null);
+      onAccess(node);
+    }
+    buffer.readCounter = head;
+  }
+
+  private void drainWriteBuffer() {
+    // bounded so that a steady stream of writes cannot keep us here forever
+    for (int i = 0; i < WRITE_BUFFER_MAX; i++) {
+      Write<K,V> write = writeBuffer.poll();
+      if (write == null) break;
+      pendingWrites.decrementAndGet();
+      if (write.add) {
+        onAdd(write.node);
+      } else {
+        unlink(write.node);
+      }
+    }
+  }
+
+  private void onAdd(Node<K,V> node) {
+    // removed or replaced before we got to it: never becomes part of the policy
+    if (node.retired) return;
+    sketch.increment(node.key);
+    window.addLast(node);
+    node.queue = WINDOW;
+    windowWeight += node.weight;
+    stats.weightedSize.addAndGet(node.weight);
+  }
+
+  private void onAccess(Node<K,V> node) {
+    if (node.queue == NONE) return;
+    sketch.increment(node.key);
+    if (node.queue == WINDOW) {
+      window.moveToBack(node);
+    } else if (node.queue == PROBATION) {
+      probation.remove(node);
+      probationWeight -= node.weight;
+      protectedSegment.addLast(node);
+      node.queue = PROTECTED;
+      protectedWeight += node.weight;
+      // demote the least recently used protected entries to make room
+      while (protectedWeight > protectedMaximum) {
+        Node<K,V> demoted = protectedSegment.peekFirst();
+        if (demoted == node) break;
+        protectedSegment.remove(demoted);
+        protectedWeight -= demoted.weight;
+        probation.addLast(demoted);
+        demoted.queue = PROBATION;
+        probationWeight += demoted.weight;
+      }
+    } else {
+      protectedSegment.moveToBack(node);
+    }
+  }
+
+  private void evict() {
+    // entries falling out of the window compete for a place in the main space
+    while (windowWeight > windowMaximum) {
+      Node<K,V> candidate = window.peekFirst();
+      unlink(candidate);
+      admit(candidate);
+    }
+    // only reachable with entries heavier than the main space
+    while (windowWeight + probationWeight + protectedWeight > maximum) {
+      Node<K,V> victim = probation.peekFirst();
+      if (victim == null) victim = protectedSegment.peekFirst();
+      if (victim == null) victim = window.peekFirst();
+      evictEntry(victim);
+    }
+  }
+
+  // the candidate has been unlinked from the window; it is either linked into
+  // the probation segment or evicted
+  private void admit(Node<K,V> candidate) {
+    if (candidate.weight > mainMaximum) {
+      evictEntry(candidate);
+      return;
+    }
+    while (probationWeight + protectedWeight + candidate.weight > mainMaximum) {
+      Node<K,V> victim = probation.peekFirst();
+      if (victim == null) victim = protectedSegment.peekFirst();
+      if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+        evictEntry(victim);
+      } else {
+        evictEntry(candidate);
+        return;
+      }
+    }
+    probation.addLast(candidate);
+    candidate.queue = PROBATION;
+    probationWeight += candidate.weight;
+    stats.weightedSize.addAndGet(candidate.weight);
+  }
+
+  private void unlink(Node<K,V> node) {
+    switch (node.queue) {
+      case WINDOW:
+        window.remove(node);
+        windowWeight -= node.weight;
+        break;
+      case PROBATION:
+        probation.remove(node);
+        probationWeight -= node.weight;
+        break;
+      case PROTECTED:
+        protectedSegment.remove(node);
+        protectedWeight -= node.weight;
+        break;
+      default:
+        return;
+    }
+    node.queue = NONE;
+    stats.weightedSize.addAndGet(-node.weight);
+  }
+
+  private void evictEntry(Node<K,V> node) {
+    unlink(node);
+    // fails if the entry was removed or replaced meanwhile, its write is still pending then
+    if (map.remove(node.key, node)) {
+      node.retired = true;
+      stats.evictionCounter.incrementAndGet();
+      if (evictionListener != null) evictionListener.evictedEntry(node.key, node.value);
+    }
+  }
+
+  private static int ceilingPowerOfTwo(int x) {
+    int n = 1;
+    while (n < x) n <<= 1;
+    return n;
+  }
+
+  private static final class Node<K,V> {
+    final K key;
+    final V value;
+    final long weight;
+    volatile boolean retired;
+    // guarded by evictionLock
+    Node<K,V> prev, next;
+    byte queue = NONE;
+
+    Node(K key, V value, long weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+
+    // equals() is deliberately not overridden, map.remove(key, node) relies on identity
+
+    @Override
+    public String toString() {
+      return "key: " + key + " value: " + value + " weight:" + weight;
+    }
+  }
+
+  private static final class Write<K,V> {
+    final Node<K,V> node;
+    final boolean add;
+
+    Write(Node<K,V> node, boolean add) {
+      this.node = node;
+      this.add = add;
+    }
+  }
+
+  /** A doubly linked list through the nodes, least recently used first. */
+  private static final class AccessOrderDeque<K,V> {
+    private Node<K,V> head, tail;
+
+    Node<K,V> peekFirst() {
+      return head;
+    }
+
+    void addLast(Node<K,V> node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+    }
+
+    void remove(Node<K,V> node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = node.next = null;
+    }
+
+    void moveToBack(Node<K,V> node) {
+      if (node != tail) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    void addToListMostRecentFirst(List<Node<K,V>> list) {
+      for (Node<K,V> node = tail; node != null; node = node.prev) {
+        list.add(node);
+      }
+    }
+  }
+
+  /**
+   * A bounded buffer of reads, filled by any number of threads and drained
+   * under the evictionLock.  Reads are dropped rather than waited for when the
+   * buffer is full or another thread wins the race for a slot.
+   */
+  private static final class ReadBuffer<K,V> {
+    final AtomicReferenceArray<Node<K,V>> buffer = new AtomicReferenceArray<Node<K,V>>(READ_BUFFER_SIZE);
+    final AtomicLong writeCounter = new AtomicLong();
+    volatile long readCounter;  // only written while draining
+
+    /** Records a read, returning true if the buffer is full and should be drained. */
+    boolean offer(Node<K,V> node) {
+      final long head = readCounter;
+      final long tail = writeCounter.get();
+      final long size = tail - head;
+      if (size >= READ_BUFFER_SIZE) return true;
+      if (writeCounter.compareAndSet(tail, tail + 1)) {
+        buffer.lazySet((int) tail & READ_BUFFER_MASK, node);
+        return size + 1 >= READ_BUFFER_SIZE;
+      }
+      return false;
+    }
+  }
+
+  public static class Stats {
+    private final AtomicLong hitCounter = new AtomicLong(),
+        missCounter = new AtomicLong(),
+        putCounter = new AtomicLong(),
+        nonLivePutCounter = new AtomicLong(),
+        evictionCounter = new AtomicLong(),
+        weightedSize = new AtomicLong();
+
+    public long getCumulativeLookups() {
+      return hitCounter.get() + missCounter.get();
+    }
+
+    public long getCumulativeHits() {
+      return hitCounter.get();
+    }
+
+    public long getCumulativePuts() {
+      return putCounter.get();
+    }
+
+    public long getCumulativeEvictions() {
+      return evictionCounter.get();
+    }
+
+    public long getCumulativeNonLivePuts() {
+      return nonLivePutCounter.get();
+    }
+
+    public long getCumulativeMisses() {
+      return missCounter.get();
+    }
+
+    public long getWeightedSize() {
+      return weightedSize.get();
+    }
+
+    public void add(Stats other) {
+      hitCounter.addAndGet(other.hitCounter.get());
+      missCounter.addAndGet(other.missCounter.get());
+      putCounter.addAndGet(other.putCounter.get());
+      nonLivePutCounter.addAndGet(other.nonLivePutCounter.get());
+      evictionCounter.addAndGet(other.evictionCounter.get());
+      weightedSize.set(Math.max(weightedSize.get(), other.weightedSize.get()));
+    }
+  }
+
+  public static interface EvictionListener<K,V>{
+    public void evictedEntry(K key, V value);
+  }
+
+  /** Computes the weight of a cache entry, usually its estimated heap usage in bytes. */
+  public static interface Weigher<K,V>{
+    public long weigh(K key, V value);
+  }
+}
@@ -0,0 +1,131 @@
+package org.apache.solr.util;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A probabilistic multiset estimating how often an element was seen recently,
+ * used by {@link ConcurrentTinyLFUCache} to decide whether a new entry is worth
+ * evicting an existing one for.
+ * <p/>
+ * This is a count-min sketch with four 4-bit counters per element, packed
+ * sixteen to a <code>long</code>.  The four counters of an element live in the
+ * same group of four within each word, so that a lookup touches at most four
+ * words.  Once the number of increments reaches ten times the maximum size of
+ * the cache, all counters are halved, so the sketch reflects recent rather than
+ * all-time popularity.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @lucene.internal
+ */
+public final class FrequencySketch {
+
+  // arbitrary odd 64 bit constants (from CityHash and FNV-1) to derive the four indexes
+  private static final long[] SEEDS = new long[] {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  /** The largest value a counter can hold. */
+  public static final int MAX_FREQUENCY = 15;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int size;
+
+  /**
+   * @param maximumSize the maximum number of entries of the cache, used to size the table
+   */
+  public FrequencySketch(int maximumSize) {
+    if (maximumSize < 0) throw new IllegalArgumentException("maximumSize must be >= 0");
+    int tableSize = 16;
+    while (tableSize < maximumSize && tableSize < (1 << 30)) {
+      tableSize <<= 1;
+    }
+    table = new long[tableSize];
+    tableMask = tableSize - 1;
+    sampleSize = (int) Math.min(10L * Math.max(maximumSize, 1), Integer.MAX_VALUE);
+  }
+
+  /** Returns the estimated number of occurrences of <code>e</code>, at most {@link #MAX_FREQUENCY}. */
+  public int frequency(Object e) {
+    final int hash = spread(e.hashCode());
+    final int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      final int index = indexOf(hash, i);
+      final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the counters of <code>e</code> unless they are all saturated,
+   * periodically aging all counters.
+   */
+  public void increment(Object e) {
+    final int hash = spread(e.hashCode());
+    final int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  /** Returns the number of increments since the last reset (scaled down by it). */
+  int sampleCount() {
+    return size;
+  }
+
+  private boolean incrementAt(int i, int j) {
+    final int offset = j << 2;
+    final long mask = 0xfL << offset;
+    if ((table[i] & mask) != mask) {
+      table[i] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  // halves every counter; the odd counts lost to truncation are subtracted from size
+  private void reset() {
+    int count = 0;
+    for (int i = 0; i < table.length; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (count >>> 2);
+  }
+
+  private int indexOf(int item, int i) {
+    long hash = (item + SEEDS[i]) * SEEDS[i];
+    hash += hash >>> 32;
+    return ((int) hash) & tableMask;
+  }
+
+  // hashCode()s of keys such as Integers are poorly distributed in the low bits
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+}
@@ -17,6 +17,8 @@ package org.apache.solr.analysis;
  * limitations under the License.
  */
 
+import java.io.File;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.HashMap;
@@ -24,6 +26,13 @@ import java.util.Map;
 
 import org.apache.lucene.analysis.MockTokenizer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.hunspell.HunspellDictionary;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util._TestUtil;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.core.SolrResourceLoader;
 import org.apache.solr.schema.IndexSchema;
 
@@ -44,4 +53,85 @@ public class TestHunspellStemFilterFactory extends BaseTokenTestCase {
     TokenStream stream = factory.create(new MockTokenizer(reader, MockTokenizer.WHITESPACE, false));
     assertTokenStreamContents(stream, new String[] { "ab" });
   }
+
+  public void testCompiledDictionary() throws Exception {
+    File instanceDir = compileDictionary();
+
+    Map<String,String> args = new HashMap<String,String>();
+    args.put("compiledDictionary", "hunspell-test.hunspell");
+    args.put(IndexSchema.LUCENE_MATCH_VERSION_PARAM, DEFAULT_VERSION.name());
+    HunspellStemFilterFactory factory = new HunspellStemFilterFactory();
+    factory.init(args);
+    factory.inform(new SolrResourceLoader(instanceDir.getAbsolutePath()));
+
+    Reader reader = new StringReader("abc");
+    TokenStream stream = factory.create(new MockTokenizer(reader, MockTokenizer.WHITESPACE, false));
+    assertTokenStreamContents(stream, new String[] { "ab" });
+  }
+
+  public void testCompiledDictionaryIgnoreCase() throws Exception {
+    File instanceDir = compileDictionary();
+
+    // the dictionary was compiled case sensitive
+    Map<String,String> args = new HashMap<String,String>();
+    args.put("compiledDictionary", "hunspell-test.hunspell");
+    args.put("ignoreCase", "false");
+    args.put(IndexSchema.LUCENE_MATCH_VERSION_PARAM, DEFAULT_VERSION.name());
+    HunspellStemFilterFactory factory = new HunspellStemFilterFactory();
+    factory.init(args);
+    factory.inform(new SolrResourceLoader(instanceDir.getAbsolutePath()));
+
+    args.put("ignoreCase", "true");
+    factory = new HunspellStemFilterFactory();
+    factory.init(args);
+    try {
+      factory.inform(new SolrResourceLoader(instanceDir.getAbsolutePath()));
+      fail("ignoreCase conflicts with the compiled dictionary");
+    } catch (SolrException expected) {
+      // expected
+    }
+  }
+
+  public void testCompiledDictionaryShared() throws Exception {
+    File instanceDir = compileDictionary();
+
+    Map<String,String> args = new HashMap<String,String>();
+    args.put("compiledDictionary", "hunspell-test.hunspell");
+    args.put(IndexSchema.LUCENE_MATCH_VERSION_PARAM, DEFAULT_VERSION.name());
+    HunspellStemFilterFactory factory1 = new HunspellStemFilterFactory();
+    factory1.init(args);
+    factory1.inform(new SolrResourceLoader(instanceDir.getAbsolutePath()));
+    HunspellStemFilterFactory factory2 = new HunspellStemFilterFactory();
+    factory2.init(args);
+    factory2.inform(new SolrResourceLoader(instanceDir.getAbsolutePath()));
+    assertSame(factory1.getDictionary(), factory2.getDictionary());
+
+    // a modified file is loaded again
+    File file = new File(new File(instanceDir, "conf"), "hunspell-test.hunspell");
+    assertTrue(file.setLastModified(file.lastModified() - 10000));
+    HunspellStemFilterFactory factory3 = new HunspellStemFilterFactory();
+    factory3.init(args);
+    factory3.inform(new SolrResourceLoader(instanceDir.getAbsolutePath()));
+    assertNotSame(factory1.getDictionary(), factory3.getDictionary());
+  }
+
+  /** compiles the test dictionary into the conf dir of a new instance dir */
+  private File compileDictionary() throws Exception {
+    SolrResourceLoader loader = new SolrResourceLoader("solr");
+    InputStream affix = loader.openResource("hunspell-test.aff");
+    InputStream dic = loader.openResource("hunspell-test.dic");
+    HunspellDictionary dictionary = new HunspellDictionary(affix, dic, DEFAULT_VERSION);
+    affix.close();
+    dic.close();
+
+    File instanceDir = _TestUtil.getTempDir("hunspell");
+    File confDir = new File(instanceDir, "conf");
+    confDir.mkdirs();
+    Directory dir = FSDirectory.open(confDir);
+    IndexOutput out = dir.createOutput("hunspell-test.hunspell", IOContext.DEFAULT);
+    dictionary.save(out);
+    out.close();
+    dir.close();
+    return instanceDir;
+  }
 }
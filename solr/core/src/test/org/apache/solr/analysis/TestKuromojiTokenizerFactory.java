@@ -69,21 +69,45 @@ public class TestKuromojiTokenizerFactory extends BaseTokenTestCase {
     );
   }
   
-  public void testUserDict() throws IOException {
-    String userDict = 
-        "# Custom segmentation for long entries\n" +
-        "日本経済新聞,日本 経済 新聞,ニホン ケイザイ シンブン,カスタム名詞\n" +
-        "関西国際空港,関西 国際 空港,カンサイ コクサイ クウコウ,テスト名詞\n" +
-        "# Custom reading for sumo wrestler\n" +
-        "朝青龍,朝青龍,アサショウリュウ,カスタム人名\n";
+  private static final String USER_DICT =
+      "# Custom segmentation for long entries\n" +
+      "日本経済新聞,日本 経済 新聞,ニホン ケイザイ シンブン,カスタム名詞\n" +
+      "関西国際空港,関西 国際 空港,カンサイ コクサイ クウコウ,テスト名詞\n" +
+      "# Custom reading for sumo wrestler\n" +
+      "朝青龍,朝青龍,アサショウリュウ,カスタム人名\n";
+
+  private KuromojiTokenizerFactory userDictFactory(String userDict) {
     KuromojiTokenizerFactory factory = new KuromojiTokenizerFactory();
     Map<String,String> args = new HashMap<String,String>();
     args.put("user-dictionary", "userdict.txt");
     factory.init(args);
     factory.inform(new StringMockSolrResourceLoader(userDict));
+    return factory;
+  }
+
+  public void testUserDict() throws IOException {
+    KuromojiTokenizerFactory factory = userDictFactory(USER_DICT);
     TokenStream ts = factory.create(new StringReader("関西国際空港に行った"));
     assertTokenStreamContents(ts,
         new String[] { "関西", "国際", "空港", "に",  "行っ",  "た" }
     );
   }
+
+  /**
+   * Test that factories with the same user dictionary share it, and
+   * factories with a different one don't
+   */
+  public void testUserDictShared() throws IOException {
+    KuromojiTokenizerFactory factory1 = userDictFactory(USER_DICT);
+    KuromojiTokenizerFactory factory2 = userDictFactory(USER_DICT);
+    assertNotNull(factory1.getUserDictionary());
+    assertSame(factory1.getUserDictionary(), factory2.getUserDictionary());
+
+    KuromojiTokenizerFactory changed = userDictFactory(USER_DICT + "成田空港,成田 空港,ナリタ クウコウ,テスト名詞\n");
+    assertNotSame(factory1.getUserDictionary(), changed.getUserDictionary());
+    TokenStream ts = changed.create(new StringReader("成田空港に行った"));
+    assertTokenStreamContents(ts,
+        new String[] { "成田", "空港", "に",  "行っ",  "た" }
+    );
+  }
 }
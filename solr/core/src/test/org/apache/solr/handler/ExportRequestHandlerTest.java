@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.noggit.ObjectBuilder;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.CursorMark;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SortFieldValues;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ExportRequestHandlerTest extends SolrTestCaseJ4 {
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema12.xml");
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    int id = 0;
+    for (int round=0; round<4; round++) {
+      int numDocs = 10 + random.nextInt(40);
+      for (int i=0; i<numDocs; i++) {
+        List<String> fields = new ArrayList<String>();
+        fields.add("id");
+        fields.add(Integer.toString(id++));
+        // few distinct values so that the tie break matters, and some documents without a value
+        if (random.nextInt(5) != 0) { fields.add("val_s1"); fields.add("s" + random.nextInt(10)); }
+        if (random.nextInt(5) != 0) { fields.add("val_ti"); fields.add(Integer.toString(random.nextInt(10) - 5)); }
+        if (random.nextInt(5) != 0) { fields.add("val_tl"); fields.add(Long.toString(random.nextInt(10) * 1000000000L)); }
+        if (random.nextInt(5) != 0) { fields.add("val_tf"); fields.add(Float.toString(random.nextInt(10) / 4.0f)); }
+        if (random.nextInt(5) != 0) { fields.add("val_td"); fields.add(Double.toString(random.nextInt(10) / 8.0)); }
+        assertU(adoc(fields.toArray(new String[fields.size()])));
+      }
+      assertU(commit());
+    }
+    // delete some, so that the sets have holes
+    assertU(delQ("id:1* OR id:[30 TO 35]"));
+    assertU(commit());
+
+    String[] sorts = {"val_s1 asc", "val_s1 desc", "val_ti asc", "val_ti desc, val_s1 asc",
+        "val_tl desc", "val_tf asc, val_td desc", "val_td asc", "id desc"};
+    for (String sort : sorts) {
+      for (String fq : new String[] {null, "val_ti:[0 TO *]"}) {
+        List<String> expected = selectIds(sort, fq);
+        assertEquals(sort, expected, exportIds(sort, fq));
+
+        // in batches, continuing from the cursor of the previous batch
+        int rows = 1 + random.nextInt(20);
+        List<String> batched = new ArrayList<String>();
+        String cursor = "*";
+        while (cursor != null) {
+          cursor = exportBatch(sort, fq, cursor, rows, batched);
+        }
+        assertEquals(sort, expected, batched);
+      }
+    }
+  }
+
+  @Test
+  public void testWorkPerPage() throws Exception {
+    int numDocs = 1000;
+    for (int i=0; i<numDocs; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_ti", Integer.toString(random.nextInt(100000))));
+      if (i % 250 == 249) assertU(commit());
+    }
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      Sort sort = QueryParsing.parseSort("val_ti asc", req);
+      SortFieldValues[] fields = SortFieldValues.create(SortFieldValues.withTieBreak(sort, req.getSchema().getUniqueKeyField()));
+      DocSet docs = searcher.getDocSet(new MatchAllDocsQuery());
+      int rows = 10;
+      CursorMark cursor = CursorMark.parse(CursorMark.START, fields);
+      long firstPage = -1;
+      int pages = 0;
+      int exported = 0;
+      while (cursor != null) {
+        ExportRequestHandler.ExportResult result = ExportRequestHandler.sortDocs(searcher, docs, fields, cursor, rows);
+        assertEquals(numDocs - exported, result.matches);
+        // about one comparison per match against the worst kept document, far from sorting all matches
+        assertTrue("page " + pages + ": " + result.comparisons, result.comparisons <= 2 * result.matches + 1000);
+        if (firstPage < 0) {
+          firstPage = result.comparisons;
+        } else {
+          // fewer matches, but how many of them enter the heaps is random
+          assertTrue("page " + pages + ": " + result.comparisons + " > " + firstPage, result.comparisons <= firstPage + firstPage / 4);
+        }
+        exported += result.docs.length;
+        pages++;
+        cursor = result.next;
+      }
+      assertEquals(numDocs, exported);
+      assertEquals(numDocs / rows, pages);
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    assertU(adoc("id", "1", "val_s1", "a"));
+    assertU(commit());
+    assertQEx("sort is required", req("qt", "/export", "q", "*:*"), SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("no score sort", req("qt", "/export", "q", "*:*", "sort", "score desc"), SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("no function sort", req("qt", "/export", "q", "*:*", "sort", "sum(val_ti,1) asc"), SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("cursor of another sort", req("qt", "/export", "q", "*:*", "sort", "val_s1 asc",
+        "cursor", cursorOf("val_ti asc")), SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("bad cursor", req("qt", "/export", "q", "*:*", "sort", "val_s1 asc", "cursor", "xyz"), SolrException.ErrorCode.BAD_REQUEST);
+  }
+
+  private String cursorOf(String sort) throws Exception {
+    assertU(adoc("id", "2", "val_ti", "1"));
+    assertU(commit());
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req("qt", "/export", "q", "*:*", "sort", sort, "fl", "id", "rows", "1")));
+    String cursor = (String) rsp.get("nextCursor");
+    assertNotNull(cursor);
+    return cursor;
+  }
+
+  private List<String> selectIds(String sort, String fq) throws Exception {
+    String[] params = fq == null
+        ? new String[] {"q", "*:*", "sort", sort + ", id asc", "fl", "id", "rows", "1000"}
+        : new String[] {"q", "*:*", "fq", fq, "sort", sort + ", id asc", "fl", "id", "rows", "1000"};
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req(params)));
+    return ids((Map) rsp.get("response"), new ArrayList<String>());
+  }
+
+  private List<String> exportIds(String sort, String fq) throws Exception {
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req(exportParams(sort, fq, "*", 1000))));
+    assertNull(rsp.get("nextCursor"));
+    return ids((Map) rsp.get("response"), new ArrayList<String>());
+  }
+
+  /** adds the ids of one batch to the list, and returns the cursor for the next batch, or null at the end */
+  private String exportBatch(String sort, String fq, String cursor, int rows, List<String> ids) throws Exception {
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req(exportParams(sort, fq, cursor, rows))));
+    Map response = (Map) rsp.get("response");
+    int numFound = ((Number) response.get("numFound")).intValue();
+    int before = ids.size();
+    ids(response, ids);
+    assertEquals(Math.min(rows, numFound), ids.size() - before);
+    return (String) rsp.get("nextCursor");
+  }
+
+  private String[] exportParams(String sort, String fq, String cursor, int rows) {
+    return fq == null
+        ? new String[] {"qt", "/export", "q", "*:*", "sort", sort, "fl", "id", "rows", Integer.toString(rows), "cursor", cursor}
+        : new String[] {"qt", "/export", "q", "*:*", "fq", fq, "sort", sort, "fl", "id", "rows", Integer.toString(rows), "cursor", cursor};
+  }
+
+  private List<String> ids(Map response, List<String> ids) {
+    for (Object doc : (List) response.get("docs")) {
+      ids.add((String) ((Map) doc).get("id"));
+    }
+    return ids;
+  }
+}
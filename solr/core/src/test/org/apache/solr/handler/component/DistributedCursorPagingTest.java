@@ -0,0 +1,79 @@
+package org.apache.solr.handler.component;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.BaseDistributedSearchTestCase;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+/**
+ * Test for deep paging with cursorMark over several shards
+ */
+public class DistributedCursorPagingTest extends BaseDistributedSearchTestCase {
+
+  @Override
+  public void doTest() throws Exception {
+    del("*:*");
+    for (int i=0; i<100; i++) {
+      // few distinct values, so that the tie break on id matters
+      index(id, i, "val_s1", "s" + r.nextInt(10), "val_ti1", r.nextInt(10) - 5,
+          "val_tl1", r.nextInt(10) * 1000000000L, "val_td1", r.nextInt(10) / 8.0);
+    }
+    index(id, 100);
+    index(id, 101, "val_s1", "s1");
+    commit();
+
+    handle.clear();
+    handle.put("QTime", SKIPVAL);
+    handle.put("timestamp", SKIPVAL);
+    handle.put("maxScore", SKIPVAL);
+
+    String[] sorts = {"val_s1 asc", "val_s1 desc, id desc", "val_ti1 asc", "val_ti1 desc, val_s1 asc",
+        "val_tl1 desc", "val_td1 asc, val_s1 desc", "id desc"};
+    for (String sort : sorts) {
+      int rows = 1 + r.nextInt(15);
+      String mark = "*";
+      int pages = 0;
+      while (true) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "*:*");
+        params.set("sort", sort);
+        params.set("fl", "id,val_s1");
+        params.set("rows", rows);
+        params.set(CommonParams.CURSOR_MARK, mark);
+
+        QueryResponse controlRsp = controlClient.query(params);
+        setDistributedParams(params);
+        QueryResponse rsp = queryServer(params);
+        compareResponses(rsp, controlRsp);
+
+        String next = (String) rsp.getResponse().get(CommonParams.CURSOR_MARK_NEXT);
+        assertEquals(controlRsp.getResponse().get(CommonParams.CURSOR_MARK_NEXT), next);
+        if (rsp.getResults().isEmpty()) {
+          assertEquals(mark, next);
+          break;
+        }
+        assertEquals(102, rsp.getResults().getNumFound());
+        mark = next;
+        pages++;
+      }
+      assertEquals(sort, (101 + rows) / rows, pages);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package org.apache.solr.handler.component;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.StrUtils;
+import org.apache.solr.core.PluginInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the shard timeout and hedged requests of {@link HttpShardHandler} against
+ * servers that answer late, fail, or accept connections but never answer.
+ */
+public class HttpShardHandlerTest extends SolrTestCaseJ4 {
+  private List<ServerSocket> servers;
+  private List<Socket> connections;
+  private HttpShardHandlerFactory factory;
+
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    servers = new ArrayList<ServerSocket>();
+    connections = Collections.synchronizedList(new ArrayList<Socket>());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (factory != null) factory.close();
+    for (ServerSocket server : servers) server.close();
+    synchronized (connections) {
+      for (Socket socket : connections) socket.close();
+    }
+    super.tearDown();
+  }
+
+  /** how a server answers a connection: with an HTTP status after a delay, or never if the status is 0 */
+  private static final class Answer {
+    final int status;
+    final long delay;
+
+    Answer(int status, long delay) {
+      this.status = status;
+      this.delay = delay;
+    }
+  }
+
+  private static final Answer NEVER = new Answer(0, 0);
+
+  /** starts a server that never answers, and returns its shard address */
+  private String silentServer(AtomicInteger accepted) throws IOException {
+    return server("silent", accepted, NEVER);
+  }
+
+  /**
+   * starts a server that answers its n-th connection as the n-th answer, and all further ones
+   * as the last answer, and returns its shard address.  A 200 answer names the server.
+   */
+  private String server(final String name, final AtomicInteger accepted, final Answer... answers) throws IOException {
+    final ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    servers.add(server);
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            final Socket socket = server.accept();
+            connections.add(socket);
+            final Answer answer = answers[Math.min(accepted.getAndIncrement(), answers.length - 1)];
+            if (answer.status == 0) continue;
+            Thread responder = new Thread() {
+              @Override
+              public void run() {
+                try {
+                  answer(socket, name, answer);
+                } catch (Exception e) {
+                  // the client went away
+                }
+              }
+            };
+            responder.setDaemon(true);
+            responder.start();
+          }
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    };
+    t.setDaemon(true);
+    t.start();
+    return "127.0.0.1:" + server.getLocalPort() + "/solr";
+  }
+
+  private static void answer(Socket socket, String name, Answer answer) throws Exception {
+    InputStream in = socket.getInputStream();
+    int contentLength = 0;
+    String line;
+    while ((line = readLine(in)).length() > 0) {
+      if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+      }
+    }
+    for (int i=0; i<contentLength; i++) {
+      in.read();
+    }
+    Thread.sleep(answer.delay);
+
+    // like Solr, errors are sent in the requested (javabin) format too
+    NamedList<Object> nl = new NamedList<Object>();
+    if (answer.status == 200) {
+      nl.add("server", name);
+    } else {
+      NamedList<Object> error = new NamedList<Object>();
+      error.add("msg", "failed: " + name);
+      error.add("code", answer.status);
+      nl.add("error", error);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new JavaBinCodec().marshal(nl, bytes);
+    byte[] body = bytes.toByteArray();
+    OutputStream out = socket.getOutputStream();
+    out.write(("HTTP/1.1 " + answer.status + " Test\r\nContent-Type: application/octet-stream\r\nContent-Length: " + body.length
+        + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+    out.write(body);
+    out.flush();
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) != -1 && c != '\n') {
+      if (c != '\r') sb.append((char) c);
+    }
+    return sb.toString();
+  }
+
+  private HttpShardHandler handler(int shardTimeout, int hedgeDelay) {
+    NamedList<Object> args = new NamedList<Object>();
+    args.add(HttpShardHandlerFactory.INIT_SHARD_TIMEOUT, shardTimeout);
+    args.add(HttpShardHandlerFactory.INIT_HEDGE_DELAY, hedgeDelay);
+    factory = new HttpShardHandlerFactory();
+    factory.init(new PluginInfo("shardHandlerFactory", Collections.<String,String>emptyMap(), args, null));
+    return (HttpShardHandler) factory.getShardHandler();
+  }
+
+  /** seeds the shuffle of the replicas so that the first attempt asks the given replica first */
+  private void firstReplica(String shard, String first) {
+    List<String> urls = StrUtils.splitSmart(shard, "|", true);
+    for (long seed=0; ; seed++) {
+      List<String> shuffled = new ArrayList<String>(urls);
+      Collections.shuffle(shuffled, new Random(seed));
+      if (shuffled.get(0).equals(first)) {
+        factory.r = new Random(seed);
+        return;
+      }
+    }
+  }
+
+  private ShardRequest submit(HttpShardHandler handler, String shard) {
+    ShardRequest sreq = new ShardRequest();
+    sreq.actualShards = new String[] {shard};
+    ModifiableSolrParams params = new ModifiableSolrParams();
+    params.set("q", "*:*");
+    sreq.params = params;
+    handler.submit(sreq, shard, new ModifiableSolrParams(params));
+    return sreq;
+  }
+
+  @Test
+  public void testShardTimeout() throws Exception {
+    AtomicInteger accepted = new AtomicInteger();
+    String shard = silentServer(accepted);
+    HttpShardHandler handler = handler(200, 0);
+    // reads of a request that was given up on don't block longer than the shard timeout
+    assertEquals(200, factory.client.getHttpConnectionManager().getParams().getSoTimeout());
+    ShardRequest sreq = submit(handler, shard);
+
+    ShardResponse rsp = handler.takeCompletedIncludingErrors();
+    assertNotNull(rsp);
+    assertSame(sreq, rsp.getShardRequest());
+    assertEquals(shard, rsp.getShard());
+    assertTrue(rsp.getException() instanceof SolrException);
+    assertEquals(SolrException.ErrorCode.SERVICE_UNAVAILABLE.code, ((SolrException) rsp.getException()).code());
+    assertEquals(1, sreq.responses.size());
+    assertNull(handler.takeCompletedIncludingErrors());
+  }
+
+  @Test
+  public void testHedgedRequest() throws Exception {
+    AtomicInteger accepted1 = new AtomicInteger();
+    AtomicInteger accepted2 = new AtomicInteger();
+    String shard = silentServer(accepted1) + "|" + silentServer(accepted2);
+    HttpShardHandler handler = handler(1000, 50);
+    submit(handler, shard);
+
+    // neither replica answers, so the shard times out, but only after asking both
+    ShardResponse rsp = handler.takeCompletedOrError();
+    assertNotNull(rsp);
+    assertTrue(rsp.getException() instanceof SolrException);
+    assertEquals(1, accepted1.get());
+    assertEquals(1, accepted2.get());
+  }
+
+  @Test
+  public void testHedgeWins() throws Exception {
+    AtomicInteger accepted1 = new AtomicInteger();
+    AtomicInteger accepted2 = new AtomicInteger();
+    String silent = silentServer(accepted1);
+    String fast = server("fast", accepted2, new Answer(200, 0));
+    String shard = silent + "|" + fast;
+    HttpShardHandler handler = handler(10000, 50);
+    firstReplica(shard, silent);
+    ShardRequest sreq = submit(handler, shard);
+
+    ShardResponse rsp = handler.takeCompletedOrError();
+    assertNotNull(rsp);
+    assertNull(rsp.getException());
+    assertEquals("fast", rsp.getSolrResponse().getResponse().get("server"));
+    assertEquals("http://" + fast, rsp.getShardAddress());
+    assertEquals(1, accepted1.get());
+    assertEquals(1, accepted2.get());
+    // the first attempt, still waiting for the silent replica, is forgotten
+    assertEquals(1, sreq.responses.size());
+    assertNull(handler.takeCompletedIncludingErrors());
+  }
+
+  @Test
+  public void testFirstAttemptFailsWhileHedgePending() throws Exception {
+    AtomicInteger accepted1 = new AtomicInteger();
+    AtomicInteger accepted2 = new AtomicInteger();
+    // the first attempt fails on both replicas: the first one fails late, and the second
+    // one fails at once, after it took the hedge, which it answers later still
+    String failing = server("failing", accepted1, new Answer(503, 300));
+    String slow = server("slow", accepted2, new Answer(200, 600), new Answer(503, 0));
+    String shard = failing + "|" + slow;
+    HttpShardHandler handler = handler(10000, 50);
+    firstReplica(shard, failing);
+    ShardRequest sreq = submit(handler, shard);
+
+    ShardResponse rsp = handler.takeCompletedOrError();
+    assertNotNull(rsp);
+    assertNull(rsp.getException());
+    assertEquals("slow", rsp.getSolrResponse().getResponse().get("server"));
+    assertEquals(1, accepted1.get());
+    assertEquals(2, accepted2.get());
+    assertEquals(1, sreq.responses.size());
+    assertNull(handler.takeCompletedIncludingErrors());
+  }
+}
@@ -21,7 +21,6 @@ import org.apache.noggit.ObjectBuilder;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.ModifiableSolrParams;
-import org.apache.solr.schema.SchemaField;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -201,8 +200,6 @@ public class SimpleFacetsTest extends SolrTestCaseJ4 {
   }
   
   static void doEmptyFacetCounts(String field, String[] prefixes) throws Exception {
-    SchemaField sf = h.getCore().getSchema().getField(field);
-
     String response = JQ(req("q", "*:*"));
     Map rsp = (Map) ObjectBuilder.fromJSON(response);
     Long numFound  = (Long)(((Map)rsp.get("response")).get("numFound"));
@@ -210,9 +207,6 @@ public class SimpleFacetsTest extends SolrTestCaseJ4 {
     ModifiableSolrParams params = params("q","*:*", "rows","0", "facet","true", "facet.field","{!key=myalias}"+field);
     
     String[] methods = {null, "fc","enum","fcs"};
-    if (sf.multiValued() || sf.getType().multiValuedFieldCache()) {
-      methods = new String[]{null, "fc","enum"};
-    }
 
     prefixes = prefixes==null ? new String[]{null} : prefixes;
 
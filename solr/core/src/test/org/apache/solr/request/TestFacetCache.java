@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.request;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the facetCache
+ */
+public class TestFacetCache extends SolrTestCaseJ4 {
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-facetcache.xml","schema11.xml");
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(commit());
+  }
+
+  private NamedList cacheStats() {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      SolrCache<FacetCacheKey,NamedList<Integer>> cache = holder.get().getFacetCache();
+      assertNotNull(cache);
+      return cache.getStatistics();
+    } finally {
+      holder.decref();
+    }
+  }
+
+  @Test
+  public void testCaching() throws Exception {
+    assertU(adoc("id", "1", "cat_s", "a", "tags_ss", "x", "tags_ss", "y"));
+    assertU(adoc("id", "2", "cat_s", "b", "tags_ss", "x"));
+    assertU(adoc("id", "3", "cat_s", "a"));
+    assertU(commit());
+
+    String[] request = new String[] {"q", "*:*", "fq", "{!tag=c}cat_s:a", "facet", "true",
+        "facet.field", "tags_ss", "facet.field", "{!ex=c key=cat}cat_s", "facet.missing", "true"};
+    for (int i = 0; i < 2; i++) {
+      assertQ(req(request)
+          ,"//lst[@name='tags_ss']/int[@name='x'][.='1']"
+          ,"//lst[@name='tags_ss']/int[@name='y'][.='1']"
+          ,"//lst[@name='tags_ss']/int[not(@name)][.='1']"
+          ,"//lst[@name='cat']/int[@name='a'][.='2']"
+          ,"//lst[@name='cat']/int[@name='b'][.='1']"
+      );
+    }
+    NamedList stats = cacheStats();
+    assertEquals(4L, stats.get("lookups"));
+    assertEquals(2L, stats.get("hits"));
+    assertEquals(2, stats.get("size"));
+
+    // other facet params, or another filter, are different entries
+    assertQ(req("q", "*:*", "fq", "cat_s:a", "facet", "true", "facet.field", "tags_ss", "facet.mincount", "1")
+        ,"*[count(//lst[@name='tags_ss']/int)=2]"
+    );
+    assertQ(req("q", "*:*", "fq", "cat_s:b", "facet", "true", "facet.field", "tags_ss")
+        ,"//lst[@name='tags_ss']/int[@name='x'][.='1']"
+        ,"//lst[@name='tags_ss']/int[@name='y'][.='0']"
+    );
+    stats = cacheStats();
+    assertEquals(2L, stats.get("hits"));
+    assertEquals(4, stats.get("size"));
+
+    // a commit autowarms the entries against the new searcher, with the new counts
+    assertU(adoc("id", "4", "cat_s", "a", "tags_ss", "y"));
+    assertU(commit());
+    stats = cacheStats();
+    assertEquals(4, stats.get("size"));
+    assertQ(req(request)
+        ,"//lst[@name='tags_ss']/int[@name='x'][.='1']"
+        ,"//lst[@name='tags_ss']/int[@name='y'][.='2']"
+        ,"//lst[@name='cat']/int[@name='a'][.='3']"
+    );
+    stats = cacheStats();
+    assertEquals(2L, stats.get("lookups"));
+    assertEquals(2L, stats.get("hits"));
+  }
+}
@@ -17,13 +17,16 @@
 
 package org.apache.solr.request;
 
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 
 import org.apache.lucene.index.DocTermOrds;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.BytesRef;
+import org.apache.noggit.ObjectBuilder;
 import org.apache.solr.SolrTestCaseJ4;
 import org.junit.After;
 import org.junit.BeforeClass;
@@ -263,5 +266,90 @@ public class TestFaceting extends SolrTestCaseJ4 {
             );
   }
 
+  @Test
+  public void testPerSegmentMultiValued() throws Exception {
+    // facet.method=fcs on a multi-valued field merges per-segment counts, which
+    // must be the same as the counts over the whole index from facet.method=fc
+    String[] values = new String[40];
+    for (int i=0; i<values.length; i++) {
+      values[i] = (i % 3 == 0 ? "a" : "b") + t(i);
+    }
+
+    int id = 0;
+    for (int round=0; round<4; round++) {
+      for (int i=0; i<30; i++) {
+        int nValues = random.nextInt(4);
+        String[] fields = new String[2 + nValues*2];
+        fields[0] = "id";
+        fields[1] = Integer.toString(id++);
+        for (int j=0; j<nValues; j++) {
+          fields[2 + j*2] = "tags_ss";
+          fields[3 + j*2] = values[random.nextInt(values.length - round*5)];
+        }
+        assertU(adoc(fields));
+      }
+      if (round == 2) {
+        assertU(delQ("id:[10 TO 20]"));
+      }
+      assertU(commit());
+
+      for (String q : new String[] {"*:*", "id:[0 TO 50]", "id:[35 TO 200]"}) {
+        for (String sort : new String[] {"count", "index"}) {
+          for (String prefix : new String[] {null, "a", "b00000", "c"}) {
+            String[] params = new String[] {"q", q, "rows", "0", "facet", "true", "facet.field", "tags_ss",
+                "facet.sort", sort, "facet.missing", "true",
+                "facet.limit", Integer.toString(random.nextInt(20) - 1),
+                "facet.offset", Integer.toString(random.nextInt(3)),
+                "facet.mincount", Integer.toString(random.nextInt(3))};
+            if (prefix != null) {
+              params = Arrays.copyOf(params, params.length + 2);
+              params[params.length - 2] = "facet.prefix";
+              params[params.length - 1] = prefix;
+            }
+            assertEquals(facetFields(params, "facet.method", "fc"), facetFields(params, "facet.method", "fcs"));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testParallelCounting() throws Exception {
+    int minDocsPerThread = DocRangeCounter.minDocsPerThread;
+    DocRangeCounter.minDocsPerThread = 5;
+    try {
+      int id = 0;
+      for (int round=0; round<3; round++) {
+        for (int i=0; i<50; i++) {
+          String[] fields = new String[] {"id", Integer.toString(id++),
+              "single_s", "v" + random.nextInt(20), "tags_ss", "a" + random.nextInt(10), "tags_ss", "b" + random.nextInt(10)};
+          assertU(adoc(fields));
+        }
+        assertU(commit());
+      }
+
+      for (String q : new String[] {"*:*", "id:[0 TO 30]", "id:[10 TO 140]"}) {
+        for (String field : new String[] {"single_s", "tags_ss"}) {
+          for (String prefix : new String[] {"", "a", "v1"}) {
+            String[] params = new String[] {"q", q, "rows", "0", "facet", "true", "facet.field", field,
+                "facet.prefix", prefix, "facet.missing", "true", "facet.limit", "-1", "facet.method", "fc"};
+            Object expected = facetFields(params, "facet.threads", "1");
+            assertEquals(expected, facetFields(params, "facet.threads", "2"));
+            assertEquals(expected, facetFields(params, "facet.threads", "7"));
+          }
+        }
+      }
+    } finally {
+      DocRangeCounter.minDocsPerThread = minDocsPerThread;
+    }
+  }
+
+  private Object facetFields(String[] params, String name, String value) throws Exception {
+    String[] p = Arrays.copyOf(params, params.length + 2);
+    p[p.length - 2] = name;
+    p[p.length - 1] = value;
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req(p)));
+    return ((Map) rsp.get("facet_counts")).get("facet_fields");
+  }
 
-}
\ No newline at end of file
+}
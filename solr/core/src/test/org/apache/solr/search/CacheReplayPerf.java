@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays a query log (or a synthetic Zipf distributed trace) against several
+ * SolrCache implementations, reporting hit ratio and throughput.
+ * <p/>
+ * Each distinct request of the log is one cache key.  For Solr request log
+ * lines the key is the <code>params={...}</code> part, otherwise the whole line.
+ * A lookup that misses is followed by a put, as SolrIndexSearcher does.  The
+ * hit ratio is measured replaying the trace once in a single thread, the
+ * throughput with all threads replaying it concurrently from different offsets.
+ * Use -Xbatch and traces of a few million requests for more predictable results.
+ *
+ */
+public class CacheReplayPerf {
+
+  static final String[] DEFAULT_IMPLS = new String[] {"LRUCache", "FastLRUCache", "LFUCache", "TinyLFUCache"};
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.out.println("CacheReplayPerf <queryLog|zipf:<requests>:<distinctKeys>[:<exponent>]> <cacheSize> <threads> [<impl>...]");
+      System.out.println("  impl => one of " + Arrays.toString(DEFAULT_IMPLS) + " or a SolrCache class name");
+      System.out.println("  a queryLog ending in .gz is decompressed");
+      return;
+    }
+    final int[] trace = args[0].startsWith("zipf:") ? zipfTrace(args[0]) : readLog(args[0]);
+    int cacheSize = Integer.parseInt(args[1]);
+    int threads = Integer.parseInt(args[2]);
+    String[] impls = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : DEFAULT_IMPLS;
+
+    System.out.println("requests=" + trace.length + " cacheSize=" + cacheSize + " threads=" + threads);
+    for (String impl : impls) {
+      SolrCache<Integer,Object> cache = newCache(impl, cacheSize);
+      long start = System.nanoTime();
+      long hits = replay(cache, trace, 0);
+      long hitRatioNanos = System.nanoTime() - start;
+      cache.close();
+
+      cache = newCache(impl, cacheSize);
+      long throughputNanos = replayConcurrently(cache, trace, threads);
+      cache.close();
+
+      System.out.println(String.format("%-14s hitratio=%.4f  singleThreaded=%6dms  %dThreads=%6dms  (%.0f lookups/s)",
+          impl, (double) hits / trace.length, hitRatioNanos / 1000000, threads, throughputNanos / 1000000,
+          (double) trace.length * threads / (throughputNanos / 1e9)));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static SolrCache<Integer,Object> newCache(String impl, int size) throws Exception {
+    String className = impl.indexOf('.') < 0 ? "org.apache.solr.search." + impl : impl;
+    SolrCache<Integer,Object> cache = (SolrCache<Integer,Object>) Class.forName(className).newInstance();
+    Map<String,String> params = new HashMap<String,String>();
+    params.put("name", "perf");
+    params.put("size", Integer.toString(size));
+    params.put("initialSize", Integer.toString(size));
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+    return cache;
+  }
+
+  // returns the number of hits
+  static long replay(SolrCache<Integer,Object> cache, int[] trace, int offset) {
+    long hits = 0;
+    for (int i = 0; i < trace.length; i++) {
+      Integer key = trace[(i + offset) % trace.length];
+      if (cache.get(key) != null) {
+        hits++;
+      } else {
+        cache.put(key, key);
+      }
+    }
+    return hits;
+  }
+
+  // returns the wall clock time in nanoseconds
+  static long replayConcurrently(final SolrCache<Integer,Object> cache, final int[] trace, int numThreads)
+      throws InterruptedException {
+    Thread[] threads = new Thread[numThreads];
+    final AtomicLong hits = new AtomicLong();
+    for (int i = 0; i < numThreads; i++) {
+      final int offset = (int) ((long) trace.length * i / numThreads);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          hits.addAndGet(replay(cache, trace, offset));
+        }
+      };
+    }
+    long start = System.nanoTime();
+    for (Thread t : threads) t.start();
+    for (Thread t : threads) t.join();
+    return System.nanoTime() - start;
+  }
+
+  static int[] readLog(String file) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(file.endsWith(".gz") ?
+        new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file), "UTF-8"));
+    Map<String,Integer> ids = new HashMap<String,Integer>();
+    List<Integer> trace = new ArrayList<Integer>();
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String key = line;
+        int start = line.indexOf("params={");
+        if (start >= 0) {
+          int end = line.indexOf('}', start);
+          key = line.substring(start + 8, end < 0 ? line.length() : end);
+        }
+        Integer id = ids.get(key);
+        if (id == null) {
+          id = ids.size();
+          ids.put(key, id);
+        }
+        trace.add(id);
+      }
+    } finally {
+      reader.close();
+    }
+    int[] result = new int[trace.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = trace.get(i);
+    }
+    return result;
+  }
+
+  // zipf:<requests>:<distinctKeys>[:<exponent>]
+  static int[] zipfTrace(String spec) {
+    String[] parts = spec.split(":");
+    int requests = Integer.parseInt(parts[1]);
+    int keys = Integer.parseInt(parts[2]);
+    double exponent = parts.length > 3 ? Double.parseDouble(parts[3]) : 1.0;
+    double[] cdf = new double[keys];
+    double sum = 0;
+    for (int i = 0; i < keys; i++) {
+      sum += 1.0 / Math.pow(i + 1, exponent);
+      cdf[i] = sum;
+    }
+    Random r = new Random(0);
+    int[] trace = new int[requests];
+    for (int i = 0; i < requests; i++) {
+      int idx = Arrays.binarySearch(cdf, r.nextDouble() * sum);
+      trace[i] = idx < 0 ? -idx - 1 : idx;
+    }
+    return trace;
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.noggit.ObjectBuilder;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CursorPagingTest extends SolrTestCaseJ4 {
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @Test
+  public void testCursorPaging() throws Exception {
+    int id = 0;
+    for (int round=0; round<4; round++) {
+      int numDocs = 10 + random.nextInt(40);
+      for (int i=0; i<numDocs; i++) {
+        List<String> fields = new ArrayList<String>();
+        fields.add("id");
+        fields.add(Integer.toString(id++));
+        // few distinct values so that the tie break matters, and some documents without a value
+        if (random.nextInt(5) != 0) { fields.add("val_s1"); fields.add("s" + random.nextInt(10)); }
+        if (random.nextInt(5) != 0) { fields.add("val_ti1"); fields.add(Integer.toString(random.nextInt(10) - 5)); }
+        if (random.nextInt(5) != 0) { fields.add("val_tl1"); fields.add(Long.toString(random.nextInt(10) * 1000000000L)); }
+        if (random.nextInt(5) != 0) { fields.add("val_td1"); fields.add(Double.toString(random.nextInt(10) / 8.0)); }
+        assertU(adoc(fields.toArray(new String[fields.size()])));
+      }
+      assertU(commit());
+    }
+    assertU(delQ("id:[30 TO 35]"));
+    assertU(commit());
+
+    String[] sorts = {"val_s1 asc", "val_s1 desc", "val_ti1 asc", "val_ti1 desc, val_s1 asc",
+        "val_tl1 desc", "val_td1 asc, val_s1 desc", "id desc"};
+    for (String sort : sorts) {
+      for (String fq : new String[] {"*:*", "val_ti1:[0 TO *]"}) {
+        Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req("q", "*:*", "fq", fq, "sort", sort + ", id asc", "fl", "id", "rows", "1000")));
+        Map response = (Map) rsp.get("response");
+        long numFound = ((Number) response.get("numFound")).longValue();
+        List<Object> expected = ids(response, new ArrayList<Object>());
+
+        int rows = 1 + random.nextInt(15);
+        List<Object> paged = new ArrayList<Object>();
+        String mark = "*";
+        while (true) {
+          rsp = (Map) ObjectBuilder.fromJSON(JQ(req("q", "*:*", "fq", fq, "sort", sort, "fl", "id",
+              "rows", Integer.toString(rows), CommonParams.CURSOR_MARK, mark)));
+          response = (Map) rsp.get("response");
+          // numFound is the same for every page
+          assertEquals(numFound, ((Number) response.get("numFound")).longValue());
+          int before = paged.size();
+          ids(response, paged);
+          String next = (String) rsp.get(CommonParams.CURSOR_MARK_NEXT);
+          assertNotNull(next);
+          if (paged.size() == before) {
+            // at the end the mark does not move
+            assertEquals(mark, next);
+            break;
+          }
+          assertTrue(paged.size() - before <= rows);
+          mark = next;
+        }
+        assertEquals(sort, expected, paged);
+      }
+    }
+  }
+
+  @Test
+  public void testShortLastPage() throws Exception {
+    clearIndex();
+    for (int i=0; i<7; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_ti1", Integer.toString(100 - i)));
+    }
+    assertU(commit());
+
+    List<Object> paged = new ArrayList<Object>();
+    String mark = page("val_ti1 asc", 5, "*", 5, paged);
+    mark = page("val_ti1 asc", 5, mark, 2, paged);
+    assertEquals(mark, page("val_ti1 asc", 5, mark, 0, paged));
+    assertEquals(ids(6, 5, 4, 3, 2, 1, 0), paged);
+  }
+
+  @Test
+  public void testNoRows() throws Exception {
+    clearIndex();
+    for (int i=0; i<3; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_ti1", Integer.toString(i)));
+    }
+    assertU(commit());
+
+    List<Object> paged = new ArrayList<Object>();
+    // the mark does not move, also when it is not the start
+    assertEquals("*", page("val_ti1 asc", 0, "*", 0, paged));
+    String mark = page("val_ti1 asc", 1, "*", 1, paged);
+    assertEquals(mark, page("val_ti1 asc", 0, mark, 0, paged));
+    assertEquals(ids(0), paged);
+  }
+
+  @Test
+  public void testQueryResultCacheBypass() throws Exception {
+    clearIndex();
+    for (int i=0; i<20; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_ti1", Integer.toString(i)));
+    }
+    assertU(commit());
+
+    // cache the first page of the same query and sort
+    assertJQ(req("q", "*:*", "sort", "val_ti1 asc", "fl", "id", "rows", "5"), "/response/docs/[0]/id==0");
+    long lookups = queryResultCacheStat("lookups");
+    long inserts = queryResultCacheStat("inserts");
+
+    List<Object> paged = new ArrayList<Object>();
+    String mark = "*";
+    for (int i=0; i<4; i++) {
+      mark = page("val_ti1 asc", 5, mark, 5, paged);
+    }
+    assertEquals(ids(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19), paged);
+    assertEquals(lookups, queryResultCacheStat("lookups"));
+    assertEquals(inserts, queryResultCacheStat("inserts"));
+  }
+
+  @Test
+  public void testDocsAddedBetweenPages() throws Exception {
+    clearIndex();
+    for (int i=1; i<=10; i++) {
+      assertU(adoc("id", Integer.toString(i), "val_ti1", Integer.toString(i * 10)));
+    }
+    assertU(commit());
+
+    List<Object> paged = new ArrayList<Object>();
+    String mark = page("val_ti1 asc", 4, "*", 4, paged);
+
+    // one document sorts before the mark and is never seen, the other one after it;
+    // a new version of a document already seen moves it after the mark
+    assertU(adoc("id", "11", "val_ti1", "5"));
+    assertU(adoc("id", "12", "val_ti1", "55"));
+    assertU(adoc("id", "2", "val_ti1", "95"));
+    assertU(commit());
+
+    mark = page("val_ti1 asc", 4, mark, 4, paged);
+    mark = page("val_ti1 asc", 4, mark, 4, paged);
+    assertEquals(mark, page("val_ti1 asc", 4, mark, 0, paged));
+    assertEquals(ids(1, 2, 3, 4, 5, 12, 6, 7, 8, 9, 2, 10), paged);
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    assertU(adoc("id", "1", "val_s1", "a"));
+    assertU(commit());
+    assertQEx("no start with a cursor", req("q", "*:*", "sort", "val_s1 asc", "start", "5", CommonParams.CURSOR_MARK, "*"),
+        SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("no score sort", req("q", "*:*", CommonParams.CURSOR_MARK, "*"), SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("no grouping", req("q", "*:*", "sort", "val_s1 asc", "group", "true", "group.field", "val_s1",
+        CommonParams.CURSOR_MARK, "*"), SolrException.ErrorCode.BAD_REQUEST);
+    assertQEx("bad mark", req("q", "*:*", "sort", "val_s1 asc", CommonParams.CURSOR_MARK, "xyz"), SolrException.ErrorCode.BAD_REQUEST);
+
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req("q", "*:*", "sort", "val_s1 asc", "rows", "1", CommonParams.CURSOR_MARK, "*")));
+    String next = (String) rsp.get(CommonParams.CURSOR_MARK_NEXT);
+    assertQEx("mark of another sort", req("q", "*:*", "sort", "val_s1 desc", CommonParams.CURSOR_MARK, next),
+        SolrException.ErrorCode.BAD_REQUEST);
+  }
+
+  /** adds the ids of one page to the list, checking its size, and returns the next mark */
+  private String page(String sort, int rows, String mark, int expectedSize, List<Object> ids) throws Exception {
+    Map rsp = (Map) ObjectBuilder.fromJSON(JQ(req("q", "*:*", "sort", sort, "fl", "id",
+        "rows", Integer.toString(rows), CommonParams.CURSOR_MARK, mark)));
+    int before = ids.size();
+    ids((Map) rsp.get("response"), ids);
+    assertEquals(expectedSize, ids.size() - before);
+    String next = (String) rsp.get(CommonParams.CURSOR_MARK_NEXT);
+    assertNotNull(next);
+    return next;
+  }
+
+  private List<Object> ids(int... ids) {
+    List<Object> list = new ArrayList<Object>();
+    for (int id : ids) {
+      list.add(Long.valueOf(id));
+    }
+    return list;
+  }
+
+  private long queryResultCacheStat(String name) {
+    NamedList stats = h.getCore().getInfoRegistry().get("queryResultCache").getStatistics();
+    return ((Number) stats.get(name)).longValue();
+  }
+
+  private List<Object> ids(Map response, List<Object> ids) {
+    for (Object doc : (List) response.get("docs")) {
+      ids.add(((Map) doc).get("id"));
+    }
+    return ids;
+  }
+}
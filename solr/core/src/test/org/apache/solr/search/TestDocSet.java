@@ -77,6 +77,16 @@ public class TestDocSet extends LuceneTestCase {
     return new BitDocSet(bs);
   }
 
+  public DocSet getRoaringDocSet(OpenBitSet bs) {
+    if (rand.nextBoolean()) return new RoaringDocSet(bs);
+    int[] docs = new int[(int)bs.cardinality()];
+    OpenBitSetIterator iter = new OpenBitSetIterator(bs);
+    for (int i=0; i<docs.length; i++) {
+      docs[i] = iter.nextDoc();
+    }
+    return new RoaringDocSet(docs, docs.length);
+  }
+
   public DocSet getDocSlice(OpenBitSet bs) {
     int len = (int)bs.cardinality();
     int[] arr = new int[len+5];
@@ -95,7 +105,7 @@ public class TestDocSet extends LuceneTestCase {
 
 
   public DocSet getDocSet(OpenBitSet bs) {
-    switch(rand.nextInt(10)) {
+    switch(rand.nextInt(12)) {
       case 0: return getHashDocSet(bs);
 
       case 1: return getBitDocSet(bs);
@@ -109,6 +119,9 @@ public class TestDocSet extends LuceneTestCase {
       case 8: return getIntDocSet(bs);
 
       case 9: return getDocSlice(bs);
+
+      case 10: return getRoaringDocSet(bs);
+      case 11: return getRoaringDocSet(bs);
     }
     return null;
   }
@@ -483,6 +496,149 @@ public class TestDocSet extends LuceneTestCase {
     }
   }
 
+  // splits bs into one segment relative set per leaf of the reader
+  public SegmentedDocSet getSegmentedDocSet(IndexReader reader, OpenBitSet bs) {
+    AtomicReaderContext[] leaves = reader.getTopReaderContext().leaves();
+    DocSet[] sets = new DocSet[leaves.length];
+    for (int i=0; i<leaves.length; i++) {
+      int base = leaves[i].docBase;
+      int maxDoc = leaves[i].reader().maxDoc();
+      OpenBitSet sub = new OpenBitSet(maxDoc);
+      for (int doc=0; doc<maxDoc; doc++) {
+        if (bs.get(base+doc)) sub.fastSet(doc);
+      }
+      sets[i] = rand.nextBoolean() ? getBitDocSet(sub) : getIntDocSet(sub);
+    }
+    return new SegmentedDocSet(leaves, sets);
+  }
+
+  public void testSegmentedDocSet() throws IOException {
+    for (int i=0; i<1000; i++) {
+      IndexReader r = dummyMultiReader(4, 100);
+      int maxDoc = r.maxDoc();
+      OpenBitSet bs1 = getRandomSet(maxDoc, rand.nextInt(maxDoc+1));
+      OpenBitSet bs2 = getRandomSet(maxDoc, rand.nextInt(maxDoc+1));
+      SegmentedDocSet s1 = getSegmentedDocSet(r, bs1);
+      SegmentedDocSet s2 = getSegmentedDocSet(r, bs2);
+      // the other operand is either segmented the same way or a top-level set
+      DocSet b2 = rand.nextBoolean() ? s2 : getDocSet(bs2);
+
+      checkEqual(bs1, s1);
+      iter(new BitDocSet(bs1), s1);
+
+      OpenBitSet a_and = (OpenBitSet) bs1.clone(); a_and.and(bs2);
+      OpenBitSet a_or = (OpenBitSet) bs1.clone(); a_or.or(bs2);
+      OpenBitSet a_andn = (OpenBitSet) bs1.clone(); a_andn.andNot(bs2);
+
+      checkEqual(a_and, s1.intersection(b2));
+      checkEqual(a_or, s1.union(b2));
+      checkEqual(a_andn, s1.andNot(b2));
+      assertEquals(a_and.cardinality(), s1.intersectionSize(b2));
+      assertEquals(a_and.cardinality() > 0, s1.intersects(b2));
+      assertEquals(a_or.cardinality(), s1.unionSize(b2));
+      assertEquals(a_andn.cardinality(), s1.andNotSize(b2));
+      // and with the segmented set as the argument
+      assertEquals(a_and.cardinality(), getDocSet(bs2).intersectionSize(s1));
+      // none of this needs the top-level set
+      assertFalse(s1.hasTopLevelDocSet());
+      assertEquals(bs1, s1.getBits());
+      assertTrue(s1.hasTopLevelDocSet());
+
+      Filter fa = new BitDocSet(bs1).getTopFilter();
+      Filter fb = s1.getTopFilter();
+      for (AtomicReaderContext readerContext : r.getTopReaderContext().leaves()) {
+        DocIdSet da = fa.getDocIdSet(readerContext, null);
+        DocIdSet db = fb.getDocIdSet(readerContext, null);
+        doTestIteratorEqual(da, db);
+      }
+    }
+  }
+
+  // a set mixing sparse, dense and clustered chunks of 65536 docs
+  public OpenBitSet getChunkySet(int sz) {
+    OpenBitSet bs = new OpenBitSet(sz);
+    for (int start=0; start<sz; start+=65536) {
+      int end = Math.min(sz, start+65536);
+      switch (rand.nextInt(4)) {
+        case 0: // empty
+          break;
+        case 1: // sparse
+          for (int i=rand.nextInt(5000); i>=0; i--) bs.fastSet(start + rand.nextInt(end-start));
+          break;
+        case 2: // dense
+          for (int i=start; i<end; i++) if (rand.nextInt(3)!=0) bs.fastSet(i);
+          break;
+        case 3: // runs
+          for (int i=start; i<end; i+=rand.nextInt(5000)+1) {
+            int len = rand.nextInt(3000);
+            bs.set(i, Math.min(end, i+len));
+            i += len;
+          }
+          break;
+      }
+    }
+    return bs;
+  }
+
+  public void testRoaringDocSet() throws IOException {
+    for (int iter=0; iter<20; iter++) {
+      int sz = rand.nextInt(300000) + 1;
+      OpenBitSet bs1 = getChunkySet(sz);
+      OpenBitSet bs2 = rand.nextBoolean() ? getChunkySet(sz) : getRandomSet(sz, rand.nextInt(sz));
+      DocSet r1 = getRoaringDocSet(bs1);
+      DocSet[] others = new DocSet[] {getRoaringDocSet(bs2), new BitDocSet(bs2), getIntDocSet(bs2), getHashDocSet(bs2)};
+
+      assertEquals(bs1.cardinality(), r1.size());
+      assertEquals(bs1, r1.getBits());
+      iter(new BitDocSet(bs1), r1);
+      for (int i=0; i<1000; i++) {
+        int doc = rand.nextInt(sz);
+        assertEquals(bs1.get(doc), r1.exists(doc));
+      }
+
+      OpenBitSet a_and = (OpenBitSet) bs1.clone(); a_and.and(bs2);
+      OpenBitSet a_or = (OpenBitSet) bs1.clone(); a_or.or(bs2);
+      OpenBitSet a_andn = (OpenBitSet) bs1.clone(); a_andn.andNot(bs2);
+      OpenBitSet b_andn = (OpenBitSet) bs2.clone(); b_andn.andNot(bs1);
+
+      for (DocSet b2 : others) {
+        assertEquals(a_and, r1.intersection(b2).getBits());
+        assertEquals(a_and, b2.intersection(r1).getBits());
+        assertEquals(a_or, r1.union(b2).getBits());
+        assertEquals(a_andn, r1.andNot(b2).getBits());
+        assertEquals(b_andn, b2.andNot(r1).getBits());
+        assertEquals(a_and.cardinality(), r1.intersectionSize(b2));
+        assertEquals(a_and.cardinality(), b2.intersectionSize(r1));
+        assertEquals(a_and.cardinality() > 0, r1.intersects(b2));
+        assertEquals(a_or.cardinality(), r1.unionSize(b2));
+        assertEquals(a_andn.cardinality(), r1.andNotSize(b2));
+      }
+
+      // compressIfSmaller must not change the contents
+      assertEquals(bs1, RoaringDocSet.compressIfSmaller(bs1, -1).getBits());
+    }
+
+    // mid-density and clustered sets are compressed, uniformly dense ones are not
+    OpenBitSet sparse = getRandomSet(1000000, 10000);
+    assertTrue(RoaringDocSet.compressIfSmaller(sparse, -1) instanceof RoaringDocSet);
+    OpenBitSet clustered = new OpenBitSet(1000000);
+    clustered.set(100000, 700000);
+    assertTrue(RoaringDocSet.compressIfSmaller(clustered, -1) instanceof RoaringDocSet);
+    assertTrue(RoaringDocSet.compressIfSmaller(getRandomSet(1000000, 500000), -1) instanceof BitDocSet);
+  }
+
+  public void testRoaringFilter() throws IOException {
+    for (int i=0; i<200; i++) {
+      IndexReader r = dummyMultiReader(4, 150000);
+      OpenBitSet bs = getChunkySet(r.maxDoc());
+      Filter fa = new BitDocSet(bs).getTopFilter();
+      Filter fb = getRoaringDocSet(bs).getTopFilter();
+      for (AtomicReaderContext readerContext : r.getTopReaderContext().leaves()) {
+        doTestIteratorEqual(fa.getDocIdSet(readerContext, null), fb.getDocIdSet(readerContext, null));
+      }
+    }
+  }
+
   public void testFilter() throws IOException {
     // keeping these numbers smaller help hit more edge cases
     int maxSeg=4;
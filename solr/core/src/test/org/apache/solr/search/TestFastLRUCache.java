@@ -17,6 +17,8 @@
 package org.apache.solr.search;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.ConcurrentLRUCache;
 
@@ -174,6 +176,36 @@ public class TestFastLRUCache extends LuceneTestCase {
     cacheNew.close();
   }
 
+  public void testMaxRamSize() throws IOException {
+    FastLRUCache<Object, Object> fastCache = new FastLRUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("maxRamMB", "2.5");
+    fastCache.init(params, null, null);
+    fastCache.setState(SolrCache.State.LIVE);
+    DocSet small = new SortedIntDocSet(new int[] {1, 5, 42});
+    fastCache.put("small", small);
+    fastCache.put("big1", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    fastCache.put("big2", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertSame(small, fastCache.get("small"));
+    assertEquals(0L, fastCache.getStatistics().get("evictions"));
+
+    // over 2.5MB the cache sweeps down to 90% of the limit, which only takes
+    // evicting the least recently used big entry
+    fastCache.put("big3", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertNull(fastCache.get("big1"));
+    assertNotNull(fastCache.get("big2"));
+    assertNotNull(fastCache.get("big3"));
+    assertSame(small, fastCache.get("small"));
+    NamedList<Serializable> nl = fastCache.getStatistics();
+    assertEquals(1L, nl.get("evictions"));
+    assertEquals(3L, nl.get("size"));
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > 2 * RamUsageEstimator.ONE_MB);
+    assertTrue(ramBytesUsed <= 2.25 * RamUsageEstimator.ONE_MB);
+    fastCache.close();
+  }
+
   private CacheRegenerator createCodeRegenerator() {
     CacheRegenerator cr = new CacheRegenerator() {
         public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
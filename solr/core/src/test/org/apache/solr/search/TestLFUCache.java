@@ -17,6 +17,8 @@ package org.apache.solr.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.ConcurrentLFUCache;
@@ -192,6 +194,39 @@ public class TestLFUCache extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testMaxRamSize() throws IOException {
+    LFUCache lfuCache = new LFUCache();
+    try {
+      Map params = new HashMap();
+      params.put("size", "100");
+      params.put("maxRamMB", "2.5");
+      lfuCache.init(params, null, null);
+      lfuCache.setState(SolrCache.State.LIVE);
+      DocSet small = new SortedIntDocSet(new int[]{1, 5, 42});
+      lfuCache.put("small", small);
+      lfuCache.put("big1", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+      lfuCache.put("big2", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+      assertSame(small, lfuCache.get("small"));
+      assertNotNull(lfuCache.get("big2"));
+
+      // going over 2.5MB evicts the least used entry, which is enough to get
+      // below 90% of the limit again
+      lfuCache.put("big3", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+      assertNull(lfuCache.get("big1"));
+      assertNotNull(lfuCache.get("big2"));
+      assertNotNull(lfuCache.get("big3"));
+      assertSame(small, lfuCache.get("small"));
+      NamedList nl = lfuCache.getStatistics();
+      assertEquals(1L, nl.get("evictions"));
+      long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+      assertTrue(ramBytesUsed > 2 * RamUsageEstimator.ONE_MB);
+      assertTrue(ramBytesUsed <= 2.25 * RamUsageEstimator.ONE_MB);
+    } finally {
+      lfuCache.close();
+    }
+  }
+
   @Test
   public void testItemOrdering() {
     ConcurrentLFUCache<Integer, String> cache = new ConcurrentLFUCache<Integer, String>(100, 90);
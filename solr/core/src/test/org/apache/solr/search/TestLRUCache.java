@@ -19,10 +19,15 @@ package org.apache.solr.search;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.util.NamedList;
 
 /**
@@ -122,6 +127,49 @@ public class TestLRUCache extends LuceneTestCase {
     lruCacheNew.close();
   }
   
+  public void testMaxRamSize() throws IOException {
+    LRUCache<Object, Object> lruCache = new LRUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("maxRamMB", "2.5");
+    lruCache.init(params, null, null);
+    lruCache.setState(SolrCache.State.LIVE);
+    DocSet small = new SortedIntDocSet(new int[] {1, 5, 42});
+    lruCache.put("small", small);
+    lruCache.put("big1", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    lruCache.put("big2", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertSame(small, lruCache.get("small"));
+    NamedList<Serializable> nl = lruCache.getStatistics();
+    assertEquals(0L, nl.get("evictions"));
+    assertTrue((Long) nl.get("ramBytesUsed") > 2 * RamUsageEstimator.ONE_MB);
+
+    // the third 1MB entry pushes the cache over 2.5MB: only the least recently used
+    // big entry has to go, the small entry is worth keeping even though it is older
+    lruCache.put("big3", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertNull(lruCache.get("big1"));
+    assertNotNull(lruCache.get("big2"));
+    assertNotNull(lruCache.get("big3"));
+    assertSame(small, lruCache.get("small"));
+    nl = lruCache.getStatistics();
+    assertEquals(1L, nl.get("evictions"));
+    assertEquals(3, nl.get("size"));
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > 2 * RamUsageEstimator.ONE_MB);
+    assertTrue(ramBytesUsed <= 2.5 * RamUsageEstimator.ONE_MB);
+
+    lruCache.clear();
+    assertEquals(0L, lruCache.getStatistics().get("ramBytesUsed"));
+
+    // documents are charged for their stored values
+    Document doc = new Document();
+    char[] chars = new char[10000];
+    Arrays.fill(chars, 'x');
+    doc.add(new StoredField("text", new String(chars)));
+    lruCache.put(0, doc);
+    assertTrue((Long) lruCache.getStatistics().get("ramBytesUsed") > 2 * chars.length);
+    lruCache.close();
+  }
+
   private CacheRegenerator createCodeRegenerator() {
     CacheRegenerator cr = new CacheRegenerator() {
       @SuppressWarnings("unchecked")
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Tests the filterCache with perSegment="true"
+ */
+public class TestSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    System.setProperty("solr.filterCache.perSegment", "true");
+    initCore("solrconfig.xml","schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    System.clearProperty("solr.filterCache.perSegment");
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    assertU(delQ("*:*"));
+    assertU(commit());
+    super.tearDown();
+  }
+
+  private long filterCacheStat(String name) {
+    NamedList stats = h.getCore().getInfoRegistry().get("filterCache").getStatistics();
+    return ((Number)stats.get(name)).longValue();
+  }
+
+  private DocSet getSegmentDocSet(Query q, int ord) throws Exception {
+    SolrQueryRequest req = req();
+    try {
+      return ((SegmentedDocSet)req.getSearcher().getDocSet(q)).getSegmentDocSet(ord);
+    } finally {
+      req.close();
+    }
+  }
+
+  public void testFilters() throws Exception {
+    assertU(adoc("id","1", "val_s","a"));
+    assertU(adoc("id","2", "val_s","b"));
+    assertU(adoc("id","3", "val_s","a"));
+    assertU(commit());
+    assertU(adoc("id","4", "val_s","a"));
+    assertU(adoc("id","5", "val_s","c"));
+    assertU(commit());
+    assertU(adoc("id","6", "val_s","b"));
+    assertU(commit());
+
+    assertQ(req("q","*:*", "fq","val_s:a"), "//*[@numFound='3']");
+    assertQ(req("q","*:*", "fq","-val_s:a"), "//*[@numFound='3']");
+    assertQ(req("q","*:*", "fq","val_s:[a TO b]", "fq","-id:3"), "//*[@numFound='4']");
+    assertQ(req("q","val_s:a", "fq","id:[2 TO 5]"), "//*[@numFound='2']");
+    assertQ(req("q","*:*", "fq","val_s:b", "sort","id desc"),
+        "//*[@numFound='2']",
+        "//result/doc[1]/str[@name='id'][.='6']",
+        "//result/doc[2]/str[@name='id'][.='2']");
+    assertQ(req("q","*:*", "rows","0", "facet","true", "facet.field","val_s", "facet.method","enum",
+        "facet.enum.cache.minDf","0", "facet.query","val_s:[b TO c]"),
+        "//lst[@name='val_s']/int[@name='a'][.='3']",
+        "//lst[@name='val_s']/int[@name='b'][.='2']",
+        "//lst[@name='val_s']/int[@name='c'][.='1']",
+        "//lst[@name='facet_queries']/int[.='3']");
+
+    SolrQueryRequest req = req();
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      DocSet set = searcher.getDocSet(new TermQuery(new Term("val_s", "a")));
+      assertTrue(set instanceof SegmentedDocSet);
+      assertEquals(3, set.size());
+      assertEquals(searcher.getDocSetNC(new TermQuery(new Term("val_s", "a")), null).getBits(), set.getBits());
+      // handed out again while its segments are cached, so the top-level set is kept
+      assertSame(set, searcher.getDocSet(new TermQuery(new Term("val_s", "a"))));
+      assertTrue(((SegmentedDocSet)set).hasTopLevelDocSet());
+    } finally {
+      req.close();
+    }
+  }
+
+  public void testEntriesSurviveCommit() throws Exception {
+    assertU(adoc("id","1", "val_s","a"));
+    assertU(adoc("id","2", "val_s","b"));
+    assertU(commit());
+
+    assertQ(req("q","*:*", "fq","val_s:a"), "//*[@numFound='1']");
+    assertEquals(1, filterCacheStat("inserts"));
+    DocSet first = getSegmentDocSet(new TermQuery(new Term("val_s", "a")), 0);
+
+    // a new segment: the entry for the existing segment is carried over and
+    // only the new segment is computed while warming
+    assertU(adoc("id","3", "val_s","a"));
+    assertU(commit());
+    // use a query that is not in the (autowarmed) queryResultCache
+    assertQ(req("q","id:[* TO *]", "fq","val_s:a"), "//*[@numFound='2']");
+    assertEquals(2, filterCacheStat("hits"));
+    assertEquals(0, filterCacheStat("inserts"));
+    assertSame(first, getSegmentDocSet(new TermQuery(new Term("val_s", "a")), 0));
+
+    // deleting from the first segment invalidates its entry only
+    assertU(delI("1"));
+    assertU(commit());
+    assertQ(req("q","*:*", "fq","val_s:a"), "//*[@numFound='1']");
+    assertQ(req("q","*:*", "fq","-val_s:a"), "//*[@numFound='1']");
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.util.ConcurrentTinyLFUCache;
+import org.apache.solr.util.FrequencySketch;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Test for TinyLFUCache and ConcurrentTinyLFUCache
+ *
+ * @see org.apache.solr.search.TinyLFUCache
+ */
+public class TestTinyLFUCache extends LuceneTestCase {
+
+  public void testSimple() throws IOException {
+    TinyLFUCache<Object, Object> cache = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("initialSize", "10");
+    params.put("cleanupThread", "false");
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 101; i++) {
+      cache.put(i + 1, "" + (i + 1));
+    }
+    assertEquals("25", cache.get(25));
+    assertEquals(null, cache.get(110));
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertEquals(2L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(101L, nl.get("inserts"));
+    assertEquals(1L, nl.get("evictions"));
+    assertEquals(100L, nl.get("size"));
+
+    cache.put(25, "twenty-five");
+    assertEquals("twenty-five", cache.get(25));
+    assertEquals(100, cache.size());
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get(25));
+    cache.close();
+  }
+
+  public void testScanResistance() {
+    ConcurrentTinyLFUCache<Integer, Integer> cache = new ConcurrentTinyLFUCache<Integer, Integer>(100);
+    final int hot = 60;
+    for (int i = 0; i < hot; i++) {
+      cache.put(i, i);
+    }
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < hot; i++) {
+        assertEquals(Integer.valueOf(i), cache.get(i));
+      }
+    }
+    // a long run of one-off entries, as from deep paging, must not push out
+    // the entries that are used over and over.  Each hot entry is only hit
+    // again after 119 other keys were used, so an LRU cache would lose them all.
+    for (int i = 1000; i < 6000; i++) {
+      cache.put(i, i);
+      assertEquals(Integer.valueOf(i % hot), cache.get(i % hot));
+    }
+    cache.cleanUp();
+    assertEquals(100, cache.size());
+    for (int i = 0; i < hot; i++) {
+      assertEquals(Integer.valueOf(i), cache.get(i));
+    }
+    assertEquals(4960, cache.getStats().getCumulativeEvictions());
+  }
+
+  public void testMaxRamSize() throws IOException {
+    TinyLFUCache<Object, Object> cache = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("maxRamMB", "2.5");
+    params.put("cleanupThread", "false");
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+    DocSet small = new SortedIntDocSet(new int[] {1, 5, 42});
+    cache.put("small", small);
+    cache.put("big1", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    cache.put("big2", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertSame(small, cache.get("small"));
+    assertNotNull(cache.get("big2"));
+
+    // a third 1MB entry does not fit, and is not considered more valuable than big1
+    cache.put("big3", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertNull(cache.get("big3"));
+    assertEquals(3, cache.size());
+    assertEquals(1L, cache.getStatistics().get("evictions"));
+
+    // once requested again it wins over big1, which was used less
+    cache.put("big3", new BitDocSet(new OpenBitSet(8 * RamUsageEstimator.ONE_MB)));
+    assertNotNull(cache.get("big3"));
+    assertNull(cache.get("big1"));
+    assertNotNull(cache.get("big2"));
+    assertSame(small, cache.get("small"));
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertEquals(3L, nl.get("size"));
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > 2 * RamUsageEstimator.ONE_MB);
+    assertTrue(ramBytesUsed <= 2.5 * RamUsageEstimator.ONE_MB);
+    cache.close();
+  }
+
+  public void testAutowarm() throws IOException {
+    TinyLFUCache<Object, Object> cache = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("autowarmCount", "10");
+    params.put("cleanupThread", "false");
+    CacheRegenerator cr = new CacheRegenerator() {
+      @SuppressWarnings("unchecked")
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                    SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+        newCache.put(oldKey, oldVal);
+        return true;
+      }
+    };
+    Object o = cache.init(params, null, cr);
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "" + i);
+    }
+    // make 90..99 the most frequently used, without them being the most recent
+    for (int round = 0; round < 3; round++) {
+      for (int i = 90; i < 100; i++) {
+        cache.get(i);
+      }
+    }
+    for (int i = 0; i < 20; i++) {
+      cache.get(i);
+    }
+
+    TinyLFUCache<Object, Object> cacheNew = new TinyLFUCache<Object, Object>();
+    cacheNew.init(params, o, cr);
+    cacheNew.warm(null, cache);
+    cacheNew.setState(SolrCache.State.LIVE);
+    cache.close();
+    assertEquals(10, cacheNew.size());
+    for (int i = 90; i < 100; i++) {
+      assertEquals("" + i, cacheNew.get(i));
+    }
+    NamedList<Serializable> nl = cacheNew.getStatistics();
+    assertEquals(0L, nl.get("inserts"));
+    assertEquals(100L, nl.get("cumulative_inserts"));
+    cacheNew.close();
+  }
+
+  public void testFrequencySketch() {
+    FrequencySketch sketch = new FrequencySketch(512);
+    Integer hot = Integer.valueOf(42);
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(hot);
+    }
+    // counters saturate
+    assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(hot));
+    sketch.increment(7);
+    assertTrue(sketch.frequency(7) >= 1);
+
+    // after 10 * maximumSize increments everything is halved
+    for (int i = 0; i < 5200; i++) {
+      sketch.increment(10000 + i);
+    }
+    assertTrue(sketch.frequency(hot) <= FrequencySketch.MAX_FREQUENCY / 2 + 1);
+  }
+
+  public void testRandom() throws Exception {
+    final int maximum = 100;
+    final ConcurrentTinyLFUCache<Integer, Integer> cache = new ConcurrentTinyLFUCache<Integer, Integer>(
+        maximum, maximum, ConcurrentTinyLFUCache.getSharedCleanupExecutor(), null, null);
+    final int numThreads = 2 + random.nextInt(4);
+    final int iters = atLeast(20000);
+    final long seed = random.nextLong();
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final Random r = new Random(seed + t);
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < iters; i++) {
+            // skewed, so that some keys are much more popular than others
+            Integer key = (int) Math.abs(r.nextGaussian() * 150);
+            int op = r.nextInt(10);
+            if (op < 6) {
+              Integer val = cache.get(key);
+              if (val != null && !val.equals(key)) throw new RuntimeException("wrong value for " + key);
+            } else if (op < 9) {
+              cache.put(key, key);
+            } else {
+              cache.remove(key);
+            }
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+
+    for (int i = 0; i < 10; i++) {
+      cache.cleanUp();
+    }
+    assertTrue("size=" + cache.size(), cache.size() <= maximum);
+    assertEquals(cache.size(), cache.weightedSize());
+    cache.destroy();
+  }
+}
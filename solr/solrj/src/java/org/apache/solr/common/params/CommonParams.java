@@ -53,6 +53,15 @@ public interface CommonParams {
   /** docid of the last document of the previous page */
   public static final String PAGEDOC ="pageDoc";
   //Issue 1726 end
+
+  /**
+   * position to continue a sorted result from, as returned in {@link #CURSOR_MARK_NEXT},
+   * or "*" to start.  Replaces "start" for deep paging.
+   */
+  public static final String CURSOR_MARK ="cursorMark";
+
+  /** response key of the cursorMark to request the next page with */
+  public static final String CURSOR_MARK_NEXT ="nextCursorMark";
   
   /** stylesheet to apply to XML results */
   public static final String XSL ="xsl";
@@ -50,6 +50,14 @@ public interface FacetParams {
    */
   public static final String FACET_METHOD_fcs = "fcs";
 
+  /**
+   * The maximum number of threads used to count a single facet.field, for every
+   * facet.field of the request.  Counting is only split for large document sets.
+   * The <code>threads</code> local param overrides this for a single field.
+   * By default fc counts with a single thread, and fcs uses a thread per segment.
+   */
+  public static final String FACET_THREADS = FACET + ".threads";
+
   /**
    * Any lucene formated queries the user would like to use for
    * Facet Constraint Counts (multi-value)